@@ -0,0 +1,171 @@
+/* ThreadLengths.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.conversion;
+
+import java.awt.geom.CubicCurve2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import nl.BobbinWork.diagram.math.ArcLength;
+import nl.BobbinWork.diagram.model.LaceThread;
+import nl.BobbinWork.diagram.model.Partition;
+
+/**
+ * The length of thread each bobbin needs for the visible partitions of a
+ * diagram, in the units of the diagram coordinates. The lengths are the sum of the arc lengths of the
+ * segments of a thread.
+ *
+ * @author J. Pol
+ */
+public final class ThreadLengths
+{
+  /** threads per task */
+  private static final int CHUNK = 32;
+
+  private final List<LaceThread> threads;
+  private final double[] lengths;
+  private final double total;
+
+  /**
+   * Calculates the lengths on the calling thread.
+   *
+   * @param partition
+   *          typically a diagram
+   */
+  public ThreadLengths(final Partition partition)
+  {
+    threads = new ArrayList<LaceThread>( LaceThread.of( partition ) );
+    lengths = new double[threads.size()];
+    calculate( curves(), 0, lengths.length );
+    total = sum();
+  }
+
+  /**
+   * Calculates the lengths on the threads of an executor, for example a pool
+   * with a thread for each processor:
+   * <code>Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors())</code>
+   * The partition should not be edited until the constructor returns.
+   *
+   * @param partition
+   *          typically a diagram
+   * @throws ExecutionException
+   *           with the failure of a calculation as cause
+   */
+  public ThreadLengths(
+      final Partition partition,
+      final ExecutorService executor)
+      throws InterruptedException, ExecutionException
+  {
+    threads = new ArrayList<LaceThread>( LaceThread.of( partition ) );
+    lengths = new double[threads.size()];
+    // collected here, finding the segments of a thread updates the model
+    final List<Iterable<CubicCurve2D>> curves = curves();
+    final List<Future<?>> futures = new ArrayList<Future<?>>();
+    for (int i = 0; i < lengths.length; i += CHUNK) {
+      final int from = i;
+      final int to = Math.min( i + CHUNK, lengths.length );
+      futures.add( executor.submit( new Callable<Object>()
+      {
+        // @Override
+        public Object call()
+        {
+          calculate( curves, from, to );
+          return null;
+        }
+      } ) );
+    }
+    for (final Future<?> future : futures) {
+      future.get();
+    }
+    total = sum();
+  }
+
+  private List<Iterable<CubicCurve2D>> curves()
+  {
+    final List<Iterable<CubicCurve2D>> curves =
+        new ArrayList<Iterable<CubicCurve2D>>( threads.size() );
+    for (final LaceThread thread : threads) {
+      curves.add( thread.getSegments().get( 0 ).getThread() );
+    }
+    return curves;
+  }
+
+  private void calculate(
+      final List<Iterable<CubicCurve2D>> curves,
+      final int from,
+      final int to)
+  {
+    for (int i = from; i < to; i++) {
+      double length = 0;
+      for (final CubicCurve2D curve : curves.get( i )) {
+        length += ArcLength.of( curve );
+      }
+      lengths[i] = length;
+    }
+  }
+
+  private double sum()
+  {
+    double sum = 0;
+    for (final double length : lengths) {
+      sum += length;
+    }
+    return sum;
+  }
+
+  /** @return the threads in the order of the partitions where they appear */
+  public List<LaceThread> getThreads()
+  {
+    return Collections.unmodifiableList( threads );
+  }
+
+  /**
+   * @param index
+   *          position in {@link #getThreads()}
+   * @return the length of thread wound on the bobbin
+   */
+  public double getLength(
+      final int index)
+  {
+    return lengths[index];
+  }
+
+  /** @return the length of all threads together */
+  public double getTotal()
+  {
+    return total;
+  }
+
+  /** @return a line per bobbin with the id, style and length of its thread */
+  @Override
+  public String toString()
+  {
+    final StringBuilder s = new StringBuilder();
+    for (int i = 0; i < lengths.length; i++) {
+      final LaceThread thread = threads.get( i );
+      s.append( String.format( "%d\t%s\t%.1f%n", thread.getId(),
+          thread.getStyle(), lengths[i] ) );
+    }
+    return s.append( String.format( "total\t\t%.1f%n", total ) ).toString();
+  }
+}
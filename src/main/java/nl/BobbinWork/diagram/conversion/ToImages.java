@@ -35,34 +35,64 @@ import javax.imageio.ImageIO;
 
 import nl.BobbinWork.diagram.gui.DiagramPainter;
 import nl.BobbinWork.diagram.model.Diagram;
-import nl.BobbinWork.diagram.model.Drawable;
+import nl.BobbinWork.diagram.model.DiagramSnapshot;
+import nl.BobbinWork.diagram.model.DisplayList;
 import nl.BobbinWork.diagram.model.MultiplePairsPartition;
-import nl.BobbinWork.diagram.model.MultipleThreadsPartition;
 import nl.BobbinWork.diagram.model.Partition;
-import nl.BobbinWork.diagram.model.Stitch;
 
 /**
- * Creates images from a {@link Diagram}.
+ * Creates images from a {@link Diagram}. The images show the diagram as it was
+ * when the instance was created, so they can be written on another thread
+ * while the diagram is edited.
  * 
  * @author Joke Pol
  *
  */
-public abstract class ToImages
+public class ToImages
 {
   private String base;
   private String extension;
   private int fileSequenceNumber;
+  private final DiagramSnapshot snapshot;
+  private final Partition animatedPartition;
+  private final Dimension size;
+
+  /**
+   * Takes the snapshot and looks up the animated partition, on the thread that
+   * edits the diagram.
+   */
+  private ToImages(final DisplayList displayList, final Diagram diagram)
+  {
+    snapshot = displayList.snapshot();
+    animatedPartition = getAnimatedPartition( diagram );
+    if (animatedPartition == null) {
+      size = null;
+    } else {
+      size = animatedPartition.getBounds().getBounds().getSize();
+    }
+  }
 
   /**
    * Gets a visible partition in the diagram of the instance. Supposed to be the
    * last main partition, or its last child, or its last grand... A visible
    * partition partition is recognized by having a bounds.
    * 
-   * @return null if no visible partition is found
+   * @return null if no visible partition was found when the instance was
+   *         created
    */
-  public abstract Partition getAnimatedPartition();
+  public Partition getAnimatedPartition()
+  {
+    return animatedPartition;
+  }
 
-  abstract Iterable<Drawable> getDrawables();
+  /**
+   * @return the size of the bounds of the animated partition when the instance
+   *         was created, null if no visible partition was found
+   */
+  public Dimension getSize()
+  {
+    return size;
+  }
 
   /**
    * Creates an instance that creates thread diagrams.
@@ -74,20 +104,7 @@ public abstract class ToImages
   public static ToImages threads(
       final Diagram diagram)
   {
-    return new ToImages()
-    {
-      @Override
-      Iterable<Drawable> getDrawables()
-      {
-        return diagram.getThreads();
-      }
-
-      @Override
-      public Partition getAnimatedPartition()
-      {
-        return getAnimatedPartition( diagram );
-      }
-    };
+    return new ToImages( diagram.getThreadList(), diagram );
   }
 
   /**
@@ -100,20 +117,7 @@ public abstract class ToImages
   public static ToImages pairs(
       final Diagram diagram)
   {
-    return new ToImages()
-    {
-      @Override
-      protected Iterable<Drawable> getDrawables()
-      {
-        return diagram.getPairs();
-      }
-
-      @Override
-      public Partition getAnimatedPartition()
-      {
-        return getAnimatedPartition( diagram );
-      }
-    };
+    return new ToImages( diagram.getPairList(), diagram );
   }
 
   static Partition getAnimatedPartition(
@@ -143,6 +147,13 @@ public abstract class ToImages
    */
   public BufferedImage newImage(
       final Dimension size)
+  {
+    return newImage( size, snapshot );
+  }
+
+  private static BufferedImage newImage(
+      final Dimension size,
+      final DiagramSnapshot snapshot)
   {
     if (size == null) throw new IllegalArgumentException( "" );
     final BufferedImage image =
@@ -152,7 +163,7 @@ public abstract class ToImages
     g2.clearRect( 0, 0, size.width, size.height );
     g2.setRenderingHint( KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR );
     g2.setRenderingHint( KEY_ANTIALIASING, VALUE_ANTIALIAS_ON );
-    DiagramPainter.paint( g2, getDrawables() );
+    DiagramPainter.paint( g2, snapshot );
     g2.dispose();
     return image;
   }
@@ -178,31 +189,11 @@ public abstract class ToImages
     fileSequenceNumber = 0;
     createFileNameParameters( file );
     ImageIO.write( newImage( size ), extension, createFile() );
-    Partition partition = getAnimatedPartition();
-    if (partition instanceof MultiplePairsPartition) {
-      MultiplePairsPartition mpp = (MultiplePairsPartition) partition;
-      mpp.setAllVisible( false );
-      animationStep( size, mpp );
-    }
-  }
-
-  private void animationStep(
-      final Dimension size,
-      MultipleThreadsPartition mtp) throws IOException
-  {
-    mtp.setVisible( true );
-    if (mtp instanceof Stitch) {
-      ImageIO.write( newImage( size ), extension, createFile() );
-    }
-    if (mtp instanceof MultiplePairsPartition) {
-      for (Partition p : ((MultiplePairsPartition) mtp).getPartitions()) {
-        // TODO allow MultipleThreadsPartition/Switch
-        // but currently all switches are made visible at once
-        // as the pairs are made visible by group
-        if (p instanceof MultiplePairsPartition) {
-          animationStep( size, ((MultiplePairsPartition) p) );
-        }
-      }
+    // TODO allow MultipleThreadsPartition/Switch
+    // but currently all switches are shown at once
+    // as the pairs are shown by group
+    for (final DiagramSnapshot frame : snapshot.frames( animatedPartition )) {
+      ImageIO.write( newImage( size, frame ), extension, createFile() );
     }
   }
 
@@ -79,7 +79,8 @@ public class BwDiagrams
       new SelectionListener( tree, canvas, pipette, pinsel );
 
       final EditForm editForm =
-          new EditForm( canvas, createChangeListener( tree, canvas ) );
+          new EditForm( exceptionHandler,
+              createChangeListener( tree, canvas ) );
       tree.addTreeSelectionListener( editForm );
 
       final JComponent left = createBorderPanel();
@@ -117,6 +118,8 @@ public class BwDiagrams
       public void rebuild(
           final Diagram newDiagram)
       {
+        // an edited diagram reports its changes to the canvas and the tree
+        if (newDiagram == canvas.getDiagram()) return;
         canvas.setPattern( newDiagram );
         tree.setDiagramModel( newDiagram );
       }
@@ -155,9 +158,8 @@ public class BwDiagrams
           final ActionEvent event)
       {
         if (canvas.getSelectedThread() == null) return;
-        canvas.getSelectedThread().getStyle()
-            .apply( threadStyleToolBar.getCoreStyle() );
-        canvas.repaint();
+        canvas.getDiagram().setThreadStyle( canvas.getSelectedThread(),
+            threadStyleToolBar.getCoreStyle() );
       }
     };
   }
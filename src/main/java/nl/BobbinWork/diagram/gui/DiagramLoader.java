@@ -18,19 +18,41 @@
 package nl.BobbinWork.diagram.gui;
 
 import static nl.BobbinWork.diagram.xml.DiagramBuilder.createDiagramModel;
+import static nl.BobbinWork.diagram.xml.DiagramCache.readAll;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.SwingWorker;
 
 import nl.BobbinWork.bwlib.gui.ExceptionHandler;
 import nl.BobbinWork.bwlib.io.InputStreamHandler;
 import nl.BobbinWork.diagram.model.Diagram;
+import nl.BobbinWork.diagram.model.MultiplePairsPartition;
+import nl.BobbinWork.diagram.model.Partition;
+import nl.BobbinWork.diagram.model.Switch;
+import nl.BobbinWork.diagram.model.ThreadSegment;
+import nl.BobbinWork.diagram.xml.DiagramCache;
 
+/**
+ * Shows a diagram read from a stream. A diagram found in the
+ * {@link DiagramCache} is shown at once. It can't be edited, so the editable
+ * diagram is built from the XML in the background. When it is ready it
+ * replaces the cached one, with the visibility and thread styles changed
+ * meanwhile and the same rows of the tree expanded and selected. A diagram
+ * that is not yet cached is built right away, it is stored in the cache in
+ * the background.
+ */
 public class DiagramLoader
     implements InputStreamHandler
 {
   private final DiagramTree tree;
   private final DiagramPanel canvas;
   private final ExceptionHandler exceptionHandler;
+  private final DiagramCache cache = new DiagramCache();
 
   public DiagramLoader(
       final DiagramTree tree,
@@ -46,13 +68,127 @@ public class DiagramLoader
       final InputStream inputStream)
   {
     try {
-      final Diagram model = createDiagramModel( inputStream );
-      canvas.setPattern( model );
-      tree.setDiagramModel( model );
-      tree.setSelectionRow( 0 );
-      tree.requestFocus();
+      final byte[] content = readAll( inputStream );
+      final Diagram cached = getCached( content );
+      if (cached == null) {
+        final Diagram model =
+            createDiagramModel( new ByteArrayInputStream( content ) );
+        show( model );
+        storeLater( content, model );
+      } else {
+        show( cached );
+        buildLater( content, cached );
+      }
     } catch (final Exception exception) {
       exceptionHandler.show( exception, "could not load diagram");
     }
   }
+
+  private Diagram getCached(
+      final byte[] content)
+  {
+    try {
+      return cache.get( content );
+    } catch (final IOException exception) {
+      return null;
+    }
+  }
+
+  private void show(
+      final Diagram model)
+  {
+    canvas.setPattern( model );
+    tree.setDiagramModel( model );
+    tree.setSelectionRow( 0 );
+    tree.requestFocus();
+  }
+
+  /**
+   * Writes the diagram to the cache on another thread. The diagram is
+   * converted right away, it may change while being written.
+   */
+  private void storeLater(
+      final byte[] content,
+      final Diagram model) throws IOException
+  {
+    final byte[] binaryDiagram = DiagramCache.toBytes( model );
+    new SwingWorker<Object, Object>()
+    {
+      @Override
+      protected Object doInBackground() throws IOException
+      {
+        // if it fails, the next time the diagram is built again
+        cache.put( content, binaryDiagram );
+        return null;
+      }
+    }.execute();
+  }
+
+  /**
+   * Builds the editable diagram on another thread, it replaces the cached one
+   * unless another diagram was loaded meanwhile.
+   */
+  private void buildLater(
+      final byte[] content,
+      final Diagram cached)
+  {
+    new SwingWorker<Diagram, Object>()
+    {
+      @Override
+      protected Diagram doInBackground() throws Exception
+      {
+        return createDiagramModel( new ByteArrayInputStream( content ) );
+      }
+
+      @Override
+      protected void done()
+      {
+        final Diagram model;
+        try {
+          model = get();
+        } catch (final InterruptedException exception) {
+          return;
+        } catch (final ExecutionException exception) {
+          exceptionHandler.show( exception.getCause(), "could not load diagram" );
+          return;
+        }
+        if (canvas.getDiagram() != cached) return;
+        copyState( cached, model );
+        canvas.setPattern( model );
+        tree.replaceDiagramModel( model );
+      }
+    }.execute();
+  }
+
+  /**
+   * Copies what can be changed on a cached diagram to a diagram built from
+   * the same content: the visibility of the partitions and the styles of the
+   * threads.
+   */
+  private static void copyState(
+      final Partition from,
+      final Partition to)
+  {
+    to.setVisible( from.isVisible() );
+    if (from instanceof Switch && to instanceof Switch) {
+      copyStyles( ((Switch) from).getFronts(), ((Switch) to).getFronts() );
+      copyStyles( ((Switch) from).getBacks(), ((Switch) to).getBacks() );
+    } else if (from instanceof MultiplePairsPartition
+        && to instanceof MultiplePairsPartition) {
+      final List<Partition> a = ((MultiplePairsPartition) from).getPartitions();
+      final List<Partition> b = ((MultiplePairsPartition) to).getPartitions();
+      for (int i = 0; i < a.size() && i < b.size(); i++) {
+        copyState( a.get( i ), b.get( i ) );
+      }
+    }
+  }
+
+  private static void copyStyles(
+      final ThreadSegment[] from,
+      final ThreadSegment[] to)
+  {
+    for (int i = 0; i < from.length && i < to.length; i++) {
+      to[i].getStyle().apply( from[i].getStyle() );
+    }
+  }
 }
@@ -20,6 +20,7 @@ package nl.BobbinWork.diagram.gui;
 import static java.awt.BasicStroke.*;
 
 import java.awt.*;
+import java.awt.geom.Rectangle2D;
 import java.util.*;
 import java.util.List;
 
@@ -53,10 +54,26 @@ public class DiagramPainter
   {
     // TODO why is this safeguard needed?
     if (shape==null)return (Graphics2D) graphics;
+    return fit( graphics, shape.getBounds2D(), panel );
+  }
+
+  /**
+   * Prepares a renderer to show the full drawing, see
+   * {@link #fit(Graphics, Shape, JPanel)}.
+   * 
+   * @param bounds
+   *          a box around the expected drawing, typically
+   *          {@link Partition#getBounds2D()}
+   */
+  public static Graphics2D fit(
+      final Graphics graphics,
+      final Rectangle2D bounds,
+      final JPanel panel)
+  {
+    if (bounds==null)return (Graphics2D) graphics;
     
     final int avaiableHeight;
     final int avaiableWidth;
-    final Rectangle bounds = shape.getBounds();
     final Insets insets;
     if (panel.getBorder() == null) {
       avaiableHeight = panel.getSize().height;
@@ -67,15 +84,15 @@ public class DiagramPainter
       avaiableHeight = panel.getSize().height - insets.bottom - insets.top;
       avaiableWidth = panel.getSize().width - insets.left - insets.right;
     }
-    final double scale = (((double) avaiableHeight) / ((double) bounds.height));
-    double dx = -bounds.x + insets.left;
-    double dy = -bounds.y + insets.top;
+    final double scale = avaiableHeight / bounds.getHeight();
+    double dx = -bounds.getX() + insets.left;
+    double dy = -bounds.getY() + insets.top;
 
     final Graphics2D g2 = (Graphics2D) graphics.create();
     if (scale >= 1) {
       // put in the center
-      dy += (avaiableHeight - bounds.height) / 2D;
-      dx += (avaiableWidth - bounds.width) / 2D;
+      dy += (avaiableHeight - bounds.getHeight()) / 2D;
+      dx += (avaiableWidth - bounds.getWidth()) / 2D;
     } else {
       g2.scale( scale, scale );
     }
@@ -103,7 +120,7 @@ public class DiagramPainter
       final int width = drawable.getStyle().getWidth() * 1;
       if (width > 0) {
         graphics2D.setPaint( drawable.getStyle().getColor() );
-        graphics2D.setStroke( new BasicStroke( width, CAP_BUTT, JOIN_MITER ) );
+        graphics2D.setStroke( getStroke( width ) );
         graphics2D.draw( drawable.getShape() );
       } else {
         pins.add( drawable );
@@ -115,4 +132,86 @@ public class DiagramPainter
     }
   }
 
+  /**
+   * Draws a compiled diagram or a section of it, in the same way as
+   * {@link #paint(Graphics2D, Iterable)}. Only the painter is created, the
+   * shapes are kept by the list.
+   * 
+   * @param graphics2D
+   *          a renderer for 2D shapes
+   * @param displayList
+   *          typically {@link Partition#getThreadList()} or
+   *          {@link Partition#getPairList()}
+   */
+  public static void paint(
+      final Graphics2D graphics2D,
+      final DisplayList displayList)
+  {
+    final ListPainter painter = new ListPainter( graphics2D );
+    displayList.paint( painter );
+    painter.pins = true;
+    displayList.paint( painter );
+  }
+
+  /**
+   * Paints a snapshot, which may be done on any thread.
+   *
+   * @param graphics2D
+   *          a renderer for 2D shapes
+   * @param snapshot
+   *          typically {@link DisplayList#snapshot()} or one of its frames
+   */
+  public static void paint(
+      final Graphics2D graphics2D,
+      final DiagramSnapshot snapshot)
+  {
+    final ListPainter painter = new ListPainter( graphics2D );
+    snapshot.paint( painter );
+    painter.pins = true;
+    snapshot.paint( painter );
+  }
+
+  /** Draws lines in the first pass, fills the pins in the second. */
+  private static class ListPainter
+      implements DisplayList.Painter
+  {
+    private final Graphics2D graphics2D;
+    private boolean pins = false;
+
+    ListPainter(final Graphics2D graphics2D)
+    {
+      this.graphics2D = graphics2D;
+    }
+
+    public void paint(
+        final Shape shape,
+        final Style style)
+    {
+      final int width = style.getWidth();
+      if (pins ? width > 0 : width <= 0) return;
+      graphics2D.setPaint( style.getColor() );
+      if (pins) {
+        graphics2D.fill( shape );
+      } else {
+        graphics2D.setStroke( getStroke( width ) );
+        graphics2D.draw( shape );
+      }
+    }
+  }
+
+  /** strokes shared by all drawables with the same width */
+  private static final BasicStroke[] STROKES = new BasicStroke[64];
+
+  private static BasicStroke getStroke(
+      final int width)
+  {
+    if (width >= STROKES.length) {
+      return new BasicStroke( width, CAP_BUTT, JOIN_MITER );
+    }
+    if (STROKES[width] == null) {
+      STROKES[width] = new BasicStroke( width, CAP_BUTT, JOIN_MITER );
+    }
+    return STROKES[width];
+  }
+
 }
@@ -28,13 +28,20 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.Shape;
+import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.geom.CubicCurve2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.swing.JPanel;
 
 import nl.BobbinWork.diagram.model.Diagram;
+import nl.BobbinWork.diagram.model.DiagramEvent;
+import nl.BobbinWork.diagram.model.DiagramListener;
 import nl.BobbinWork.diagram.model.MultipleThreadsPartition;
 import nl.BobbinWork.diagram.model.Partition;
 import nl.BobbinWork.diagram.model.ThreadSegment;
@@ -54,9 +61,25 @@ public class DiagramPanel
 
   private ThreadSegment highlightedThread;
 
+  /** the thread under the mouse */
+  private ThreadSegment hoveredThread;
+
+  /** the curves of the hovered thread, kept until the hover changes */
+  private List<CubicCurve2D> hoveredCurves;
+
+  /** the box around {@link #hoveredCurves}, in diagram coordinates */
+  private Rectangle2D hoveredBox;
+
+  /** strokes to highlight threads, by the width of their shadow */
+  private static final BasicStroke[] STROKES = new BasicStroke[64];
+
+  /** pixels between the mouse and a thread to pick it */
+  private static final double PICK_DISTANCE = 4;
+
   private Color //
       areaHighlight = new Color( 0xFF, 0xFF, 0x33, 0x77 ),//
-      threadHighlight = new Color( 0x00, 0xFF, 0x00, 0x77 );
+      threadHighlight = new Color( 0x00, 0xFF, 0x00, 0x77 ),//
+      threadHover = new Color( 0x00, 0x99, 0xFF, 0x55 );
 
   private boolean //
       showThreads = true, //
@@ -67,12 +90,60 @@ public class DiagramPanel
   /** the model for the diagram drawn on the panel */
   private Diagram diagram = null;
 
+  /**
+   * diagram units around a changed area to repaint, covers the width of
+   * threads and twist marks
+   */
+  private static final double CHANGE_MARGIN = 10;
+
+  /** repaints the areas of the diagram that changed */
+  private final DiagramListener changeListener = new DiagramListener()
+  {
+    // @Override
+    public void diagramChanged(
+        final Diagram changed,
+        final List<DiagramEvent> events)
+    {
+      if (changed != diagram) return;
+      for (final DiagramEvent event : events) {
+        if (event.getType() == DiagramEvent.Type.PARTITIONS) {
+          setHoveredThread( null );
+        } else if (event.getType() == DiagramEvent.Type.GEOMETRY) {
+          setHoveredThread( hoveredThread );
+        }
+        if (event.getArea() == null) {
+          repaint();
+          return;
+        }
+        repaint( getArea( event.getArea(), CHANGE_MARGIN ) );
+      }
+    }
+  };
+
   /** Creates a new instance of DiagramPanel. */
   public DiagramPanel()
   {
     setBackground( Color.white );
     getAccessibleContext().setAccessibleName(
         getString( "Diagram_Accessible_Name" ) );
+    final MouseAdapter hover = new MouseAdapter()
+    {
+      @Override
+      public void mouseMoved(
+          final MouseEvent event)
+      {
+        hover( getThreadAt( event ) );
+      }
+
+      @Override
+      public void mouseExited(
+          final MouseEvent event)
+      {
+        hover( null );
+      }
+    };
+    addMouseListener( hover );
+    addMouseMotionListener( hover );
   }
 
   public DiagramPanel(Diagram model)
@@ -96,7 +167,10 @@ public class DiagramPanel
   public void setPattern(
       Diagram diagram)
   {
+    if (this.diagram != null) this.diagram.removeDiagramListener( changeListener );
     this.diagram = diagram;
+    if (diagram != null) diagram.addDiagramListener( changeListener );
+    setHoveredThread( null );
     repaint();
   }
 
@@ -126,8 +200,96 @@ public class DiagramPanel
     g2.scale( scale, scale );
     g2.setRenderingHint( KEY_INTERPOLATION, VALUE_INTERPOLATION_BILINEAR );
     g2.setRenderingHint( KEY_ANTIALIASING, VALUE_ANTIALIAS_ON );
-    if (showThreads) DiagramPainter.paint( g2, diagram.getThreads() );
-    if (showPairs) DiagramPainter.paint( g2, diagram.getPairs() );
+    if (showThreads) DiagramPainter.paint( g2, diagram.getThreadList() );
+    if (showPairs) DiagramPainter.paint( g2, diagram.getPairList() );
+    if (hoveredThread != null) {
+      g2.setPaint( threadHover );
+      g2.setStroke( getStroke( hoveredThread ) );
+      for (CubicCurve2D curve : hoveredCurves) {
+        g2.draw( curve );
+      }
+    }
+  }
+
+  private static BasicStroke getStroke(
+      ThreadSegment threadSegment)
+  {
+    final int width = threadSegment.getStyle().getShadow().getWidth();
+    if (width < 0 || width >= STROKES.length) {
+      return createStroke( width );
+    }
+    if (STROKES[width] == null) {
+      STROKES[width] = createStroke( width );
+    }
+    return STROKES[width];
+  }
+
+  private static BasicStroke createStroke(
+      int shadowWidth)
+  {
+    return new BasicStroke( //
+        shadowWidth * 1.7f, //
+        BasicStroke.CAP_BUTT, //
+        BasicStroke.JOIN_MITER );
+  }
+
+  /** Collects the curves of the hovered thread and the box around them. */
+  private void setHoveredThread(
+      ThreadSegment threadSegment)
+  {
+    hoveredThread = threadSegment;
+    hoveredCurves = null;
+    hoveredBox = null;
+    if (threadSegment == null) return;
+    hoveredCurves = new ArrayList<CubicCurve2D>();
+    for (CubicCurve2D curve : threadSegment.getThread()) {
+      hoveredCurves.add( curve );
+      if (hoveredBox == null) hoveredBox = curve.getBounds2D();
+      else hoveredBox.add( curve.getBounds2D() );
+    }
+  }
+
+  /**
+   * Highlights the thread under the mouse. Repaints only the areas of the
+   * previous and the new thread, and only if the thread changes.
+   */
+  private void hover(
+      ThreadSegment threadSegment)
+  {
+    final ThreadSegment previous = hoveredThread;
+    if (previous == threadSegment) return;
+    if (previous != null && threadSegment != null
+        && previous.getLaceThread() == threadSegment.getLaceThread()) return;
+    if (previous != null) repaint( getHoveredArea() );
+    setHoveredThread( threadSegment );
+    if (threadSegment != null) repaint( getHoveredArea() );
+  }
+
+  /** @return the area of the panel covered by the highlight of the hovered thread */
+  private Rectangle getHoveredArea()
+  {
+    return getArea( hoveredBox, getStroke( hoveredThread ).getLineWidth() );
+  }
+
+  /**
+   * @param box
+   *          in diagram coordinates
+   * @param margin
+   *          in diagram units
+   * @return the area of the panel covered by the box and the margin around it
+   */
+  private Rectangle getArea(
+      Rectangle2D box,
+      double margin)
+  {
+    final double scale = getScreenScale();
+    final Rectangle area = new Rectangle2D.Double( box.getX() * scale, //
+        box.getY() * scale, //
+        box.getWidth() * scale, //
+        box.getHeight() * scale ).getBounds();
+    final int pixels = (int) Math.ceil( margin * scale );
+    area.grow( pixels, pixels );
+    return area;
   }
 
   /** Highlight a section of the diagram corresponding with a node of the tree. */
@@ -135,10 +297,11 @@ public class DiagramPanel
       Partition partition)
   {
 
+    final Partition previous = lastHigLight;
     lastHigLight = partition; // remember for higlightThreadAt()
 
     // clear previous highlights
-    paintImmediately( getBounds() );
+    paintImmediately( getArea( previous ) );
     if (partition != null) {
       Shape shape = partition.getBounds();
       if (shape != null) {
@@ -151,6 +314,25 @@ public class DiagramPanel
     }
   }
 
+  /**
+   * @return the area of the panel covered by a highlighted partition, the whole
+   *         panel if a thread is highlighted too
+   */
+  private Rectangle getArea(
+      Partition partition)
+  {
+    if (partition == null || highlightedThread != null) return getBounds();
+    final Rectangle2D box = partition.getBounds2D();
+    if (box == null) return getBounds();
+    final double scale = getScreenScale();
+    final Rectangle area = new Rectangle2D.Double( box.getX() * scale, //
+        box.getY() * scale, //
+        box.getWidth() * scale, //
+        box.getHeight() * scale ).getBounds();
+    area.grow( 1, 1 );
+    return area;
+  }
+
   void highlightSwitchAt(
       int x,
       int y)
@@ -173,10 +355,7 @@ public class DiagramPanel
     }
     if (threadSegment != null) {
       g2.setPaint( threadHighlight );
-      g2.setStroke( new BasicStroke( //
-          threadSegment.getStyle().getShadow().getWidth() * 1.7f, //
-          BasicStroke.CAP_BUTT, //
-          BasicStroke.JOIN_MITER ) );
+      g2.setStroke( getStroke( threadSegment ) );
       for (CubicCurve2D curve : threadSegment.getThread()) {
         g2.draw( curve );
       }
@@ -200,12 +379,9 @@ public class DiagramPanel
   {
 
     if (showThreads) {
-      x /= getScreenScale();
-      y /= getScreenScale();
-      ThreadSegment threadSegment = diagram.getThreadAt( x, y );
+      ThreadSegment threadSegment = getThreadAt( x, y );
       if (threadSegment != null) {
-        threadSegment.getStyle().apply( threadStyle );
-        repaint();
+        diagram.setThreadStyle( threadSegment, threadStyle );
       }
     }
   }
@@ -225,9 +401,7 @@ public class DiagramPanel
   {
 
     if (showThreads) {
-      x /= getScreenScale();
-      y /= getScreenScale();
-      ThreadSegment threadSegment = diagram.getThreadAt( x, y );
+      ThreadSegment threadSegment = getThreadAt( x, y );
       if (threadSegment != null) {
         return threadSegment.getStyle();
       }
@@ -254,6 +428,27 @@ public class DiagramPanel
     return screenScale;
   }
 
+  /**
+   * @return null or the thread nearest to the mouse, if within a few pixels
+   *         and threads are shown
+   */
+  public ThreadSegment getThreadAt(
+      MouseEvent event)
+  {
+    if (!showThreads) return null;
+    return getThreadAt( event.getX(), event.getY() );
+  }
+
+  private ThreadSegment getThreadAt(
+      int x,
+      int y)
+  {
+    if (getDiagram() == null) return null;
+    final double scale = getScreenScale();
+    return getDiagram().getThreadAt( x / scale, y / scale,
+        PICK_DISTANCE / scale );
+  }
+
   public MultipleThreadsPartition getPartitionAt(
       MouseEvent event)
   {
@@ -33,9 +33,43 @@ public class DiagramTree
 {
     private static final long serialVersionUID = 1L;
 private static final int INITIAL_CAPACITY = 5000;
-  private final Map<MultipleThreadsPartition, DefaultMutableTreeNode> map =
-      new HashMap<MultipleThreadsPartition, DefaultMutableTreeNode>(
-          INITIAL_CAPACITY );
+  private final Map<Partition, DefaultMutableTreeNode> map =
+      new HashMap<Partition, DefaultMutableTreeNode>( INITIAL_CAPACITY );
+
+  /**
+   * Updates the captions of shown or hidden partitions and the children of
+   * partitions with replaced content.
+   */
+  private final DiagramListener changeListener = new DiagramListener()
+  {
+    // @Override
+    public void diagramChanged(
+        final Diagram diagram,
+        final List<DiagramEvent> events)
+    {
+      final DefaultTreeModel treeModel = (DefaultTreeModel) getModel();
+      final DefaultMutableTreeNode root =
+          (DefaultMutableTreeNode) treeModel.getRoot();
+      if (diagram != root.getUserObject()) return;
+      for (final DiagramEvent event : events) {
+        final DefaultMutableTreeNode node =
+            event.getSource() == diagram ? root : map.get( event.getSource() );
+        if (node == null) continue;
+        switch (event.getType()) {
+        case VISIBILITY:
+          treeModel.nodeChanged( node );
+          // setAllVisible
+          if (node == root) repaint();
+          break;
+        case PARTITIONS:
+          updateChildren( treeModel, node );
+          break;
+        default:
+          // captions don't show styles or geometry
+        }
+      }
+    }
+  };
 
   private static class Renderer
       extends DefaultTreeCellRenderer
@@ -107,12 +141,86 @@ private static final int INITIAL_CAPACITY = 5000;
     final DefaultMutableTreeNode root =
         (DefaultMutableTreeNode) treeModel.getRoot();
     root.removeAllChildren();
+    if (root.getUserObject() != null) {
+      ((Diagram) root.getUserObject()).removeDiagramListener( changeListener );
+    }
     root.setUserObject( diagram );
+    if (diagram != null) diagram.addDiagramListener( changeListener );
     map.clear();
     buildTree( root, diagram );
     treeModel.nodeStructureChanged( root );
   }
 
+  /**
+   * Shows a diagram built from the same content as the shown one. The rows
+   * that were expanded and selected are expanded and selected again.
+   */
+  void replaceDiagramModel(
+      final Diagram diagram)
+  {
+    final int[] selected = getSelectionRows();
+    final List<Integer> expanded = new ArrayList<Integer>();
+    for (int row = 0; row < getRowCount(); row++) {
+      if (isExpanded( row )) expanded.add( row );
+    }
+    setDiagramModel( diagram );
+    // in ascending order the rows above are as they were
+    for (final int row : expanded) {
+      expandRow( row );
+    }
+    setSelectionRows( selected );
+  }
+
+  /**
+   * Synchronizes the children of a node with the partitions of its partition.
+   * Children that remain keep their branch, only new partitions get a new
+   * branch.
+   */
+  private void updateChildren(
+      final DefaultTreeModel treeModel,
+      final DefaultMutableTreeNode node)
+  {
+    final List<Partition> partitions =
+        ((MultiplePairsPartition) node.getUserObject()).getPartitions();
+    final Set<Partition> remaining =
+        Collections.newSetFromMap( new IdentityHashMap<Partition, Boolean>() );
+    remaining.addAll( partitions );
+    for (int i = node.getChildCount() - 1; i >= 0; i--) {
+      final DefaultMutableTreeNode child =
+          (DefaultMutableTreeNode) node.getChildAt( i );
+      if (!remaining.contains( child.getUserObject() )) {
+        treeModel.removeNodeFromParent( child );
+        forget( child );
+      }
+    }
+    for (int i = 0; i < partitions.size(); i++) {
+      final Partition p = partitions.get( i );
+      if (i < node.getChildCount()
+          && ((DefaultMutableTreeNode) node.getChildAt( i )).getUserObject() == p)
+        continue;
+      DefaultMutableTreeNode child = map.get( p );
+      if (child != null && child.getParent() == node) {
+        // moved
+        treeModel.removeNodeFromParent( child );
+      } else {
+        child = new DefaultMutableTreeNode( p );
+        buildTree( child, p );
+        map.put( p, child );
+      }
+      treeModel.insertNodeInto( child, node, i );
+    }
+  }
+
+  /** Removes the partitions of a branch from the map. */
+  private void forget(
+      final DefaultMutableTreeNode branch)
+  {
+    for (final Enumeration<?> e = branch.depthFirstEnumeration(); e
+        .hasMoreElements();) {
+      map.remove( ((DefaultMutableTreeNode) e.nextElement()).getUserObject() );
+    }
+  }
+
   private void buildTree(
       final DefaultMutableTreeNode treeNode,
       final Partition partition)
@@ -123,8 +231,7 @@ private static final int INITIAL_CAPACITY = 5000;
         final DefaultMutableTreeNode child = new DefaultMutableTreeNode( p );
         treeNode.add( child );
         buildTree( child, p );
-        if (p instanceof MultipleThreadsPartition)
-          map.put( (MultipleThreadsPartition) p, child );
+        map.put( p, child );
       }
     }
   }
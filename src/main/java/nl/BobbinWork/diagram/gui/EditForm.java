@@ -17,10 +17,10 @@
  */package nl.BobbinWork.diagram.gui;
 
 import static nl.BobbinWork.bwlib.gui.Localizer.applyStrings;
+import static nl.BobbinWork.diagram.gui.TreeSelectionUtil.getDiagram;
 import static nl.BobbinWork.diagram.gui.TreeSelectionUtil.getSelectedPartition;
 
 import java.awt.Color;
-import java.awt.Component;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.GridLayout;
@@ -34,9 +34,10 @@ import javax.swing.JToolBar;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
 
+import nl.BobbinWork.bwlib.gui.ExceptionHandler;
 import nl.BobbinWork.bwlib.gui.Localizer;
 import nl.BobbinWork.diagram.model.Diagram;
-import nl.BobbinWork.diagram.model.Drawable;
+import nl.BobbinWork.diagram.model.DisplayList;
 import nl.BobbinWork.diagram.model.Partition;
 import nl.BobbinWork.diagram.xml.DiagramRebuilder;
 
@@ -68,6 +69,9 @@ class EditForm
 
   private final DiagramReplacedListener diagramReplacedListener;
 
+  /** shows why a paste or delete failed */
+  private final ExceptionHandler exceptionHandler;
+
   /** shown in {@link #clipBoardThreads} */
   private Partition copied = null;
 
@@ -75,13 +79,11 @@ class EditForm
   private Partition selected = null;
 
   /**
-   * The source of the selection change events. To be repainted when a change
-   * was made to the {@link #selected} element. In practice the source will be
-   * the {@link DiagramTree} listened to.
+   * The diagram containing the {@link #selected} element. Reports changes to
+   * the tree and the panel showing the diagram.
    */
-  private JComponent source = null;
+  private Diagram diagram = null;
 
-  private final Component repaintOnDiagramChange;
   private final JButton showHide = createButton( SHOW_HIDE );
   private final JButton delete = createButton( DELETE );
   private final JButton paste = createButton( PASTE );
@@ -89,16 +91,16 @@ class EditForm
   private final JComponent clipBoardThreads = new ClipBoard("threads"){
     private static final long serialVersionUID = 1L;
 
-    Iterable<Drawable> getPaintIterator()
+    DisplayList getDisplayList()
     {
-      return copied.getPairs();
+      return copied.getPairList();
     }};
 
   private final JComponent clipBoardPairs = new ClipBoard("pairs"){
     private static final long serialVersionUID = 1L;
-    Iterable<Drawable> getPaintIterator()
+    DisplayList getDisplayList()
     {
-      return copied.getThreads();
+      return copied.getThreadList();
     }};
     
   private abstract class ClipBoard extends JPanel
@@ -118,31 +120,30 @@ class EditForm
       super.paintComponent( g );
       if (copied == null) return;
       if (copied.isVisible()) {
-        final Graphics2D g2 = DiagramPainter.fit( g, copied.getBounds(), this );
-        DiagramPainter.paint( g2, getPaintIterator() );
+        final Graphics2D g2 = DiagramPainter.fit( g, copied.getBounds2D(), this );
+        DiagramPainter.paint( g2, getDisplayList() );
       } else {
         paste.setEnabled( false );
         copied = null;
       }
     }
 
-    abstract Iterable<Drawable> getPaintIterator();
+    abstract DisplayList getDisplayList();
   };
 
   /**
    * Creates a tool bar instance for a {@link DiagramTree}.
    * 
-   * @param repaintOnDiagramChange
-   *          another component that should be repainted when the diagram model
-   *          changes. Typically the panel containing the diagram.
+   * @param exceptionHandler
+   *          shows why a paste or delete failed
    * @param diagramReplacedListener
    *          TODO
    */
   EditForm(
-      final Component repaintOnDiagramChange,
+      ExceptionHandler exceptionHandler,
       DiagramReplacedListener diagramReplacedListener)
   {
-    this.repaintOnDiagramChange = repaintOnDiagramChange;
+    this.exceptionHandler = exceptionHandler;
     this.diagramReplacedListener = diagramReplacedListener;
     setLayout( new GridLayout( 1, 0 ) );
     add( createButtonsPanel() );
@@ -169,7 +170,12 @@ class EditForm
         final String caption = copied.getCaption();
         clipBoardThreads.getAccessibleContext().setAccessibleDescription( caption );
         clipBoardPairs.getAccessibleContext().setAccessibleDescription( caption );
-        rebuild( DiagramRebuilder.replace( selected, copied ) );
+        try {
+          rebuild( DiagramRebuilder.replace( selected, copied ) );
+        } catch (final RuntimeException exception) {
+          exceptionHandler.show( exception, "could not paste" );
+          return;
+        }
         // next two don't seem to work
         clipBoardThreads.setToolTipText( caption+"\n\n"+Localizer.getString( "Clipboard_threads_hint" ) );
         clipBoardPairs.setToolTipText( caption+"\n\n"+Localizer.getString( "Clipboard_pairs_hint" ) );
@@ -190,7 +196,11 @@ class EditForm
       public void actionPerformed(
           final ActionEvent event)
       {
-        rebuild( DiagramRebuilder.delete( selected ) );
+        try {
+          rebuild( DiagramRebuilder.delete( selected ) );
+        } catch (final RuntimeException exception) {
+          exceptionHandler.show( exception, "could not delete" );
+        }
       }
     };
   }
@@ -220,14 +230,12 @@ class EditForm
       public void actionPerformed(
           final ActionEvent event)
       {
-        if (selected != null) selected.setVisible( !selected.isVisible() );
-        source.repaint();
+        if (selected != null) diagram.setVisible( selected, !selected.isVisible() );
         if (copied == selected) {
           clipBoardThreads.repaint();
           clipBoardPairs.repaint();
         }
         setShowHideCaption();
-        repaintOnDiagramChange.repaint();
       }
     };
   }
@@ -266,7 +274,7 @@ class EditForm
   public void valueChanged(
       final TreeSelectionEvent event)
   {
-    source = (JComponent) event.getSource();
+    diagram = getDiagram( event.getPath() );
     selected = getSelectedPartition( event.getPath() );
     if (selected == null) {
       copy.setEnabled( false );
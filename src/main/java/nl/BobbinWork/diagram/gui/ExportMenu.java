@@ -11,10 +11,13 @@ import java.awt.image.RenderedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import javax.imageio.ImageIO;
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
 import javax.xml.transform.TransformerException;
 import javax.xml.xpath.XPathExpressionException;
 
@@ -75,15 +78,40 @@ private final ExceptionHandler exceptionHandler;
         final String fileName =
             ((JMenuItem) event.getSource()).getActionCommand();
         final ToImages toImages = newToImages( canvas, fileName );
-        final Dimension size =
-            toImages.getAnimatedPartition().getBounds().getBounds().getSize();
-        try {
-          createImages( fileName, toImages, size );
-        } catch (final IllegalArgumentException e) {
-          exceptionHandler.show( e, "could not write image"  );
-        } catch (final IOException e) {
-          exceptionHandler.show( e, "could not write image" );
+        final Dimension size = toImages.getSize();
+        if (size == null) {
+          exceptionHandler.show( new IllegalStateException(
+              "nothing visible to export" ), "could not write image" );
+          return;
         }
+        // toImages has a snapshot, the diagram may be edited meanwhile
+        new SwingWorker<Object, Object>()
+        {
+          @Override
+          protected Object doInBackground() throws IOException
+          {
+            createImages( fileName, toImages, size );
+            return null;
+          }
+
+          @Override
+          protected void done()
+          {
+            try {
+              get();
+            } catch (final InterruptedException e) {
+              return;
+            } catch (final ExecutionException e) {
+              // any exception or error of doInBackground
+              exceptionHandler.show( e.getCause(), "could not write image" );
+              return;
+            }
+            JOptionPane.showMessageDialog( canvas, Localizer
+                .getString( "Export_done" )
+                + "\n" + new File( fileName ).getAbsoluteFile().getParent(),
+                fileName, JOptionPane.INFORMATION_MESSAGE );
+          }
+        }.execute();
       }
     };
   }
@@ -46,6 +46,8 @@ import nl.BobbinWork.bwlib.gui.LocaleMenuItem;
 import nl.BobbinWork.bwlib.io.ClipboardHelper;
 import nl.BobbinWork.bwlib.io.InputStreamHandler;
 import nl.BobbinWork.diagram.xml.Ground;
+import nl.BobbinWork.diagram.xml.GroundGenerator;
+import nl.BobbinWork.diagram.xml.GroundGenerator.Shape;
 
 public class MainMenuHelper
 {
@@ -134,17 +136,17 @@ public class MainMenuHelper
     final JMenu menu = new JMenu();
     applyStrings( menu, "MenuGround_Choose" ); //$NON-NLS-1$
     for (final Ground g : Ground.values()) {
-      menu.add( createGroundMenuItem( inputStreamHandler, g.diamond(),
-          g.name(), " <>" ) );
-      menu.add( createGroundMenuItem( inputStreamHandler, g.square(),
-          g.name(), " []" ) );
+      menu.add( createGroundMenuItem( inputStreamHandler,
+          g.createGenerator( Shape.diamond ), g.name(), " <>" ) );
+      menu.add( createGroundMenuItem( inputStreamHandler,
+          g.createGenerator( Shape.square ), g.name(), " []" ) );
     }
     return menu;
   }
 
   private JMenuItem createGroundMenuItem(
       final InputStreamHandler inputStreamHandler,
-      final String xmlString,
+      final GroundGenerator generator,
       final String name,
       final String variant)
   {
@@ -159,7 +161,10 @@ public class MainMenuHelper
       {
         InputStream is;
         try {
-          is = new ByteArrayInputStream( xmlString.getBytes( "UTF-8" ) );
+          // the XML is only generated when chosen
+          is =
+              new ByteArrayInputStream( generator.toXmlString().getBytes(
+                  "UTF-8" ) );
           inputStreamHandler.proces( is );
         } catch (final UnsupportedEncodingException e) {
           exceptionHandler.show( e, "could not load diagram" );
@@ -70,9 +70,9 @@ public class SelectionListener
     // triggers valueChanged, what replaces all previous highlights
     tree.select( partition );
 
-    if (partition instanceof Switch && canvas.isThreadsVisible()) {
-      final Switch s = (Switch) partition;
-      canvas.highlight( s.getFronts()[0] );
+    final ThreadSegment thread = canvas.getThreadAt( event );
+    if (thread != null) {
+      canvas.highlight( thread );
       for (JComponent x:enableWhenThreadSelected){
         x.setEnabled( true );
       }
@@ -2,6 +2,7 @@ package nl.BobbinWork.diagram.gui;
 
 import javax.swing.tree.*;
 
+import nl.BobbinWork.diagram.model.Diagram;
 import nl.BobbinWork.diagram.model.Partition;
 
 public class TreeSelectionUtil
@@ -20,6 +21,13 @@ public class TreeSelectionUtil
     return (Partition) getSelectedNode( path ).getUserObject();
   }
 
+  static Diagram getDiagram(
+      final TreePath path)
+  {
+    return (Diagram) ((DefaultMutableTreeNode) path.getPathComponent( 0 ))
+        .getUserObject();
+  }
+
   private static DefaultMutableTreeNode getSubRootNode(
       final TreePath path)
   {
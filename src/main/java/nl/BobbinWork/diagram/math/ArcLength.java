@@ -0,0 +1,166 @@
+/* ArcLength.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.math;
+
+import java.awt.geom.CubicCurve2D;
+
+/**
+ * Calculates the length of a cubic Bezier curve. The speed along the curve is
+ * integrated with five point Gauss-Legendre quadrature. An interval of the
+ * curve parameter is halved until the halves add up to the estimate of the
+ * whole interval.
+ *
+ * @author J. Pol
+ */
+public class ArcLength
+{
+  /** default absolute error, far below a pixel of the diagrams */
+  public static final double TOLERANCE = 1e-6;
+
+  private static final int MAXDEPTH = 24;
+
+  /** iterations of {@link #parameterAt(CubicCurve2D, double)} */
+  private static final int MAXSTEPS = 50;
+
+  private static final double[] ABSCISSAE = {
+      -0.9061798459386640, -0.5384693101056831, 0.0, 0.5384693101056831,
+      0.9061798459386640 };
+
+  private static final double[] WEIGHTS = {
+      0.2369268850561891, 0.4786286704993665, 0.5688888888888889,
+      0.4786286704993665, 0.2369268850561891 };
+
+  protected ArcLength()
+  {
+    // only static methods
+  }
+
+  /**
+   * @param c
+   *          cubic curve
+   * @return the length of the curve within {@link #TOLERANCE}
+   */
+  public static double of(
+      final CubicCurve2D c)
+  {
+    return of( c, TOLERANCE );
+  }
+
+  /**
+   * @param c
+   *          cubic curve
+   * @param tolerance
+   *          absolute error allowed for the length
+   * @return the length of the curve
+   */
+  public static double of(
+      final CubicCurve2D c,
+      final double tolerance)
+  {
+    final double[] d = derivative( c );
+    return adapt( d, 0, 1, quadrature( d, 0, 1 ), tolerance, 0 );
+  }
+
+  /**
+   * Finds the curve parameter that divides the curve by length. Newton steps
+   * on the length from the start, bisection when a step leaves the bracket.
+   * 
+   * @param c
+   *          cubic curve
+   * @param fraction
+   *          part of the length of the curve, between zero and one
+   * @return the parameter t of the curve where the length from the start is
+   *         the fraction of the whole length, within {@link #TOLERANCE}
+   */
+  public static double parameterAt(
+      final CubicCurve2D c,
+      final double fraction)
+  {
+    final double[] d = derivative( c );
+    final double target = fraction * adapt( d, 0, 1, quadrature( d, 0, 1 ), TOLERANCE, 0 );
+    if (target == 0) return fraction;
+    double low = 0, high = 1, t = fraction;
+    for (int step = 0; step < MAXSTEPS; step++) {
+      final double error =
+          adapt( d, 0, t, quadrature( d, 0, t ), TOLERANCE, 0 ) - target;
+      if (Math.abs( error ) <= TOLERANCE) break;
+      if (error > 0) {
+        high = t;
+      } else {
+        low = t;
+      }
+      final double next = t - error / speed( d, t );
+      t = next > low && next < high ? next : (low + high) / 2;
+    }
+    return t;
+  }
+
+  /** @return 3 times the quadratic curve of the control point differences */
+  private static double[] derivative(
+      final CubicCurve2D c)
+  {
+    return new double[] {
+        3 * (c.getCtrlX1() - c.getX1()), 3 * (c.getCtrlY1() - c.getY1()),
+        3 * (c.getCtrlX2() - c.getCtrlX1()), 3 * (c.getCtrlY2() - c.getCtrlY1()),
+        3 * (c.getX2() - c.getCtrlX2()), 3 * (c.getY2() - c.getCtrlY2()) };
+  }
+
+  private static double adapt(
+      final double[] d,
+      final double a,
+      final double b,
+      final double whole,
+      final double tolerance,
+      final int depth)
+  {
+    final double m = (a + b) / 2;
+    final double left = quadrature( d, a, m );
+    final double right = quadrature( d, m, b );
+    if (depth >= MAXDEPTH || Math.abs( left + right - whole ) <= tolerance) {
+      return left + right;
+    }
+    return adapt( d, a, m, left, tolerance / 2, depth + 1 )
+        + adapt( d, m, b, right, tolerance / 2, depth + 1 );
+  }
+
+  /** @return the integral of the speed from a to b */
+  private static double quadrature(
+      final double[] d,
+      final double a,
+      final double b)
+  {
+    final double half = (b - a) / 2;
+    final double mid = (a + b) / 2;
+    double sum = 0;
+    for (int i = 0; i < WEIGHTS.length; i++) {
+      sum += WEIGHTS[i] * speed( d, mid + half * ABSCISSAE[i] );
+    }
+    return sum * half;
+  }
+
+  /** @return the length of the derivative at t */
+  private static double speed(
+      final double[] d,
+      final double t)
+  {
+    final double u = 1 - t;
+    final double x = u * u * d[0] + 2 * u * t * d[2] + t * t * d[4];
+    final double y = u * u * d[1] + 2 * u * t * d[3] + t * t * d[5];
+    return Math.sqrt( x * x + y * y );
+  }
+}
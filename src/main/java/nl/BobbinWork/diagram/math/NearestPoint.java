@@ -8,10 +8,15 @@ package nl.BobbinWork.diagram.math;
  * found at
  *     http://wired.freehep.org/xref/hep/wired/heprep/util/NearestPoint.html
  * had to change most occurrences of "setLocation" into  "new Point2D.Double"
- * but left pn arguments untouched. 
+ * but left pn arguments untouched.
+ *
+ * Later rewritten to work on scratch buffers of doubles, one set per thread,
+ * so a query no longer allocates. The arithmetic is kept in the same order,
+ * the results are identical to the original.
  */
 
 import java.awt.geom.*;
+import java.util.Arrays;
 
 /***
  * Calculates the nearest point on a straight line or on a cubic bezier curve.
@@ -21,17 +26,76 @@ import java.awt.geom.*;
  * by Philip J. Schneider from "Graphics Gems", Academic Press, 1990.
  *
  * @author Mark Donszelmann
- * 
- * original version from xref -- Id: NearestPoint.java 258 2004-06-08 06:27:49Z duns 
+ *
+ * original version from xref -- Id: NearestPoint.java 258 2004-06-08 06:27:49Z duns
  * official version http://java.freehep.org/svn/showfile.svn?path=%2fwired%2ftrunk%2fwired-plugin%2fsrc%2fmain%2fjava%2fhep%2fwired%2fheprep%2futil%2fNearestPoint.java&revision=HEAD&name=freehep
- */ 
+ */
 public class NearestPoint {
-    
+
     private static final int MAXDEPTH = 64;                                 // Maximum depth for recursion
     private static final double EPSILON  = 1.0 * Math.pow(2, -MAXDEPTH-1);  // Flatness control value
     private static final int DEGREE = 3;                                    // Cubic Bezier curve
     private static final int W_DEGREE = 5;                                  // Degree of eqn to find roots of
 
+    /** doubles per control polygon of the 5th-degree equation: x and y of 6 points */
+    private static final int W_SIZE = 2 * (W_DEGREE + 1);
+
+    /** doubles per cubic curve, in the order of {@link CubicCurve2D#setCurve(double[], int)} */
+    public static final int STRIDE = 8;
+
+    /** The buffers for one query, reused by the next query on the same thread. */
+    private static final class Scratch {
+        /** the cubic curve */
+        final double[] v = new double[STRIDE];
+        /** a left and a right control polygon for each level of recursion */
+        double[] polygons = new double[2 * (MAXDEPTH + 2) * W_SIZE];
+        /** de Casteljau triangle, one row at a time */
+        final double[] row = new double[W_SIZE];
+        /** possible roots */
+        final double[] t = new double[W_DEGREE + 1];
+        int nSolutions;
+        /** result of {@link NearestPoint#bezier} */
+        double x, y;
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    /***
+     * Receives the outcome of {@link NearestPoint#onCurves}. An instance can be
+     * reused for any number of queries.
+     */
+    public static class Nearest {
+        private int index = -1;
+        private double t = 0.0;
+        private double distanceSq = Double.POSITIVE_INFINITY;
+        private final Point2D.Double point = new Point2D.Double();
+
+        /** @return position of the nearest curve, -1 if none was found */
+        public int getIndex() {
+            return index;
+        }
+
+        /** @return curve parameter of the nearest point */
+        public double getT() {
+            return t;
+        }
+
+        /** @return distance squared between the query point and the nearest point */
+        public double getDistanceSq() {
+            return distanceSq;
+        }
+
+        /** @return the nearest point, changed by the next query */
+        public Point2D getPoint() {
+            return point;
+        }
+    }
+
     protected NearestPoint() {
         // only static methods so hide constructor
 		// but keep it available for 100% test coverage
@@ -44,74 +108,204 @@ public class NearestPoint {
      * @param pa arbitrary point
      * @param pn nearest point found (return param)
      * @return distance squared between pa and nearest point (pn)
-     */    
+     */
     public static double onCurve(CubicCurve2D c, Point2D pa, Point2D pn) {
-                                    
-        double[] tCandidate = new double[W_DEGREE];     // Possible roots
-        Point2D[] v = {
-            c.getP1(), c.getCtrlP1(), c.getCtrlP2(), c.getP2()
-        };
+
+        Scratch s = SCRATCH.get();
+        load(c, s.v, 0);
+        double t = nearest(s.v, 0, pa.getX(), pa.getY(), s);
+
+        //  Even if the caller is just interested in the distance
+        //  Compute the point on the curve at parameter value t
+        if (pn == null ) {
+        	pn = new Point2D.Double();
+        }
+
+        bezier(s.v, 0, DEGREE, t, s, null, 0, null, 0);
+        pn.setLocation(s.x, s.y);
+        return pn.distanceSq(pa);
+    }
+
+    /***
+     * Finds the curve with the point nearest to pa. Curves whose control
+     * points lie farther away than the nearest point found so far are skipped,
+     * by the convex hull property no point of such a curve can be nearer.
+     *
+     * @param curves candidates
+     * @param pa arbitrary point
+     * @param result receives the index of the nearest curve, its parameter and point
+     * @return distance squared between pa and the nearest point,
+     *         infinite if there are no curves
+     */
+    public static double onCurves(CubicCurve2D[] curves, Point2D pa, Nearest result) {
+        Scratch s = SCRATCH.get();
+        start(result);
+        for (int i = 0; i < curves.length; i++) {
+            load(curves[i], s.v, 0);
+            consider(s.v, 0, i, pa, result, s);
+        }
+        return result.distanceSq;
+    }
+
+    /***
+     * Finds the curve with the point nearest to pa among curves packed into
+     * an array, {@link #STRIDE} doubles per curve.
+     *
+     * @param coords control points of the curves in the order of
+     *        {@link CubicCurve2D#setCurve(double[], int)}
+     * @param count number of curves
+     * @param pa arbitrary point
+     * @param result receives the index of the nearest curve, its parameter and point
+     * @return distance squared between pa and the nearest point,
+     *         infinite if there are no curves
+     */
+    public static double onCurves(double[] coords, int count, Point2D pa, Nearest result) {
+        Scratch s = SCRATCH.get();
+        start(result);
+        for (int i = 0; i < count; i++) {
+            consider(coords, i * STRIDE, i, pa, result, s);
+        }
+        return result.distanceSq;
+    }
+
+    /***
+     * Finds the curve with the point nearest to pa among some of the curves
+     * packed into an array, for example candidates found with a spatial index.
+     *
+     * @param coords control points of the curves in the order of
+     *        {@link CubicCurve2D#setCurve(double[], int)}
+     * @param indices positions of the candidates in coords, counted in curves
+     * @param count number of candidates
+     * @param pa arbitrary point
+     * @param result receives the position of the nearest curve in coords, its parameter and point
+     * @return distance squared between pa and the nearest point,
+     *         infinite if there are no candidates
+     */
+    public static double onCurves(double[] coords, int[] indices, int count, Point2D pa, Nearest result) {
+        Scratch s = SCRATCH.get();
+        start(result);
+        for (int i = 0; i < count; i++) {
+            consider(coords, indices[i] * STRIDE, indices[i], pa, result, s);
+        }
+        return result.distanceSq;
+    }
+
+    private static void start(Nearest result) {
+        result.index = -1;
+        result.t = 0.0;
+        result.distanceSq = Double.POSITIVE_INFINITY;
+    }
+
+    private static void load(CubicCurve2D c, double[] v, int offset) {
+        v[offset] = c.getX1();
+        v[offset + 1] = c.getY1();
+        v[offset + 2] = c.getCtrlX1();
+        v[offset + 3] = c.getCtrlY1();
+        v[offset + 4] = c.getCtrlX2();
+        v[offset + 5] = c.getCtrlY2();
+        v[offset + 6] = c.getX2();
+        v[offset + 7] = c.getY2();
+    }
+
+    private static void consider(double[] v, int offset, int index, Point2D pa, Nearest result, Scratch s) {
+        double x = pa.getX();
+        double y = pa.getY();
+        if (boxDistanceSq(v, offset, x, y) >= result.distanceSq) return;
+        double t = nearest(v, offset, x, y, s);
+        bezier(v, offset, DEGREE, t, s, null, 0, null, 0);
+        double dx = s.x - x;
+        double dy = s.y - y;
+        double distance = dx * dx + dy * dy;
+        if (distance < result.distanceSq) {
+            result.index = index;
+            result.t = t;
+            result.distanceSq = distance;
+            result.point.setLocation(s.x, s.y);
+        }
+    }
+
+    /** @return distance squared to the bounding box of the control points */
+    private static double boxDistanceSq(double[] v, int offset, double x, double y) {
+        double minX = v[offset], maxX = minX, minY = v[offset + 1], maxY = minY;
+        for (int i = offset + 2; i < offset + STRIDE; i += 2) {
+            minX = Math.min(minX, v[i]);
+            maxX = Math.max(maxX, v[i]);
+            minY = Math.min(minY, v[i + 1]);
+            maxY = Math.max(maxY, v[i + 1]);
+        }
+        double dx = x < minX ? minX - x : (x > maxX ? x - maxX : 0);
+        double dy = y < minY ? minY - y : (y > maxY ? y - maxY : 0);
+        return dx * dx + dy * dy;
+    }
+
+    /***
+     * @return parameter value of the point on curve v nearest to (x, y)
+     */
+    private static double nearest(double[] v, int offset, double x, double y, Scratch s) {
 
         // Convert problem to 5th-degree Bezier form
-        Point2D[] w = convertToBezierForm(v, pa);
+        double[] w = s.polygons;
+        convertToBezierForm(v, offset, x, y, w);
 
         // Find all possible roots of 5th-degree equation
-        int nSolutions = findRoots(w, W_DEGREE, tCandidate, 0);
+        s.nSolutions = 0;
+        findRoots(w, 0, W_DEGREE, 0, s);
 
         // Compare distances of P5 to all candidates, and to t=0, and t=1
         // Check distance to beginning of curve, where t = 0
-        double minDistance = pa.distanceSq(c.getP1());
+        double minDistance = distanceSq(x, y, v[offset], v[offset + 1]);
         double t = 0.0;
 
         // Find distances for candidate points
-        for (int i = 0; i < nSolutions; i++) {
-            Point2D p = bezier(v, DEGREE, tCandidate[i], null, null);
-            double distance = pa.distanceSq(p);
+        for (int i = 0; i < s.nSolutions; i++) {
+            bezier(v, offset, DEGREE, s.t[i], s, null, 0, null, 0);
+            double distance = distanceSq(x, y, s.x, s.y);
             if (distance < minDistance) {
                 minDistance = distance;
-                t = tCandidate[i];
+                t = s.t[i];
             }
         }
 
         // Finally, look at distance to end point, where t = 1.0
-        double distance = pa.distanceSq(c.getP2());
+        double distance = distanceSq(x, y, v[offset + 6], v[offset + 7]);
         if (distance < minDistance) {
             //minDistance = distance;
             t = 1.0;
         }
+        return t;
+    }
 
-        //  Even if the caller is just interested in the distance
-        //  Compute the point on the curve at parameter value t
-        if (pn == null ) {
-        	pn = new Point2D.Double();
-        }
-
-        pn.setLocation(bezier(v, DEGREE, t, null, null));
-        return pn.distanceSq(pa);
+    /** same arithmetic as {@link Point2D#distanceSq(Point2D)} */
+    private static double distanceSq(double x1, double y1, double x2, double y2) {
+        double px = x2 - x1;
+        double py = y2 - y1;
+        return (px * px + py * py);
     }
 
     /***
      *  FindRoots :
      *  Given a 5th-degree equation in Bernstein-Bezier form, find
-     *  all of the roots in the interval [0, 1].  Return the number
-     *  of roots found.
+     *  all of the roots in the interval [0, 1].  Adds the roots
+     *  to s.t and s.nSolutions.
+     *  The polygon at offset w of buffer polygons is at the slot for depth,
+     *  the subdivisions go into the two slots for depth+1.
      */
-    private static int findRoots(Point2D[] w, int degree, double[] t, int depth) {  
+    private static void findRoots(double[] polygons, int w, int degree, int depth, Scratch s) {
 
-        switch (crossingCount(w, degree)) {
+        switch (crossingCount(polygons, w, degree)) {
             case 0 : { // No solutions here
-                return 0;   
+                return;
             }
             case 1 : { // Unique solution
                 // Stop recursion when the tree is deep enough
                 // if deep enough, return 1 solution at midpoint
             	if (depth >= MAXDEPTH) {
-                    t[0] = (w[0].getX() + w[W_DEGREE].getX()) / 2.0;
-                    return 1;
+                    addRoot((polygons[w] + polygons[w + 2 * W_DEGREE]) / 2.0, s);
+                    return;
                 }
-                if (controlPolygonFlatEnough(w, degree)) {
-                    t[0] = computeXIntercept(w, degree);
-                    return 1;
+                if (controlPolygonFlatEnough(polygons, w, degree)) {
+                    addRoot(computeXIntercept(polygons, w, degree), s);
+                    return;
                 }
                 break;
             }
@@ -119,28 +313,26 @@ public class NearestPoint {
 
         // Otherwise, solve recursively after
         // subdividing control polygon
-        Point2D[] left = new Point2D.Double[W_DEGREE+1];    // New left and right
-        Point2D[] right = new Point2D.Double[W_DEGREE+1];   // control polygons
-        double[] leftT = new double[W_DEGREE+1];            // Solutions from kids
-        double[] rightT = new double[W_DEGREE+1];
-        
-        bezier(w, degree, 0.5, left, right);
-        int leftCount  = findRoots(left,  degree, leftT, depth+1);
-        int rightCount = findRoots(right, degree, rightT, depth+1);
-    
-        // Gather solutions together
-        for (int i = 0; i < leftCount; i++) {
-            t[i] = leftT[i];
+        int left = 2 * (depth + 1) * W_SIZE;
+        int right = left + W_SIZE;
+        if (right + W_SIZE > s.polygons.length) {
+            // more than MAXDEPTH with multiple crossings, the callers keep the old buffer
+            s.polygons = Arrays.copyOf(s.polygons, 2 * s.polygons.length);
         }
-        for (int i = 0; i < rightCount; i++) {
-            t[i+leftCount] = rightT[i];
+        double[] kids = s.polygons;
+        bezier(polygons, w, degree, 0.5, s, kids, left, kids, right);
+        findRoots(kids, left,  degree, depth+1, s);
+        findRoots(kids, right, degree, depth+1, s);
+    }
+
+    private static void addRoot(double t, Scratch s) {
+        // the crossing count limits the number of roots
+        if (s.nSolutions < s.t.length) {
+            s.t[s.nSolutions++] = t;
         }
-    
-        // Send back total number of solutions  */
-        return leftCount+rightCount;
     }
 
-    private static final double[][] cubicZ = {  
+    private static final double[][] cubicZ = {
         /* Precomputed "z" for cubics   */
         {1.0, 0.6, 0.3, 0.1},
         {0.4, 0.6, 0.6, 0.4},
@@ -152,41 +344,21 @@ public class NearestPoint {
      *      Given a point and a Bezier curve, generate a 5th-degree
      *      Bezier-format equation whose solution finds the point on the
      *      curve nearest the user-defined point.
+     *      The control points go to the start of w.
      */
-    private static Point2D[] convertToBezierForm(Point2D[] v, Point2D pa) {
-
-        Point2D[]   c = new Point2D.Double[DEGREE+1];   // v(i) - pa
-        Point2D[]   d = new Point2D.Double[DEGREE];     // v(i+1) - v(i)
-        double[][]  cdTable = new double[3][4];         // Dot product of c, d
-        Point2D[]   w = new Point2D.Double[W_DEGREE+1]; // Ctl pts of 5th-degree curve
+    private static void convertToBezierForm(double[] v, int offset, double pax, double pay, double[] w) {
 
-        // Determine the c's -- these are vectors created by subtracting
-        // point pa from each of the control points
-        for (int i = 0; i <= DEGREE; i++) {
-            c[i] = new Point2D.Double(v[i].getX() - pa.getX(), v[i].getY() - pa.getY());
-        }
-
-        // Determine the d's -- these are vectors created by subtracting
-        // each control point from the next
+        // c(i) = v(i) - pa, d(i) = v(i+1) - v(i), computed while creating the
+        // c,d table -- this is a table of dot products of the c's and d's
         double s = 3;
-        for (int i = 0; i <= DEGREE - 1; i++) {       
-            d[i] = new Point2D.Double(s * (v[i+1].getX() - v[i].getX()), s * (v[i+1].getY() - v[i].getY()));
-        }
-        
-        // Create the c,d table -- this is a table of dot products of the
-        // c's and d's                          */
-        for (int row = 0; row <= DEGREE - 1; row++) {
-            for (int column = 0; column <= DEGREE; column++) {
-                cdTable[row][column] = (d[row].getX() * c[column].getX()) + (d[row].getY() * c[column].getY());
-            }
-        }
 
-        // Now, apply the z's to the dot products, on the skew diagonal
-        // Also, set up the x-values, making these "points"
+        // Set up the x-values, making these "points"
         for (int i = 0; i <= W_DEGREE; i++) {
-            w[i] = new Point2D.Double((double)(i) / W_DEGREE, 0.0);
+            w[2 * i] = (double)(i) / W_DEGREE;
+            w[2 * i + 1] = 0.0;
         }
 
+        // Now, apply the z's to the dot products, on the skew diagonal
         int n = DEGREE;
         int m = DEGREE-1;
         for (int k = 0; k <= n + m; k++) {
@@ -194,165 +366,174 @@ public class NearestPoint {
             int ub = Math.min(k, n);
             for (int i = lb; i <= ub; i++) {
                 int j = k - i;
-                w[i+j] = new Point2D.Double(w[i+j].getX(), w[i+j].getY() + cdTable[j][i] * cubicZ[j][i]);
+                double cx = v[offset + 2 * i] - pax;
+                double cy = v[offset + 2 * i + 1] - pay;
+                double dx = s * (v[offset + 2 * j + 2] - v[offset + 2 * j]);
+                double dy = s * (v[offset + 2 * j + 3] - v[offset + 2 * j + 1]);
+                double cd = (dx * cx) + (dy * cy);
+                w[2 * (i + j) + 1] = w[2 * (i + j) + 1] + cd * cubicZ[j][i];
             }
         }
-
-        return w;
     }
 
     /***
      * CrossingCount :
-     *  Count the number of times a Bezier control polygon 
+     *  Count the number of times a Bezier control polygon
      *  crosses the 0-axis. This number is >= the number of roots.
      *
      */
-    private static int crossingCount(Point2D[] v, int degree) {
+    private static int crossingCount(double[] v, int offset, int degree) {
         int nCrossings = 0;
-        int sign = v[0].getY() < 0 ? -1 : 1;
+        int sign = v[offset + 1] < 0 ? -1 : 1;
         int oldSign = sign;
         for (int i = 1; i <= degree; i++) {
-            sign = v[i].getY() < 0 ? -1 : 1;
+            sign = v[offset + 2 * i + 1] < 0 ? -1 : 1;
             if (sign != oldSign) nCrossings++;
             oldSign = sign;
         }
         return nCrossings;
     }
-    
-    
-    
+
+
+
     /*
      *  ControlPolygonFlatEnough :
      *  Check if the control polygon of a Bezier curve is flat enough
      *  for recursive subdivision to bottom out.
      *
      */
-    private static boolean controlPolygonFlatEnough(Point2D[] v, int degree) {
+    private static boolean controlPolygonFlatEnough(double[] v, int offset, int degree) {
 
         // Find the  perpendicular distance
         // from each interior control point to
         // line connecting v[0] and v[degree]
-    
+
         // Derive the implicit equation for line connecting first
         // and last control points
-        double a = v[0].getY() - v[degree].getY();
-        double b = v[degree].getX() - v[0].getX();
-        double c = v[0].getX() * v[degree].getY() - v[degree].getX() * v[0].getY();
-    
+        double x0 = v[offset], y0 = v[offset + 1];
+        double xn = v[offset + 2 * degree], yn = v[offset + 2 * degree + 1];
+        double a = y0 - yn;
+        double b = xn - x0;
+        double c = x0 * yn - xn * y0;
+
         double abSquared = (a * a) + (b * b);
-        double[] distance = new double[degree+1];      // Distances from pts to line
-    
-        for (int i = 1; i < degree; i++) {
-        // Compute distance from each of the points to that line
-            distance[i] = a * v[i].getX() + b * v[i].getY() + c;
-            if (distance[i] > 0.0) {
-                distance[i] = (distance[i] * distance[i]) / abSquared;
-            }
-            if (distance[i] < 0.0) {
-                distance[i] = -((distance[i] * distance[i]) / abSquared);
-            }
-        }
-    
-    
+
         // Find the largest distance
         double maxDistanceAbove = 0.0;
         double maxDistanceBelow = 0.0;
         for (int i = 1; i < degree; i++) {
-            if (distance[i] < 0.0) {
-                maxDistanceBelow = Math.min(maxDistanceBelow, distance[i]);
+            // Compute distance from each of the points to that line
+            double distance = a * v[offset + 2 * i] + b * v[offset + 2 * i + 1] + c;
+            if (distance > 0.0) {
+                distance = (distance * distance) / abSquared;
+            }
+            else if (distance < 0.0) {
+                distance = -((distance * distance) / abSquared);
+            }
+            if (distance < 0.0) {
+                maxDistanceBelow = Math.min(maxDistanceBelow, distance);
             }
-            if (distance[i] > 0.0) {
-                maxDistanceAbove = Math.max(maxDistanceAbove, distance[i]);
+            if (distance > 0.0) {
+                maxDistanceAbove = Math.max(maxDistanceAbove, distance);
             }
         }
-    
+
         // Implicit equation for zero line
         double a1 = 0.0;
         double b1 = 1.0;
         double c1 = 0.0;
-    
+
         // Implicit equation for "above" line
         double a2 = a;
         double b2 = b;
         double c2 = c + maxDistanceAbove;
-    
+
         double det = a1 * b2 - a2 * b1;
         double dInv = 1.0/det;
-        
+
         double intercept1 = (b1 * c2 - b2 * c1) * dInv;
-    
+
         //  Implicit equation for "below" line
         a2 = a;
         b2 = b;
         c2 = c + maxDistanceBelow;
-        
+
         det = a1 * b2 - a2 * b1;
         dInv = 1.0/det;
-        
+
         double intercept2 = (b1 * c2 - b2 * c1) * dInv;
-    
+
         // Compute intercepts of bounding box
         double leftIntercept = Math.min(intercept1, intercept2);
         double rightIntercept = Math.max(intercept1, intercept2);
-    
-        double error = 0.5 * (rightIntercept-leftIntercept);    
-        
+
+        double error = 0.5 * (rightIntercept-leftIntercept);
+
         return error < EPSILON;
     }
-    
-    
-    
+
+
+
     /*
      *  ComputeXIntercept :
      *  Compute intersection of chord from first control point to last
      *      with 0-axis.
-     * 
+     *
      */
-    private static double computeXIntercept(Point2D[] v, int degree) {
-    
-        double XNM = v[degree].getX() - v[0].getX();
-        double YNM = v[degree].getY() - v[0].getY();
-        double XMK = v[0].getX();
-        double YMK = v[0].getY();
-    
+    private static double computeXIntercept(double[] v, int offset, int degree) {
+
+        double XNM = v[offset + 2 * degree] - v[offset];
+        double YNM = v[offset + 2 * degree + 1] - v[offset + 1];
+        double XMK = v[offset];
+        double YMK = v[offset + 1];
+
         double detInv = - 1.0/YNM;
-    
+
         return (XNM*YMK - YNM*XMK) * detInv;
     }
-    
-    
 
-    private static Point2D bezier(Point2D[] c, int degree, double t, Point2D[] left, Point2D[] right) {
-        // FIXME WIRED-252, move outside the method and make static
-        Point2D[][] p = new Point2D.Double[W_DEGREE+1][W_DEGREE+1];
-        
+
+
+    /*
+     *  Evaluates the curve of the control points c at t into s.x and s.y,
+     *  with the de Casteljau triangle computed one row at a time in s.row.
+     *  The control polygons of the halves go to left and right, if not null.
+     */
+    private static void bezier(double[] c, int offset, int degree, double t, Scratch s,
+            double[] left, int leftOffset, double[] right, int rightOffset) {
+        double[] p = s.row;
+
         /* Copy control points  */
         for (int j=0; j <= degree; j++) {
-            p[0][j] = new Point2D.Double(c[j].getX(),c[j].getY());
+            p[2 * j] = c[offset + 2 * j];
+            p[2 * j + 1] = c[offset + 2 * j + 1];
+        }
+        if (left != null) {
+            left[leftOffset] = p[0];
+            left[leftOffset + 1] = p[1];
+        }
+        if (right != null) {
+            right[rightOffset + 2 * degree] = p[2 * degree];
+            right[rightOffset + 2 * degree + 1] = p[2 * degree + 1];
         }
-            
+
         /* Triangle computation */
-        for (int i = 1; i <= degree; i++) {  
+        for (int i = 1; i <= degree; i++) {
             for (int j = 0 ; j <= degree - i; j++) {
-                p[i][j] = new Point2D.Double(
-                    (1.0 - t) * p[i-1][j].getX() + t * p[i-1][j+1].getX(),
-                    (1.0 - t) * p[i-1][j].getY() + t * p[i-1][j+1].getY()
-                );
+                p[2 * j] = (1.0 - t) * p[2 * j] + t * p[2 * j + 2];
+                p[2 * j + 1] = (1.0 - t) * p[2 * j + 1] + t * p[2 * j + 3];
             }
-        }
-        
-        if (left != null) {
-            for (int j = 0; j <= degree; j++) {
-                left[j]  = p[j][0];
+            if (left != null) {
+                left[leftOffset + 2 * i] = p[0];
+                left[leftOffset + 2 * i + 1] = p[1];
             }
-        }
-        
-        if (right != null) {
-            for (int j = 0; j <= degree; j++) {
-                right[j] = p[degree-j][j];
+            if (right != null) {
+                right[rightOffset + 2 * (degree - i)] = p[2 * (degree - i)];
+                right[rightOffset + 2 * (degree - i) + 1] = p[2 * (degree - i) + 1];
             }
         }
-        
-        return p[degree][0];
+
+        s.x = p[0];
+        s.y = p[1];
     }
 }
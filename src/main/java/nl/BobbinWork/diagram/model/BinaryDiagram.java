@@ -0,0 +1,432 @@
+/* BinaryDiagram.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.model;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * A compact binary form of a {@link Diagram}, for example to cache a diagram
+ * built from XML. The layout is a pre-order sequence of big-endian numbers
+ * that can be read from a memory mapped file:
+ *
+ * <pre>
+ * file      := MAGIC VERSION:int partition
+ * partition := type:byte visible:byte id:string body
+ * diagram   := title:string count:int partition*
+ * group     := first:int last:int title:string count:int style*
+ *              count:int partition* (bobbin styles, then children)
+ * stitch    := first:int last:int title:string color:int width:int
+ *              count:int pair* count:int partition* (pins, then switches)
+ * switch    := first:int last:int fronts:int backs:int thread*
+ * pin       := x:double y:double
+ * pair      := 8 doubles (start c1 c2 end) twistMark:int
+ * thread    := 8 doubles (start c1 c2 end) style
+ * style     := color:int width:int shadowColor:int shadowWidth:int
+ * string    := length:int utf-8 bytes, length -1 for null
+ * </pre>
+ *
+ * The connections between segments are not stored: reading runs the same
+ * constructors as building from XML, and they connect the segments again.
+ * Connected segments share their end points, so the stored values of the
+ * connected model remain the same. The styles of the threads are applied
+ * after all connections are made, as connecting propagates styles.
+ *
+ * @author J. Pol
+ */
+public class BinaryDiagram
+{
+  private static final int MAGIC = 0x42574431; // BWD1
+
+  /**
+   * Should be incremented when the layout changes, or the model or the
+   * building of diagrams changes in a way that makes stored diagrams differ
+   * from newly built ones. Content of another version is not read.
+   */
+  public static final int VERSION = 3;
+  private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+  private static final byte DIAGRAM = 1;
+  private static final byte GROUP = 2;
+  private static final byte STITCH = 3;
+  private static final byte CROSS = 4;
+  private static final byte TWIST = 5;
+  private static final byte PIN = 6;
+
+  /** the minimum number of bytes of a partition, a pair, a thread and a style */
+  private static final int PARTITION_SIZE = 6;
+  private static final int PAIR_SIZE = 8 * 8 + 4;
+  private static final int STYLE_SIZE = 4 * 4;
+  private static final int THREAD_SIZE = 8 * 8 + STYLE_SIZE;
+
+  /** Only static methods, so hide the constructor. */
+  private BinaryDiagram()
+  {
+  }
+
+  public static void write(
+      final Diagram diagram,
+      final OutputStream outputStream) throws IOException
+  {
+    final DataOutputStream out = new DataOutputStream( outputStream );
+    out.writeInt( MAGIC );
+    out.writeInt( VERSION );
+    writePartition( out, diagram );
+    out.flush();
+  }
+
+  /**
+   * @param buffer
+   *          content created by {@link #write(Diagram, OutputStream)}
+   * @return the diagram, the partitions have no source object
+   * @throws IOException
+   *           if the content is not a diagram of this {@link #VERSION} or
+   *           incomplete, for example a count larger than the remaining
+   *           content can hold
+   */
+  public static Diagram read(
+      final ByteBuffer buffer) throws IOException
+  {
+    try {
+      if (buffer.getInt() != MAGIC) {
+        throw new IOException( "not a binary diagram" );
+      }
+      final int version = buffer.getInt();
+      if (version != VERSION) {
+        throw new IOException( "binary diagram version " + version
+            + " instead of " + VERSION );
+      }
+      final List<ThreadSegment> threads = new ArrayList<ThreadSegment>();
+      final List<int[]> styles = new ArrayList<int[]>();
+      final Partition diagram = readPartition( buffer, threads, styles );
+      if (!(diagram instanceof Diagram)) {
+        throw new IOException( "not a binary diagram" );
+      }
+      for (int i = 0; i < threads.size(); i++) {
+        final ThreadStyle style = threads.get( i ).getStyle();
+        final int[] values = styles.get( i );
+        style.setColorValue( values[0] );
+        style.setWidth( values[1] );
+        style.getShadow().setColorValue( values[2] );
+        style.getShadow().setWidth( values[3] );
+      }
+      return (Diagram) diagram;
+    } catch (final BufferUnderflowException exception) {
+      throw new IOException( "incomplete binary diagram" );
+    }
+  }
+
+  private static void writePartition(
+      final DataOutputStream out,
+      final Partition partition) throws IOException
+  {
+    out.writeByte( typeOf( partition ) );
+    out.writeByte( partition.isVisible() ? 1 : 0 );
+    writeString( out, partition.getId() );
+    if (partition instanceof Pin) {
+      final Point position = ((Pin) partition).position;
+      out.writeDouble( position.x );
+      out.writeDouble( position.y );
+    } else if (partition instanceof Switch) {
+      final Switch s = (Switch) partition;
+      writeRange( out, s.getThreadRange() );
+      out.writeInt( s.getFronts().length );
+      out.writeInt( s.getBacks().length );
+      for (final ThreadSegment segment : s.getFronts()) {
+        writeThread( out, segment );
+      }
+      for (final ThreadSegment segment : s.getBacks()) {
+        writeThread( out, segment );
+      }
+    } else if (partition instanceof Stitch) {
+      final Stitch stitch = (Stitch) partition;
+      writeRange( out, stitch.getPairRange() );
+      writeString( out, stitch.getTitle() );
+      final List<PairSegment> pairs = stitch.getPairConnectors().getIns();
+      final Style style = pairs.isEmpty() ? new Style() : pairs.get( 0 ).getStyle();
+      out.writeInt( style.getColorValue() );
+      out.writeInt( style.getWidth() );
+      out.writeInt( pairs.size() );
+      for (final PairSegment segment : pairs) {
+        writeSegment( out, segment );
+        out.writeInt( segment.getTwistMarkLength() );
+      }
+      writePartitions( out, stitch.getPartitions() );
+    } else {
+      final MultiplePairsPartition mpp = (MultiplePairsPartition) partition;
+      if (partition instanceof Group) writeRange( out, mpp.getPairRange() );
+      writeString( out, mpp.getTitle() );
+      if (partition instanceof Group) writeStyles( out, mpp.getThreadStyles() );
+      writePartitions( out, mpp.getPartitions() );
+    }
+  }
+
+  private static byte typeOf(
+      final Partition partition)
+  {
+    if (partition instanceof Diagram) return DIAGRAM;
+    if (partition instanceof Group) return GROUP;
+    if (partition instanceof Stitch) return STITCH;
+    if (partition instanceof Cross) return CROSS;
+    if (partition instanceof Twist) return TWIST;
+    if (partition instanceof Pin) return PIN;
+    throw new IllegalArgumentException( "can't write "
+        + partition.getClass().getName() );
+  }
+
+  private static void writePartitions(
+      final DataOutputStream out,
+      final List<Partition> partitions) throws IOException
+  {
+    out.writeInt( partitions.size() );
+    for (final Partition child : partitions) {
+      writePartition( out, child );
+    }
+  }
+
+  private static void writeRange(
+      final DataOutputStream out,
+      final Range range) throws IOException
+  {
+    out.writeInt( range.getFirst() );
+    out.writeInt( range.getLast() );
+  }
+
+  private static void writeSegment(
+      final DataOutputStream out,
+      final Segment segment) throws IOException
+  {
+    for (final Point p : new Point[] { segment.getStart(), segment.getC1(),
+        segment.getC2(), segment.getEnd() }) {
+      out.writeDouble( p.x );
+      out.writeDouble( p.y );
+    }
+  }
+
+  /** Writes the styles up to the first null, like the bobbins of a group. */
+  private static void writeStyles(
+      final DataOutputStream out,
+      final ThreadStyle[] styles) throws IOException
+  {
+    int count = 0;
+    while (count < styles.length && styles[count] != null) {
+      count++;
+    }
+    out.writeInt( count );
+    for (int i = 0; i < count; i++) {
+      writeStyle( out, styles[i] );
+    }
+  }
+
+  private static void writeThread(
+      final DataOutputStream out,
+      final ThreadSegment segment) throws IOException
+  {
+    writeSegment( out, segment );
+    writeStyle( out, segment.getStyle() );
+  }
+
+  private static void writeStyle(
+      final DataOutputStream out,
+      final ThreadStyle style) throws IOException
+  {
+    out.writeInt( style.getColorValue() );
+    out.writeInt( style.getWidth() );
+    out.writeInt( style.getShadow().getColorValue() );
+    out.writeInt( style.getShadow().getWidth() );
+  }
+
+  private static void writeString(
+      final DataOutputStream out,
+      final String s) throws IOException
+  {
+    if (s == null) {
+      out.writeInt( -1 );
+    } else {
+      final byte[] bytes = s.getBytes( UTF8 );
+      out.writeInt( bytes.length );
+      out.write( bytes );
+    }
+  }
+
+  private static Partition readPartition(
+      final ByteBuffer in,
+      final List<ThreadSegment> threads,
+      final List<int[]> styles) throws IOException
+  {
+    final byte type = in.get();
+    final boolean visible = in.get() != 0;
+    final String id = readString( in );
+    final Partition partition;
+    switch (type) {
+    case PIN:
+      partition = new Pin( new Point( in.getDouble(), in.getDouble() ) );
+      break;
+    case CROSS:
+    case TWIST: {
+      final Range range = readRange( in );
+      final ThreadSegment[] fronts = new ThreadSegment[readCount( in, THREAD_SIZE )];
+      final ThreadSegment[] backs = new ThreadSegment[readCount( in, THREAD_SIZE )];
+      for (int i = 0; i < fronts.length; i++) {
+        fronts[i] = readThread( in, threads, styles );
+      }
+      for (int i = 0; i < backs.length; i++) {
+        backs[i] = readThread( in, threads, styles );
+      }
+      if (type == CROSS) partition = new Cross( range, fronts, backs );
+      else partition = new Twist( range, fronts, backs );
+      break;
+    }
+    case STITCH: {
+      final Range range = readRange( in );
+      final String title = readString( in );
+      final Style style = new Style();
+      style.setColorValue( in.getInt() );
+      style.setWidth( in.getInt() );
+      final List<PairSegment> pairs = new Vector<PairSegment>();
+      for (int i = readCount( in, PAIR_SIZE ); i > 0; i--) {
+        final Point[] p = readPoints( in );
+        final PairSegment segment =
+            new PairSegment( p[0], p[1], p[2], p[3], in.getInt() );
+        segment.setStyle( style );
+        pairs.add( segment );
+      }
+      final List<Switch> switches = new Vector<Switch>();
+      final List<Pin> pins = new Vector<Pin>();
+      for (int i = readCount( in, PARTITION_SIZE ); i > 0; i--) {
+        final Partition child = readPartition( in, threads, styles );
+        if (child instanceof Pin) pins.add( (Pin) child );
+        else switches.add( (Switch) child );
+      }
+      partition = new Stitch( range, pairs, switches, pins, title );
+      break;
+    }
+    case GROUP: {
+      final Range range = readRange( in );
+      final String title = readString( in );
+      final Vector<ThreadStyle> bobbins = new Vector<ThreadStyle>();
+      for (int i = readCount( in, STYLE_SIZE ); i > 0; i--) {
+        bobbins.add( readStyle( in ) );
+      }
+      final List<Partition> parts = readPartitions( in, threads, styles );
+      partition = new Group( range, parts, bobbins, title );
+      break;
+    }
+    case DIAGRAM: {
+      final String title = readString( in );
+      partition = new Diagram( readPartitions( in, threads, styles ), title );
+      break;
+    }
+    default:
+      throw new IOException( "unknown partition type " + type );
+    }
+    partition.setVisible( visible );
+    partition.setSourceObject( null, id );
+    return partition;
+  }
+
+  private static List<Partition> readPartitions(
+      final ByteBuffer in,
+      final List<ThreadSegment> threads,
+      final List<int[]> styles) throws IOException
+  {
+    final int count = readCount( in, PARTITION_SIZE );
+    final List<Partition> parts = new Vector<Partition>( count );
+    for (int i = 0; i < count; i++) {
+      parts.add( readPartition( in, threads, styles ) );
+    }
+    return parts;
+  }
+
+  /**
+   * @param size
+   *          the minimum number of bytes of one of the counted items
+   * @throws IOException
+   *           if the remaining content is too small for the count
+   */
+  private static int readCount(
+      final ByteBuffer in,
+      final int size) throws IOException
+  {
+    final int count = in.getInt();
+    if (count < 0 || count > in.remaining() / size) {
+      throw new IOException( "corrupt binary diagram, count " + count );
+    }
+    return count;
+  }
+
+  private static Range readRange(
+      final ByteBuffer in)
+  {
+    final int first = in.getInt();
+    return new Range( first, in.getInt() );
+  }
+
+  private static Point[] readPoints(
+      final ByteBuffer in)
+  {
+    final Point[] points = new Point[4];
+    for (int i = 0; i < points.length; i++) {
+      points[i] = new Point( in.getDouble(), in.getDouble() );
+    }
+    return points;
+  }
+
+  private static ThreadSegment readThread(
+      final ByteBuffer in,
+      final List<ThreadSegment> threads,
+      final List<int[]> styles)
+  {
+    final Point[] p = readPoints( in );
+    final ThreadSegment segment = new ThreadSegment( p[0], p[1], p[2], p[3] );
+    threads.add( segment );
+    styles.add( new int[] { in.getInt(), in.getInt(), in.getInt(), in.getInt() } );
+    return segment;
+  }
+
+  private static ThreadStyle readStyle(
+      final ByteBuffer in)
+  {
+    final ThreadStyle style = new ThreadStyle();
+    style.setColorValue( in.getInt() );
+    style.setWidth( in.getInt() );
+    style.getShadow().setColorValue( in.getInt() );
+    style.getShadow().setWidth( in.getInt() );
+    return style;
+  }
+
+  private static String readString(
+      final ByteBuffer in) throws IOException
+  {
+    final int length = in.getInt();
+    if (length == -1) return null;
+    if (length < 0 || length > in.remaining()) {
+      throw new IOException( "corrupt binary diagram, length " + length );
+    }
+    final byte[] bytes = new byte[length];
+    in.get( bytes );
+    return new String( bytes, UTF8 );
+  }
+}
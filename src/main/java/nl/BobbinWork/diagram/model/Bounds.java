@@ -20,6 +20,7 @@ package nl.BobbinWork.diagram.model;
 
 import java.awt.Polygon;
 import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
 import java.util.List;
 import java.util.Vector;
 
@@ -37,6 +38,9 @@ import java.util.Vector;
 public class Bounds<T extends Segment> extends Polygon {
 	private static final long serialVersionUID = 1L;
 
+	/** box around the curves of the segments and the boxes of merged children */
+	private Rectangle2D box = null;
+
 	/**
 	 * Creates a shape around (usually 2) crossing segments.<br>
 	 * <br>
@@ -92,12 +96,20 @@ public class Bounds<T extends Segment> extends Polygon {
 	Bounds() {
 	}
 	
+	/**
+	 * Extends the bounding box with the box of a child. The polygon remains as
+	 * is, the polygons of the children fit together like the jigsaw pieces do.
+	 * 
+	 * @param childBounds
+	 *            the bounds of a partition within this one
+	 */
 	void merge(Bounds<T> childBounds) {
-		// TODO implement this stub
-		npoints = 0;
+		box = union(box, childBounds.box);
 	}
-	
-	/** TODO Delete when merge is implemented. */
+
+	/**
+	 * Creates the polygon along the starts of the ins and the ends of the outs.
+	 */
 	Bounds(List<T> ins, List<T> outs) {
 		init(ins, outs);
 	}
@@ -107,15 +119,48 @@ public class Bounds<T extends Segment> extends Polygon {
 		for (T segment : ins) {
 			if (segment != null) {
 				add(segment.getStart());
+				box = union(box, segment.getBounds2D());
 			}
 		}
 		for (T segment : reverse(outs)) {
 			if (segment != null) {
 				add(segment.getEnd());
+				box = union(box, segment.getBounds2D());
 			}
 		}
 	}
 
+	/**
+	 * @return null or the box around the curves of the segments and the merged
+	 *         children, should not be changed
+	 */
+	Rectangle2D getBox() {
+		return box;
+	}
+
+	/**
+	 * In contrast with {@link Polygon#getBounds2D()} the box contains the
+	 * curves of the segments.
+	 */
+	public Rectangle2D getBounds2D() {
+		if (box == null) return super.getBounds2D();
+		return (Rectangle2D) box.clone();
+	}
+
+	/**
+	 * @param box
+	 *            null or a box that may be extended
+	 * @param other
+	 *            null or a box that is not changed
+	 * @return box extended with other, a copy of other if box is null
+	 */
+	static Rectangle2D union(Rectangle2D box, Rectangle2D other) {
+		if (other == null) return box;
+		if (box == null) return (Rectangle2D) other.clone();
+		box.add(other);
+		return box;
+	}
+
 	/**
 	 * Creates a copy of the list with the elements in reversed order.
 	 * 
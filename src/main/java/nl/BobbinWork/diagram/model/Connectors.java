@@ -18,8 +18,9 @@
 
 package nl.BobbinWork.diagram.model;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Vector;
 
 /**
  * Manages line segments like connectors on pieces of a jig saw puzzle.
@@ -51,7 +52,11 @@ class Connectors<T extends Segment>
    */
   private Bounds<T> bounds = null;
 
-  final List<Connectors<T>> children = new Vector<Connectors<T>>();
+  /**
+   * Empty until the first {@link #connect}, most instances belong to switches
+   * that never get children.
+   */
+  List<Connectors<T>> children = Collections.emptyList();
 
   /**
    * Creates a populated instance for threads of a switch or pairs of a stitch.
@@ -82,7 +87,7 @@ class Connectors<T extends Segment>
   private List<T> reverse(
       final List<T> segments)
   {
-    final List<T> list = new Vector<T>( segments.size() );
+    final List<T> list = new ArrayList<T>( segments.size() );
     for (int i = segments.size(); --i >= 0;) {
       list.add( segments.get( i ) );
     }
@@ -97,8 +102,8 @@ class Connectors<T extends Segment>
    */
   Connectors(final int count)
   {
-    ins = new Vector<T>( count );
-    outs = new Vector<T>( count );
+    ins = new ArrayList<T>( count );
+    outs = new ArrayList<T>( count );
     for (int i = 0; i < count; i++) {
       ins.add( null );
       outs.add( null );
@@ -135,6 +140,7 @@ class Connectors<T extends Segment>
         outs.set( offset + i, child.outs.get( i ) );
       }
     }
+    if (children.isEmpty()) children = new ArrayList<Connectors<T>>( 4 );
     children.add( child );
   }
 
@@ -182,12 +188,24 @@ class Connectors<T extends Segment>
     }
   }
 
+  /**
+   * Drops the cached bounds, those of the parents should be dropped too.
+   * Should be called after moving points of the segments.
+   */
+  void dropBounds()
+  {
+    bounds = null;
+  }
+
   /** @return @see Partition#getBounds() */
   Bounds<T> getBounds()
   {
 
     if (bounds == null || bounds.npoints == 0) {
       bounds = new Bounds<T>( ins, outs );
+      for (final Connectors<T> child : children) {
+        bounds.merge( child.getBounds() );
+      }
     }
     return bounds;
   }
@@ -1,45 +1,304 @@
-/* Diagram.java Copyright 2009 by J. Pol
- *
- * This file is part of BobbinWork.
- *
- * BobbinWork is free software: you can redistribute it and/or modify
- * it under the terms of the GNU General Public License as published by
- * the Free Software Foundation, either version 3 of the License, or
- * (at your option) any later version.
- *
- * BobbinWork is distributed in the hope that it will be useful,
- * but WITHOUT ANY WARRANTY; without even the implied warranty of
- * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
- * GNU General Public License for more details.
- *
- * You should have received a copy of the GNU General Public License
- * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
- */
-package nl.BobbinWork.diagram.model;
-
-import java.util.List;
-
-/**
- * The root object of the diagram presentation model.
- * 
- * @author J. Pol
- * 
- */
-public class Diagram
-    extends ChainedPairsPartition
-{
-
-  public Diagram(final List<Partition> parts, final String title)
-  {
-    super( new Range( 0, 0 ), parts, title );
-  }
-
-  void connectChild(
-      final MultiplePairsPartition part)
-  {
-  }
-
-  void initConnectors()
-  {
-  }
-}
+/* Diagram.java Copyright 2009 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.model;
+
+import java.awt.geom.CubicCurve2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.swing.SwingUtilities;
+
+import nl.BobbinWork.diagram.model.DiagramEvent.Type;
+
+/**
+ * The root object of the diagram presentation model.
+ * <p>
+ * Changes made with the methods of the diagram are reported to its
+ * {@link DiagramListener}s. The caches of the partitions involved (bounds,
+ * display lists and search indexes) are dropped immediately, the listeners
+ * hear about the changes at the next tick of the event dispatch thread. All
+ * changes made during one tick of that thread arrive in a single call.
+ * 
+ * @author J. Pol
+ * 
+ */
+public class Diagram
+    extends ChainedPairsPartition
+{
+
+  public Diagram(final List<Partition> parts, final String title)
+  {
+    super( new Range( 0, 0 ), parts, title );
+  }
+
+  private final List<DiagramListener> listeners =
+      new CopyOnWriteArrayList<DiagramListener>();
+
+  /** per type the events per source, waiting to be delivered */
+  private final Map<Type, Map<Object, DiagramEvent>> pending =
+      new EnumMap<Type, Map<Object, DiagramEvent>>( Type.class );
+
+  private boolean deliveryScheduled = false;
+
+  /**
+   * the parent of each partition, found when first needed and again after a
+   * structural change
+   */
+  private Map<Partition, MultiplePairsPartition> parents = null;
+
+  public void addDiagramListener(
+      final DiagramListener listener)
+  {
+    listeners.add( listener );
+  }
+
+  public void removeDiagramListener(
+      final DiagramListener listener)
+  {
+    listeners.remove( listener );
+  }
+
+  /**
+   * Shows or hides a partition.
+   * 
+   * @param partition
+   *          this diagram or a partition within it
+   */
+  public void setVisible(
+      final Partition partition,
+      final boolean visible)
+  {
+    if (partition.isVisible() == visible) return;
+    partition.setVisible( visible );
+    fire( Type.VISIBILITY, partition, partition.getBounds2D() );
+  }
+
+  @Override
+  public void setAllVisible(
+      final boolean visible)
+  {
+    super.setAllVisible( visible );
+    fire( Type.VISIBILITY, this, null );
+  }
+
+  /**
+   * Applies a style to the thread of a segment.
+   * 
+   * @param segment
+   *          a segment of a thread within this diagram
+   */
+  public void setThreadStyle(
+      final ThreadSegment segment,
+      final ThreadStyle style)
+  {
+    segment.getStyle().apply( style );
+    Rectangle2D area = null;
+    for (final CubicCurve2D curve : segment.getThread()) {
+      if (area == null) area = curve.getBounds2D();
+      else area.add( curve.getBounds2D() );
+    }
+    fire( Type.STYLE, segment, area );
+  }
+
+  /**
+   * Should be called after replacing, adding or removing elements of
+   * {@link #getPartitions()} of a partition within this diagram. Drops the
+   * caches of the partition and the partitions containing it.
+   * 
+   * @param parent
+   *          this diagram or a partition within it
+   */
+  public void partitionsChanged(
+      final MultiplePairsPartition parent)
+  {
+    final Rectangle2D before = copy( parent.getBounds2D() );
+    for (final MultiplePairsPartition p : getAncestors( parent )) {
+      p.partitionsChanged();
+    }
+    parent.partitionsChanged();
+    parents = null;
+    fire( Type.PARTITIONS, parent, union( before, parent.getBounds2D() ) );
+  }
+
+  /**
+   * Drops the caches of the diagram itself, without reporting a change, see
+   * {@link #partitionsChanged(MultiplePairsPartition)}.
+   */
+  @Override
+  public void partitionsChanged()
+  {
+    super.partitionsChanged();
+    parents = null;
+  }
+
+  /**
+   * Should be called after moving points of segments within a partition.
+   * Drops the caches of the partition, its content and the partitions
+   * containing it. The area of the event covers the box of the partition
+   * before and after the move, or everything if the box from before the move
+   * was not computed.
+   * 
+   * @param partition
+   *          this diagram or a partition within it
+   */
+  public void geometryChanged(
+      final Partition partition)
+  {
+    // computed now it would be the box after the move
+    final Rectangle2D before =
+        partition.isBounds2DComputed() ? copy( partition.getBounds2D() ) : null;
+    for (final MultiplePairsPartition p : getAncestors( partition )) {
+      p.partitionsChanged();
+    }
+    dropCaches( partition );
+    fire( Type.GEOMETRY, partition, union( before, partition.getBounds2D() ) );
+  }
+
+  private static void dropCaches(
+      final Partition partition)
+  {
+    if (partition instanceof MultiplePairsPartition) {
+      final MultiplePairsPartition mpp = (MultiplePairsPartition) partition;
+      for (final Partition child : mpp.getPartitions()) {
+        dropCaches( child );
+      }
+      mpp.partitionsChanged();
+    } else {
+      partition.geometryChanged();
+    }
+  }
+
+  /** @return the partitions containing the partition, the diagram last */
+  private List<MultiplePairsPartition> getAncestors(
+      final Partition partition)
+  {
+    if (parents == null) {
+      parents = new IdentityHashMap<Partition, MultiplePairsPartition>();
+      collectParents( this );
+    }
+    final List<MultiplePairsPartition> ancestors =
+        new ArrayList<MultiplePairsPartition>();
+    if (partition == this) return ancestors;
+    MultiplePairsPartition parent = parents.get( partition );
+    if (parent == null) {
+      // the content of a group may have changed without telling the diagram
+      parents.clear();
+      collectParents( this );
+      parent = parents.get( partition );
+    }
+    if (parent == null) {
+      throw new IllegalArgumentException( "not part of the diagram: "
+          + partition );
+    }
+    for (; parent != null; parent = parents.get( parent )) {
+      ancestors.add( parent );
+    }
+    return ancestors;
+  }
+
+  private void collectParents(
+      final MultiplePairsPartition parent)
+  {
+    for (final Partition child : parent.getPartitions()) {
+      parents.put( child, parent );
+      if (child instanceof MultiplePairsPartition) {
+        collectParents( (MultiplePairsPartition) child );
+      }
+    }
+  }
+
+  private static Rectangle2D copy(
+      final Rectangle2D box)
+  {
+    return box == null ? null : (Rectangle2D) box.clone();
+  }
+
+  /** @return null (everything) if one of the boxes is null */
+  private static Rectangle2D union(
+      final Rectangle2D a,
+      final Rectangle2D b)
+  {
+    return a == null || b == null ? null : a.createUnion( b );
+  }
+
+  /**
+   * Queues an event and schedules the delivery of the queue, unless already
+   * scheduled.
+   */
+  private void fire(
+      final Type type,
+      final Object source,
+      final Rectangle2D area)
+  {
+    if (listeners.isEmpty()) return;
+    final DiagramEvent event = new DiagramEvent( type, source, copy( area ) );
+    synchronized (pending) {
+      Map<Object, DiagramEvent> events = pending.get( type );
+      if (events == null) {
+        events = new LinkedHashMap<Object, DiagramEvent>();
+        pending.put( type, events );
+      }
+      final DiagramEvent previous = events.get( source );
+      events.put( source, previous == null ? event : previous.merge( event ) );
+      if (deliveryScheduled) return;
+      deliveryScheduled = true;
+    }
+    SwingUtilities.invokeLater( new Runnable()
+    {
+      // @Override
+      public void run()
+      {
+        deliver();
+      }
+    } );
+  }
+
+  private void deliver()
+  {
+    final List<DiagramEvent> events = new ArrayList<DiagramEvent>();
+    synchronized (pending) {
+      for (final Map<Object, DiagramEvent> map : pending.values()) {
+        events.addAll( map.values() );
+      }
+      pending.clear();
+      deliveryScheduled = false;
+    }
+    if (events.isEmpty()) return;
+    final List<DiagramEvent> unmodifiable =
+        Collections.unmodifiableList( events );
+    for (final DiagramListener listener : listeners) {
+      listener.diagramChanged( this, unmodifiable );
+    }
+  }
+
+  void connectChild(
+      final MultiplePairsPartition part)
+  {
+  }
+
+  void initConnectors()
+  {
+  }
+}
@@ -0,0 +1,95 @@
+/* DiagramEvent.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.model;
+
+import java.awt.geom.Rectangle2D;
+
+/**
+ * A change of a {@link Diagram}, reported to its {@link DiagramListener}s.
+ * Changes of the same type and source within one tick of the event dispatch
+ * thread are merged into one event.
+ * 
+ * @author J. Pol
+ */
+public final class DiagramEvent
+{
+  public enum Type
+  {
+    /** partitions were replaced, added or removed */
+    PARTITIONS,
+    /** a partition was shown or hidden */
+    VISIBILITY,
+    /** the colour or width of a thread changed */
+    STYLE,
+    /** points of segments moved */
+    GEOMETRY
+  }
+
+  private final Type type;
+  private final Object source;
+  private final Rectangle2D area;
+
+  DiagramEvent(
+      final Type type,
+      final Object source,
+      final Rectangle2D area)
+  {
+    this.type = type;
+    this.source = source;
+    this.area = area;
+  }
+
+  public Type getType()
+  {
+    return type;
+  }
+
+  /**
+   * @return the {@link Partition} or for {@link Type#STYLE} the
+   *         {@link ThreadSegment} that changed
+   */
+  public Object getSource()
+  {
+    return source;
+  }
+
+  /**
+   * @return null if the whole diagram may look different, otherwise the box
+   *         in diagram coordinates where it may look different
+   */
+  public Rectangle2D getArea()
+  {
+    return area;
+  }
+
+  /** @return an event with the area of both events */
+  DiagramEvent merge(
+      final DiagramEvent other)
+  {
+    if (area == null || other.area == null) {
+      return new DiagramEvent( type, source, null );
+    }
+    return new DiagramEvent( type, source, area.createUnion( other.area ) );
+  }
+
+  @Override
+  public String toString()
+  {
+    return type + " " + source + " " + area;
+  }
+}
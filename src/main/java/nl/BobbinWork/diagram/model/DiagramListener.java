@@ -0,0 +1,41 @@
+/* DiagramListener.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.model;
+
+import java.util.List;
+
+/**
+ * Receives the changes of a {@link Diagram}.
+ * 
+ * @author J. Pol
+ */
+public interface DiagramListener
+{
+  /**
+   * Called on the event dispatch thread with the changes since the previous
+   * call. The caches of the model are already up to date.
+   * 
+   * @param diagram
+   *          the diagram that changed
+   * @param events
+   *          at most one event per type and source, ordered by type
+   */
+  void diagramChanged(
+      Diagram diagram,
+      List<DiagramEvent> events);
+}
@@ -0,0 +1,259 @@
+/* DiagramSnapshot.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.model;
+
+import java.awt.Shape;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable copy of a {@link DisplayList} with the styles and visibility
+ * at the moment of {@link DisplayList#snapshot()}. A snapshot can be painted
+ * on another thread while the model is edited. Shapes are shared with the
+ * display list as they never change, parts of the tree that did not change
+ * are shared with the previous snapshot.
+ * <p>
+ * A snapshot can also show how a piece of lace is made stitch by stitch,
+ * without toggling the visibility of the model, see {@link #frame}. For that
+ * purpose the tree is numbered in pre-order once, with the visibility as a
+ * bit set over the numbers. A frame is just a number: the last group or
+ * stitch shown. Painting jumps over the ranges of hidden partitions.
+ *
+ * @author J. Pol
+ */
+public final class DiagramSnapshot
+{
+  static final class Node
+  {
+    final Partition partition;
+    final boolean visible;
+    final Shape[] shapes;
+    final Style[] styles;
+    final Node[] children;
+
+    Node(
+        final Partition partition,
+        final boolean visible,
+        final Shape[] shapes,
+        final Style[] styles,
+        final Node[] children)
+    {
+      this.partition = partition;
+      this.visible = visible;
+      this.shapes = shapes;
+      this.styles = styles;
+      this.children = children;
+    }
+
+    /** @return true for groups and stitches, the steps of an animation */
+    boolean isStep()
+    {
+      return partition instanceof MultiplePairsPartition;
+    }
+  }
+
+  /** The nodes of a snapshot in pre-order, shared by its frames. */
+  private static final class Order
+  {
+    final Node[] nodes;
+
+    /** per node the position after its last descendant */
+    final int[] ends;
+
+    /** the positions of the nodes that were hidden */
+    final BitSet hidden = new BitSet();
+
+    /** the positions of the groups, the nodes hidden beyond a frame */
+    final BitSet groups = new BitSet();
+
+    /** the positions of the groups and stitches, ascending */
+    final int[] steps;
+
+    final Map<Partition, Integer> positions =
+        new IdentityHashMap<Partition, Integer>();
+
+    Order(final Node root)
+    {
+      final List<Node> list = new ArrayList<Node>();
+      count( root, list );
+      nodes = list.toArray( new Node[list.size()] );
+      ends = new int[nodes.length];
+      final int[] found = new int[nodes.length];
+      int count = 0;
+      for (int i = 0; i < nodes.length; i++) {
+        final Node node = nodes[i];
+        if (!positions.containsKey( node.partition )) {
+          positions.put( node.partition, i );
+        }
+        if (!node.visible) hidden.set( i );
+        if (node.isStep()) {
+          found[count++] = i;
+          if (!(node.partition instanceof Stitch)) groups.set( i );
+        }
+      }
+      steps = Arrays.copyOf( found, count );
+      setEnds( 0 );
+    }
+
+    private static void count(
+        final Node node,
+        final List<Node> list)
+    {
+      list.add( node );
+      for (final Node child : node.children) {
+        count( child, list );
+      }
+    }
+
+    /** @return the position after the subtree at the position */
+    private int setEnds(
+        final int position)
+    {
+      int next = position + 1;
+      for (int i = 0; i < nodes[position].children.length; i++) {
+        next = setEnds( next );
+      }
+      ends[position] = next;
+      return next;
+    }
+  }
+
+  private final Node root;
+
+  /** built when first needed */
+  private Order order;
+
+  /** the range of the animated partition, empty if not a frame */
+  private final int start;
+  private final int stop;
+
+  /** the position of the last group or stitch shown within the range */
+  private final int last;
+
+  DiagramSnapshot(final Node root)
+  {
+    this( root, null, -1, -1, -1 );
+  }
+
+  private DiagramSnapshot(
+      final Node root,
+      final Order order,
+      final int start,
+      final int stop,
+      final int last)
+  {
+    this.root = root;
+    this.order = order;
+    this.start = start;
+    this.stop = stop;
+    this.last = last;
+  }
+
+  private Order getOrder()
+  {
+    if (order == null) order = new Order( root );
+    return order;
+  }
+
+  /**
+   * Passes the shapes of the partitions that were visible to the painter.
+   * Within the animated partition of a frame the groups up to the step are
+   * shown regardless of their visibility, stitches show with their group.
+   *
+   * @param painter
+   *          receives the shapes in the order they should be drawn
+   */
+  public void paint(
+      final DisplayList.Painter painter)
+  {
+    final Order o = getOrder();
+    for (int i = 0; i < o.nodes.length;) {
+      final boolean skip =
+          i >= start && i < stop ? i > last && o.groups.get( i ) : o.hidden
+              .get( i );
+      if (skip) {
+        i = o.ends[i];
+        continue;
+      }
+      final Node node = o.nodes[i++];
+      for (int j = 0; j < node.shapes.length; j++) {
+        painter.paint( node.shapes[j], node.styles[j] );
+      }
+    }
+  }
+
+  /**
+   * Gets a frame for each stitch in a partition. A frame shows the groups up
+   * to and including the group of the stitch, the rest of the partition is
+   * hidden.
+   *
+   * @param partition
+   *          a group in the snapshot
+   * @return the frames in document order, empty if the partition is not in
+   *         the snapshot
+   */
+  public List<DiagramSnapshot> frames(
+      final Partition partition)
+  {
+    final List<DiagramSnapshot> frames = new ArrayList<DiagramSnapshot>();
+    final Order o = getOrder();
+    final Integer position = o.positions.get( partition );
+    if (position == null) return frames;
+    final int end = o.ends[position];
+    for (int i = firstStep( o, position ); i < o.steps.length
+        && o.steps[i] < end; i++) {
+      if (o.nodes[o.steps[i]].partition instanceof Stitch) {
+        frames.add( new DiagramSnapshot( root, o, position, end, o.steps[i] ) );
+      }
+    }
+    return frames;
+  }
+
+  /**
+   * @param step
+   *          the number of the last group or stitch shown within the
+   *          partition, counted in document order from zero for the partition
+   *          itself. Stitches show with their group.
+   * @return a frame of an animation of the partition
+   */
+  public DiagramSnapshot frame(
+      final Partition partition,
+      final int step)
+  {
+    final Order o = getOrder();
+    final Integer position = o.positions.get( partition );
+    if (position == null) return new DiagramSnapshot( root, o, -1, -1, -1 );
+    final int end = o.ends[position];
+    final int i = firstStep( o, position ) + step;
+    final int last = i < o.steps.length && o.steps[i] < end ? o.steps[i] : end;
+    return new DiagramSnapshot( root, o, position, end, last );
+  }
+
+  /** @return the index in steps of the first step at or after the position */
+  private static int firstStep(
+      final Order o,
+      final int position)
+  {
+    final int i = Arrays.binarySearch( o.steps, position );
+    return i >= 0 ? i : -i - 1;
+  }
+}
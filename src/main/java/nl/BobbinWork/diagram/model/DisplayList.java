@@ -0,0 +1,145 @@
+/* DisplayList.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.model;
+
+import java.awt.Shape;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The drawables of {@link Partition#getThreads()} or
+ * {@link Partition#getPairs()} compiled for repeated painting. The shapes are
+ * created once, in the order they should be drawn to show threads going under
+ * and over one another. A list of a group consists of the lists of its
+ * children, so a group with a new child only compiles the new child.
+ * <p>
+ * Styles are kept by reference, so changed colors and widths show up without
+ * compiling again. Visibility is tested while painting, in the same way as
+ * the iterators of the partitions do. A {@link #snapshot()} freezes both for
+ * painting on another thread.
+ *
+ * @author J. Pol
+ */
+public final class DisplayList
+{
+  /** Receives the shapes of a list in the order they should be drawn. */
+  public interface Painter
+  {
+    void paint(
+        Shape shape,
+        Style style);
+  }
+
+  private static final DisplayList[] NO_LISTS = new DisplayList[0];
+
+  private final Partition partition;
+
+  /** false if the shapes are drawn whether or not the partition is visible */
+  private final boolean hideable;
+  private final Shape[] shapes;
+  private final Style[] styles;
+  private final DisplayList[] lists;
+
+  /** the last snapshot, reused as long as styles and visibility are equal */
+  private DiagramSnapshot.Node snapshot = null;
+
+  /** Compiles the drawables of a leaf in the partition tree. */
+  DisplayList(final Partition partition, final Iterator<Drawable> drawables)
+  {
+    final List<Drawable> list = new ArrayList<Drawable>();
+    while (drawables.hasNext()) {
+      list.add( drawables.next() );
+    }
+    this.partition = partition;
+    hideable = false;
+    shapes = new Shape[list.size()];
+    styles = new Style[list.size()];
+    for (int i = 0; i < shapes.length; i++) {
+      shapes[i] = list.get( i ).getShape();
+      styles[i] = list.get( i ).getStyle();
+    }
+    lists = NO_LISTS;
+  }
+
+  /** Combines the lists of the children of a partition that may be hidden. */
+  DisplayList(final Partition partition, final DisplayList[] lists)
+  {
+    this.partition = partition;
+    this.hideable = true;
+    this.shapes = new Shape[0];
+    this.styles = new Style[0];
+    this.lists = lists;
+  }
+
+  /**
+   * Passes the shapes of the visible partitions to the painter.
+   *
+   * @param painter
+   *          receives the shapes in the order they should be drawn
+   */
+  public void paint(
+      final Painter painter)
+  {
+    if (hideable && !partition.isVisible()) return;
+    for (int i = 0; i < shapes.length; i++) {
+      painter.paint( shapes[i], styles[i] );
+    }
+    for (final DisplayList list : lists) {
+      list.paint( painter );
+    }
+  }
+
+  /**
+   * Captures the current styles and visibility. Should be called on the
+   * thread that changes the model, the snapshot can be painted on any thread.
+   *
+   * @return an immutable copy of the list that shares the parts that did not
+   *         change since the previous snapshot
+   */
+  public DiagramSnapshot snapshot()
+  {
+    return new DiagramSnapshot( freeze() );
+  }
+
+  private DiagramSnapshot.Node freeze()
+  {
+    final boolean visible = !hideable || partition.isVisible();
+    final DiagramSnapshot.Node[] nodes = new DiagramSnapshot.Node[lists.length];
+    boolean same = snapshot != null && snapshot.visible == visible;
+    for (int i = 0; i < lists.length; i++) {
+      nodes[i] = lists[i].freeze();
+      same = same && nodes[i] == snapshot.children[i];
+    }
+    for (int i = 0; same && i < styles.length; i++) {
+      same = styles[i].getColorValue() == snapshot.styles[i].getColorValue()
+          && styles[i].getWidth() == snapshot.styles[i].getWidth();
+    }
+    if (!same) {
+      final Style[] frozen = new Style[styles.length];
+      for (int i = 0; i < frozen.length; i++) {
+        frozen[i] = new Style();
+        frozen[i].setColorValue( styles[i].getColorValue() );
+        frozen[i].setWidth( styles[i].getWidth() );
+      }
+      snapshot =
+          new DiagramSnapshot.Node( partition, visible, shapes, frozen, nodes );
+    }
+    return snapshot;
+  }
+}
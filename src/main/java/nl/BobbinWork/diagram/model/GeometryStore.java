@@ -0,0 +1,88 @@
+/* GeometryStore.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.model;
+
+/**
+ * Packs the points of {@link Segment}s into blocks of doubles rather than four
+ * {@link Point} objects per segment. A segment takes {@link #STRIDE} doubles
+ * at its offset in a block, in the order of
+ * {@link java.awt.geom.CubicCurve2D#setCurve(double[], int)}.
+ * <p>
+ * Each thread fills its own block, so diagrams can be built in parallel. A
+ * block is garbage collected with the last of its segments.
+ *
+ * @author J. Pol
+ */
+final class GeometryStore
+{
+  static final int START = 0;
+  static final int C1 = 2;
+  static final int C2 = 4;
+  static final int END = 6;
+
+  /** doubles per segment: x and y of start, c1, c2 and end */
+  static final int STRIDE = 8;
+
+  private static final int SEGMENTS_PER_BLOCK = 512;
+
+  private static final ThreadLocal<GeometryStore> CURRENT =
+      new ThreadLocal<GeometryStore>()
+      {
+        @Override
+        protected GeometryStore initialValue()
+        {
+          return new GeometryStore();
+        }
+      };
+
+  private double[] block = new double[SEGMENTS_PER_BLOCK * STRIDE];
+  private int used = 0;
+
+  private GeometryStore()
+  {
+  }
+
+  /** @return the store of the current thread */
+  static GeometryStore current()
+  {
+    return CURRENT.get();
+  }
+
+  /**
+   * Reserves the doubles for a segment, {@link #block()} returns the array to
+   * which the offset applies.
+   *
+   * @return the offset of the segment
+   */
+  int allocate()
+  {
+    if (used == block.length) {
+      block = new double[SEGMENTS_PER_BLOCK * STRIDE];
+      used = 0;
+    }
+    final int offset = used;
+    used += STRIDE;
+    return offset;
+  }
+
+  /** @return the block of the last {@link #allocate()} */
+  double[] block()
+  {
+    return block;
+  }
+}
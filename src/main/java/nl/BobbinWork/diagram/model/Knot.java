@@ -94,6 +94,24 @@ public class Knot
     return drawables.iterator();
   }
 
+  /** Like a stitch, painted regardless of its own visibility. */
+  @Override
+  DisplayList createDisplayList(
+      final boolean threads)
+  {
+    return new DisplayList( this, threads ? threadIterator() : pairIterator() );
+  }
+
+  ThreadSegment[] getBacks()
+  {
+    return backs;
+  }
+
+  ThreadSegment[] getFronts()
+  {
+    return fronts;
+  }
+
   final Iterator<Drawable> pinIterator()
   {
     final DrawableList drawables = new DrawableList();
@@ -0,0 +1,220 @@
+/* LaceThread.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The connected {@link ThreadSegment}s of one bobbin, sharing a single
+ * {@link ThreadStyle}. Connecting two segments unites their threads with
+ * union-find rather than walking the segments, the style of the upstream
+ * thread applies to the united thread. Only disconnecting walks the segments
+ * that get a new thread.
+ *
+ * @author J. Pol
+ */
+public final class LaceThread
+{
+  private static final AtomicInteger COUNT = new AtomicInteger();
+
+  private final int id = COUNT.incrementAndGet();
+
+  /** this for the thread that represents the united threads */
+  private LaceThread parent = this;
+
+  /** null until asked for, only kept by the representing thread */
+  private ThreadStyle style = null;
+
+  /** the only segment until united with another thread */
+  private ThreadSegment single;
+
+  /** null as long as there is a single segment */
+  private List<ThreadSegment> segments = null;
+
+  LaceThread(final ThreadSegment segment)
+  {
+    single = segment;
+  }
+
+  /** @return the thread representing all threads united with this one */
+  LaceThread find()
+  {
+    LaceThread thread = this;
+    while (thread.parent != thread) {
+      // path halving
+      thread.parent = thread.parent.parent;
+      thread = thread.parent;
+    }
+    return thread;
+  }
+
+  /** @return an id that remains the same as long as no threads are connected */
+  public int getId()
+  {
+    return find().id;
+  }
+
+  /** @return the style shared by all segments of the thread */
+  public ThreadStyle getStyle()
+  {
+    final LaceThread root = find();
+    if (root.style == null) root.style = new ThreadStyle();
+    return root.style;
+  }
+
+  void setStyle(
+      final ThreadStyle style)
+  {
+    find().style = style;
+  }
+
+  /** @return the segments of the thread in no particular order */
+  public List<ThreadSegment> getSegments()
+  {
+    final LaceThread root = find();
+    if (root.segments == null) return Collections.singletonList( root.single );
+    return Collections.unmodifiableList( root.segments );
+  }
+
+  /**
+   * Collects the threads of the segments in the visible partitions of a
+   * partition. Hidden partitions such as templates don't need bobbins.
+   *
+   * @param partition
+   *          typically a diagram
+   * @return the threads in the order of the partitions where they appear first
+   */
+  public static Collection<LaceThread> of(
+      final Partition partition)
+  {
+    final Set<LaceThread> threads = new LinkedHashSet<LaceThread>();
+    collect( partition, threads );
+    return threads;
+  }
+
+  private static void collect(
+      final Partition partition,
+      final Set<LaceThread> threads)
+  {
+    if (!partition.isVisible()) return;
+    if (partition instanceof Switch) {
+      add( ((Switch) partition).getBacks(), threads );
+      add( ((Switch) partition).getFronts(), threads );
+    } else if (partition instanceof Knot) {
+      add( ((Knot) partition).getBacks(), threads );
+      add( ((Knot) partition).getFronts(), threads );
+    } else if (partition instanceof MultiplePairsPartition) {
+      for (final Partition child : ((MultiplePairsPartition) partition)
+          .getPartitions()) {
+        collect( child, threads );
+      }
+    }
+  }
+
+  private static void add(
+      final ThreadSegment[] segments,
+      final Set<LaceThread> threads)
+  {
+    if (segments == null) return;
+    for (final ThreadSegment segment : segments) {
+      threads.add( segment.getLaceThread() );
+    }
+  }
+
+  private int size()
+  {
+    return segments == null ? 1 : segments.size();
+  }
+
+  private List<ThreadSegment> list()
+  {
+    if (segments == null) {
+      segments = new ArrayList<ThreadSegment>();
+      segments.add( single );
+      single = null;
+    }
+    return segments;
+  }
+
+  /**
+   * Unites the threads of two segments, the smaller one is added to the
+   * bigger one.
+   *
+   * @param style
+   *          the style for the united thread
+   */
+  static void unite(
+      final ThreadSegment a,
+      final ThreadSegment b,
+      final ThreadStyle style)
+  {
+    LaceThread big = a.getLaceThread();
+    LaceThread small = b.getLaceThread();
+    if (big != small) {
+      if (big.size() < small.size()) {
+        final LaceThread swap = big;
+        big = small;
+        small = swap;
+      }
+      big.list().addAll( small.list() );
+      small.parent = big;
+      small.segments = null;
+      small.style = null;
+    }
+    big.style = style;
+  }
+
+  /**
+   * Moves a segment and the segments following it to a new thread.
+   *
+   * @param first
+   *          the first segment for the new thread
+   * @param style
+   *          the style of the new thread
+   */
+  static void split(
+      final ThreadSegment first,
+      final ThreadStyle style)
+  {
+    final LaceThread old = first.getLaceThread();
+    final LaceThread thread = new LaceThread( first );
+    thread.style = style;
+    first.setLaceThread( thread );
+    for (Segment s = first.getNext(); s != null && s != first; s = s.getNext()) {
+      ((ThreadSegment) s).setLaceThread( thread );
+      thread.list().add( (ThreadSegment) s );
+    }
+    if (old.segments != null) {
+      final List<ThreadSegment> kept = new ArrayList<ThreadSegment>();
+      for (final ThreadSegment segment : old.segments) {
+        if (segment.getLaceThread() == old) kept.add( segment );
+      }
+      old.segments = kept;
+    }
+    if (old.segments != null && old.segments.size() == 1) {
+      old.single = old.segments.get( 0 );
+      old.segments = null;
+    }
+  }
+}
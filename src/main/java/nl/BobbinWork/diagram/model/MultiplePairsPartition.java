@@ -18,6 +18,7 @@
 
 package nl.BobbinWork.diagram.model;
 
+import java.awt.geom.Rectangle2D;
 import java.util.*;
 
 /**
@@ -32,16 +33,57 @@ public abstract class MultiplePairsPartition
 
   private final List<Partition> partitions = new java.util.Vector<Partition>();
 
+  /** built by the first search for a partition at a position */
+  private PartitionIndex index = null;
+
+  /** built by the first search for a thread at a position */
+  private ThreadIndex threadIndex = null;
+
+  /** distance in diagram units for {@link #getThreadAt(int, int)} */
+  public static final double THREAD_TOLERANCE = 3;
+
   public List<Partition> getPartitions()
   {
     return partitions;
   }
 
+  /**
+   * Should be called after replacing, adding or removing elements of
+   * {@link #getPartitions()} of a partition that was searched with
+   * {@link #getPartitionAt(int, int)}, {@link #getThreadAt(double, double, double)}
+   * or asked for {@link #getBounds2D()}.
+   */
+  public void partitionsChanged()
+  {
+    index = null;
+    threadIndex = null;
+    geometryChanged();
+  }
+
   public Bounds<ThreadSegment> getBounds()
   {
     return super.getBounds();
   }
 
+  @Override
+  void geometryChanged()
+  {
+    super.geometryChanged();
+    if (pairConnectors != null) pairConnectors.dropBounds();
+  }
+
+  Rectangle2D createBounds2D()
+  {
+    Rectangle2D box = super.createBounds2D();
+    if (pairConnectors != null) {
+      box = Bounds.union( box, pairConnectors.getBounds().getBox() );
+    }
+    for (final Partition partition : partitions) {
+      box = Bounds.union( box, partition.getBounds2D() );
+    }
+    return box;
+  }
+
   /**
    * Searches for a <code>Cross</code> or <code>Twist</code> with the
    * coordinates within its bounds. Zooms in on diagram sections as long as the
@@ -72,28 +114,46 @@ public abstract class MultiplePairsPartition
       final int y)
   {
     if (getBounds() != null && !getBounds().contains( x, y )) return null;
-    for (final Partition partition : getPartitions()) {
-      if (partition.isVisible()) {
-        if (partition.getBounds().contains( x, y )) {
-          if (partition instanceof Switch) return (Switch) partition;
-          return ((MultiplePairsPartition) partition).getPartitionAt( x, y );
-        }
-      }
-    }
-    return this;
+    if (index == null) index = new PartitionIndex( getPartitions() );
+    final Partition partition = index.getPartitionAt( x, y );
+    if (partition == null) return this;
+    if (partition instanceof Switch) return (Switch) partition;
+    return ((MultiplePairsPartition) partition).getPartitionAt( x, y );
   }
 
+  /**
+   * Searches for the thread nearest to a position, within
+   * {@link #THREAD_TOLERANCE}.
+   * 
+   * @see #getThreadAt(double, double, double)
+   */
   public ThreadSegment getThreadAt(
       final int x,
       final int y)
   {
-    final Switch s = (Switch) getSwitchAt( x, y );
-    if (s != null) {
-      return s.getFronts()[0];
-    } else {
-      return null;
-    }
+    return getThreadAt( x, y, THREAD_TOLERANCE );
+  }
 
+  /**
+   * Searches for the thread segment with its curve nearest to a position.
+   * Candidates are looked up in a grid, so the search is fast enough to
+   * follow the mouse.
+   * 
+   * @param x
+   *          position along the x-axis
+   * @param y
+   *          position along the y-axis
+   * @param tolerance
+   *          maximum distance between the position and the thread
+   * @return null or the nearest segment of a visible switch or knot
+   */
+  public ThreadSegment getThreadAt(
+      final double x,
+      final double y,
+      final double tolerance)
+  {
+    if (threadIndex == null) threadIndex = new ThreadIndex( this );
+    return threadIndex.getThreadAt( x, y, tolerance );
   }
 
   /** Range of pairs of the parent used in this Group/Stitch. */
@@ -110,6 +170,11 @@ public abstract class MultiplePairsPartition
     this.title = title;
   }
   
+  String getTitle()
+  {
+    return title;
+  }
+
   Range getPairRange()
   {
     return pairRange;
@@ -132,9 +197,21 @@ public abstract class MultiplePairsPartition
     this.pairConnectors = pairEnds;
   }
 
+  /** Combines the lists of the children, see {@link #threadIterator()}. */
+  DisplayList createDisplayList(
+      final boolean threads)
+  {
+    final DisplayList[] lists = new DisplayList[partitions.size()];
+    for (int i = 0; i < lists.length; i++) {
+      final Partition partition = partitions.get( i );
+      lists[i] = threads ? partition.getThreadList() : partition.getPairList();
+    }
+    return new DisplayList( this, lists );
+  }
+
   Iterator<Drawable> threadIterator()
   {
-    if (!isVisible()) return new Vector<Drawable>().iterator();
+    if (!isVisible()) return Collections.<Drawable> emptyList().iterator();
     return new It( partitions.iterator() )
     {
       void nextSibling()
@@ -146,7 +223,7 @@ public abstract class MultiplePairsPartition
 
   Iterator<Drawable> pairIterator()
   {
-    if (!isVisible()) return new Vector<Drawable>().iterator();
+    if (!isVisible()) return Collections.<Drawable> emptyList().iterator();
     return new It( partitions.iterator() )
     {
       void nextSibling()
@@ -158,7 +235,7 @@ public abstract class MultiplePairsPartition
 
   Iterator<Drawable> pinIterator()
   {
-    if (!isVisible()) return new Vector<Drawable>().iterator();
+    if (!isVisible()) return Collections.<Drawable> emptyList().iterator();
     return new It( partitions.iterator() )
     {
       void nextSibling()
@@ -181,7 +258,7 @@ public abstract class MultiplePairsPartition
       if (siblings.hasNext()) {
         nextSibling();
       } else {
-        current = new Vector<Drawable>().iterator();
+        current = Collections.<Drawable> emptyList().iterator();
       }
     }
 
@@ -18,6 +18,7 @@
 
 package nl.BobbinWork.diagram.model;
 
+import java.awt.geom.Rectangle2D;
 import java.util.List;
 
 
@@ -49,12 +50,23 @@ public abstract class MultipleThreadsPartition extends Partition {
         this.threadConnectors = threadConnectors;
     }
 
+    @Override
+    void geometryChanged() {
+        super.geometryChanged();
+        if (threadConnectors!=null) threadConnectors.dropBounds();
+    }
+
     public Bounds<ThreadSegment> getBounds(){
         if (threadConnectors==null) return null;
         return threadConnectors.getBounds();
         
     }
     
+    Rectangle2D createBounds2D() {
+        if (threadConnectors==null) return null;
+        return Bounds.union( null, threadConnectors.getBounds().getBox() );
+    }
+    
     public int getNrOfPairs() {
         if (threadConnectors==null)return 0;
         final List<ThreadSegment> ins = threadConnectors.getIns();
@@ -23,6 +23,8 @@ import java.awt.geom.CubicCurve2D;
 import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
 
+import nl.BobbinWork.diagram.math.ArcLength;
+
 /**
  * A line segment representing a pair of threads.
  * 
@@ -68,54 +70,108 @@ public class PairSegment extends Segment {
     	this.twistMarkLength = twistMarkLength;
     }
     
+	int getTwistMarkLength () {
+		return twistMarkLength;
+	}
+
 	public boolean hasTwistMark () {
 		return twistMarkLength > 0;
     	
     }
+	/**
+	 * Where {@link #getTwistMark()} places the marks: false for the estimate
+	 * of {@link #createTwistMark(CubicCurve2D, int, double)}, true for half
+	 * the length of the segment. Affects display lists compiled afterwards.
+	 */
+	public static void setTwistMarksAtHalfLength (boolean atHalfLength) {
+		twistMarksAtHalfLength = atHalfLength;
+	}
+
+	private static volatile boolean twistMarksAtHalfLength = false;
+
+	/** created when asked for, dropped when a point changes */
+	private Line2D estimatedTwistMark;
+	private Line2D halfLengthTwistMark;
+
+	@Override
+	void pointsChanged() {
+		estimatedTwistMark = null;
+		halfLengthTwistMark = null;
+	}
+
+	/**
+	 * @return the twist mark, computed once until a point of the segment
+	 *         changes
+	 */
     public Shape getTwistMark () {
-    	return createTwistMark(getCurve(),twistMarkLength, DEFAULT_CORRECTION);
+    	if (twistMarksAtHalfLength) {
+    		if (halfLengthTwistMark == null) {
+    			final CubicCurve2D curve = getCurve();
+    			halfLengthTwistMark = twistMarkAt(curve, twistMarkLength,
+    					ArcLength.parameterAt(curve, 0.5));
+    		}
+    		return halfLengthTwistMark;
+    	}
+    	if (estimatedTwistMark == null) {
+    		estimatedTwistMark = createTwistMark(getCurve(),twistMarkLength, DEFAULT_CORRECTION);
+    	}
+    	return estimatedTwistMark;
     }
 
 	protected static Line2D createTwistMark(CubicCurve2D curve, int length, double correction) {
 	
 	    // http://code.google.com/p/bobbinwork/wiki/MathSolutions#Twist_marks
 	
-		Point2D start = curve.getP1();
-	    Point2D c1 = curve.getCtrlP1();
-	    Point2D c2 = curve.getCtrlP2();
-	    Point2D end = curve.getP2();
-	
-	    // approximation to divide the curve in more or less equal lengths
-	    // TODO optimize somehow
-	    double s = start.distance(c1) + start.distance(c2);
-	    double e = end.distance(c1) + end.distance(c2);
+	    // approximation to divide the curve in more or less equal lengths,
+	    // see ArcLength.parameterAt for the exact division
+	    double s = curve.getP1().distance(curve.getCtrlP1()) + curve.getP1().distance(curve.getCtrlP2());
+	    double e = curve.getP2().distance(curve.getCtrlP1()) + curve.getP2().distance(curve.getCtrlP2());
 	    double t = (e / (e+s)) * (1-2*correction) + correction;
-	    
-	    // applying Casteljau
-	    Point2D a = pointBetween(start, c1, t);
-	    Point2D b = pointBetween(c1, c2, t);
-	    Point2D c = pointBetween(c2, end, t);
-	    Point2D p = pointBetween(a, b, t);
-	    Point2D q = pointBetween(b, c, t);
-	    Point2D z = pointBetween(p, q, t);
+	    return twistMarkAt(curve, length, t);
+	}
+
+	/**
+	 * @param t
+	 *            the parameter of the curve where the mark crosses it
+	 */
+	static Line2D twistMarkAt(CubicCurve2D curve, int length, double t) {
+	
+	    // applying Casteljau on the coordinates
+	    double ax = between(curve.getX1(), curve.getCtrlX1(), t);
+	    double ay = between(curve.getY1(), curve.getCtrlY1(), t);
+	    double bx = between(curve.getCtrlX1(), curve.getCtrlX2(), t);
+	    double by = between(curve.getCtrlY1(), curve.getCtrlY2(), t);
+	    double cx = between(curve.getCtrlX2(), curve.getX2(), t);
+	    double cy = between(curve.getCtrlY2(), curve.getY2(), t);
+	    double px = between(ax, bx, t);
+	    double py = between(ay, by, t);
+	    double qx = between(bx, cx, t);
+	    double qy = between(by, cy, t);
+	    double zx = between(px, qx, t);
+	    double zy = between(py, qy, t);
 	
-	    double dx = z.getX() - p.getX();
-	    double dy = z.getY() - p.getY();
+	    double dx = zx - px;
+	    double dy = zy - py;
 	    if ( dx==0 && dy == 0 ) {
 	    	// TODO t was 0 or 1 (what should not happen)
 	    	// or c1=c2 and start=end (in which case nothing gets solved)
-	        dx = z.getX() - q.getX();
-	        dy = z.getY() - q.getY();
+	        dx = zx - qx;
+	        dy = zy - qy;
 	    }
 	    double scale = ((double)length) / (Math.hypot(dx, dy) * 2.0);
 	    dx *= scale;
 	    dy *= scale;
 	
 	    return new Line2D.Double(//
-	              z.getX() + dy, //
-	              z.getY() - dx, //
-	              z.getX() - dy, //
-	              z.getY() + dx);
+	              zx + dy, //
+	              zy - dx, //
+	              zx - dy, //
+	              zy + dx);
 	
 	}
+
+	/** @return the same as {@link Segment#pointBetween(Point2D, Point2D, double)} for one coordinate */
+	private static double between(double a, double b, double t) {
+		return (a * (1 - t)) + (b * t);
+	}
 }
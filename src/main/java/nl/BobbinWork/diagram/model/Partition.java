@@ -18,6 +18,7 @@
 package nl.BobbinWork.diagram.model;
 
 import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
 import java.net.URL;
 import java.util.*;
 
@@ -45,6 +46,76 @@ public abstract class Partition {
      */
     public abstract Shape getBounds();
 
+  /** null if not yet computed or nothing is drawn */
+  private Rectangle2D bounds2D = null;
+  private boolean bounds2DComputed = false;
+
+  /**
+   * Gets the box around everything drawn for the partition, whether visible or
+   * not. Computed on the first call, merged from the boxes of the children.
+   * 
+   * @return null if nothing is drawn, otherwise an instance shared by all
+   *         callers that should not be changed
+   */
+  public Rectangle2D getBounds2D()
+  {
+    if (!bounds2DComputed) {
+      bounds2D = createBounds2D();
+      bounds2DComputed = true;
+    }
+    return bounds2D;
+  }
+
+  /** @return true if {@link #getBounds2D()} is cached */
+  boolean isBounds2DComputed()
+  {
+    return bounds2DComputed;
+  }
+
+  /** @return null or a new box for {@link #getBounds2D()} */
+  abstract Rectangle2D createBounds2D();
+
+  /**
+   * Drops the box computed by {@link #getBounds2D()}, the bounds of the
+   * connectors and the compiled display lists.
+   */
+  void geometryChanged()
+  {
+    bounds2D = null;
+    bounds2DComputed = false;
+    threadList = null;
+    pairList = null;
+  }
+
+  /** compiled on the first call of the getters */
+  private DisplayList threadList = null;
+  private DisplayList pairList = null;
+
+  /** @return the drawables of {@link #getThreads()} compiled for painting */
+  public DisplayList getThreadList()
+  {
+    if (threadList == null) threadList = createDisplayList( true );
+    return threadList;
+  }
+
+  /** @return the drawables of {@link #getPairs()} compiled for painting */
+  public DisplayList getPairList()
+  {
+    if (pairList == null) pairList = createDisplayList( false );
+    return pairList;
+  }
+
+  /**
+   * @param threads
+   *          true for the threads, false for the pairs
+   * @return a new display list
+   */
+  DisplayList createDisplayList(
+      final boolean threads)
+  {
+    return new DisplayList( this, threads ? threadIterator() : pairIterator() );
+  }
+
 	public void setVisible(boolean visible) {
 		this.visible = visible;
 	}
@@ -57,39 +128,36 @@ public abstract class Partition {
 	
 	abstract Iterator<Drawable> pairIterator ();
 	public Iterable<Drawable> getPairs() {
-		return pairs;
-	}
-	private final Iterable<Drawable> threads = new Drawables () {
+		return new Drawables () {
 
-		public Iterator<Drawable> iterator() {
-			return threadIterator();
-		}
-		
-	};
+			public Iterator<Drawable> iterator() {
+				return pairIterator();
+			}
+
+		};
+	}
 
 	abstract Iterator<Drawable> threadIterator ();
 	public Iterable<Drawable> getThreads() {
-		return threads;
+		return new Drawables () {
+
+			public Iterator<Drawable> iterator() {
+				return threadIterator();
+			}
+
+		};
 	}
-	private final Iterable<Drawable> pairs = new Drawables () {
-		
-		public Iterator<Drawable> iterator() {
-			return pairIterator();
-		}
-		
-	};
 
 	abstract Iterator<Drawable> pinIterator ();
 	public Iterable<Drawable> getPins() {
-		return pins;
+		return new Drawables () {
+
+			public Iterator<Drawable> iterator() {
+				return pinIterator();
+			}
+
+		};
 	}
-	private final Iterable<Drawable> pins = new Drawables () {
-		
-		public Iterator<Drawable> iterator() {
-			return pinIterator();
-		}
-		
-	};
 
   public abstract String getCaption();
 
@@ -132,6 +200,11 @@ public abstract class Partition {
   {
     return sourceObject;
   }
+
+  String getId()
+  {
+    return id;
+  }
   
   public ThreadStyle[] getThreadStyles()
   {
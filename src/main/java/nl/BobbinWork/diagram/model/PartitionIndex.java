@@ -0,0 +1,135 @@
+/* PartitionIndex.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.model;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.util.List;
+
+/**
+ * A uniform grid over the bounding boxes of the partitions of a
+ * {@link MultiplePairsPartition}. A cell lists the partitions that overlap it
+ * in the order of the list, so a search finds the same partition as a scan
+ * through the whole list, without testing the bounds of the others.
+ * <p>
+ * Visibility is tested while searching, it may change after the index is
+ * built. The bounds of the partitions should not change.
+ *
+ * @author J. Pol
+ */
+final class PartitionIndex
+{
+  private final Partition[] partitions;
+  private final Shape[] bounds;
+
+  private final int minX;
+  private final int minY;
+  private final int cellSize;
+  private final int columns;
+  private final int rows;
+
+  /** per cell the positions in the list of the partitions overlapping it */
+  private final int[][] cells;
+
+  private static final int[] NONE = new int[0];
+
+  PartitionIndex(final List<Partition> list)
+  {
+    partitions = list.toArray( new Partition[list.size()] );
+    bounds = new Shape[partitions.length];
+    final Rectangle[] boxes = new Rectangle[partitions.length];
+    Rectangle all = null;
+    for (int i = 0; i < partitions.length; i++) {
+      bounds[i] = partitions[i].getBounds();
+      if (bounds[i] == null) continue;
+      final Rectangle box = bounds[i].getBounds();
+      if (box.isEmpty()) continue; // contains nothing
+      boxes[i] = box;
+      if (all == null) all = new Rectangle( box );
+      else all.add( box );
+    }
+    if (all == null) all = new Rectangle();
+    minX = all.x;
+    minY = all.y;
+
+    // about one cell per partition
+    final double area = Math.max( 1.0, (double) all.width * all.height );
+    cellSize =
+        Math.max( 1, (int) Math.ceil( Math.sqrt( area
+            / Math.max( 1, partitions.length ) ) ) );
+    columns = all.width / cellSize + 1;
+    rows = all.height / cellSize + 1;
+
+    final int[] counts = new int[columns * rows];
+    for (final Rectangle box : boxes) {
+      if (box == null) continue;
+      for (int r = row( box.y ); r <= row( box.y + box.height ); r++) {
+        for (int c = column( box.x ); c <= column( box.x + box.width ); c++) {
+          counts[r * columns + c]++;
+        }
+      }
+    }
+    cells = new int[counts.length][];
+    for (int i = 0; i < counts.length; i++) {
+      cells[i] = counts[i] == 0 ? NONE : new int[counts[i]];
+      counts[i] = 0;
+    }
+    for (int i = 0; i < boxes.length; i++) {
+      final Rectangle box = boxes[i];
+      if (box == null) continue;
+      for (int r = row( box.y ); r <= row( box.y + box.height ); r++) {
+        for (int c = column( box.x ); c <= column( box.x + box.width ); c++) {
+          final int cell = r * columns + c;
+          cells[cell][counts[cell]++] = i;
+        }
+      }
+    }
+  }
+
+  private int column(
+      final int x)
+  {
+    return (x - minX) / cellSize;
+  }
+
+  private int row(
+      final int y)
+  {
+    return (y - minY) / cellSize;
+  }
+
+  /**
+   * @return the first visible partition in the list with the position within
+   *         its bounds, null if none
+   */
+  Partition getPartitionAt(
+      final int x,
+      final int y)
+  {
+    if (x < minX || y < minY) return null;
+    final int c = column( x );
+    final int r = row( y );
+    if (c >= columns || r >= rows) return null;
+    for (final int i : cells[r * columns + c]) {
+      if (partitions[i].isVisible() && bounds[i].contains( x, y )) {
+        return partitions[i];
+      }
+    }
+    return null;
+  }
+}
@@ -21,6 +21,7 @@ package nl.BobbinWork.diagram.model;
 import java.awt.Polygon;
 import java.awt.Shape;
 import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
 import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -53,6 +54,10 @@ public class Pin extends Partition {
         return p;
     }
 
+    Rectangle2D createBounds2D() {
+        return new Rectangle2D.Double(position.x - DIAMETER, position.y - DIAMETER, RADIUS, RADIUS);
+    }
+
     public int getNrOfPairs() {
         return 0;
     }
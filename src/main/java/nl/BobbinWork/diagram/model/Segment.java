@@ -18,26 +18,33 @@
 
 package nl.BobbinWork.diagram.model;
 
+import static nl.BobbinWork.diagram.model.GeometryStore.*;
+
 import java.awt.Polygon;
 import java.awt.Shape;
 import java.awt.geom.CubicCurve2D;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 
 /**
  * A segment of a continuous line. From straight to S-shape. Subsequent segments
  * in a chain share their start and end point.
+ * <p>
+ * The points are kept in a block of a {@link GeometryStore}, the getters
+ * return copies.
  * 
  */
 public class Segment {
 
 	private static final double BOUNDS_PROXIMITY = 0.6;
-	private Point start;
-	private Point c1;
-	private Point c2;
-	private Point end;
+
+	/** start, c1, c2 and end, starting at the offset */
+	private final double[] points;
+	private final int offset;
 	private Segment previous = null;
 	private Segment next = null;
-	private Style style = new Style();
+	/** created when asked for, thread segments keep their style elsewhere */
+	private Style style = null;
 
 	/**
 	 * @param start
@@ -50,71 +57,116 @@ public class Segment {
 	 *            end point of the bezier curve
 	 */
     public Segment(Point start, Point c1, Point c2, Point end) {
-    	this.start = new Point(start);
-    	this.end = new Point(end);
+    	final GeometryStore store = GeometryStore.current();
+    	offset = store.allocate();
+    	points = store.block();
+    	set(START, start);
+    	set(END, end);
     	if (c1==null) {
-    		this.c1 = pointBetween(start, end, 1 / 3);
+    		set(C1, pointBetween(start, end, 1 / 3));
     	} else {
-    		this.c1 = new Point(c1);
+    		set(C1, c1);
     	}
     	if (c2==null) {
-    		this.c2 = pointBetween(end, start, 1 / 3);
+    		set(C2, pointBetween(end, start, 1 / 3));
     	} else {
-    		this.c2 = new Point(c2);
+    		set(C2, c2);
     	}
     }
+
+	private Point get(int point) {
+		return new Point(points[offset + point], points[offset + point + 1]);
+	}
+
+	private void set(int point, Point2D value) {
+		points[offset + point] = value.getX();
+		points[offset + point + 1] = value.getY();
+		pointsChanged();
+	}
+
+	/**
+	 * Called after a point changed, also while constructing. Subclasses drop
+	 * what they derived from the points.
+	 */
+	void pointsChanged() {
+	}
     
 	protected static Point pointBetween(Point2D a, Point2D b, double t) {
 	    return new Point((a.getX() * (1 - t)) + (b.getX() * t), (a.getY() * (1 - t)) + (b.getY() * t));
 	}
 
 	protected Point getStart() {
-	    return start;
+	    return get(START);
 	}
 
 	protected void setStart(Point start) {
-	    this.start.setLocation(start);
+	    set(START, start);
 	}
 
 	Point getC1() {
-	    return c1;
+	    return get(C1);
 	}
 
 	/** @return a point between start and C1 for tight bounds */
 	Point getC1c() {
-		return pointBetween(start, c1, BOUNDS_PROXIMITY);
+		return pointBetween(getStart(), getC1(), BOUNDS_PROXIMITY);
 	}
 	
 	void setC1(Point c1) {
-	    this.c1.setLocation(c1);
+	    set(C1, c1);
 	}
 
 	/** @return a point between end and C2 for tight bounds */
 	Point getC2c() {
-		return pointBetween(start, c1, 1f - BOUNDS_PROXIMITY);
+		return pointBetween(getStart(), getC1(), 1f - BOUNDS_PROXIMITY);
 	}
 	
 	Point getC2() {
-	    return c2;
+	    return get(C2);
 	}
 
 	void setC2(Point c2) {
-	    this.c2.setLocation(c2);
+	    set(C2, c2);
 	}
 
 	protected Point getEnd() {
-	    return end;
+	    return get(END);
 	}
 
 	protected void setEnd(Point end) {
-	    this.end.setLocation(end);
+	    set(END, end);
 	}
 
 	/** Gets the cubic bezier curve defining the shape of the segment. 
 	 * @return the curve defining the shape of the segment
 	 */
 	protected CubicCurve2D getCurve() {
-	    return new CubicCurve2D.Double(start.x, start.y, c1.x, c1.y, c2.x, c2.y, end.x, end.y);
+	    final CubicCurve2D curve = new CubicCurve2D.Double();
+	    curve.setCurve(points, offset);
+	    return curve;
+	}
+
+	/** Copies start, c1, c2 and end, in the order of {@link #getCurve()}. */
+	void copyPoints(double[] target, int targetOffset) {
+		System.arraycopy(points, offset, target, targetOffset, STRIDE);
+	}
+
+	/**
+	 * @return the box around the curve and its control points, the same as the
+	 *         bounds of {@link #getCurve()}
+	 */
+	Rectangle2D getBounds2D() {
+		double minX = points[offset];
+		double minY = points[offset + 1];
+		double maxX = minX;
+		double maxY = minY;
+		for (int i = offset + 2; i < offset + STRIDE; i += 2) {
+			minX = Math.min(minX, points[i]);
+			maxX = Math.max(maxX, points[i]);
+			minY = Math.min(minY, points[i + 1]);
+			maxY = Math.max(maxY, points[i + 1]);
+		}
+		return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
 	}
 
 	/**
@@ -124,6 +176,10 @@ public class Segment {
 	 * @return the shape containing the curve
 	 */
 	Shape getConvexHull() {
+	    final Point start = getStart();
+	    final Point c1 = getC1();
+	    final Point c2 = getC2();
+	    final Point end = getEnd();
 	    Shape //
 	    polygon = new Polygon( //
 	            new int[] { (int) start.x, (int) c1.x, (int) c2.x }, //
@@ -182,6 +238,7 @@ public class Segment {
 	 * @return the style of the segment
 	 */
 	public Style getStyle() {
+	    if (style == null) style = new Style();
 	    return style;
 	}
 
@@ -193,7 +250,7 @@ public class Segment {
 	void disconnectEnd() {
 	    // disconnect old connection
 	    if ((this.next != null) && (this.next.getPrevious() != null) && (this.next.getPrevious() != this)) {
-	        this.previous.setStart(new Point(this.end));
+	        this.previous.setStart(getEnd());
 	        this.previous.setPrevious(null);
 	    }
 	    this.next = null;
@@ -223,7 +280,7 @@ public class Segment {
 	 */
 	void setPrevious(Segment previous) {
 	    disconnectStart();
-	    setStart(pointBetween(previous.getEnd(), start, 0.5));
+	    setStart(pointBetween(previous.getEnd(), getStart(), 0.5));
 	    previous.setEnd(getStart());
 	    this.previous = previous;
 	}
@@ -239,7 +296,7 @@ public class Segment {
 	void setNext(Segment next) {
 	    if (next != null) {
 	        disconnectEnd();
-	        setEnd(pointBetween(next.getStart(), end, 0.5));
+	        setEnd(pointBetween(next.getStart(), getEnd(), 0.5));
 	        next.setStart(getEnd());
 	        next.previous = this;
 	    }
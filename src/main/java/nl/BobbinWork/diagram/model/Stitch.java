@@ -42,6 +42,11 @@ public class Stitch extends MultiplePairsPartition {
         }
 	}
 
+	/** A stitch is drawn by its own iterators, whether visible or not. */
+	final DisplayList createDisplayList(final boolean threads) {
+		return new DisplayList(this, threads ? threadIterator() : pairIterator());
+	}
+
 	final Iterator<Drawable> pairIterator () {
 		List<Drawable> list = new Vector<Drawable>(4);
 		for (PairSegment segment:this.getPairConnectors().getIns()){
@@ -70,6 +70,15 @@ public class Style {
         return new Color(color);
     }
 
+    /** @return the color as set, without the alpha added by {@link #getColor()} */
+    int getColorValue() {
+        return color;
+    }
+
+    void setColorValue(int color) {
+        this.color = color;
+    }
+
     /**
      * Sets the color of a pair segment, or the core or shadow color of a
      * thread.
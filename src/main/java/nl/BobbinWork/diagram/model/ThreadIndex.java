@@ -0,0 +1,260 @@
+/* ThreadIndex.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.model;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.BobbinWork.diagram.math.NearestPoint;
+
+/**
+ * A uniform grid over the bounding boxes of the thread segments of the
+ * switches and knots within a {@link MultiplePairsPartition}. A search tests
+ * the curves of the cells around the position, the candidates within the
+ * tolerance are ranked by their exact distance with {@link NearestPoint}.
+ * <p>
+ * Like {@link PartitionIndex} visibility is tested while searching. A segment
+ * is found if it is painted: when the groups between the indexed partition
+ * and the segment are visible, stitches and switches are painted regardless
+ * of their own visibility. The geometry of the segments should not change.
+ *
+ * @author J. Pol
+ */
+final class ThreadIndex
+{
+  private static final int STRIDE = NearestPoint.STRIDE;
+
+  private final ThreadSegment[] segments;
+
+  /** a copy of the control points of the segments */
+  private final double[] coords;
+
+  /** per segment: min x, min y, max x and max y of its control points */
+  private final double[] boxes;
+
+  /** the groups between the indexed partition and the segments */
+  private final Partition[] nodes;
+
+  /** per node the position of its parent in nodes, -1 for children of the root */
+  private final int[] parents;
+
+  /** per segment the position in nodes of the group containing it, -1 for the root */
+  private final int[] owners;
+
+  private final double minX;
+  private final double minY;
+  private final double cellSize;
+  private final int columns;
+  private final int rows;
+
+  /** per cell the positions of the segments overlapping it */
+  private final int[][] cells;
+
+  private static final int[] NONE = new int[0];
+
+  /** reused by searches, which are done on the event dispatch thread */
+  private int[] candidates = new int[16];
+  private final NearestPoint.Nearest nearest = new NearestPoint.Nearest();
+  private final Point2D.Double query = new Point2D.Double();
+
+  ThreadIndex(final MultiplePairsPartition root)
+  {
+    final List<ThreadSegment> segmentList = new ArrayList<ThreadSegment>();
+    final List<Integer> ownerList = new ArrayList<Integer>();
+    final List<Partition> nodeList = new ArrayList<Partition>();
+    final List<Integer> parentList = new ArrayList<Integer>();
+    collect( root, -1, segmentList, ownerList, nodeList, parentList );
+
+    segments = segmentList.toArray( new ThreadSegment[segmentList.size()] );
+    nodes = nodeList.toArray( new Partition[nodeList.size()] );
+    parents = toArray( parentList );
+    owners = toArray( ownerList );
+    coords = new double[segments.length * STRIDE];
+    boxes = new double[segments.length * 4];
+    double left = Double.POSITIVE_INFINITY, top = Double.POSITIVE_INFINITY;
+    double right = Double.NEGATIVE_INFINITY, bottom = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < segments.length; i++) {
+      segments[i].copyPoints( coords, i * STRIDE );
+      double x0 = coords[i * STRIDE], y0 = coords[i * STRIDE + 1];
+      double x1 = x0, y1 = y0;
+      for (int j = i * STRIDE + 2; j < (i + 1) * STRIDE; j += 2) {
+        x0 = Math.min( x0, coords[j] );
+        x1 = Math.max( x1, coords[j] );
+        y0 = Math.min( y0, coords[j + 1] );
+        y1 = Math.max( y1, coords[j + 1] );
+      }
+      boxes[i * 4] = x0;
+      boxes[i * 4 + 1] = y0;
+      boxes[i * 4 + 2] = x1;
+      boxes[i * 4 + 3] = y1;
+      left = Math.min( left, x0 );
+      top = Math.min( top, y0 );
+      right = Math.max( right, x1 );
+      bottom = Math.max( bottom, y1 );
+    }
+    if (segments.length == 0) {
+      left = top = right = bottom = 0;
+    }
+    minX = left;
+    minY = top;
+
+    // about one cell per segment
+    final double area = Math.max( 1.0, (right - left) * (bottom - top) );
+    cellSize = Math.max( 1.0, Math.sqrt( area / Math.max( 1, segments.length ) ) );
+    columns = (int) ((right - left) / cellSize) + 1;
+    rows = (int) ((bottom - top) / cellSize) + 1;
+
+    final int[] counts = new int[columns * rows];
+    for (int i = 0; i < segments.length; i++) {
+      for (int r = row( boxes[i * 4 + 1] ); r <= row( boxes[i * 4 + 3] ); r++) {
+        for (int c = column( boxes[i * 4] ); c <= column( boxes[i * 4 + 2] ); c++) {
+          counts[r * columns + c]++;
+        }
+      }
+    }
+    cells = new int[counts.length][];
+    for (int i = 0; i < counts.length; i++) {
+      cells[i] = counts[i] == 0 ? NONE : new int[counts[i]];
+      counts[i] = 0;
+    }
+    for (int i = 0; i < segments.length; i++) {
+      for (int r = row( boxes[i * 4 + 1] ); r <= row( boxes[i * 4 + 3] ); r++) {
+        for (int c = column( boxes[i * 4] ); c <= column( boxes[i * 4 + 2] ); c++) {
+          final int cell = r * columns + c;
+          cells[cell][counts[cell]++] = i;
+        }
+      }
+    }
+  }
+
+  private static void collect(
+      final MultiplePairsPartition parent,
+      final int parentNode,
+      final List<ThreadSegment> segments,
+      final List<Integer> owners,
+      final List<Partition> nodes,
+      final List<Integer> parents)
+  {
+    for (final Partition partition : parent.getPartitions()) {
+      if (partition instanceof Switch) {
+        add( ((Switch) partition).getBacks(), parentNode, segments, owners );
+        add( ((Switch) partition).getFronts(), parentNode, segments, owners );
+      } else if (partition instanceof Knot) {
+        add( ((Knot) partition).getBacks(), parentNode, segments, owners );
+        add( ((Knot) partition).getFronts(), parentNode, segments, owners );
+      } else if (partition instanceof Stitch) {
+        collect( (Stitch) partition, parentNode, segments, owners, nodes,
+            parents );
+      } else if (partition instanceof MultiplePairsPartition) {
+        final int node = nodes.size();
+        nodes.add( partition );
+        parents.add( parentNode );
+        collect( (MultiplePairsPartition) partition, node, segments, owners,
+            nodes, parents );
+      }
+    }
+  }
+
+  private static void add(
+      final ThreadSegment[] array,
+      final int node,
+      final List<ThreadSegment> segments,
+      final List<Integer> owners)
+  {
+    if (array == null) return;
+    for (final ThreadSegment segment : array) {
+      segments.add( segment );
+      owners.add( node );
+    }
+  }
+
+  private static int[] toArray(
+      final List<Integer> list)
+  {
+    final int[] array = new int[list.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = list.get( i );
+    }
+    return array;
+  }
+
+  private int column(
+      final double x)
+  {
+    return (int) ((x - minX) / cellSize);
+  }
+
+  private int row(
+      final double y)
+  {
+    return (int) ((y - minY) / cellSize);
+  }
+
+  private boolean isVisible(
+      final int segment)
+  {
+    for (int node = owners[segment]; node >= 0; node = parents[node]) {
+      if (!nodes[node].isVisible()) return false;
+    }
+    return true;
+  }
+
+  /**
+   * @param tolerance
+   *          maximum distance between the position and the curve of a segment
+   * @return the visible segment nearest to the position, null if none is
+   *         within the tolerance
+   */
+  ThreadSegment getThreadAt(
+      final double x,
+      final double y,
+      final double tolerance)
+  {
+    final int c0 = Math.max( 0, column( x - tolerance ) );
+    final int r0 = Math.max( 0, row( y - tolerance ) );
+    final int c1 = Math.min( columns - 1, column( x + tolerance ) );
+    final int r1 = Math.min( rows - 1, row( y + tolerance ) );
+    if (x + tolerance < minX || y + tolerance < minY) return null;
+    final double toleranceSq = tolerance * tolerance;
+    int count = 0;
+    for (int r = r0; r <= r1; r++) {
+      for (int c = c0; c <= c1; c++) {
+        for (final int i : cells[r * columns + c]) {
+          // a segment spanning several cells is tested in the first of them
+          if (c != Math.max( c0, column( boxes[i * 4] ) )
+              || r != Math.max( r0, row( boxes[i * 4 + 1] ) )) continue;
+          final double dx = Math.max( 0, Math.max( boxes[i * 4] - x, x - boxes[i * 4 + 2] ) );
+          final double dy = Math.max( 0, Math.max( boxes[i * 4 + 1] - y, y - boxes[i * 4 + 3] ) );
+          if (dx * dx + dy * dy > toleranceSq || !isVisible( i )) continue;
+          if (count == candidates.length) {
+            final int[] more = new int[count * 2];
+            System.arraycopy( candidates, 0, more, 0, count );
+            candidates = more;
+          }
+          candidates[count++] = i;
+        }
+      }
+    }
+    query.setLocation( x, y );
+    final double distanceSq =
+        NearestPoint.onCurves( coords, candidates, count, query, nearest );
+    if (distanceSq > toleranceSq) return null;
+    return segments[nearest.getIndex()];
+  }
+}
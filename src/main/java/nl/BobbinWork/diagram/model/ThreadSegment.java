@@ -20,7 +20,7 @@ package nl.BobbinWork.diagram.model;
 
 import java.awt.geom.CubicCurve2D;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.List;
 
 
 /**
@@ -30,11 +30,15 @@ import java.util.Iterator;
  * have different style instances. Segments in a single cross or switch stick
  * together like Siamese twins. Movements are also restricted by pins. When
  * connecting threads the downstream part gets the Style of the upstream part.
+ * The chain and its style are kept by a {@link LaceThread}.
  * 
  * @author J. Pol
  */
 public class ThreadSegment extends Segment {
 
+    /** not necessarily the representing thread, see {@link LaceThread#find()} */
+    private LaceThread thread;
+
     /** Creates an unconnected ThreadSegment with a default Style.
      *  
 	 * @param start
@@ -48,71 +52,78 @@ public class ThreadSegment extends Segment {
      */
     public ThreadSegment(Point start, Point c1, Point c2, Point end) {
         super(start, c1, c2, end);
-        setStyle((Style) new ThreadStyle());
+        thread = new LaceThread(this);
+    }
+
+    /** @return the thread this segment is part of */
+    public LaceThread getLaceThread() {
+        thread = thread.find();
+        return thread;
     }
 
+    void setLaceThread(LaceThread thread) {
+        this.thread = thread;
+    }
+
+    /** This segment and the following ones get a copy of the style. */
     void disconnectStart() {
 
-        ThreadStyle style = new ThreadStyle((ThreadStyle) getPrevious().getStyle());
+        final Segment previous = getPrevious();
         super.disconnectStart();
-
-        Segment segment = this;
-        while (null != segment) {
-            segment.setStyle(style);
-            segment = segment.getNext();
+        if (previous != null) {
+            ThreadStyle style = new ThreadStyle((ThreadStyle) previous.getStyle());
+            LaceThread.split(this, style);
         }
     }
 
+    /** The following segments keep sharing the style. */
     void disconnectEnd() {
 
         if (getPrevious() != null) {
-            ThreadStyle style = new ThreadStyle((ThreadStyle) getPrevious().getStyle());
+            final Segment next = getNext();
             super.disconnectEnd();
-
-            Segment segment = getNext();
-            while (null != segment) {
-                segment.setStyle(style);
-                segment = segment.getNext();
+            if (next != null) {
+                LaceThread.split((ThreadSegment) next, getStyle());
             }
         }
     }
 
+	/** @return the curves of all segments of the thread, in no particular order */
 	public Iterable<CubicCurve2D> getThread () {
 		
-		final ArrayList<CubicCurve2D> list = new ArrayList<CubicCurve2D>();
-		
-		Segment curve = this;
-		do { list.add(curve.getCurve()); } while (null!=(curve=curve.getNext()));
-		curve = this.getPrevious();
-		if (curve != null)
-		  do { list.add(curve.getCurve()); } while (null!=(curve=curve.getPrevious()));
-		
-		return new Iterable<CubicCurve2D> () {
-
-			public Iterator<CubicCurve2D> iterator() {
-				return list.iterator();
-			}
-		};
+		final List<ThreadSegment> segments = getLaceThread().getSegments();
+		final List<CubicCurve2D> list = new ArrayList<CubicCurve2D>(segments.size());
+		for (ThreadSegment segment : segments) {
+			list.add(segment.getCurve());
+		}
+		return list;
 	}
     
     void setNext(Segment next) {
+        final Segment previous = next == null ? null : next.getPrevious();
+        if (previous != null && previous != this) {
+            // the old upstream part keeps its thread
+            LaceThread.split((ThreadSegment) next, getStyle());
+        }
         super.setNext(next);
-        while (next != null) {
-            next.setStyle(getStyle());
-            next = next.getNext();
+        if (next != null) {
+            LaceThread.unite(this, (ThreadSegment) next, getStyle());
         }
     }
 
     void setPrevious(Segment previous) {
         super.setPrevious(previous);
-        while (previous != null) {
-            previous.setStyle(getStyle());
-            previous = previous.getNext();
-        }
+        LaceThread.unite((ThreadSegment) previous, this, getStyle());
     }
 
+    /** @return the style shared by all segments of the thread */
     public ThreadStyle getStyle() {
-        return (ThreadStyle) super.getStyle();
+        return getLaceThread().getStyle();
+    }
+
+    /** Sets the style of all segments of the thread. */
+    public void setStyle(Style style) {
+        getLaceThread().setStyle((ThreadStyle) style);
     }
 
 }
@@ -0,0 +1,266 @@
+/* AttributeScanner.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.xml;
+
+/**
+ * Reads the values of point and range attributes into primitive fields,
+ * without the substrings of <code>String.split</code> and the boxed numbers of
+ * <code>valueOf</code>. The accepted values are the same as with split and
+ * valueOf/decode: trailing separators are ignored, as are fields after the
+ * first two. Plain decimal numbers are converted by the scanner. Anything
+ * else, like an exponent out of range, too many digits or hexadecimal
+ * notation, is passed on to the methods of the Java library.
+ * <p>
+ * An instance keeps the results of the last scan, so each thread needs its
+ * own instance.
+ *
+ * @author J. Pol
+ */
+final class AttributeScanner
+{
+  /** exact powers of ten for the fast path of doubles */
+  private static final double[] POWERS = new double[23];
+  static {
+    POWERS[0] = 1;
+    for (int i = 1; i < POWERS.length; i++) {
+      POWERS[i] = POWERS[i - 1] * 10;
+    }
+  }
+
+  /** the number of decimal digits that always fits exactly in a double */
+  private static final int MAX_DIGITS = 15;
+
+  /** result of {@link #scanPoint(String)} */
+  double x, y;
+
+  /** result of {@link #scanRange(String)} or {@link #scanBobbins(String, int, int)} */
+  int first, last;
+
+  /**
+   * @param s
+   *          example: <code>2.3,5.6</code>
+   * @return false if s is not a valid point, otherwise {@link #x} and
+   *         {@link #y} are set
+   */
+  boolean scanPoint(
+      final String s)
+  {
+    final int end = trimEnd( s, 0, s.length(), ',' );
+    final int comma = indexOf( s, ',', 0, end );
+    if (comma < 0) return false;
+    final int next = indexOf( s, ',', comma + 1, end );
+    try {
+      x = parseDouble( s, 0, comma );
+      y = parseDouble( s, comma + 1, next < 0 ? end : next );
+    } catch (final NumberFormatException exception) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * @param s
+   *          example: <code>1-4</code> or <code>3</code>
+   * @return false if s is not a valid range, otherwise {@link #first} and
+   *         {@link #last} are set
+   */
+  boolean scanRange(
+      final String s)
+  {
+    final int end = trimEnd( s, 0, s.length(), '-' );
+    if (end == 0 && s.length() > 0) return false; // split returns no fields
+    final int dash = indexOf( s, '-', 0, end );
+    try {
+      if (dash < 0) {
+        first = last = parseInt( s, 0, end, false );
+      } else if (indexOf( s, '-', dash + 1, end ) < 0) {
+        first = parseInt( s, 0, dash, false );
+        last = parseInt( s, dash + 1, end, false );
+      } else {
+        return false;
+      }
+    } catch (final NumberFormatException exception) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Reads one range of a &lt;new_bobbins nrs="..."&gt; attribute, the numbers
+   * are decoded as with {@link Integer#decode(String)}.
+   *
+   * @param s
+   *          example: <code>1-3,7</code>
+   * @param from
+   *          start of the range within s
+   * @param to
+   *          end of the range within s, the position of a comma or the length
+   * @return false if the range is not valid, otherwise {@link #first} and
+   *         {@link #last} are set
+   */
+  boolean scanBobbins(
+      final String s,
+      final int from,
+      final int to)
+  {
+    final int end = trimEnd( s, from, to, '-' );
+    if (end == from && to > from) return false; // split returns no fields
+    final int dash = indexOf( s, '-', from, end );
+    try {
+      first = parseInt( s, from, dash < 0 ? end : dash, true );
+      if (dash < 0) {
+        last = first;
+      } else {
+        final int next = indexOf( s, '-', dash + 1, end );
+        last = parseInt( s, dash + 1, next < 0 ? end : next, true );
+      }
+    } catch (final NumberFormatException exception) {
+      return false;
+    }
+    return true;
+  }
+
+  /** @return the end without trailing separators, as dropped by split */
+  static int trimEnd(
+      final String s,
+      final int from,
+      final int to,
+      final char separator)
+  {
+    int end = to;
+    while (end > from && s.charAt( end - 1 ) == separator) {
+      end--;
+    }
+    return end;
+  }
+
+  /** @return -1 if not found */
+  static int indexOf(
+      final String s,
+      final char c,
+      final int from,
+      final int to)
+  {
+    for (int i = from; i < to; i++) {
+      if (s.charAt( i ) == c) return i;
+    }
+    return -1;
+  }
+
+  private static int parseInt(
+      final String s,
+      final int from,
+      final int to,
+      final boolean decode)
+  {
+    int i = from;
+    if (i < to && s.charAt( i ) == '+') i++;
+    final int digits = to - i;
+    boolean plain = digits > 0 && digits <= 9;
+    // decode reads a leading zero as octal
+    if (decode && digits > 1 && s.charAt( i ) == '0') plain = false;
+    int value = 0;
+    for (; plain && i < to; i++) {
+      final char c = s.charAt( i );
+      if (c < '0' || c > '9') plain = false;
+      else value = value * 10 + (c - '0');
+    }
+    if (plain) return value;
+    final String field = s.substring( from, to );
+    return decode ? Integer.decode( field ).intValue() : Integer.parseInt( field );
+  }
+
+  private static double parseDouble(
+      final String s,
+      final int from,
+      final int to)
+  {
+    // Double.valueOf trims like String.trim
+    int i = from;
+    int end = to;
+    while (i < end && s.charAt( i ) <= ' ') {
+      i++;
+    }
+    while (end > i && s.charAt( end - 1 ) <= ' ') {
+      end--;
+    }
+    final boolean negative = i < end && s.charAt( i ) == '-';
+    if (i < end && (negative || s.charAt( i ) == '+')) i++;
+
+    long mantissa = 0;
+    int significant = 0;
+    int exponent = 0;
+    int digits = 0;
+    boolean fast = true;
+    for (; i < end && s.charAt( i ) >= '0' && s.charAt( i ) <= '9'; i++) {
+      digits++;
+      final int d = s.charAt( i ) - '0';
+      if (significant < MAX_DIGITS) {
+        if (d != 0 || significant > 0) {
+          mantissa = mantissa * 10 + d;
+          significant++;
+        }
+      } else {
+        exponent++;
+        if (d != 0) fast = false;
+      }
+    }
+    if (i < end && s.charAt( i ) == '.') {
+      for (i++; i < end && s.charAt( i ) >= '0' && s.charAt( i ) <= '9'; i++) {
+        digits++;
+        final int d = s.charAt( i ) - '0';
+        if (significant < MAX_DIGITS) {
+          if (d != 0 || significant > 0) {
+            mantissa = mantissa * 10 + d;
+            significant++;
+          }
+          exponent--;
+        } else if (d != 0) {
+          fast = false;
+        }
+      }
+    }
+    if (digits == 0) fast = false;
+    if (fast && i < end && (s.charAt( i ) == 'e' || s.charAt( i ) == 'E')) {
+      i++;
+      final boolean negativeExponent = i < end && s.charAt( i ) == '-';
+      if (i < end && (negativeExponent || s.charAt( i ) == '+')) i++;
+      int e = 0;
+      final int start = i;
+      for (; i < end && s.charAt( i ) >= '0' && s.charAt( i ) <= '9'; i++) {
+        if (e < 1000) e = e * 10 + (s.charAt( i ) - '0');
+      }
+      if (i == start) fast = false;
+      exponent += negativeExponent ? -e : e;
+    }
+    if (fast && i == end) {
+      final double value;
+      if (mantissa == 0) {
+        value = 0;
+      } else if (exponent >= 0 && exponent < POWERS.length) {
+        value = mantissa * POWERS[exponent];
+      } else if (exponent < 0 && -exponent < POWERS.length) {
+        value = mantissa / POWERS[-exponent];
+      } else {
+        return Double.parseDouble( s.substring( from, to ) );
+      }
+      return negative ? -value : value;
+    }
+    return Double.parseDouble( s.substring( from, to ) );
+  }
+}
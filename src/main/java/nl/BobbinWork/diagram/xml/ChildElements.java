@@ -0,0 +1,86 @@
+/* ChildElements.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.xml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * The child elements of one element, grouped by tag name with a single pass
+ * over the children. Unlike <code>getElementsByTagName</code>, grandchildren
+ * are not included: the title of a nested group is not the title of its
+ * parent, and building nested groups doesn't scan a subtree once per level.
+ *
+ * @author J. Pol
+ */
+final class ChildElements
+{
+  private final List<Element> all = new ArrayList<Element>();
+  private final Map<String, List<Element>> byName =
+      new HashMap<String, List<Element>>();
+
+  ChildElements(final Element parent)
+  {
+    for //
+    (Node child = parent.getFirstChild() //
+    ; child != null //
+    ; child = child.getNextSibling()) //
+    {
+      if (child.getNodeType() == Node.ELEMENT_NODE) {
+        final Element element = (Element) child;
+        all.add( element );
+        List<Element> list = byName.get( element.getNodeName() );
+        if (list == null) {
+          list = new ArrayList<Element>( 2 );
+          byName.put( element.getNodeName(), list );
+        }
+        list.add( element );
+      }
+    }
+  }
+
+  /** @return all child elements in document order */
+  List<Element> getAll()
+  {
+    return all;
+  }
+
+  /** @return the child elements with the tag in document order, maybe empty */
+  List<Element> get(
+      final ElementType type)
+  {
+    final List<Element> list = byName.get( type.toString() );
+    if (list == null) return Collections.emptyList();
+    return list;
+  }
+
+  /** @return null if there is no child element with the tag */
+  Element getFirst(
+      final ElementType type)
+  {
+    final List<Element> list = byName.get( type.toString() );
+    if (list == null) return null;
+    return list.get( 0 );
+  }
+}
@@ -17,12 +17,19 @@
  */
 package nl.BobbinWork.diagram.xml;
 
-import static java.lang.Double.valueOf;
 import static nl.BobbinWork.diagram.xml.ElementType.*;
 
+import java.awt.geom.AffineTransform;
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Pattern;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
@@ -30,7 +37,9 @@ import javax.xml.xpath.XPathExpressionException;
 
 import nl.BobbinWork.bwlib.gui.Localizer;
 import nl.BobbinWork.diagram.model.*;
+import nl.BobbinWork.diagram.xml.expand.ElementIndex;
 import nl.BobbinWork.diagram.xml.expand.TreeExpander;
+import nl.BobbinWork.diagram.xml.expand.VectorTransformation;
 
 import org.w3c.dom.*;
 import org.xml.sax.SAXException;
@@ -38,106 +47,329 @@ import org.xml.sax.SAXException;
 public class DiagramBuilder
 {
 
-  private static final String SEPARATOR = ",";
-  private static final String RANGE_SEPARATOR = "-";
+  /** each thread building a diagram reuses its own scanner */
+  private static final ThreadLocal<AttributeScanner> SCANNER =
+      new ThreadLocal<AttributeScanner>()
+      {
+        @Override
+        protected AttributeScanner initialValue()
+        {
+          return new AttributeScanner();
+        }
+      };
   public static final String MODEL_TO_DOM = "model";
 
+  /**
+   * Builds partitions from the elements of the template of a &lt;copy&gt;
+   * element. The template is shared by all its copies, no clones are created.
+   */
+  private static final class Instance
+  {
+    /** for elements that are not part of a copy */
+    static final Instance NONE =
+        new Instance( null, false, false, null, null, null );
+
+    /** the copy element while building the root of its template, else null */
+    private final Element copy;
+
+    /** true for the root of a template and its offspring */
+    private final boolean copied;
+
+    /** true if the copy is not nested in another copy */
+    private final boolean editable;
+
+    /**
+     * the transformations of the copy composed with those of the enclosing
+     * copies, null if not copied
+     */
+    private final AffineTransform transform;
+
+    /**
+     * the range of a copy without copy element while building the root of its
+     * template, else null
+     */
+    private final String pairs;
+
+    /**
+     * the untransformed points of segment elements, shared by copies of a
+     * template generated by code, null if not generated
+     */
+    private final Map<Element, double[]> points;
+
+    private Instance(
+        final Element copy,
+        final boolean copied,
+        final boolean editable,
+        final AffineTransform transform,
+        final String pairs,
+        final Map<Element, double[]> points)
+    {
+      this.copy = copy;
+      this.copied = copied;
+      this.editable = editable;
+      this.transform = transform;
+      this.pairs = pairs;
+      this.points = points;
+    }
+
+    /**
+     * @param points
+     *          filled with the points read from the template, to be passed to
+     *          the next copy of the same template
+     * @return the instance for the root of a template copied by code
+     */
+    static Instance generated(
+        final String pairs,
+        final AffineTransform transform,
+        final Map<Element, double[]> points)
+    {
+      return new Instance( null, true, false, transform, pairs, points );
+    }
+
+    /** @return the instance for the template of a copy nested in this one */
+    Instance of(
+        final Element copy)
+    {
+      final AffineTransform composed =
+          VectorTransformation.compose( TreeExpander.getTransformations( copy ) );
+      if (transform != null) composed.preConcatenate( transform );
+      return new Instance( copy, true, !copied, composed, null, points );
+    }
+
+    /** @return the instance for the children of an element */
+    Instance offspring()
+    {
+      if (copy == null && pairs == null) return this;
+      return new Instance( null, copied, false, transform, null, points );
+    }
+
+    /**
+     * @return the value of the range attribute of the element, or the one of
+     *         the copy for the root of a template
+     */
+    String getRange(
+        final Element element)
+    {
+      final String tag = ElementType.getRangeAttribute( element.getNodeName() );
+      if (copy != null) {
+        final String copyTag = ElementType.getRangeAttribute( copy.getNodeName() );
+        if (copyTag == null) {
+          throw new RuntimeException( "id not allowed on <"
+              + copy.getNodeName() + " ...> id='" + copy.getAttribute( "of" )
+              + "'" );
+        }
+        if (copyTag.equals( tag )) return copy.getAttribute( copyTag );
+      }
+      if (pairs != null && AttributeType.pairs.toString().equals( tag )) {
+        return pairs;
+      }
+      return element.getAttribute( tag );
+    }
+
+    Point createPoint(
+        final String s)
+    {
+      final Point point = DiagramBuilder.createPoint( s );
+      if (transform != null) transform.transform( point, point );
+      return point;
+    }
+
+    /**
+     * @return start, c1, c2 and end of a segment element, NaN for an absent
+     *         control point
+     */
+    double[] getPoints(
+        final Element element)
+    {
+      double[] values = points == null ? null : points.get( element );
+      if (values == null) {
+        values = new double[8];
+        final String[] names = { "start", "c1", "c2", "end" };
+        for (int i = 0; i < names.length; i++) {
+          final String s = element.getAttribute( names[i] );
+          if (s == null || s.equals( "" )) {
+            if (i == 0 || i == 3) {
+              throw new IllegalArgumentException( "mandatory attribute "
+                  + names[i] + " is missing" );
+            }
+            values[i * 2] = values[i * 2 + 1] = Double.NaN;
+          } else {
+            final Point p = DiagramBuilder.createPoint( s );
+            values[i * 2] = p.x;
+            values[i * 2 + 1] = p.y;
+          }
+        }
+        if (points != null) points.put( element, values );
+      }
+      return values;
+    }
+
+    /** @return a transformed point of {@link #getPoints(Element)}, or null */
+    Point createPoint(
+        final double[] values,
+        final int i)
+    {
+      if (Double.isNaN( values[i * 2] )) return null;
+      final Point point = new Point( values[i * 2], values[i * 2 + 1] );
+      if (transform != null) transform.transform( point, point );
+      return point;
+    }
+
+    void register(
+        final Element element,
+        final Partition p)
+    {
+      if (!copied) {
+        DiagramBuilder.register( element, p );
+        return;
+      }
+      // offspring of copies can't be edited, as that would change all copies
+      final Element source = editable ? copy : null;
+      if (source != null) {
+        synchronized (source.getOwnerDocument()) {
+          source.setUserData( MODEL_TO_DOM, p, null );
+        }
+      }
+      p.setSourceObject( source, "" );
+      // like a clone of the template, the root loses its display attribute
+      if (copy == null && pairs == null && isHidden( element )) {
+        p.setVisible( false );
+      }
+    }
+  }
+
+  private static Element getTemplate(
+      final Element copy)
+  {
+    final String id = copy.getAttribute( "of" );
+    final Element template =
+        ElementIndex.of( copy.getOwnerDocument() ).getElementById( id );
+    if (template == null) {
+      throw new RuntimeException( "<copy of='" + id
+          + "' ...> refers to nonexistent <... id='" + id + "'>" );
+    }
+    return template;
+  }
+
   private static class ChainedPairsPartitionFactory
   {
-    private static final ThreadStyle DEFAULT_THREAD_STYLE = new ThreadStyle();
     final Element element;
+    final Instance instance;
     final List<Partition> parts = new Vector<Partition>();
     final Vector<ThreadStyle> bobbins = new Vector<ThreadStyle>();
     final String partitionTitle;
 
-    ChainedPairsPartitionFactory(final Element element)
+    /** child groups under construction, null for a sequential build */
+    private final List<ForkJoinTask<Partition>> forked;
+
+    ChainedPairsPartitionFactory(final Element element, final Instance instance)
+    {
+      this( element, instance, false );
+    }
+
+    /**
+     * @param parallel
+     *          true to build the child groups as fork/join tasks, requires a
+     *          thread of a {@link ForkJoinPool}
+     */
+    ChainedPairsPartitionFactory(
+        final Element element,
+        final Instance instance,
+        final boolean parallel)
     {
       this.element = element;
-      partitionTitle = getTitle( element );
-      for //
-      (Node child = element.getFirstChild() //
-      ; child != null //
-      ; child = child.getNextSibling()) //
-      {
-        if (child.getNodeType() == Node.ELEMENT_NODE) {
-          final ElementType childType =
-              ElementType.valueOf( child.getNodeName() );
-          final Element childElement = (Element) child;
-          switch (childType) {
-          case pin:
-            parts.add( DiagramBuilder.createPin( childElement ) );
-            break;
-          case group:
-            createGroup( childElement );
-            break;
-          case stitch:
-            try {
-              final MultiplePairsPartition part2 = createStitch( childElement );
-              register( childElement, part2 );
-              parts.add( part2 );
-            } catch (IllegalArgumentException exception) {
-              try {
-                throw new RuntimeException( exception
-                    + XmlResources.toXmlString( childElement ) );
-              } catch (TransformerException e) {
-                throw exception;
-              }
-            }
-            break;
-          case new_bobbins:
-            final ThreadStyle style = createThreadStyle( child.getFirstChild() );
-            final String ranges[] =
-                childElement.getAttribute( "nrs" ).split( "," );
-            for (final String range : ranges) {
-              final String[] nrs = range.split( "-" );
-              final int start;
-              final int end;
-              try {
-                start = parseRangeNr( nrs[0] );
-                end = (nrs.length > 1 ? parseRangeNr( nrs[1] ) : start);
-              } catch (final NumberFormatException e) {
-                throw new RuntimeException( "invalid number:\n<"
-                    + child.getNodeName() + " " + //
-                    child.getAttributes().getNamedItem( "nrs" ) + ">" );
-              }
-              int i = bobbins.size();
-              bobbins.setSize( Math.max( bobbins.size(), end + 1 ) );
-              for (; i < start; i++) {
-                bobbins.set( i, DEFAULT_THREAD_STYLE );
-              }
-              for (i = start; i <= end; i++) {
-                bobbins.set( i, style );
-              }
-            }
-            break;
+      this.instance = instance;
+      forked = parallel ? new ArrayList<ForkJoinTask<Partition>>() : null;
+      final ChildElements children = new ChildElements( element );
+      partitionTitle = getTitle( children );
+      for (final Element child : children.getAll()) {
+        add( child );
+      }
+      if (parallel) {
+        // the forked groups got a null place holder, fill in document order
+        final Iterator<ForkJoinTask<Partition>> tasks = forked.iterator();
+        for (int i = 0; i < parts.size(); i++) {
+          if (parts.get( i ) == null) parts.set( i, tasks.next().join() );
+        }
+      }
+    }
+
+    /** For a single child of the root element, see {@link #createPart(Element)}. */
+    private ChainedPairsPartitionFactory(final Element root)
+    {
+      this.element = root;
+      this.instance = Instance.NONE;
+      partitionTitle = null;
+      forked = null;
+    }
+
+    private void add(
+        final Element child)
+    {
+      if (child.hasAttribute( "of" )) {
+        add( getTemplate( child ), instance.offspring().of( child ) );
+      } else {
+        add( child, instance.offspring() );
+      }
+    }
 
-          default:
-            break;
+    private void add(
+        final Element childElement,
+        final Instance childInstance)
+    {
+      final ElementType childType =
+          ElementType.valueOf( childElement.getNodeName() );
+      switch (childType) {
+      case pin:
+        parts.add( DiagramBuilder.createPin( childElement, childInstance ) );
+        break;
+      case group:
+        if (forked == null) {
+          parts.add( createGroup( childElement, childInstance, false ) );
+        } else {
+          forked.add( new GroupTask( childElement, childInstance ).fork() );
+          parts.add( null );
+        }
+        break;
+      case stitch:
+        try {
+          parts.add( createStitch( childElement, childInstance ) );
+        } catch (IllegalArgumentException exception) {
+          try {
+            throw new RuntimeException( exception
+                + XmlResources.toXmlString( childElement ) );
+          } catch (TransformerException e) {
+            throw exception;
           }
         }
+        break;
+      case new_bobbins:
+        final ThreadStyle style =
+            createThreadStyle( childElement.getFirstChild() );
+        setBobbins( bobbins, style, childElement.getAttribute( "nrs" ) );
+        break;
+
+      default:
+        break;
       }
     }
 
-    private void createGroup(
-        final Element childElement)
+    private static Partition createGroup(
+        final Element childElement,
+        final Instance childInstance,
+        final boolean parallel)
     {
       ChainedPairsPartitionFactory factory =
-          new ChainedPairsPartitionFactory( childElement );
-      final Range pairRange = DiagramBuilder.createRange( factory.element );
+          new ChainedPairsPartitionFactory( childElement, childInstance,
+              parallel );
+      final Range pairRange = createRange( factory.element, childInstance );
       final MultiplePairsPartition part =
           new Group( pairRange, factory.parts, factory.bobbins,
               factory.partitionTitle );
-      register( childElement, part );
-      parts.add( part );
+      childInstance.register( childElement, part );
+      return part;
     }
 
-    private int parseRangeNr(
-        final String nr)
-    {
-      // lacemakers start counting with one,
-      // indexes with zero, so subtract one
-      return Integer.decode( nr ).intValue() - 1;
-    }
 
     private Diagram createDiagram()
     {
@@ -145,47 +377,221 @@ public class DiagramBuilder
     }
   }
 
-  private static Element getFirst(
-      final Element element,
-      final ElementType type)
+  /**
+   * Builds a group and, on the same pool, its nested groups. Sibling groups
+   * are independent until their parent connects them.
+   */
+  private static final class GroupTask
+      extends RecursiveTask<Partition>
   {
-    final NodeList titleList = element.getElementsByTagName( type.toString() );
-    if (titleList == null || titleList.getLength() <= 0) return null;
-    return ((Element) titleList.item( 0 ));
+    private static final long serialVersionUID = 1L;
+    private final Element element;
+    private final Instance instance;
+
+    GroupTask(final Element element, final Instance instance)
+    {
+      this.element = element;
+      this.instance = instance;
+    }
+
+    @Override
+    protected Partition compute()
+    {
+      return ChainedPairsPartitionFactory.createGroup( element, instance, true );
+    }
+  }
+
+  private static final ThreadStyle DEFAULT_THREAD_STYLE = new ThreadStyle();
+
+  /**
+   * Assigns a style to the bobbins listed by a &lt;new_bobbins&gt; element.
+   * 
+   * @param bobbins
+   *          styles by bobbin position, extended as far as needed
+   * @param style
+   *          the style for the listed bobbins
+   * @param nrs
+   *          value of the nrs attribute, example: <code>1-3,7</code>
+   */
+  static void setBobbins(
+      final Vector<ThreadStyle> bobbins,
+      final ThreadStyle style,
+      final String nrs)
+  {
+    final AttributeScanner scanner = SCANNER.get();
+    final int length = AttributeScanner.trimEnd( nrs, 0, nrs.length(), ',' );
+    // like split: no ranges at all for nothing but commas
+    for (int from = 0; from < length || nrs.length() == 0;) {
+      final int comma = AttributeScanner.indexOf( nrs, ',', from, length );
+      final int to = comma < 0 ? length : comma;
+      if (!scanner.scanBobbins( nrs, from, to )) {
+        throw new RuntimeException( "invalid number:\n<"
+            + ElementType.new_bobbins + " nrs=\"" + nrs + "\">" );
+      }
+      from = comma < 0 ? length + 1 : comma + 1;
+      // lacemakers start counting with one,
+      // indexes with zero, so subtract one
+      final int start = scanner.first - 1;
+      final int end = scanner.last - 1;
+      int i = bobbins.size();
+      bobbins.setSize( Math.max( bobbins.size(), end + 1 ) );
+      for (; i < start; i++) {
+        bobbins.set( i, DEFAULT_THREAD_STYLE );
+      }
+      for (i = start; i <= end; i++) {
+        bobbins.set( i, style );
+      }
+    }
   }
 
   private static String getTitle(
-      final Element element)
+      final ChildElements children)
   {
-    final Element t = getFirst( element, title );
+    final Element t = children.getFirst( title );
     if (t == null) return null;
     final String userLang = Localizer.getLanguage();
-    final NodeList list = t.getElementsByTagName( value.toString() );
-    if (list == null) return null;
-    int length = list.getLength();
-    if (length <= 0) return null;
+    final List<Element> list = new ChildElements( t ).get( value );
+    if (list.isEmpty()) return null;
     if (userLang != null) {
       // else JUnit test
-      for (int i = 0; i < length; i++) {
-        NamedNodeMap attributes = list.item( i ).getAttributes();
-        if (attributes.getNamedItem( AttributeType.lang.toString() )
-            .getTextContent().matches( userLang )) {
-          return list.item( i ).getTextContent();
+      for (final Element v : list) {
+        if (v.getAttribute( AttributeType.lang.toString() ).matches( userLang )) {
+          return v.getTextContent();
         }
       }
     }
-    return list.item( 0 ).getTextContent();
+    return list.get( 0 ).getTextContent();
+  }
+
+  /**
+   * @param child
+   *          an element of the diagram, a copy is checked for its template
+   * @return true if the element results in a partition of its parent
+   */
+  static boolean isPart(
+      final Element child)
+  {
+    final Element element =
+        child.hasAttribute( "of" ) ? getTemplate( child ) : child;
+    switch (ElementType.valueOf( element.getNodeName() )) {
+    case pin:
+    case group:
+    case stitch:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /**
+   * Builds the partition for one child of the root element. The children of
+   * a {@link Diagram} are not connected to one another, so a child can be
+   * replaced without touching its siblings.
+   * 
+   * @param child
+   *          a child of the root element for which {@link #isPart(Element)}
+   *          is true
+   */
+  static Partition createPart(
+      final Element child)
+  {
+    final ChainedPairsPartitionFactory factory =
+        new ChainedPairsPartitionFactory( (Element) child.getParentNode() );
+    factory.add( child );
+    return factory.parts.get( 0 );
+  }
+
+  /**
+   * Builds a copy of a template as with a &lt;copy&gt; element, without
+   * creating that element. The copy can't be edited.
+   * 
+   * @param template
+   *          element with an id, for example a ground in the library
+   * @param pairs
+   *          range of the copy, example <code>3-6</code>
+   * @param transform
+   *          applied to all points of the template
+   * @param points
+   *          the same map for all copies of the template, it saves reading
+   *          the attributes of the segments again
+   */
+  static Partition createCopy(
+      final Element template,
+      final String pairs,
+      final AffineTransform transform,
+      final Map<Element, double[]> points)
+  {
+    final ChainedPairsPartitionFactory factory =
+        new ChainedPairsPartitionFactory( (Element) template.getParentNode() );
+    factory.add( template, Instance.generated( pairs, transform, points ) );
+    return factory.parts.get( 0 );
   }
 
   public static Diagram createDiagram(
       final Element element)
   {
     final Diagram diagram =
-        new ChainedPairsPartitionFactory( element ).createDiagram();
+        new ChainedPairsPartitionFactory( element, Instance.NONE )
+            .createDiagram();
+    DiagramBuilder.register( element, diagram );
+    return diagram;
+  }
+
+  /**
+   * Builds the same diagram as {@link #createDiagram(Element)}, sibling groups
+   * are built in parallel and connected in document order once all are done.
+   * 
+   * @param pool
+   *          for example <code>new ForkJoinPool()</code> for all processors
+   */
+  public static Diagram createDiagram(
+      final Element element,
+      final ForkJoinPool pool)
+  {
+    prepareForThreads( element );
+    final Diagram diagram = pool.invoke( new RecursiveTask<Diagram>()
+    {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected Diagram compute()
+      {
+        return new ChainedPairsPartitionFactory( element, Instance.NONE, true )
+            .createDiagram();
+      }
+    } );
     DiagramBuilder.register( element, diagram );
     return diagram;
   }
 
+  /**
+   * A DOM is not thread safe, not even for reading: a parser may create the
+   * nodes and attributes on first access. Visit all of them once, so the
+   * threads of a parallel build only read. The user data written while
+   * building is guarded by {@link #register(Element, Partition)}.
+   */
+  private static void prepareForThreads(
+      final Element root)
+  {
+    ElementIndex.of( root.getOwnerDocument() );
+    Node node = root;
+    while (node != null) {
+      final NamedNodeMap attributes = node.getAttributes();
+      if (attributes != null) {
+        for (int i = 0; i < attributes.getLength(); i++) {
+          attributes.item( i ).getNodeValue();
+        }
+      }
+      node.getNodeValue();
+      Node next = node.getFirstChild();
+      while (next == null && node != root) {
+        next = node.getNextSibling();
+        if (next == null) node = node.getParentNode();
+      }
+      node = next;
+    }
+  }
+
   public static Diagram createDiagramModel(
       final String xmlContent)
       throws IOException, SAXException, ParserConfigurationException,
@@ -199,16 +605,14 @@ public class DiagramBuilder
             + "><xi:include href='basicStitches.xml'/>" + xmlContent
             + "</diagram>";
     final Document parsed = new XmlResources().parse( s );
-    TreeExpander.replaceCopyElements( parsed.getDocumentElement() );
-    return new ChainedPairsPartitionFactory( parsed.getDocumentElement() )
-        .createDiagram();
+    return new ChainedPairsPartitionFactory( parsed.getDocumentElement(),
+        Instance.NONE ).createDiagram();
   }
 
   private static Diagram convert(
       final Document parsed) throws XPathExpressionException
   {
     final Element element = parsed.getDocumentElement();
-    TreeExpander.replaceCopyElements( element );
     final Diagram diagram = createDiagram( element );
     register( element, diagram );
     return diagram;
@@ -230,6 +634,32 @@ public class DiagramBuilder
     return convert( new XmlResources().parse( inputStream ) );
   }
 
+  /**
+   * Loads diagrams on the threads of an executor.
+   * 
+   * @return the diagrams in the same order as the URIs, a failure is thrown by
+   *         {@link Future#get()} as cause of an ExecutionException
+   * @see XmlResources#parse(ExecutorService, Collection)
+   */
+  public static List<Future<Diagram>> createDiagramModels(
+      final ExecutorService executor,
+      final Collection<URI> uris)
+  {
+    final List<Future<Diagram>> results =
+        new ArrayList<Future<Diagram>>( uris.size() );
+    for (final URI uri : uris) {
+      results.add( executor.submit( new Callable<Diagram>()
+      {
+        // @Override
+        public Diagram call() throws Exception
+        {
+          return createDiagramModel( uri );
+        }
+      } ) );
+    }
+    return results;
+  }
+
   private static class SwitchFactory
   {
 
@@ -237,13 +667,14 @@ public class DiagramBuilder
     private final ThreadSegment[] frontSegments;
     private final ThreadSegment[] backSegments;
 
-    SwitchFactory(final Element element)
+    SwitchFactory(final Element element, final Instance instance)
     {
-      range = createRange( element );
+      range = createRange( element, instance );
+      final ChildElements children = new ChildElements( element );
       frontSegments =
-          createThreadSegments( getMandatoryElement( element, front ) );
+          createThreadSegments( children.get( front ), instance.offspring() );
       backSegments =
-          createThreadSegments( getMandatoryElement( element, back ) );
+          createThreadSegments( children.get( back ), instance.offspring() );
     }
 
     Cross createCross()
@@ -269,9 +700,10 @@ public class DiagramBuilder
    * @return
    */
   private static Cross createCross(
-      final Element element)
+      final Element element,
+      final Instance instance)
   {
-    return new SwitchFactory( element ).createCross();
+    return new SwitchFactory( element, instance ).createCross();
   }
 
   /**
@@ -288,7 +720,14 @@ public class DiagramBuilder
   public static Twist createTwist(
       final Element element)
   {
-    return new SwitchFactory( element ).createTwist();
+    return createTwist( element, Instance.NONE );
+  }
+
+  private static Twist createTwist(
+      final Element element,
+      final Instance instance)
+  {
+    return new SwitchFactory( element, instance ).createTwist();
   }
 
   private static class SegmentFactory
@@ -297,36 +736,21 @@ public class DiagramBuilder
     private final Point start, c1, c2, end;
     private final Element element;
 
-    SegmentFactory(final Element element)
+    SegmentFactory(final Element element, final Instance instance)
     {
       this.element = element;
-      final String start = element.getAttribute( "start" );
-      final String end = element.getAttribute( "end" );
-      final String c1 = element.getAttribute( "c1" );
-      final String c2 = element.getAttribute( "c2" );
-      if ((start == null) || start.equals( "" ))
-        throw new IllegalArgumentException(
-            "mandatory attribute start is missing" );
-      if ((end == null) || end.equals( "" ))
-        throw new IllegalArgumentException(
-            "mandatory attribute end is missing" );
-      this.start = createPoint( start );
-      this.end = createPoint( end );
-      this.c1 = ((c1 == null) || c1.equals( "" ) ? null : createPoint( c1 ));
-      this.c2 = ((c2 == null) || c2.equals( "" ) ? null : createPoint( c2 ));
+      final double[] points = instance.getPoints( element );
+      this.start = instance.createPoint( points, 0 );
+      this.c1 = instance.createPoint( points, 1 );
+      this.c2 = instance.createPoint( points, 2 );
+      this.end = instance.createPoint( points, 3 );
     }
 
     PairSegment createPairSegment()
     {
-      int twistMarkLength = 0;
-      if (element.getAttributes().getNamedItem( "mark" ) != null) {
-        try {
-          twistMarkLength = Integer.parseInt( element.getAttribute( "mark" ) );
-        } catch (final NumberFormatException e) {
-          twistMarkLength = 9 * new Style().getWidth();
-        }
-      }
-      return new PairSegment( start, c1, c2, end, twistMarkLength );
+      final Node mark = element.getAttributes().getNamedItem( "mark" );
+      return new PairSegment( start, c1, c2, end, //
+          getTwistMarkLength( mark == null ? null : mark.getNodeValue() ) );
     }
 
     ThreadSegment createThreadSegment()
@@ -335,6 +759,23 @@ public class DiagramBuilder
     }
   }
 
+  /**
+   * @param mark
+   *          value of the mark attribute of a &lt;pair&gt; element, null if
+   *          absent
+   * @return zero if no twist mark should be drawn
+   */
+  static int getTwistMarkLength(
+      final String mark)
+  {
+    if (mark == null) return 0;
+    try {
+      return Integer.parseInt( mark );
+    } catch (final NumberFormatException e) {
+      return 9 * new Style().getWidth();
+    }
+  }
+
   /**
    * Creates a new instance(s) of ThreadSegment(s).
    * 
@@ -343,12 +784,13 @@ public class DiagramBuilder
    *          <code>&lt;back&nbsp;...&gt;</code>
    */
   private static ThreadSegment[] createThreadSegments(
-      final NodeList elements)
+      final List<Element> elements,
+      final Instance instance)
   {
-    ThreadSegment[] result = new ThreadSegment[elements.getLength()];
-    for (int i = 0; i < elements.getLength(); i++) {
-      Element item = (Element) elements.item( i );
-      result[i] = new SegmentFactory( item ).createThreadSegment();
+    ThreadSegment[] result = new ThreadSegment[elements.size()];
+    for (int i = 0; i < elements.size(); i++) {
+      result[i] =
+          new SegmentFactory( elements.get( i ), instance ).createThreadSegment();
     }
     return result;
   }
@@ -360,9 +802,10 @@ public class DiagramBuilder
    *          XML element, one of: <pair ...>, <back ...>, <front ...>
    */
   private static PairSegment createPairSegment(
-      final Element element)
+      final Element element,
+      final Instance instance)
   {
-    return new SegmentFactory( element ).createPairSegment();
+    return new SegmentFactory( element, instance ).createPairSegment();
   }
 
   /**
@@ -406,43 +849,51 @@ public class DiagramBuilder
   public static Stitch createStitch(
       final Element element)
   {
+    return createStitch( element, Instance.NONE );
+  }
 
-    final Range range = createRange( element );
+  private static Stitch createStitch(
+      final Element element,
+      final Instance instance)
+  {
+
+    final Range range = createRange( element, instance );
     Style style = new Style();
     final List<Pin> pins = new Vector<Pin>();
     final List<Switch> switches = new Vector<Switch>();
     final List<PairSegment> pairs = new Vector<PairSegment>( range.getCount() );
     int pairCountDown = range.getCount();
 
-    for //
-    (Node child = element.getFirstChild() //
-    ; child != null //
-    ; child = child.getNextSibling() //
-    ) {
-      if (child.getNodeType() == Node.ELEMENT_NODE) {
-        final ElementType childType = ElementType.valueOf( child.getNodeName() );
-        final Element childElement = (Element) child;
-        if (childType == ElementType.cross) {
-          final Cross cross = createCross( childElement );
-          register( childElement, cross );
-          switches.add( cross );
-        } else if (childType == ElementType.twist) {
-          final Twist twist = createTwist( childElement );
-          register( childElement, twist );
-          switches.add( twist );
-        } else if (childType == ElementType.pin) {
-          final Pin pin = createPin( childElement );
-          register( childElement, pin );
-          pins.add( pin );
-        } else if (childType == ElementType.style) {
-          style = createStyle( childElement );
-        } else if (childType == ElementType.pair) {
-          if (pairCountDown-- > 0) {
-            pairs.add( createPairSegment( childElement ) );
-          } else {
-            throw new IllegalArgumentException( "range allows only " + range.getCount()
-                + " pair elements" );
-          }
+    final ChildElements children = new ChildElements( element );
+    for (final Element child : children.getAll()) {
+      Element childElement = child;
+      Instance childInstance = instance.offspring();
+      if (childElement.hasAttribute( "of" )) {
+        childInstance = childInstance.of( childElement );
+        childElement = getTemplate( childElement );
+      }
+      final ElementType childType =
+          ElementType.valueOf( childElement.getNodeName() );
+      if (childType == ElementType.cross) {
+        final Cross cross = createCross( childElement, childInstance );
+        childInstance.register( childElement, cross );
+        switches.add( cross );
+      } else if (childType == ElementType.twist) {
+        final Twist twist = createTwist( childElement, childInstance );
+        childInstance.register( childElement, twist );
+        switches.add( twist );
+      } else if (childType == ElementType.pin) {
+        final Pin pin = createPin( childElement, childInstance );
+        childInstance.register( childElement, pin );
+        pins.add( pin );
+      } else if (childType == ElementType.style) {
+        style = createStyle( childElement );
+      } else if (childType == ElementType.pair) {
+        if (pairCountDown-- > 0) {
+          pairs.add( createPairSegment( childElement, childInstance ) );
+        } else {
+          throw new IllegalArgumentException( "range allows only " + range.getCount()
+              + " pair elements" );
         }
       }
     }
@@ -454,8 +905,8 @@ public class DiagramBuilder
       segment.setStyle( style );
     }
     final Stitch s =
-        new Stitch( range, pairs, switches, pins, getTitle( element ) );
-    register( element, s );
+        new Stitch( range, pairs, switches, pins, getTitle( children ) );
+    instance.register( element, s );
     return s;
   }
 
@@ -465,11 +916,12 @@ public class DiagramBuilder
    *          <code>&lt;pin position"<em>x,y</em>"&gt;</code>
    */
   private static Pin createPin(
-      final Element element)
+      final Element element,
+      final Instance instance)
   {
     final String attribute =
         element.getAttribute( AttributeType.position.toString() );
-    return new Pin( createPoint( attribute ) );
+    return new Pin( instance.createPoint( attribute ) );
   }
 
   /**
@@ -486,27 +938,31 @@ public class DiagramBuilder
    *          </ul>
    */
   private static Range createRange(
-      final Element element)
+      final Element element,
+      final Instance instance)
   {
-    final String tag = ElementType.getRangeAttribute( element.getNodeName() );
-    final String value = element.getAttribute( tag );
-    final int first;
-    final int last;
-    final String xy[] = value.split( RANGE_SEPARATOR );
-    try {
-      if (xy.length == 1) {
-        first = java.lang.Integer.valueOf( xy[0] ).intValue();
-        last = java.lang.Integer.valueOf( xy[0] ).intValue();
-      } else if (xy.length == 2) {
-        first = java.lang.Integer.valueOf( xy[0] ).intValue();
-        last = java.lang.Integer.valueOf( xy[1] ).intValue();
-      } else {
-        throw invalidRange( element.getNodeName(), tag, value );
-      }
-    } catch (final java.lang.NumberFormatException e) {
-      throw invalidRange( element.getNodeName(), tag, value );
+    return createRange( element.getNodeName(), instance.getRange( element ) );
+  }
+
+  /**
+   * Creates a new instance of Range.
+   * 
+   * @param elementTag
+   *          name of the element with the range, see
+   *          {@link #createRange(Element, Instance)}
+   * @param value
+   *          value of its pairs or bobbins attribute
+   */
+  static Range createRange(
+      final String elementTag,
+      final String value)
+  {
+    final AttributeScanner scanner = SCANNER.get();
+    if (!scanner.scanRange( value )) {
+      final String tag = ElementType.getRangeAttribute( elementTag );
+      throw invalidRange( elementTag, tag, value );
     }
-    return new Range( first, last );
+    return new Range( scanner.first, scanner.last );
   }
 
   private static RuntimeException invalidRange(
@@ -519,48 +975,45 @@ public class DiagramBuilder
         + attributeTag + "='" + value + "' ...>" );
   }
 
-  private static NodeList getMandatoryElement(
-      final Element element,
-      final ElementType tag)
-  {
-    final String tagString = tag.toString();
-    return element.getElementsByTagName( tagString );
-  }
-
   static void register(
       final Element element,
       final Partition p)
   {
-    element.setUserData( MODEL_TO_DOM, p, null );
-    Object orphan = element.getUserData( TreeExpander.CLONE_TO_ORPHAN );
-    if (orphan == null)
-      orphan = element.getUserData( TreeExpander.INDIRECT_CLONE_TO_ORPHAN );
+    Object orphan;
+    // the document keeps the user data of all its nodes in one map
+    synchronized (element.getOwnerDocument()) {
+      element.setUserData( MODEL_TO_DOM, p, null );
+      orphan = element.getUserData( TreeExpander.CLONE_TO_ORPHAN );
+      if (orphan == null)
+        orphan = element.getUserData( TreeExpander.INDIRECT_CLONE_TO_ORPHAN );
+    }
     String id = element.getAttribute( "id" );
     if (id == null || id.equals( "" )) id = element.getAttribute( "of" );
     p.setSourceObject( orphan == null ? element : orphan, id );
-    if (element.getAttribute( AttributeType.display.toString() ).matches(
-        "(no)|(No)|(NO)|(false)|(False)|(FALSE)" )) {
+    if (isHidden( element )) {
       p.setVisible( false );
     }
   }
 
+  private static final Pattern HIDDEN =
+      Pattern.compile( "(no)|(No)|(NO)|(false)|(False)|(FALSE)" );
+
+  private static boolean isHidden(
+      final Element element)
+  {
+    return HIDDEN.matcher(
+        element.getAttribute( AttributeType.display.toString() ) ).matches();
+  }
+
   public static Point createPoint(
       final String s)
   {
-
-    final String errorMessage =
-        "Example to specify a point [x,y]: [2.3,5.6] got: [" + s + "]";
-    final String xy[] = s.split( SEPARATOR );
-    if (xy.length < 2) {
-      throw new IllegalArgumentException( errorMessage );
-    }
-    try {
-      return new Point( //
-          valueOf( xy[0] ).doubleValue(),//
-          valueOf( xy[1] ).doubleValue() );
-    } catch (final NumberFormatException e) {
-      throw new IllegalArgumentException( errorMessage );
+    final AttributeScanner scanner = SCANNER.get();
+    if (!scanner.scanPoint( s )) {
+      throw new IllegalArgumentException(
+          "Example to specify a point [x,y]: [2.3,5.6] got: [" + s + "]" );
     }
+    return new Point( scanner.x, scanner.y );
   }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,353 @@
+/* DiagramCache.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPathExpressionException;
+
+import nl.BobbinWork.diagram.model.BinaryDiagram;
+import nl.BobbinWork.diagram.model.Diagram;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Keeps the diagrams built by {@link DiagramBuilder} as {@link BinaryDiagram}
+ * files. The name of a file is the SHA-1 of the {@link BinaryDiagram#VERSION},
+ * the XML content, basicStitches.xml and the documents it includes,
+ * recursively, so a changed diagram, library or format gets a new entry. Includes are found by a text search for include elements
+ * with an href attribute, not by parsing. A diagram loaded from the cache has
+ * no DOM tree attached and can't be edited.
+ * <p>
+ * When the files together exceed the maximum size, the least recently used
+ * ones are deleted. Loading a file counts as using it.
+ *
+ * @author J. Pol
+ */
+public class DiagramCache
+{
+  /** system property for the default directory of the cache */
+  public static final String CACHE_PATH = "bobbinwork.cache.path"; //$NON-NLS-1$
+
+  /** default for the maximum total size of the files in bytes */
+  public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+  private static final String EXTENSION = ".bwd"; //$NON-NLS-1$
+  private static final String LIBRARY = "basicStitches.xml"; //$NON-NLS-1$
+
+  /** an include element, group 3 is the value of the href attribute */
+  private static final Pattern INCLUDE = Pattern.compile(
+      "<(\\w+:)?include\\s[^>]*?href\\s*=\\s*(['\"])(.*?)\\2" ); //$NON-NLS-1$
+
+  private final File directory;
+  private final long maxSize;
+
+  /**
+   * Creates a cache in the directory specified by the system property
+   * {@value #CACHE_PATH}, by default a sub directory of java.io.tmpdir.
+   */
+  public DiagramCache()
+  {
+    this( new File( System.getProperty( CACHE_PATH, new File( System
+        .getProperty( "java.io.tmpdir" ), "bobbinwork-cache" ).getPath() ) ) );
+  }
+
+  public DiagramCache(final File directory)
+  {
+    this( directory, DEFAULT_MAX_SIZE );
+  }
+
+  /**
+   * @param maxSize
+   *          maximum total size of the files in bytes, the last stored file is
+   *          kept even if it is larger
+   */
+  public DiagramCache(final File directory, final long maxSize)
+  {
+    this.directory = directory;
+    this.maxSize = maxSize;
+  }
+
+  public Diagram createDiagramModel(
+      final URI uri)
+      throws IOException, SAXException, ParserConfigurationException,
+      XPathExpressionException, URISyntaxException
+  {
+    final byte[] content = readAll( uri.toURL().openStream() );
+    final File file = getFile( content, uri.toString() );
+    Diagram diagram = load( file );
+    if (diagram == null) {
+      diagram = DiagramBuilder.createDiagramModel( uri );
+      store( toBytes( diagram ), file );
+    }
+    return diagram;
+  }
+
+  public Diagram createDiagramModel(
+      final InputStream inputStream)
+      throws IOException, SAXException, ParserConfigurationException,
+      XPathExpressionException
+  {
+    final byte[] content = readAll( inputStream );
+    Diagram diagram = get( content );
+    if (diagram == null) {
+      diagram =
+          DiagramBuilder.createDiagramModel( new ByteArrayInputStream( content ) );
+      put( content, diagram );
+    }
+    return diagram;
+  }
+
+  /**
+   * @param content
+   *          XML content of a diagram
+   * @return the cached diagram, null if not cached or not readable
+   * @throws IOException
+   *           if basicStitches.xml can't be read
+   */
+  public Diagram get(
+      final byte[] content) throws IOException
+  {
+    return load( getFile( content, null ) );
+  }
+
+  /**
+   * @param content
+   *          XML content of a diagram
+   * @param diagram
+   *          the diagram built from the content
+   */
+  public void put(
+      final byte[] content,
+      final Diagram diagram) throws IOException
+  {
+    put( content, toBytes( diagram ) );
+  }
+
+  /**
+   * Stores a diagram converted on another thread, for example the one that
+   * may change the diagram while it is being stored.
+   * 
+   * @param content
+   *          XML content of a diagram
+   * @param binaryDiagram
+   *          the diagram built from the content, as written by
+   *          {@link BinaryDiagram#write}
+   */
+  public void put(
+      final byte[] content,
+      final byte[] binaryDiagram) throws IOException
+  {
+    store( binaryDiagram, getFile( content, null ) );
+  }
+
+  /** @return the diagram as written by {@link BinaryDiagram#write} */
+  public static byte[] toBytes(
+      final Diagram diagram) throws IOException
+  {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BinaryDiagram.write( diagram, bytes );
+    return bytes.toByteArray();
+  }
+
+  /** @return null if not cached or not readable */
+  private static Diagram load(
+      final File file)
+  {
+    if (!file.isFile()) return null;
+    file.setLastModified( System.currentTimeMillis() );
+    try {
+      final FileInputStream inputStream = new FileInputStream( file );
+      try {
+        final FileChannel channel = inputStream.getChannel();
+        return BinaryDiagram.read( channel.map( FileChannel.MapMode.READ_ONLY,
+            0, channel.size() ) );
+      } finally {
+        inputStream.close();
+      }
+    } catch (final IOException exception) {
+      // corrupt or concurrently written, will be replaced
+      return null;
+    } catch (final RuntimeException exception) {
+      // values that don't fit the constructors of the model
+      return null;
+    }
+  }
+
+  private void store(
+      final byte[] binaryDiagram,
+      final File file) throws IOException
+  {
+    directory.mkdirs();
+    // write under a temporary name, others should not read half a file
+    final File tmp = File.createTempFile( "diagram", ".tmp", directory );
+    try {
+      final OutputStream outputStream = new FileOutputStream( tmp );
+      try {
+        outputStream.write( binaryDiagram );
+      } finally {
+        outputStream.close();
+      }
+      file.delete();
+      if (!tmp.renameTo( file )) {
+        throw new IOException( "could not create " + file );
+      }
+    } finally {
+      tmp.delete();
+    }
+    evict( file );
+  }
+
+  /** Deletes the least recently used files until the rest fits. */
+  private void evict(
+      final File keep)
+  {
+    final File[] files = directory.listFiles( new FileFilter()
+    {
+      public boolean accept(
+          final File file)
+      {
+        return file.getName().endsWith( EXTENSION );
+      }
+    } );
+    if (files == null) return;
+    long size = 0;
+    // read once, others may use the files while sorting
+    final Map<File, Long> used = new HashMap<File, Long>();
+    for (final File file : files) {
+      size += file.length();
+      used.put( file, file.lastModified() );
+    }
+    if (size <= maxSize) return;
+    Arrays.sort( files, new Comparator<File>()
+    {
+      public int compare(
+          final File a,
+          final File b)
+      {
+        return used.get( a ).compareTo( used.get( b ) );
+      }
+    } );
+    for (int i = 0; i < files.length && size > maxSize; i++) {
+      final long length = files[i].length();
+      if (!files[i].equals( keep ) && files[i].delete()) size -= length;
+    }
+  }
+
+  /**
+   * @param systemId
+   *          location of the content, null if unknown
+   */
+  private File getFile(
+      final byte[] content,
+      final String systemId) throws IOException
+  {
+    final MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance( "SHA-1" ); //$NON-NLS-1$
+    } catch (final NoSuchAlgorithmException exception) {
+      throw new IOException( exception.toString() );
+    }
+    final int version = BinaryDiagram.VERSION;
+    digest.update( new byte[] { (byte) (version >>> 24),
+        (byte) (version >>> 16), (byte) (version >>> 8), (byte) version } );
+    final Set<String> done = new HashSet<String>();
+    update( digest, content, systemId, done );
+    final URL library = XmlResources.resolveInclude( LIBRARY, null );
+    if (done.add( library.toString() )) {
+      update( digest, readAll( library.openStream() ), library.toString(), done );
+    }
+    final StringBuilder name = new StringBuilder();
+    for (final byte b : digest.digest()) {
+      name.append( String.format( "%02x", b & 0xFF ) ); //$NON-NLS-1$
+    }
+    return new File( directory, name.append( EXTENSION ).toString() );
+  }
+
+  /**
+   * Adds the content and the documents it includes to the digest.
+   * 
+   * @param done
+   *          the URLs of the documents added so far
+   */
+  private static void update(
+      final MessageDigest digest,
+      final byte[] content,
+      final String systemId,
+      final Set<String> done) throws IOException
+  {
+    digest.update( content );
+    final Matcher matcher = INCLUDE.matcher( new String( content, "UTF-8" ) ); //$NON-NLS-1$
+    while (matcher.find()) {
+      final URL url;
+      try {
+        url = XmlResources.resolveInclude( matcher.group( 3 ), systemId );
+      } catch (final IOException exception) {
+        // building the diagram reports the missing include
+        continue;
+      }
+      if (done.add( url.toString() )) {
+        update( digest, readAll( url.openStream() ), url.toString(), done );
+      }
+    }
+  }
+
+  /**
+   * @param inputStream
+   *          closed when done
+   * @return all the bytes of the stream
+   */
+  public static byte[] readAll(
+      final InputStream inputStream) throws IOException
+  {
+    try {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final byte[] buffer = new byte[8192];
+      int n;
+      while ((n = inputStream.read( buffer )) > 0) {
+        bytes.write( buffer, 0, n );
+      }
+      return bytes.toByteArray();
+    } finally {
+      inputStream.close();
+    }
+  }
+}
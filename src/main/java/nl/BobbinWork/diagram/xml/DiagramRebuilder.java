@@ -16,7 +16,13 @@
  * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
  */package nl.BobbinWork.diagram.xml;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.xml.transform.TransformerException;
 import javax.xml.xpath.XPathExpressionException;
@@ -27,12 +33,12 @@ import nl.BobbinWork.diagram.model.Partition;
 import nl.BobbinWork.diagram.model.Style;
 import nl.BobbinWork.diagram.model.Switch;
 import nl.BobbinWork.diagram.model.ThreadStyle;
+import nl.BobbinWork.diagram.xml.expand.ElementIndex;
 import nl.BobbinWork.diagram.xml.expand.TreeExpander;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 public class DiagramRebuilder
 {
@@ -63,23 +69,41 @@ public class DiagramRebuilder
     return true;
   }
 
+  /**
+   * Removes the element of a partition from the document and rebuilds the
+   * affected children of the diagram.
+   * 
+   * @param selected
+   *          a diagram partition that will be deleted
+   * @return null if the partition has no element in a document
+   * @throws RuntimeException
+   *           if the diagram can't be rebuilt without the element, for example
+   *           a deleted template that is still copied. The document and the
+   *           diagram are left as they were.
+   */
   public static Diagram delete(
       final Partition selected)
   {
     final Element domElement = (Element) selected.getSourceObject();
     if (domElement == null) return null;
-    final Element original =
-        (Element) domElement.getUserData( TreeExpander.ORPHAN_TO_CLONE );
-    if (original != null) {
-      original.getParentNode().removeChild( original );
-    } else {
-      if (domElement.getParentNode() != null) {
-        domElement.getParentNode().removeChild( domElement );
-      } else {
-        return null;
-      }
+    final Document doc = domElement.getOwnerDocument();
+    undoTransformations( doc );
+    final Node parent = domElement.getParentNode();
+    if (parent == null) return null;
+    final Node nextSibling = domElement.getNextSibling();
+    final Set<Element> affected = getAffected( domElement );
+    affected.remove( domElement );
+    final int removed =
+        parent == doc.getDocumentElement() ? indexOfPart( domElement ) : -1;
+    parent.removeChild( domElement );
+    ElementIndex.of( doc ).removeSubtree( domElement );
+    try {
+      return rebuild( doc, affected, removed );
+    } catch (final RuntimeException exception) {
+      parent.insertBefore( domElement, nextSibling );
+      ElementIndex.of( doc ).addSubtree( domElement );
+      throw exception;
     }
-    return rebuild( domElement.getOwnerDocument() );
   }
 
   /**
@@ -138,6 +162,9 @@ public class DiagramRebuilder
    *          a diagram partition that will be replaced
    * @param copied
    *          the partition that will be copied over the selected partition
+   * @throws RuntimeException
+   *           if the diagram can't be rebuilt with the copy. The document and
+   *           the diagram are left as they were.
    */
   public static Diagram replace(
       final Partition selected,
@@ -151,29 +178,146 @@ public class DiagramRebuilder
     if (id == null || id.equals( "" ) || of == null || of.equals( "" ))
       return null;
 
+    final Document doc = oldP.getOwnerDocument();
+    undoTransformations( doc );
     oldP.setAttribute( "of", id );
-
-    return rebuild( oldP.getOwnerDocument() );
+    try {
+      return rebuild( doc, getAffected( oldP ), -1 );
+    } catch (final RuntimeException exception) {
+      oldP.setAttribute( "of", of );
+      throw exception;
+    }
   }
 
+  /**
+   * Rebuilds the children of the diagram created from the affected elements.
+   * The children of a diagram are not connected to one another, so the other
+   * partitions and their thread styles remain as they are. A rebuilt child
+   * gets the thread styles of the child it replaces, so threads coloured
+   * after loading the diagram keep their colours. The new partitions are
+   * built before any of them replaces an old one, so the diagram is unchanged
+   * when building fails.
+   * 
+   * @param affected
+   *          children of the root element, see {@link #getAffected(Element)}
+   * @param removed
+   *          the position of the partition of a removed child of the root
+   *          element, -1 if none was removed
+   * @return the diagram with the new partitions, or a new diagram if the
+   *         document has no diagram model attached
+   */
   private static Diagram rebuild(
-      final Document doc)
+      final Document doc,
+      final Set<Element> affected,
+      final int removed)
   {
     if (doc == null) return null;
+    final Element root = doc.getDocumentElement();
+    final Diagram diagram = getDiagram( doc );
+    if (diagram == null) return DiagramBuilder.createDiagram( root );
+    final List<Partition> parts = diagram.getPartitions();
+    final Map<Integer, Partition> rebuilt = new HashMap<Integer, Partition>();
+    int i = 0;
+    for //
+    (Node child = root.getFirstChild() //
+    ; child != null //
+    ; child = child.getNextSibling()) //
+    {
+      if (child.getNodeType() != Node.ELEMENT_NODE) continue;
+      if (!DiagramBuilder.isPart( (Element) child )) continue;
+      if (affected.contains( child )) {
+        rebuilt.put( i, DiagramBuilder.createPart( (Element) child ) );
+      }
+      i++;
+    }
+    if (i != parts.size() - (removed >= 0 ? 1 : 0)) {
+      // out of sync with the document, don't patch
+      return DiagramBuilder.createDiagram( root );
+    }
+    if (removed >= 0) parts.remove( removed );
+    for (final Map.Entry<Integer, Partition> entry : rebuilt.entrySet()) {
+      copyThreadStyles( parts.get( entry.getKey() ), entry.getValue() );
+      parts.set( entry.getKey(), entry.getValue() );
+    }
+    diagram.partitionsChanged( diagram );
+    return diagram;
+  }
 
-    final Document parsed;
-    try {
-      undoTransformations( doc );
-      // parse from scratch to work around the memory loss
-      final String s = XmlResources.toXmlString( doc );
-      parsed = new XmlResources().parse( s );
-      TreeExpander.replaceCopyElements( parsed.getDocumentElement() );
-    } catch (final Exception exception) {
-      exception.printStackTrace();
-      return null;
+  /**
+   * Applies the styles of the threads entering the old partition to the
+   * threads entering the new one. Each thread of a child of the diagram
+   * enters at one of its ins, whatever was removed or replaced within it.
+   */
+  private static void copyThreadStyles(
+      final Partition from,
+      final Partition to)
+  {
+    final ThreadStyle[] styles = from.getThreadStyles();
+    final ThreadStyle[] targets = to.getThreadStyles();
+    for (int i = 0; i < styles.length && i < targets.length; i++) {
+      if (styles[i] != null && targets[i] != null) {
+        targets[i].apply( styles[i] );
+      }
+    }
+  }
+
+  private static Diagram getDiagram(
+      final Document doc)
+  {
+    final Object model =
+        doc.getDocumentElement().getUserData( DiagramBuilder.MODEL_TO_DOM );
+    return model instanceof Diagram ? (Diagram) model : null;
+  }
+
+  /** @return the position of the partition for a child of the root element */
+  private static int indexOfPart(
+      final Element child)
+  {
+    if (!DiagramBuilder.isPart( child )) return -1;
+    int i = 0;
+    for //
+    (Node node = child.getPreviousSibling() //
+    ; node != null //
+    ; node = node.getPreviousSibling()) //
+    {
+      if (node.getNodeType() == Node.ELEMENT_NODE
+          && DiagramBuilder.isPart( (Element) node )) i++;
+    }
+    return i;
+  }
+
+  /**
+   * Collects the children of the root element that contain the changed
+   * element or a copy of it. Copies of an ancestor with an id count too, as
+   * do copies of the ancestors of those copies.
+   * 
+   * @param changed
+   *          an element that is about to be modified or removed
+   */
+  private static Set<Element> getAffected(
+      final Element changed)
+  {
+    final Document doc = changed.getOwnerDocument();
+    final Element root = doc.getDocumentElement();
+    final List<Element> copies = ElementIndex.of( doc ).getCopies();
+    final Set<String> ids = new HashSet<String>();
+    final Set<Element> result = new HashSet<Element>();
+    final LinkedList<Element> todo = new LinkedList<Element>();
+    todo.add( changed );
+    while (!todo.isEmpty()) {
+      Node node = todo.removeFirst();
+      while (node instanceof Element && node != root) {
+        final String id = ((Element) node).getAttribute( "id" );
+        if (id.length() > 0 && ids.add( id )) {
+          for (final Element copy : copies) {
+            if (id.equals( copy.getAttribute( "of" ) )) todo.add( copy );
+          }
+        }
+        if (node.getParentNode() == root) result.add( (Element) node );
+        node = node.getParentNode();
+      }
     }
-    final Element element = parsed.getDocumentElement();
-    return DiagramBuilder.createDiagram( element );
+    return result;
   }
 
   public static String toString(
@@ -192,8 +336,11 @@ public class DiagramRebuilder
       removerColors( sourceObject );
       int i = 0;
       for (ThreadStyle style:visiblePartition.getThreadStyles()) {
-        if (style !=null)
-          visible.appendChild( newBobbin( doc, style, ++i+"" ));
+        if (style !=null) {
+          final Element bobbins = newBobbin( doc, style, ++i+"" );
+          visible.appendChild( bobbins );
+          ElementIndex.of( doc ).addBobbins( bobbins );
+        }
       }
     }
     return XmlResources.toXmlString( doc );
@@ -226,16 +373,11 @@ public class DiagramRebuilder
   private static void removerColors(
       Element diagram)
   {
-    NodeList elements;
-    try {
-      elements = XmlResources.evaluate( "//*[@nrs]", diagram.getOwnerDocument() );
-    } catch (XPathExpressionException exception) {
-      exception.printStackTrace();
-      return;
-    }
-    for (int i = 0; i < elements.getLength(); i++) {
-      Node node = elements.item( i );
-        node.getParentNode().removeChild( node );
+    final ElementIndex index = ElementIndex.of( diagram.getOwnerDocument() );
+    for (Element element : new ArrayList<Element>( index.getBobbins() )) {
+      if (element.getParentNode() != null)
+        element.getParentNode().removeChild( element );
+      index.removeBobbins( element );
     }
   }
 
@@ -256,18 +398,8 @@ public class DiagramRebuilder
   
   
   private static void undoTransformations(
-      final Document document) throws XPathExpressionException
+      final Document document)
   {
-    final NodeList nodes = XmlResources.evaluate( "//*", document );
-    for (int i = 0; i < nodes.getLength(); i++) {
-      final Node clone = nodes.item( i );
-      final Node orphan =
-          (Node) clone.getUserData( TreeExpander.CLONE_TO_ORPHAN );
-      if (orphan != null) {
-        clone.getParentNode().replaceChild( orphan, clone );
-        orphan.setUserData( TreeExpander.ORPHAN_TO_CLONE, null, null );
-        clone.setUserData( TreeExpander.CLONE_TO_ORPHAN, null, null );
-      }
-    }
+    TreeExpander.restoreCopyElements( document );
   }
 }
@@ -21,8 +21,6 @@ package nl.BobbinWork.diagram.xml;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 
-import nl.BobbinWork.bwlib.gui.Localizer;
-
 public enum Ground {
   
   vierge      (4, 4, 0,  80,  80, 800L, 600L), //
@@ -31,15 +29,14 @@ public enum Ground {
   flanders    (4, 4, 0,  55,  55, 500L, 450L), //
   snowflake   (4, 6, 2, 136, 100, 850L, 600L);
 
-  private static final String TEMPLATE =
-      "" + XmlResources.ROOT + "<title><value lang='en'>"+Localizer.getString( "TreeTitle_for_grounds" )+"</value></title>"
-          + XmlResources.INCLUDE + "<group pairs='1-%d'>%s</group></diagram>";
-  private final int dX;
-  private final int dY;
-  private final int pairs;
-  private final int pairShift;
-  private final int rows;
-  private final int skippedPairs;
+  final int dX;
+  final int dY;
+  final int pairs;
+  final int pairShift;
+
+  /** number of copies along each diagonal for {@link #diamond()} and {@link #square()} */
+  private final int defaultRows;
+  final int skippedPairs;
   final long diamondLapse;
   final long squareLapse;
 
@@ -59,7 +56,7 @@ public enum Ground {
     this.diamondLapse = diamondLapse;
     this.squareLapse = squareLapse;
     this.pairShift = (pairs + skippedPairs) / 2;
-    this.rows = rows;
+    this.defaultRows = rows;
   }
   
   public InputStream squareInputStream() { 
@@ -70,38 +67,36 @@ public enum Ground {
     return new ByteArrayInputStream( diamond().getBytes() );
   }
   
+  /** @return a generator for the default size of the ground */
+  public GroundGenerator createGenerator(
+      final GroundGenerator.Shape shape)
+  {
+    return createGenerator( shape, defaultRows, defaultRows );
+  }
+
+  /**
+   * @return a generator for any size of the ground, see
+   *         {@link GroundGenerator#GroundGenerator(Ground, int, int, GroundGenerator.Shape)}
+   */
+  public GroundGenerator createGenerator(
+      final GroundGenerator.Shape shape,
+      final int rows,
+      final int columns)
+  {
+    return new GroundGenerator( this, rows, columns, shape );
+  }
+
   public String square()
   {
-    String s = //
-        createDiagonal( 1, (pairs + skippedPairs) * 1, dX * 0, 0 ) + //
-        createDiagonal( 3, (pairs + skippedPairs) * 2, dX * 2, 0 ) + //
-        createDiagonal( 5, (pairs + skippedPairs) * 3, dX * 4, 0 ) + //
-        createDiagonal( 7, (pairs + skippedPairs) * 4, dX * 6, 0 ) + //
-        createDiagonal( 5, (pairs + skippedPairs) * 4, dX * 6, dY ) + //
-        createDiagonal( 3, (pairs + skippedPairs) * 4, dX * 6, dY*2 ) + //
-        createDiagonal( 1, (pairs + skippedPairs) * 4, dX * 6, dY*3 ) + //
-        "";
-    return String.format( TEMPLATE, (pairs + skippedPairs) * 4, s );
+    return createGenerator( GroundGenerator.Shape.square ).toXmlString();
   }
 
-  public String createDiagonal(
-      final int count,
-      final int pEnd,
-      final int xStart, int yStart)
+  public String square(
+      final int rows,
+      final int columns)
   {
-    String stitches = "";//$NON-NLS-1$
-    int p = pEnd - pairs+1;
-    int xx = xStart;
-    int yy = 2*yStart;
-    for (int i = count; i > 0 && p > 0; i--) {
-      stitches += newCopyTag( p, xx, yy );
-      p -= 0*skippedPairs + (int)((pairs+skippedPairs)/2);
-      xx -= dX;
-      yy += dY;
-    }
-    final String string = String.format( "<group pairs='%d-%d'>%s</group>", //$NON-NLS-1$
-        1, pEnd, stitches );
-    return string;
+    return createGenerator( GroundGenerator.Shape.square, rows, columns )
+        .toXmlString();
   }
 
   public String xmlString()
@@ -111,31 +106,14 @@ public enum Ground {
 
   public String diamond()
   {
-
-    int leftPair = (rows - 1) * pairShift * 2 + pairs + 1;
-    String copies = "";// newCopyTag(p) + "</copy>";
-    for (int i = 0; i < rows; i++) {
-      int xx = (rows - 1) * dX + i * dX;
-      int yy = i * dY;
-      leftPair = pairShift * (rows + i - 1) + 1;
-      for (int j = 0; j < rows && leftPair > 0; j++) {
-        copies += newCopyTag( leftPair, xx, yy );
-        xx -= dX;
-        yy += dY;
-        leftPair -= pairShift;
-      }
-    }
-    final int nrOfPairs = pairShift * 2 * rows + pairs - pairShift;
-    return String.format( TEMPLATE, nrOfPairs, copies );
+    return createGenerator( GroundGenerator.Shape.diamond ).toXmlString();
   }
 
-  private String newCopyTag(
-      final int start,
-      final int x,
-      final int y)
+  public String diamond(
+      final int rows,
+      final int columns)
   {
-    return String.format( "<copy of='%s' pairs='%d-%d'>", //$NON-NLS-1$
-        name(), start, start + pairs - 1 )
-        + String.format( "<move x='%d' y='%d'/></copy>", x, y );//$NON-NLS-1$
+    return createGenerator( GroundGenerator.Shape.diamond, rows, columns )
+        .toXmlString();
   }
 }
@@ -0,0 +1,218 @@
+/* GroundGenerator.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.xml;
+
+import java.awt.geom.AffineTransform;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import nl.BobbinWork.bwlib.gui.Localizer;
+import nl.BobbinWork.diagram.model.Diagram;
+import nl.BobbinWork.diagram.model.Group;
+import nl.BobbinWork.diagram.model.Partition;
+import nl.BobbinWork.diagram.model.Range;
+import nl.BobbinWork.diagram.model.ThreadStyle;
+import nl.BobbinWork.diagram.xml.expand.ElementIndex;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
+
+/**
+ * Repeats a ground from the library in a diamond or square shape of any size.
+ * The model is built from the template of the ground without XML text, the
+ * XML is only written when asked for. Both have the same structure: a
+ * diamond is a group of copies, a square a group of diagonals that are groups
+ * of copies.
+ *
+ * @author J. Pol
+ */
+public class GroundGenerator
+{
+  public enum Shape
+  {
+    diamond, square
+  };
+
+  /** copies of the ground along one diagonal, or all copies of a diamond */
+  private static final class Section
+  {
+    /** zero if the copies are not grouped */
+    final int lastPair;
+
+    /** first pair, x and y of each copy */
+    final List<int[]> copies = new ArrayList<int[]>();
+
+    Section(final int lastPair)
+    {
+      this.lastPair = lastPair;
+    }
+  }
+
+  private final Ground ground;
+  private final int nrOfPairs;
+  private final List<Section> sections = new ArrayList<Section>();
+
+  /**
+   * @param rows
+   *          number of copies along one diagonal of a diamond, or half the
+   *          height of a square
+   * @param columns
+   *          number of copies along the other diagonal of a diamond, or half
+   *          the width of a square
+   */
+  public GroundGenerator(
+      final Ground ground,
+      final int rows,
+      final int columns,
+      final Shape shape)
+  {
+    if (rows < 1 || columns < 1) {
+      throw new IllegalArgumentException( "at least one row and column required" );
+    }
+    this.ground = ground;
+    final int shift = ground.pairShift;
+    if (shape == Shape.diamond) {
+      nrOfPairs = shift * (rows + columns - 1) + ground.pairs;
+      final Section section = new Section( 0 );
+      for (int i = 0; i < columns; i++) {
+        for (int j = 0; j < rows; j++) {
+          final int a = rows - 1 + i - j;
+          section.copies.add( new int[] { shift * a + 1, a * ground.dX,
+              (i + j) * ground.dY } );
+        }
+      }
+      sections.add( section );
+    } else {
+      // all positions (a,b) with an even a+b, one diagonal per sum
+      final int maxA = 2 * (columns - 1);
+      final int maxB = 2 * (rows - 1);
+      nrOfPairs = shift * 2 * columns;
+      for (int sum = 0; sum <= maxA + maxB; sum += 2) {
+        final Section section = new Section( shift * (Math.min( sum, maxA ) + 2) );
+        for (int b = Math.max( 0, sum - maxA ); b <= Math.min( sum, maxB ); b++) {
+          final int a = sum - b;
+          section.copies.add( new int[] { shift * a + ground.skippedPairs + 1,
+              a * ground.dX, b * ground.dY } );
+        }
+        sections.add( section );
+      }
+    }
+  }
+
+  /** @return the number of copies of the ground */
+  public int getNrOfCopies()
+  {
+    int count = 0;
+    for (final Section section : sections) {
+      count += section.copies.size();
+    }
+    return count;
+  }
+
+  /**
+   * Builds the model as {@link DiagramBuilder} would from {@link #write}, but
+   * the copies can't be edited.
+   */
+  public Diagram createDiagram()
+      throws SAXException, IOException, ParserConfigurationException
+  {
+    final Document library =
+        new XmlResources().parse( XmlResources.ROOT + XmlResources.INCLUDE
+            + "</diagram>" );
+    final Element libraryRoot = (Element) library.getDocumentElement().getFirstChild();
+    final Element template =
+        ElementIndex.of( library ).getElementById( ground.name() );
+    final Map<Element, double[]> points = new IdentityHashMap<Element, double[]>();
+    final List<Partition> groups = new Vector<Partition>();
+    for (final Section section : sections) {
+      final List<Partition> copies = new Vector<Partition>( section.copies.size() );
+      for (final int[] copy : section.copies) {
+        copies.add( DiagramBuilder.createCopy( template, copy[0] + "-"
+            + (copy[0] + ground.pairs - 1), AffineTransform.getTranslateInstance(
+            copy[1], copy[2] ), points ) );
+      }
+      if (section.lastPair == 0) {
+        groups.addAll( copies );
+      } else {
+        groups.add( createGroup( section.lastPair, copies ) );
+      }
+    }
+    final List<Partition> parts = new Vector<Partition>();
+    parts.add( DiagramBuilder.createPart( libraryRoot ) );
+    parts.add( createGroup( nrOfPairs, groups ) );
+    return new Diagram( parts, getTitle() );
+  }
+
+  private static Partition createGroup(
+      final int lastPair,
+      final List<Partition> parts)
+  {
+    return new Group( new Range( 1, lastPair ), parts, new Vector<ThreadStyle>(),
+        null );
+  }
+
+  private static String getTitle()
+  {
+    return Localizer.getString( "TreeTitle_for_grounds" ); //$NON-NLS-1$
+  }
+
+  /** Writes the diagram as XML, section by section. */
+  public void write(
+      final Appendable out) throws IOException
+  {
+    out.append( XmlResources.ROOT );
+    out.append( "<title><value lang='en'>" ).append( getTitle() ); //$NON-NLS-1$
+    out.append( "</value></title>" ).append( XmlResources.INCLUDE ); //$NON-NLS-1$
+    out.append( "<group pairs='1-" ).append( Integer.toString( nrOfPairs ) ); //$NON-NLS-1$
+    out.append( "'>" ); //$NON-NLS-1$
+    for (final Section section : sections) {
+      if (section.lastPair != 0) {
+        out.append( "<group pairs='1-" ); //$NON-NLS-1$
+        out.append( Integer.toString( section.lastPair ) ).append( "'>" ); //$NON-NLS-1$
+      }
+      for (final int[] copy : section.copies) {
+        out.append( String.format( "<copy of='%s' pairs='%d-%d'>", //$NON-NLS-1$
+            ground.name(), copy[0], copy[0] + ground.pairs - 1 ) );
+        out.append( String.format( "<move x='%d' y='%d'/></copy>", //$NON-NLS-1$
+            copy[1], copy[2] ) );
+      }
+      if (section.lastPair != 0) out.append( "</group>" ); //$NON-NLS-1$
+    }
+    out.append( "</group></diagram>" ); //$NON-NLS-1$
+  }
+
+  /** @return the XML written by {@link #write(Appendable)} */
+  public String toXmlString()
+  {
+    final StringBuilder s = new StringBuilder();
+    try {
+      write( s );
+    } catch (final IOException exception) {
+      // a StringBuilder doesn't throw
+      throw new IllegalStateException( exception );
+    }
+    return s.toString();
+  }
+}
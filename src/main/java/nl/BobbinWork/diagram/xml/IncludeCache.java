@@ -0,0 +1,180 @@
+/* IncludeCache.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.parsers.DocumentBuilder;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Replaces &lt;xi:include href="..."/&gt; elements by the root element of the
+ * referenced document. Included documents, typically basicStitches.xml, are
+ * parsed once and kept in memory until their modification time changes. New
+ * documents get a deep copy of the cached root element.
+ *
+ * @author J. Pol
+ */
+final class IncludeCache
+{
+  static final String XINCLUDE = "http://www.w3.org/2001/XInclude"; //$NON-NLS-1$
+
+  private static class Entry
+  {
+    final long modified;
+    final Document document;
+
+    Entry(final long modified, final Document document)
+    {
+      this.modified = modified;
+      this.document = document;
+    }
+  }
+
+  /** parsed documents by resolved URL */
+  private static final Map<String, Entry> cache =
+      new ConcurrentHashMap<String, Entry>();
+
+  /** Only static methods, so hide the constructor. */
+  private IncludeCache()
+  {
+  }
+
+  /**
+   * @param document
+   *          gets its include elements replaced
+   * @param systemId
+   *          location of the document, null if unknown
+   * @param parser
+   *          used for included documents that are not yet cached
+   * @throws SAXException
+   *           if an included document is not found or not well formed, or
+   *           includes itself
+   */
+  static void expand(
+      final Document document,
+      final String systemId,
+      final DocumentBuilder parser) throws SAXException, IOException
+  {
+    expand( document, systemId, parser, new HashSet<String>() );
+  }
+
+  /**
+   * @param expanding
+   *          the URLs of the included documents that are being expanded
+   */
+  private static void expand(
+      final Document document,
+      final String systemId,
+      final DocumentBuilder parser,
+      final Set<String> expanding) throws SAXException, IOException
+  {
+    final NodeList list = document.getElementsByTagNameNS( XINCLUDE, "include" ); //$NON-NLS-1$
+    final Element[] includes = new Element[list.getLength()];
+    for (int i = 0; i < includes.length; i++) {
+      includes[i] = (Element) list.item( i );
+    }
+    for (final Element include : includes) {
+      final URL url;
+      try {
+        url = XmlResources.resolveInclude( include.getAttribute( "href" ), systemId ); //$NON-NLS-1$
+      } catch (final IOException exception) {
+        throw new SAXException( exception.getMessage(), exception );
+      }
+      final Document included = get( url, parser, expanding );
+      final Node copy;
+      // importNode only reads the cached document, but a DOM implementation
+      // is not required to be thread safe for concurrent reads
+      synchronized (included) {
+        copy = document.importNode( included.getDocumentElement(), true );
+      }
+      include.getParentNode().replaceChild( copy, include );
+    }
+  }
+
+  private static Document get(
+      final URL url,
+      final DocumentBuilder parser,
+      final Set<String> expanding) throws SAXException, IOException
+  {
+    final String key = url.toString();
+    final long modified = getLastModified( url );
+    final Entry entry = cache.get( key );
+    if (entry != null && entry.modified == modified) {
+      return entry.document;
+    }
+    if (!expanding.add( key )) {
+      throw new SAXException( "circular include of " + key ); //$NON-NLS-1$
+    }
+    try {
+      final Document document;
+      final InputStream inputStream = url.openStream();
+      try {
+        document = parser.parse( inputStream, key );
+      } finally {
+        inputStream.close();
+      }
+      expand( document, key, parser, expanding );
+      cache.put( key, new Entry( modified, document ) );
+      return document;
+    } finally {
+      expanding.remove( key );
+    }
+  }
+
+  /**
+   * Gets the modification time without leaving a stream open:
+   * {@link URLConnection#getLastModified()} opens one for file URLs.
+   */
+  private static long getLastModified(
+      final URL url) throws IOException
+  {
+    if ("file".equals( url.getProtocol() )) { //$NON-NLS-1$
+      try {
+        return new File( url.toURI() ).lastModified();
+      } catch (final URISyntaxException exception) {
+        return new File( url.getPath() ).lastModified();
+      }
+    }
+    final URLConnection connection = url.openConnection();
+    if (connection instanceof JarURLConnection) {
+      // the jar file is opened once and kept by the URL handler
+      return ((JarURLConnection) connection).getJarEntry().getTime();
+    }
+    try {
+      return connection.getLastModified();
+    } finally {
+      connection.getInputStream().close();
+    }
+  }
+}
@@ -0,0 +1,806 @@
+/* StreamingDiagramBuilder.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.xml;
+
+import java.awt.geom.AffineTransform;
+import java.io.*;
+import java.net.URI;
+import java.net.URL;
+import java.util.*;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import nl.BobbinWork.bwlib.gui.Localizer;
+import nl.BobbinWork.diagram.model.*;
+import nl.BobbinWork.diagram.xml.expand.VectorTransformation;
+
+/**
+ * Builds the same model as {@link DiagramBuilder} with a pull parser, without
+ * creating a DOM tree. Only elements with an id (and their offspring) are
+ * kept in memory, as templates for &lt;copy&gt; elements. A copy is expanded
+ * by replaying its template with the transformations of the copy, so no
+ * clones are created.
+ * <p>
+ * Differences with the DOM based builder:
+ * <ul>
+ * <li>The partitions have no source object, so a diagram built this way can
+ * be viewed but not be edited with {@link DiagramRebuilder}.</li>
+ * <li>A copy can only refer to an element that is completed before the copy.
+ * </li>
+ * <li>The title of a partition is taken from its own &lt;title&gt; element,
+ * not from a &lt;title&gt; of one of its descendants.</li>
+ * </ul>
+ *
+ * @author J. Pol
+ */
+public class StreamingDiagramBuilder
+{
+  private static final String XINCLUDE = "http://www.w3.org/2001/XInclude";
+  private static final String HIDDEN = "(no)|(No)|(NO)|(false)|(False)|(FALSE)";
+
+  private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+  static {
+    FACTORY.setProperty( XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE );
+    FACTORY.setProperty( XMLInputFactory.IS_COALESCING, Boolean.TRUE );
+  }
+
+  /** Attributes of an element, independent of the reader. */
+  static final class Attributes
+      implements VectorTransformation.Attributes
+  {
+    private final String[] names;
+    private final String[] values;
+
+    private Attributes(final String[] names, final String[] values)
+    {
+      this.names = names;
+      this.values = values;
+    }
+
+    Attributes(final XMLStreamReader reader)
+    {
+      final int n = reader.getAttributeCount();
+      names = new String[n];
+      values = new String[n];
+      for (int i = 0; i < n; i++) {
+        names[i] = reader.getAttributeLocalName( i );
+        values[i] = reader.getAttributeValue( i );
+      }
+    }
+
+    // @Override
+    public String get(
+        final String name)
+    {
+      for (int i = 0; i < names.length; i++) {
+        if (names[i].equals( name )) return values[i];
+      }
+      return null;
+    }
+
+    /** @return the value or an empty string, like Element.getAttribute */
+    String getString(
+        final String name)
+    {
+      final String value = get( name );
+      return value == null ? "" : value;
+    }
+
+    /** @return a copy with one attribute replaced, removed if value is null */
+    Attributes with(
+        final String name,
+        final String value)
+    {
+      final List<String> n = new ArrayList<String>( names.length + 1 );
+      final List<String> v = new ArrayList<String>( names.length + 1 );
+      for (int i = 0; i < names.length; i++) {
+        if (!names[i].equals( name )) {
+          n.add( names[i] );
+          v.add( values[i] );
+        }
+      }
+      if (value != null) {
+        n.add( name );
+        v.add( value );
+      }
+      return new Attributes( n.toArray( new String[n.size()] ), v
+          .toArray( new String[v.size()] ) );
+    }
+  }
+
+  /** An element with an id, or an element within such an element. */
+  private static final class Record
+  {
+    final String name;
+    final Attributes attributes;
+    final List<Record> children = new ArrayList<Record>( 4 );
+    StringBuilder text = null;
+
+    Record(final String name, final Attributes attributes)
+    {
+      this.name = name;
+      this.attributes = attributes;
+    }
+  }
+
+  private final Map<String, Record> templates = new HashMap<String, Record>();
+  private final LinkedList<Record> recording = new LinkedList<Record>();
+  private final LinkedList<Frame> frames = new LinkedList<Frame>();
+  private final String userLang = Localizer.getLanguage();
+
+  /**
+   * transformations of the enclosing copies composed into one matrix for the
+   * points of the current element, null outside copies
+   */
+  private AffineTransform transform = null;
+
+  /** true while replaying a template for a copy */
+  private boolean copied = false;
+
+  private Diagram diagram = null;
+
+  private StreamingDiagramBuilder()
+  {
+    frames.push( new RootFrame() );
+  }
+
+  public static Diagram createDiagramModel(
+      final InputStream inputStream) throws XMLStreamException, IOException
+  {
+    return createDiagramModel( FACTORY.createXMLStreamReader( inputStream ),
+        null );
+  }
+
+  public static Diagram createDiagramModel(
+      final URI uri) throws XMLStreamException, IOException
+  {
+    final InputStream inputStream = uri.toURL().openStream();
+    try {
+      return createDiagramModel( FACTORY.createXMLStreamReader( uri
+          .toString(), inputStream ), uri.toString() );
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  /**
+   * @param xmlContent
+   *          partitions for the diagram element, the building blocks of
+   *          basicStitches.xml are available for copies
+   */
+  public static Diagram createDiagramModel(
+      final String xmlContent) throws XMLStreamException, IOException
+  {
+    final String s =
+        "<diagram" + XmlResources.ROOT_ATTRIBUTES + ">" + XmlResources.INCLUDE
+            + xmlContent + "</diagram>";
+    return createDiagramModel(
+        FACTORY.createXMLStreamReader( new StringReader( s ) ), null );
+  }
+
+  private static Diagram createDiagramModel(
+      final XMLStreamReader reader,
+      final String systemId) throws XMLStreamException, IOException
+  {
+    final StreamingDiagramBuilder builder = new StreamingDiagramBuilder();
+    try {
+      builder.read( reader, systemId );
+    } finally {
+      reader.close();
+    }
+    return builder.diagram;
+  }
+
+  private void read(
+      final XMLStreamReader reader,
+      final String systemId) throws XMLStreamException, IOException
+  {
+    while (reader.hasNext()) {
+      switch (reader.next()) {
+      case XMLStreamConstants.START_ELEMENT:
+        if (XINCLUDE.equals( reader.getNamespaceURI() )) {
+          include( reader.getAttributeValue( null, "href" ), systemId );
+          skipElement( reader );
+        } else {
+          final String name = reader.getLocalName();
+          final Attributes attributes = new Attributes( reader );
+          startRecord( name, attributes );
+          start( name, attributes );
+        }
+        break;
+      case XMLStreamConstants.END_ELEMENT:
+        endRecord();
+        end();
+        break;
+      case XMLStreamConstants.CHARACTERS:
+      case XMLStreamConstants.CDATA:
+        final boolean recordText =
+            !recording.isEmpty() && recording.peek().text != null;
+        if (recordText || frames.peek().acceptsText()) {
+          final String text = reader.getText();
+          if (recordText) recording.peek().text.append( text );
+          frames.peek().text( text );
+        }
+        break;
+      default:
+        break;
+      }
+    }
+  }
+
+  private static void skipElement(
+      final XMLStreamReader reader) throws XMLStreamException
+  {
+    for (int depth = 1; depth > 0;) {
+      final int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) depth++;
+      else if (event == XMLStreamConstants.END_ELEMENT) depth--;
+    }
+  }
+
+  private void include(
+      final String href,
+      final String systemId) throws XMLStreamException, IOException
+  {
+    final URL url = XmlResources.resolveInclude( href, systemId );
+    final InputStream inputStream = url.openStream();
+    try {
+      final XMLStreamReader reader =
+          FACTORY.createXMLStreamReader( url.toString(), inputStream );
+      try {
+        read( reader, url.toString() );
+      } finally {
+        reader.close();
+      }
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  private void startRecord(
+      final String name,
+      final Attributes attributes)
+  {
+    if (recording.isEmpty() && attributes.get( "id" ) == null) return;
+    final Record record = new Record( name, attributes );
+    if (ElementType.value.name().equals( name ))
+      record.text = new StringBuilder();
+    if (!recording.isEmpty()) recording.peek().children.add( record );
+    recording.push( record );
+  }
+
+  private void endRecord()
+  {
+    if (recording.isEmpty()) return;
+    final Record record = recording.pop();
+    final String id = record.attributes.get( "id" );
+    if (id != null) templates.put( id, record );
+  }
+
+  private void start(
+      final String name,
+      final Attributes attributes)
+  {
+    if (attributes.get( "of" ) != null) {
+      frames.push( new CopyFrame( name, attributes ) );
+    } else {
+      frames.push( frames.peek().start( name, attributes ) );
+    }
+  }
+
+  private void end()
+  {
+    frames.pop().end();
+  }
+
+  /** Sends the events of a template as if they were read from the stream. */
+  private void replay(
+      final Record record,
+      final Attributes attributes)
+  {
+    start( record.name, attributes );
+    if (record.text != null) frames.peek().text( record.text.toString() );
+    for (final Record child : record.children) {
+      replay( child, child.attributes );
+    }
+    end();
+  }
+
+  private Point createPoint(
+      final String s)
+  {
+    final Point point = DiagramBuilder.createPoint( s );
+    if (transform != null) transform.transform( point, point );
+    return point;
+  }
+
+  private Pin createPin(
+      final Attributes attributes)
+  {
+    return new Pin( createPoint( attributes.getString( AttributeType.position
+        .toString() ) ) );
+  }
+
+  private Point[] createSegmentPoints(
+      final Attributes attributes)
+  {
+    final String start = attributes.get( "start" );
+    final String end = attributes.get( "end" );
+    final String c1 = attributes.get( "c1" );
+    final String c2 = attributes.get( "c2" );
+    if ((start == null) || start.equals( "" ))
+      throw new IllegalArgumentException( "mandatory attribute start is missing" );
+    if ((end == null) || end.equals( "" ))
+      throw new IllegalArgumentException( "mandatory attribute end is missing" );
+    return new Point[] {
+        createPoint( start ),
+        ((c1 == null) || c1.equals( "" ) ? null : createPoint( c1 )),
+        ((c2 == null) || c2.equals( "" ) ? null : createPoint( c2 )),
+        createPoint( end )
+    };
+  }
+
+  private static Style createStyle(
+      final Attributes attributes)
+  {
+    final Style style = new Style();
+    style.setColor( attributes.getString( "color" ) );
+    style.setWidth( attributes.getString( "width" ) );
+    return style;
+  }
+
+  private static Range createRange(
+      final String name,
+      final Attributes attributes)
+  {
+    return DiagramBuilder.createRange( name, attributes.getString( ElementType
+        .getRangeAttribute( name ) ) );
+  }
+
+  /** The handler of the events of an element. */
+  private abstract class Frame
+  {
+    /** the first title of the element */
+    String title = null;
+
+    /** @return the handler for a child element */
+    Frame start(
+        final String name,
+        final Attributes attributes)
+    {
+      ElementType.valueOf( name );
+      return new IgnoredFrame();
+    }
+
+    boolean acceptsText()
+    {
+      return false;
+    }
+
+    void text(
+        final String text)
+    {
+    }
+
+    void end()
+    {
+    }
+  }
+
+  private class IgnoredFrame
+      extends Frame
+  {
+    @Override
+    Frame start(
+        final String name,
+        final Attributes attributes)
+    {
+      return this;
+    }
+  }
+
+  /**
+   * @param copied
+   *          true if the element is part of an expanded copy, these don't keep
+   *          their id
+   */
+  private static void register(
+      final Partition p,
+      final Attributes attributes,
+      final boolean copied)
+  {
+    final String id = attributes.get( "id" );
+    p.setSourceObject( null, copied || id == null ? "" : id );
+    if (attributes.getString( AttributeType.display.toString() ).matches(
+        HIDDEN )) {
+      p.setVisible( false );
+    }
+  }
+
+  /** An element that results in a partition. */
+  private abstract class PartitionFrame
+      extends Frame
+  {
+    private final Attributes attributes;
+    private final boolean copied = StreamingDiagramBuilder.this.copied;
+
+    PartitionFrame(final Attributes attributes)
+    {
+      this.attributes = attributes;
+    }
+
+    void register(
+        final Partition p)
+    {
+      StreamingDiagramBuilder.register( p, attributes, copied );
+    }
+  }
+
+  /** Accepts the root element, whatever its name. */
+  private class RootFrame
+      extends Frame
+  {
+    @Override
+    Frame start(
+        final String name,
+        final Attributes attributes)
+    {
+      return new PartitionsFrame( null, name, attributes );
+    }
+  }
+
+  /** A diagram or group. */
+  private class PartitionsFrame
+      extends PartitionFrame
+  {
+    private final PartitionsFrame parent;
+    private final String name;
+    private final Range range;
+    private final List<Partition> parts = new Vector<Partition>();
+    private final Vector<ThreadStyle> bobbins = new Vector<ThreadStyle>();
+
+    PartitionsFrame(
+        final PartitionsFrame parent,
+        final String name,
+        final Attributes attributes)
+    {
+      super( attributes );
+      this.parent = parent;
+      this.name = name;
+      range = parent == null ? null : createRange( name, attributes );
+    }
+
+    @Override
+    Frame start(
+        final String name,
+        final Attributes attributes)
+    {
+      switch (ElementType.valueOf( name )) {
+      case pin:
+        parts.add( createPin( attributes ) );
+        return new IgnoredFrame();
+      case group:
+        return new PartitionsFrame( this, name, attributes );
+      case stitch:
+        return new StitchFrame( this, name, attributes );
+      case new_bobbins:
+        return new NewBobbinsFrame( bobbins, attributes );
+      case title:
+        return new TitleFrame( this );
+      default:
+        return new IgnoredFrame();
+      }
+    }
+
+    @Override
+    void end()
+    {
+      if (parent == null) {
+        diagram = new Diagram( parts, title );
+        register( diagram );
+      } else {
+        final Group group = new Group( range, parts, bobbins, title );
+        register( group );
+        parent.parts.add( group );
+      }
+    }
+  }
+
+  private class StitchFrame
+      extends PartitionFrame
+  {
+    private final PartitionsFrame parent;
+    private final Range range;
+    private Style style = new Style();
+    private final List<Pin> pins = new Vector<Pin>();
+    private final List<Switch> switches = new Vector<Switch>();
+    private final List<PairSegment> pairs;
+    private int pairCountDown;
+
+    StitchFrame(
+        final PartitionsFrame parent,
+        final String name,
+        final Attributes attributes)
+    {
+      super( attributes );
+      this.parent = parent;
+      range = createRange( name, attributes );
+      pairs = new Vector<PairSegment>( range.getCount() );
+      pairCountDown = range.getCount();
+    }
+
+    @Override
+    Frame start(
+        final String name,
+        final Attributes attributes)
+    {
+      switch (ElementType.valueOf( name )) {
+      case cross:
+      case twist:
+        return new SwitchFrame( this, name, attributes );
+      case pin:
+        final Pin pin = createPin( attributes );
+        StreamingDiagramBuilder.register( pin, attributes, copied );
+        pins.add( pin );
+        break;
+      case style:
+        style = createStyle( attributes );
+        break;
+      case pair:
+        if (pairCountDown-- > 0) {
+          final Point[] p = createSegmentPoints( attributes );
+          pairs.add( new PairSegment( p[0], p[1], p[2], p[3], DiagramBuilder
+              .getTwistMarkLength( attributes.get( "mark" ) ) ) );
+        } else {
+          throw new IllegalArgumentException( "range allows only "
+              + range.getCount() + " pair elements" );
+        }
+        break;
+      case title:
+        return new TitleFrame( this );
+      default:
+        break;
+      }
+      return new IgnoredFrame();
+    }
+
+    @Override
+    void end()
+    {
+      if (pairCountDown != 0) {
+        throw new IllegalArgumentException( "range requires "
+            + range.getCount() + " pair elements; got " + pairCountDown
+            + " too few" );
+      }
+      for (final Segment segment : pairs) {
+        segment.setStyle( style );
+      }
+      final Stitch stitch = new Stitch( range, pairs, switches, pins, title );
+      register( stitch );
+      parent.parts.add( stitch );
+    }
+  }
+
+  /** A cross or twist. */
+  private class SwitchFrame
+      extends PartitionFrame
+  {
+    private final StitchFrame parent;
+    private final boolean cross;
+    private final Range range;
+    private final List<ThreadSegment> fronts = new ArrayList<ThreadSegment>( 1 );
+    private final List<ThreadSegment> backs = new ArrayList<ThreadSegment>( 1 );
+
+    SwitchFrame(
+        final StitchFrame parent,
+        final String name,
+        final Attributes attributes)
+    {
+      super( attributes );
+      this.parent = parent;
+      cross = ElementType.cross.name().equals( name );
+      range = createRange( name, attributes );
+    }
+
+    @Override
+    Frame start(
+        final String name,
+        final Attributes attributes)
+    {
+      final ElementType type = ElementType.valueOf( name );
+      if (type == ElementType.front || type == ElementType.back) {
+        final Point[] p = createSegmentPoints( attributes );
+        (type == ElementType.front ? fronts : backs).add( new ThreadSegment(
+            p[0], p[1], p[2], p[3] ) );
+      }
+      return new IgnoredFrame();
+    }
+
+    @Override
+    void end()
+    {
+      final ThreadSegment[] f = fronts.toArray( new ThreadSegment[fronts.size()] );
+      final ThreadSegment[] b = backs.toArray( new ThreadSegment[backs.size()] );
+      final Switch s = cross ? new Cross( range, f, b ) : new Twist( range, f, b );
+      register( s );
+      parent.switches.add( s );
+    }
+  }
+
+  /** The first child defines the core of the thread, the grand child the shadow. */
+  private class NewBobbinsFrame
+      extends Frame
+  {
+    private final Vector<ThreadStyle> bobbins;
+    private final String nrs;
+    private final ThreadStyle threadStyle = new ThreadStyle();
+    private boolean core = false;
+    private boolean shadow = false;
+
+    NewBobbinsFrame(final Vector<ThreadStyle> bobbins, final Attributes attributes)
+    {
+      this.bobbins = bobbins;
+      nrs = attributes.getString( "nrs" );
+    }
+
+    @Override
+    Frame start(
+        final String name,
+        final Attributes attributes)
+    {
+      if (core) return new IgnoredFrame();
+      core = true;
+      threadStyle.apply( createStyle( attributes ) );
+      return new Frame()
+      {
+        @Override
+        Frame start(
+            final String name,
+            final Attributes attributes)
+        {
+          if (!shadow) threadStyle.getShadow().apply( createStyle( attributes ) );
+          shadow = true;
+          return new IgnoredFrame();
+        }
+      };
+    }
+
+    @Override
+    void end()
+    {
+      DiagramBuilder.setBobbins( bobbins, threadStyle, nrs );
+    }
+  }
+
+  private class TitleFrame
+      extends Frame
+  {
+    private final Frame parent;
+    private String first = null;
+    private String preferred = null;
+
+    TitleFrame(final Frame parent)
+    {
+      this.parent = parent;
+    }
+
+    @Override
+    Frame start(
+        final String name,
+        final Attributes attributes)
+    {
+      if (ElementType.valueOf( name ) != ElementType.value)
+        return new IgnoredFrame();
+      final String lang = attributes.get( AttributeType.lang.toString() );
+      return new Frame()
+      {
+        private final StringBuilder text = new StringBuilder();
+
+        @Override
+        boolean acceptsText()
+        {
+          return true;
+        }
+
+        @Override
+        void text(
+            final String s)
+        {
+          text.append( s );
+        }
+
+        @Override
+        void end()
+        {
+          if (first == null) first = text.toString();
+          if (preferred == null && userLang != null && lang != null
+              && lang.matches( userLang )) preferred = text.toString();
+        }
+      };
+    }
+
+    @Override
+    void end()
+    {
+      if (parent.title == null) parent.title = preferred == null ? first : preferred;
+    }
+  }
+
+  /** Collects the transformations, replays the template at the end. */
+  private class CopyFrame
+      extends Frame
+  {
+    private final String of;
+    private final String rangeAttribute;
+    private final String rangeValue;
+    private final AffineTransform enclosing = transform;
+    private final List<VectorTransformation> transformations =
+        new ArrayList<VectorTransformation>( 2 );
+
+    CopyFrame(final String name, final Attributes attributes)
+    {
+      of = attributes.get( "of" );
+      rangeAttribute = ElementType.getRangeAttribute( name );
+      if (rangeAttribute == null) {
+        throw new RuntimeException( "id not allowed on <" + name + " ...> id='"
+            + of + "'" );
+      }
+      rangeValue = attributes.getString( rangeAttribute );
+    }
+
+    @Override
+    Frame start(
+        final String name,
+        final Attributes attributes)
+    {
+      final VectorTransformation vt =
+          VectorTransformation.create( ElementType.valueOf( name ).name(),
+              attributes );
+      if (vt != null) transformations.add( vt );
+      return new IgnoredFrame();
+    }
+
+    @Override
+    void end()
+    {
+      final Record template = templates.get( of );
+      if (template == null) {
+        throw new RuntimeException( "<copy of='" + of
+            + "' ...> refers to nonexistent or not yet completed <... id='" + of
+            + "'>" );
+      }
+      final AffineTransform composed =
+          VectorTransformation.compose( transformations );
+      if (enclosing != null) composed.preConcatenate( enclosing );
+      final AffineTransform savedTransform = transform;
+      final boolean savedCopied = copied;
+      transform = composed;
+      copied = true;
+      try {
+        replay( template, template.attributes.with( "display", null ).with(
+            rangeAttribute, rangeValue ) );
+      } finally {
+        transform = savedTransform;
+        copied = savedCopied;
+      }
+    }
+  }
+}
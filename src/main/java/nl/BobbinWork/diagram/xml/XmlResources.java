@@ -19,6 +19,15 @@ package nl.BobbinWork.diagram.xml;
 
 import java.io.*;
 import java.net.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
@@ -30,6 +39,7 @@ import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
+import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
 import javax.xml.xpath.XPath;
@@ -40,9 +50,16 @@ import javax.xml.xpath.XPathFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
+import org.xml.sax.ErrorHandler;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
+/**
+ * Parses, validates and queries BobbinWork documents. The parsers, validators
+ * and XPath objects are not thread-safe, so each thread gets its own. Thus one
+ * instance can be shared by multiple threads, for example to load a folder of
+ * diagrams with {@link #parse(ExecutorService, Collection)}.
+ */
 public class XmlResources {
 
   public static String NEWLINE = " ";//FIXME breaks some JUnit tests  
@@ -50,13 +67,15 @@ public class XmlResources {
   
   private static final URL SCHEMA_RESOURCE = XmlResources.class.getResource("bw.xsd"); //$NON-NLS-1$
   
-  /** base's for URI's to try until parsing does not fail with an include problem */
-  private static final String [] INCLUDE_BASES = {
-    SCHEMA_RESOURCE.toString(),
-    null,
-    "http://bobbinwork.googlecode.com/svn/trunk/src/main/java/" + SCHEMA_RESOURCE, //$NON-NLS-1$
-    "http://bobbinwork.googlecode.com/svn/wiki/diagrams/", //$NON-NLS-1$
-    "http://bobbinwork.googlegroups.com/web/"}; //$NON-NLS-1$
+  /** system property with directories to search for included documents */
+  public static final String LIBRARY_PATH = "bobbinwork.library.path"; //$NON-NLS-1$
+
+  /** bundled documents by href, null for an href that is not bundled */
+  private static final Map<String, URL> RESOURCE_INDEX = 
+    Collections.synchronizedMap( new HashMap<String, URL>() );
+
+  private static volatile File[] libraryDirectories = 
+    toFiles( System.getProperty( LIBRARY_PATH, "" ) ); //$NON-NLS-1$
   
   /**  attributes for the root element required for includes and validation against the schema */
   public  static final String ROOT_ATTRIBUTES = 
@@ -68,22 +87,47 @@ public class XmlResources {
   static final String ROOT = "<?xml version='1.0' encoding='UTF-8'?>" + 
   "<diagram" + XmlResources.ROOT_ATTRIBUTES + ">";
   
-  static private Validator validator = null;
-  static private XPath xPath = XPathFactory.newInstance().newXPath();
-  static private DocumentBuilder parser;
+  /** null if loading failed */
+  static private Schema schema = null;
+  static private boolean schemaLoaded = false;
+
+  static private final ThreadLocal<Validator> validators = new ThreadLocal<Validator>() {
+    protected Validator initialValue() {
+      Schema schema = getSchema();
+      return schema == null ? null : schema.newValidator();
+    }
+  };
+
+  static private final ThreadLocal<XPath> xPaths = new ThreadLocal<XPath>() {
+    protected XPath initialValue() {
+      return XPathFactory.newInstance().newXPath();
+    }
+  };
+
+  static private final ThreadLocal<DocumentBuilder> parsers = new ThreadLocal<DocumentBuilder>();
 
   public static final String INCLUDE = "<xi:include href='basicStitches.xml'/>";
   
   public XmlResources( ) throws ParserConfigurationException {
-    if (parser == null ) parser = newParser();
+    getParser();
   }
   
   static public NodeList evaluate (String xPathExp, Document document) throws XPathExpressionException {
-    return (NodeList) xPath.evaluate(xPathExp,document, XPathConstants.NODESET);
+    return (NodeList) xPaths.get().evaluate(xPathExp,document, XPathConstants.NODESET);
   }
   
   static public NodeList evaluate (String xPathExp, Element document) throws XPathExpressionException {
-    return (NodeList) xPath.evaluate(xPathExp,document, XPathConstants.NODESET);
+    return (NodeList) xPaths.get().evaluate(xPathExp,document, XPathConstants.NODESET);
+  }
+
+  /** @return the parser of the current thread */
+  private static DocumentBuilder getParser() throws ParserConfigurationException {
+    DocumentBuilder parser = parsers.get();
+    if (parser == null) {
+      parser = newParser();
+      parsers.set( parser );
+    }
+    return parser;
   }
     
   public Document parse(
@@ -104,22 +148,40 @@ public class XmlResources {
   public Document parse(File file) 
   throws IOException, SAXException {
     
-     return parse( new FileInputStream(file) );
+    InputStream inputStream = new FileInputStream(file);
+    try {
+      return parse( inputStream, file.toURI().toString() );
+    } finally {
+      inputStream.close();
+    }
   }
 
-  private static class BufferOutputStream extends OutputStream {
-    private StringBuffer buffer = new StringBuffer();
+  /**
+   * Collects the warnings and errors that the default handler would print on
+   * System.err, fatal errors are thrown as usual.
+   */
+  private static class MessageCollector implements ErrorHandler {
+    private final StringBuilder buffer = new StringBuilder();
 
-    public void write(int b) {
-        buffer.append((char)b);
+    //@Override
+    public void warning(SAXParseException exception) {
+      append( "Warning", exception ); //$NON-NLS-1$
     }
-    
-    public PrintStream getPrintStream(){
-      return new PrintStream(this){
-        public String toString(){
-          return buffer.toString();
-        }
-      }; 
+
+    //@Override
+    public void error(SAXParseException exception) {
+      append( "Error", exception ); //$NON-NLS-1$
+    }
+
+    //@Override
+    public void fatalError(SAXParseException exception) throws SAXException {
+      throw exception;
+    }
+
+    private void append(String level, SAXParseException exception) {
+      buffer.append( String.format( "[%s] %s:%d:%d: %s%n", level, //$NON-NLS-1$
+          exception.getSystemId(), exception.getLineNumber(),
+          exception.getColumnNumber(), exception.getMessage() ) );
     }
     
     public String toString(){
@@ -130,55 +192,182 @@ public class XmlResources {
   public Document parse(
       InputStream inputStream) throws SAXException, IOException
   {
-    String messages = ""; //$NON-NLS-1$
-    for (String base : INCLUDE_BASES) {
-      
-      final PrintStream saved = System.out;
-      final BufferOutputStream outputStream = new BufferOutputStream();
-      try {
-      final PrintStream buffer = outputStream.getPrintStream();
-      System.setErr( buffer );
+    return parse( inputStream, null );
+  }
 
-      try {
-        return parser.parse( inputStream, base );
-
-      } catch (SAXException exception) {
-
-        if (!exception.getMessage().matches( ".*nclude.*" )) {//$NON-NLS-1$
-          messages = buffer.toString() + NEWLINE + messages;
-          if (exception instanceof SAXParseException) {
-            final SAXParseException spe = (SAXParseException) exception;
-            messages =
-                String.format( "line %d position %d %s", spe.getLineNumber(),
-                    spe.getColumnNumber(), messages );
-          }
-          throw new SAXException(messages,exception);
-        }
-//        if (!messages.equals( "" )) {//$NON-NLS-1$
-//          throw new SAXException( "include failed with base: " + messages + " "//$NON-NLS-1$ //$NON-NLS-2$
-//              + base );
-//        }
-        messages = exception.getMessage() + " [" + base + "] " + messages;
-      } finally {
-        System.setErr( saved );
+  /**
+   * Parses a document and replaces its include elements with the included
+   * documents, see {@link IncludeCache}.
+   * 
+   * @param systemId
+   *          location of the document, null if unknown
+   */
+  private Document parse(
+      InputStream inputStream,
+      String systemId) throws SAXException, IOException
+  {
+    final DocumentBuilder parser;
+    try {
+      parser = getParser();
+    } catch (ParserConfigurationException exception) {
+      throw new SAXException( exception );
+    }
+    final MessageCollector buffer = new MessageCollector();
+    parser.setErrorHandler( buffer );
+    try {
+      final Document document = systemId == null //
+          ? parser.parse( inputStream ) //
+          : parser.parse( inputStream, systemId );
+      IncludeCache.expand( document, systemId, parser );
+      return document;
+
+    } catch (SAXException exception) {
+
+      if (exception.getMessage() != null 
+          && exception.getMessage().matches( ".*nclude.*" )) {//$NON-NLS-1$
+        throw exception;
       }
-      } finally {
-          outputStream.close();
+      String messages = buffer.toString() + NEWLINE;
+      if (exception instanceof SAXParseException) {
+        final SAXParseException spe = (SAXParseException) exception;
+        messages =
+            String.format( "line %d position %d %s", spe.getLineNumber(),
+                spe.getColumnNumber(), messages );
       }
+      throw new SAXException(messages,exception);
+    } finally {
+      parser.setErrorHandler( null );
+    }
+  }
+
+  /**
+   * Parses documents on the threads of an executor, for example a pool with
+   * a thread for each processor:
+   * <code>Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors())</code>
+   * 
+   * @param inputs
+   *          each element should be a {@link File}, {@link URI},
+   *          {@link InputStream} or a {@link String} with XML content
+   * @return the parsed documents in the same order as the inputs, a failure
+   *         is thrown by {@link Future#get()} as cause of an
+   *         ExecutionException
+   */
+  public List<Future<Document>> parse(
+      ExecutorService executor,
+      Collection<?> inputs)
+  {
+    List<Future<Document>> results = new ArrayList<Future<Document>>( inputs.size() );
+    for (final Object input : inputs) {
+      results.add( executor.submit( new Callable<Document>() {
+        //@Override
+        public Document call() throws Exception {
+          return parseAny( input );
+        }
+      } ) );
+    }
+    return results;
+  }
+
+  private Document parseAny(
+      Object input) throws SAXException, IOException
+  {
+    if (input instanceof File) return parse( (File) input );
+    if (input instanceof URI) return parse( (URI) input );
+    if (input instanceof InputStream) return parse( (InputStream) input );
+    if (input instanceof String) return parse( (String) input );
+    throw new IllegalArgumentException( "can't parse a " //$NON-NLS-1$
+        + (input == null ? null : input.getClass().getName()) );
+  }
+
+  /**
+   * Sets the directories to search for included documents that are neither
+   * bundled with the application nor next to the including document. The
+   * initial value is taken from the system property {@value #LIBRARY_PATH}.
+   */
+  public static void setLibraryDirectories(File... directories) {
+    libraryDirectories = directories.clone();
+  }
+
+  public static File[] getLibraryDirectories() {
+    return libraryDirectories.clone();
+  }
+
+  private static File[] toFiles(String path) {
+    List<File> files = new ArrayList<File>();
+    for (String dir : path.split( File.pathSeparator )) {
+      if (dir.trim().length() > 0) files.add( new File( dir.trim() ) );
+    }
+    return files.toArray( new File[files.size()] );
+  }
+
+  /**
+   * Finds the document for an &lt;xi:include&gt; element without reading it.
+   * Tried in this order: the documents bundled with the application, the
+   * location of the including document and the library directories.
+   * 
+   * @param href
+   *          the value of the href attribute
+   * @param systemId
+   *          the location of the including document, null if unknown
+   * @throws FileNotFoundException
+   *           if the document is not found at any of the locations
+   */
+  static URL resolveInclude(
+      String href,
+      String systemId) throws IOException
+  {
+    URL url = findResource( href );
+    if (url != null) return url;
+    if (systemId != null) {
+      url = new URL( new URL( systemId ), href );
+      if (exists( url )) return url;
+    }
+    File[] directories = libraryDirectories;
+    for (File directory : directories) {
+      File file = new File( directory, href );
+      if (file.isFile()) return file.toURI().toURL();
+    }
+    throw new FileNotFoundException( "include failed for " + href //$NON-NLS-1$
+        + " [" + SCHEMA_RESOURCE + "] [" + systemId + "] " //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        + java.util.Arrays.toString( directories ) );
+  }
+
+  private static URL findResource(String href) {
+    synchronized (RESOURCE_INDEX) {
+      if (RESOURCE_INDEX.containsKey( href )) return RESOURCE_INDEX.get( href );
+      URL url = XmlResources.class.getResource( href );
+      RESOURCE_INDEX.put( href, url );
+      return url;
+    }
+  }
+
+  private static boolean exists(URL url) {
+    if ("file".equals( url.getProtocol() )) { //$NON-NLS-1$
+      try {
+        return new File( url.toURI() ).isFile();
+      } catch (URISyntaxException e) {
+        return false;
+      }
+    }
+    try {
+      url.openStream().close();
+      return true;
+    } catch (IOException e) {
+      return false;
     }
-    throw new SAXException( messages );
   }
 
   public Document parse(
       URI uri) throws SAXException, IOException
   {
-    return parse( new FileInputStream(new File(uri)) );
+    return parse( new File(uri) );
   }
   
   public static void validate(Document source) 
   throws IOException, SAXException {
     
-    if ( validator == null && null == (validator=newValidator()) ) return;
+    Validator validator = validators.get();
+    if ( validator == null ) return;
     validator.validate(new DOMSource(source));
   }
   
@@ -203,7 +392,8 @@ public class XmlResources {
   public void validate(String xmlContent) 
   throws SAXException, IOException, TransformerException {
     
-  if ( validator == null && null == (validator=newValidator()) ) return;
+    Validator validator = validators.get();
+    if ( validator == null ) return;
     validator.validate( new DOMSource( parse(xmlContent)));
   }
 
@@ -211,21 +401,24 @@ public class XmlResources {
   throws ParserConfigurationException {
     
     DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-    factory.setXIncludeAware(true); 
+    // includes are resolved by IncludeCache
     factory.setNamespaceAware(true);
     return factory.newDocumentBuilder();
   }
   
-  private static Validator newValidator() {
+  /** @return the compiled schema, which unlike validators is thread-safe, null if not available */
+  private static synchronized Schema getSchema() {
     
+    if (schemaLoaded) return schema;
+    schemaLoaded = true;
     SchemaFactory factory = SchemaFactory.newInstance( XMLConstants.W3C_XML_SCHEMA_NS_URI );
     try {
-      return factory.newSchema( SCHEMA_RESOURCE ).newValidator(); //$NON-NLS-1$
+      schema = factory.newSchema( SCHEMA_RESOURCE ); //$NON-NLS-1$
     } catch (SAXException e) {
       // skipping validation is not essential
       // it just gives the user less friendly error messages
       System.out.println("validation attempts will be ignored ["+e.getLocalizedMessage()+"]"); //$NON-NLS-1$ $NON-NLS-2$
-      return null;
     }
+    return schema;
   }
 }
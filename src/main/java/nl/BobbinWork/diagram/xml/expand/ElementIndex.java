@@ -0,0 +1,158 @@
+/* ElementIndex.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.xml.expand;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * The elements of a document with an id, of or nrs attribute, collected with
+ * a single walk through the tree. The index is attached to the document, so
+ * expanding copies and undoing the expansion share it. The lists are in
+ * document order, as with the XPath expressions they replace.
+ *
+ * @author J. Pol
+ */
+public final class ElementIndex
+{
+  private static final String KEY = "index";
+
+  private final Map<String, Element> ids = new HashMap<String, Element>();
+  private final List<Element> copies = new ArrayList<Element>();
+  private final List<Element> bobbins = new ArrayList<Element>();
+
+  /** elements that replaced copies, see {@link TreeExpander#CLONE_TO_ORPHAN} */
+  private final List<Element> clones = new ArrayList<Element>();
+
+  private ElementIndex(final Element root)
+  {
+    walk( root, true );
+  }
+
+  private void walk(
+      final Element root,
+      final boolean adding)
+  {
+    // pre-order walk without recursion: deep trees don't hit the stack limit
+    Node node = root;
+    while (node != null) {
+      if (node.getNodeType() == Node.ELEMENT_NODE) {
+        if (adding) add( (Element) node );
+        else remove( (Element) node );
+      }
+      Node next = node.getFirstChild();
+      while (next == null && node != root) {
+        next = node.getNextSibling();
+        if (next == null) node = node.getParentNode();
+      }
+      node = next;
+    }
+  }
+
+  private void add(
+      final Element element)
+  {
+    if (element.hasAttribute( "id" )) ids.put( element.getAttribute( "id" ), element );
+    if (element.hasAttribute( "of" )) copies.add( element );
+    if (element.hasAttribute( "nrs" )) bobbins.add( element );
+  }
+
+  private void remove(
+      final Element element)
+  {
+    if (ids.get( element.getAttribute( "id" ) ) == element) ids.remove( element.getAttribute( "id" ) );
+    if (element.hasAttribute( "of" )) copies.remove( element );
+    if (element.hasAttribute( "nrs" )) bobbins.remove( element );
+  }
+
+  /**
+   * @return the index of the document, created with the first call
+   */
+  public static ElementIndex of(
+      final Document document)
+  {
+    // user data is not thread safe, a diagram may be built in parallel
+    synchronized (document) {
+      ElementIndex index = (ElementIndex) document.getUserData( KEY );
+      if (index == null) {
+        index = new ElementIndex( document.getDocumentElement() );
+        document.setUserData( KEY, index, null );
+      }
+      return index;
+    }
+  }
+
+  /** @return null if no element has the id */
+  public Element getElementById(
+      final String id)
+  {
+    return ids.get( id );
+  }
+
+  /** @return elements with an of attribute */
+  public List<Element> getCopies()
+  {
+    return Collections.unmodifiableList( copies );
+  }
+
+  /** @return elements with an nrs attribute */
+  public List<Element> getBobbins()
+  {
+    return Collections.unmodifiableList( bobbins );
+  }
+
+  /** @param element gets an nrs attribute or is added with one */
+  public void addBobbins(
+      final Element element)
+  {
+    bobbins.add( element );
+  }
+
+  /** @param element is removed from the document */
+  public void removeBobbins(
+      final Element element)
+  {
+    bobbins.remove( element );
+  }
+
+  /** @param subtree is (again) added to the document */
+  public void addSubtree(
+      final Element subtree)
+  {
+    walk( subtree, true );
+  }
+
+  /** @param subtree is removed from the document */
+  public void removeSubtree(
+      final Element subtree)
+  {
+    walk( subtree, false );
+  }
+
+  List<Element> getClones()
+  {
+    return clones;
+  }
+}
@@ -18,6 +18,8 @@
 
 package nl.BobbinWork.diagram.xml.expand;
 
+import java.awt.geom.AffineTransform;
+
 import org.w3c.dom.NamedNodeMap;
 
 /**
@@ -29,8 +31,12 @@ class Move extends VectorTransformation {
     double mx, my;
 
     public Move(NamedNodeMap attrs) {
+        this(adapt(attrs));
+    }
+
+    Move(Attributes attrs) {
         try {
-            String xy[] = attrs.getNamedItem("shift").getNodeValue().split(",");
+            String xy[] = attrs.get("shift").split(",");
             mx = Double.valueOf(xy[0]).doubleValue();
             my = Double.valueOf(xy[1]).doubleValue();
         } catch (Throwable e) {
@@ -39,21 +45,19 @@ class Move extends VectorTransformation {
         }
     }
 
-    private Double getNumber(NamedNodeMap attrs, String attrTag) {
-        String s;
+    private Double getNumber(Attributes attrs, String attrTag) {
+        String s = attrs.get(attrTag);
         try {
-            s = attrs.getNamedItem(attrTag).getNodeValue();
             return Double.valueOf(s).doubleValue();
         } catch (NullPointerException e) {
             return 0d;
         } catch (NumberFormatException e) {
-            throw new RuntimeException("invalid number\n<move " + attrs.getNamedItem(attrTag) + " ...>");
+            throw new RuntimeException("invalid number\n<move " + attrTag + "=\"" + s + "\" ...>");
         }
     }
 
-    public String newXY(org.w3c.dom.Attr point) {
+    public AffineTransform getTransform() {
 
-        super.newXY(point);
-        return (x + mx) + "," + (y + my);
+        return AffineTransform.getTranslateInstance(mx, my);
     }
 }
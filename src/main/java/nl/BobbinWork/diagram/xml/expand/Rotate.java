@@ -18,6 +18,8 @@
 
 package nl.BobbinWork.diagram.xml.expand;
 
+import java.awt.geom.AffineTransform;
+
 /**
  *
  * @author J. Pol
@@ -27,16 +29,20 @@ class Rotate extends VectorTransformation {
     double rx, ry, sin, cos, angleDeg;
     
     public Rotate(org.w3c.dom.NamedNodeMap attrs) {
+        this(adapt(attrs));
+    }
+
+    Rotate(Attributes attrs) {
         
-        String sangle = attrs.getNamedItem("angle").getNodeValue();
-        String[] xy   = attrs.getNamedItem("centre").getNodeValue().split(",");
+        String sangle = attrs.get("angle");
+        String[] xy   = attrs.get("centre").split(",");
         
         try {
             rx = Double.valueOf(xy[0]).doubleValue();
             ry = Double.valueOf(xy[1]).doubleValue();
             angleDeg = Double.valueOf(sangle).doubleValue();
         } catch (NumberFormatException e) {
-            throw new RuntimeException ("invalid number\n<rotate "+attrs.getNamedItem("centre")+" "+attrs.getNamedItem("angle")+">");
+            throw new RuntimeException ("invalid number\n<rotate centre=\""+attrs.get("centre")+"\" angle=\""+sangle+"\">");
         }        
         while (angleDeg > 360) { angleDeg -= 360;}
         while (angleDeg < 0)   { angleDeg += 360;}
@@ -52,14 +58,11 @@ class Rotate extends VectorTransformation {
         }
     }
     
-    public String newXY(org.w3c.dom.Attr point) {
-        
-        super.newXY(point);
-        
-        double dx = x - rx;
-        double dy = y - ry;
-        
-        return  ( rx + (dx*cos) - (dy*sin) )
-        + "," + ( ry + (dx*sin) + (dy*cos) );
+    public AffineTransform getTransform() {
+
+        // the rounded sin/cos of the constructor, so no AffineTransform.getRotateInstance
+        return new AffineTransform(cos, sin, -sin, cos,
+                rx - (rx*cos) + (ry*sin),
+                ry - (rx*sin) - (ry*cos));
     }
 }
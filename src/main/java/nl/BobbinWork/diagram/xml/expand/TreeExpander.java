@@ -22,15 +22,14 @@ package nl.BobbinWork.diagram.xml.expand;
  * @author J. Pol
  */
 
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import javax.xml.xpath.XPathExpressionException;
 
 import nl.BobbinWork.diagram.xml.ElementType;
-import nl.BobbinWork.diagram.xml.XmlResources;
 
 import org.w3c.dom.*;
 
@@ -46,9 +45,9 @@ public class TreeExpander
   {
   }
 
-  /** Apply one transformation to the element and its offspring. */
+  /** Apply the composed transformations to the element and its offspring. */
   static private void applyTransformation(
-      VectorTransformation vt,
+      AffineTransform transform,
       Element el,
       Object view)
   {
@@ -59,11 +58,15 @@ public class TreeExpander
     String pointAttributes[] =
         ElementType.valueOf( el.getNodeName() ).getPointAttributes();
     if (pointAttributes != null) {
-      if (vt != null) {
+      if (transform != null) {
         for (String tag : pointAttributes) {
           Attr point = el.getAttributeNode( tag );
           try {
-            point.setValue( vt.newXY( point ) );
+            String[] xy = point.getValue().split( "," );
+            Point2D p = new Point2D.Double( Double.valueOf( xy[0] ).doubleValue(),
+                Double.valueOf( xy[1] ).doubleValue() );
+            transform.transform( p, p );
+            point.setValue( p.getX() + "," + p.getY() );
           } catch (NullPointerException e) {
           } catch (NumberFormatException e) {
             throw new RuntimeException( "bad coordinates:\n<" //
@@ -76,7 +79,7 @@ public class TreeExpander
       for (Node child = el.getFirstChild(); child != null; child =
           child.getNextSibling()) {
         if (child.getNodeType() == Node.ELEMENT_NODE) {
-          applyTransformation( vt, (Element) child, view );
+          applyTransformation( transform, (Element) child, view );
         }
       }
     }
@@ -90,6 +93,8 @@ public class TreeExpander
    * another via setUserData(CLONE_TO_ORPHAN) respective
    * setUserData(ORPHAN_TO_CLONE).
    * 
+   * The elements are looked up with the {@link ElementIndex} of the document.
+   * 
    * {@linkplain http://bobbinwork.googlecode.com/svn/trunk/doc/ModelObjects.html}
    * illustrates how nodes of the presentation model can be linked to nodes in the
    * original document. getSourceObject() allows to change the 'of' attributes
@@ -104,33 +109,34 @@ public class TreeExpander
       Element root) throws XPathExpressionException
   {
 
-    // XPathExpression x = XPathFactory.newInstance().newXPath().compile("//*");
-    Map<String, Element> clonables =
-        newIdMap( XmlResources.evaluate( "//@id", root ) );
-
-    NodeList elements = XmlResources.evaluate( "//*[@of]", root );
+    ElementIndex index = ElementIndex.of( root.getOwnerDocument() );
 
-    for (int i = 0; i < elements.getLength(); i++) {
-      Element toBeReplaced = (Element) elements.item( i );
+    for (Element toBeReplaced : index.getCopies()) {
       String id = toBeReplaced.getAttribute( "of" );
-      Element toBeCloned = clonables.get( id );
+      Element toBeCloned = index.getElementById( id );
       if (toBeCloned == null) {
         throw new RuntimeException( "<copy of='" + id
             + "' ...> refers to nonexistent <... id='" + id + "'>" );
       }
       Element clone = replaceWithClone( toBeReplaced, toBeCloned );
+      index.getClones().add( clone );
       setRange( toBeReplaced, id, clone );
 
-      List<VectorTransformation> list = getTransformations( toBeReplaced );
-      if (list.size() == 0) list.add( null ); // make sure id's are removed
-      for (VectorTransformation vt : list) {
-        applyTransformation( vt, clone, null );
-      }
+      AffineTransform transform =
+          VectorTransformation.compose( getTransformations( toBeReplaced ) );
+      // without transformations the id's still have to be removed
+      applyTransformation( transform.isIdentity() ? null : transform, clone,
+          null );
       clone.removeAttribute( "display" );
     }
   }
 
-  private static List<VectorTransformation> getTransformations(
+  /**
+   * @param copy
+   *          a &lt;copy&gt; element
+   * @return the transformations of the copy in the order they are applied
+   */
+  public static List<VectorTransformation> getTransformations(
       Element toBeReplaced)
   {
 
@@ -176,23 +182,25 @@ public class TreeExpander
   }
 
   /**
-   * @param attributes
-   * @return a map with the attribute values as key and elements containing the
-   *         attribute as value
+   * Puts the elements replaced by {@link #replaceCopyElements(Element)} back in
+   * place of their clones.
+   * 
+   * @param document
+   *          a document with expanded copies
    */
-  private static Map<String, Element> newIdMap(
-      NodeList attributes)
+  public static void restoreCopyElements(
+      Document document)
   {
-    int length = attributes.getLength();
-    int capacity = (int) (length / 0.75);
-    Map<String, Element> originals = new HashMap<String, Element>( capacity );
-    for (int i = 0; i < length; i++) {
-      Attr attribute = (Attr) attributes.item( i );
-      Element attrOwner = attribute.getOwnerElement();
-      String id = attribute.getNodeValue();
-      originals.put( id, attrOwner );
+    List<Element> clones = ElementIndex.of( document ).getClones();
+    for (Element clone : clones) {
+      Node orphan = (Node) clone.getUserData( CLONE_TO_ORPHAN );
+      if (orphan != null && clone.getParentNode() != null) {
+        clone.getParentNode().replaceChild( orphan, clone );
+        orphan.setUserData( ORPHAN_TO_CLONE, null, null );
+        clone.setUserData( CLONE_TO_ORPHAN, null, null );
+      }
     }
-    return originals;
+    clones.clear();
   }
 
   /**
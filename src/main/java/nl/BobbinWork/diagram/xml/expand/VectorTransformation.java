@@ -18,20 +18,67 @@
 
 package nl.BobbinWork.diagram.xml.expand;
 
+import java.awt.geom.AffineTransform;
+import java.util.List;
+
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
 /**
  *
  * @author J. Pol
  */
 abstract public class VectorTransformation {
-    
-    protected double x, y;
-
-    public String newXY(org.w3c.dom.Attr point) {
-        
-        String[] xy = point.getValue().split(",");
-        
-        x = Double.valueOf(xy[0]).doubleValue();
-        y = Double.valueOf(xy[1]).doubleValue();
-        return x + "," + y;
+
+    /**
+     * Access to the attributes of a &lt;move&gt; or &lt;rotate&gt; element,
+     * regardless of the parser that read them.
+     */
+    public interface Attributes {
+
+        /** @return null if the attribute is not present */
+        String get(String name);
+    }
+
+    /**
+     * Creates the transformation defined by a child element of a &lt;copy&gt;.
+     * 
+     * @param elementName
+     *            move or rotate
+     * @return null for any other element
+     */
+    public static VectorTransformation create(String elementName, Attributes attrs) {
+        if ("move".equals(elementName)) return new Move(attrs);
+        if ("rotate".equals(elementName)) return new Rotate(attrs);
+        return null;
+    }
+
+    static Attributes adapt(final NamedNodeMap attrs) {
+        return new Attributes() {
+            public String get(String name) {
+                Node node = attrs.getNamedItem(name);
+                return node == null ? null : node.getNodeValue();
+            }
+        };
+    }
+
+    /**
+     * @return the transformation as a matrix, to be composed with others
+     */
+    public abstract AffineTransform getTransform();
+
+    /**
+     * Composes the transformations of a &lt;copy&gt; into a single matrix.
+     * 
+     * @param list
+     *            transformations in the order they are applied
+     * @return a new matrix, the identity for an empty list
+     */
+    public static AffineTransform compose(List<VectorTransformation> list) {
+        AffineTransform result = new AffineTransform();
+        for (VectorTransformation vt : list) {
+            result.preConcatenate(vt.getTransform());
+        }
+        return result;
     }
 }
@@ -0,0 +1,88 @@
+/* AnimationBenchmark.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.conversion;
+
+import java.awt.Shape;
+import java.util.List;
+import java.util.Locale;
+
+import nl.BobbinWork.bwlib.gui.Localizer;
+import nl.BobbinWork.diagram.model.Diagram;
+import nl.BobbinWork.diagram.model.DiagramSnapshot;
+import nl.BobbinWork.diagram.model.DisplayList;
+import nl.BobbinWork.diagram.model.Partition;
+import nl.BobbinWork.diagram.model.Style;
+import nl.BobbinWork.diagram.xml.Ground;
+import nl.BobbinWork.diagram.xml.GroundGenerator;
+
+import org.junit.Ignore;
+
+/**
+ * Prints the time to walk all frames of the animation that
+ * {@link ToImages#createSlides} writes, without the cost of rasterizing the
+ * shapes.
+ */
+@Ignore("this is java application, not a JUnit")
+public class AnimationBenchmark
+{
+  private static final int RUNS = 5;
+  private static final int[] SIZES = { 10, 25 };
+
+  private static long shapes = 0;
+
+  public static void main(
+      final String[] args) throws Exception
+  {
+    Localizer.setBundle( "nl/BobbinWork/diagram/gui/labels", new Locale( "en" ) );
+    final DisplayList.Painter painter = new DisplayList.Painter()
+    {
+      // @Override
+      public void paint(
+          final Shape shape,
+          final Style style)
+      {
+        shapes++;
+      }
+    };
+    System.out.println( "flanders\tframes\tframes() ms\tus per frame\tshapes per frame" );
+    for (final int size : SIZES) {
+      final Diagram diagram =
+          new GroundGenerator( Ground.flanders, size, size,
+              GroundGenerator.Shape.diamond ).createDiagram();
+      final DiagramSnapshot snapshot = diagram.getThreadList().snapshot();
+      final Partition animated = diagram.getPartitions().get( 1 );
+      long create = Long.MAX_VALUE;
+      long paint = Long.MAX_VALUE;
+      List<DiagramSnapshot> frames = null;
+      for (int run = 0; run < RUNS; run++) {
+        shapes = 0;
+        long start = System.nanoTime();
+        frames = snapshot.frames( animated );
+        create = Math.min( create, System.nanoTime() - start );
+        start = System.nanoTime();
+        for (final DiagramSnapshot frame : frames) {
+          frame.paint( painter );
+        }
+        paint = Math.min( paint, System.nanoTime() - start );
+      }
+      System.out.println( String.format( "%dx%d\t%d\t%.1f\t%.1f\t%d", size,
+          size, frames.size(), create / 1e6, paint / 1e3 / frames.size(),
+          shapes / frames.size() ) );
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/* PaintBenchmark.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.conversion;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+import nl.BobbinWork.bwlib.gui.Localizer;
+import nl.BobbinWork.diagram.gui.DiagramPainter;
+import nl.BobbinWork.diagram.model.Diagram;
+import nl.BobbinWork.diagram.model.DisplayList;
+import nl.BobbinWork.diagram.model.Style;
+import nl.BobbinWork.diagram.xml.Ground;
+import nl.BobbinWork.diagram.xml.GroundGenerator;
+
+import org.junit.Ignore;
+
+/**
+ * Prints the time and the allocated bytes of painting a thread diagram with
+ * the iterators and with the compiled display list. The walk without drawing
+ * shows what the model allocates apart from Java2D.
+ */
+@Ignore("this is java application, not a JUnit")
+public class PaintBenchmark
+{
+  private static final int RUNS = 10;
+
+  private interface Paint
+  {
+    void run(
+        Graphics2D g2);
+  }
+
+  private static long allocatedBytes()
+  {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory
+        .getThreadMXBean()).getThreadAllocatedBytes( Thread.currentThread()
+        .getId() );
+  }
+
+  private static void measure(
+      final String name,
+      final BufferedImage image,
+      final Paint paint)
+  {
+    long time = Long.MAX_VALUE;
+    long bytes = Long.MAX_VALUE;
+    for (int run = 0; run < RUNS; run++) {
+      final Graphics2D g2 = image.createGraphics();
+      final long allocated = allocatedBytes();
+      final long start = System.nanoTime();
+      paint.run( g2 );
+      time = Math.min( time, System.nanoTime() - start );
+      bytes = Math.min( bytes, allocatedBytes() - allocated );
+      g2.dispose();
+    }
+    System.out.println( String.format( "%s\t%.1f\t%d", name, time / 1e6,
+        bytes / 1024 ) );
+  }
+
+  public static void main(
+      final String[] args) throws Exception
+  {
+    Localizer.setBundle( "nl/BobbinWork/diagram/gui/labels", new Locale( "en" ) );
+    final Diagram diagram =
+        new GroundGenerator( Ground.flanders, 25, 25,
+            GroundGenerator.Shape.diamond ).createDiagram();
+    final Rectangle2D bounds = diagram.getBounds2D();
+    final BufferedImage image =
+        new BufferedImage( (int) bounds.getMaxX(), (int) bounds.getMaxY(),
+            BufferedImage.TYPE_INT_RGB );
+    final DisplayList.Painter nothing = new DisplayList.Painter()
+    {
+      public void paint(
+          final java.awt.Shape shape,
+          final Style style)
+      {
+      }
+    };
+    System.out.println( "flanders 25x25\tms\tallocated KB" );
+    measure( "iterators", image, new Paint()
+    {
+      public void run(
+          final Graphics2D g2)
+      {
+        DiagramPainter.paint( g2, diagram.getThreads() );
+      }
+    } );
+    measure( "display list", image, new Paint()
+    {
+      public void run(
+          final Graphics2D g2)
+      {
+        DiagramPainter.paint( g2, diagram.getThreadList() );
+      }
+    } );
+    measure( "walk iterators", image, new Paint()
+    {
+      public void run(
+          final Graphics2D g2)
+      {
+        int count = 0;
+        for (final Object drawable : diagram.getThreads()) {
+          if (drawable != null) count++;
+        }
+        if (count < 0) throw new IllegalStateException();
+      }
+    } );
+    measure( "walk display list", image, new Paint()
+    {
+      public void run(
+          final Graphics2D g2)
+      {
+        diagram.getThreadList().paint( nothing );
+      }
+    } );
+  }
+}
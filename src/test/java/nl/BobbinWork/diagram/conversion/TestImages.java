@@ -19,17 +19,30 @@ package nl.BobbinWork.diagram.conversion;
 
 import static nl.BobbinWork.bwlib.gui.Localizer.setBundle;
 
+import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 
 import javax.imageio.ImageIO;
 
+import nl.BobbinWork.diagram.gui.DiagramPainter;
 import nl.BobbinWork.diagram.model.Diagram;
+import nl.BobbinWork.diagram.model.DiagramSnapshot;
+import nl.BobbinWork.diagram.model.Drawable;
+import nl.BobbinWork.diagram.model.MultiplePairsPartition;
+import nl.BobbinWork.diagram.model.Partition;
+import nl.BobbinWork.diagram.model.Stitch;
 import nl.BobbinWork.diagram.xml.DiagramBuilder;
 import nl.BobbinWork.diagram.xml.Ground;
 
+import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -78,6 +91,125 @@ public class TestImages
     ImageIO.write( image, "png", new File( "src/test/resources/tmp/tmp1.png" ) );
   }
 
+  @Test
+  public void displayList() throws Exception
+  {
+    final Diagram diagram = newDiagram();
+    assertSamePixels( diagram );
+    final Partition part = diagram.getPartitions().get( 1 );
+    part.setVisible( false );
+    assertSamePixels( diagram );
+    part.setVisible( true );
+    assertSamePixels( diagram );
+  }
+
+  private static void assertSamePixels(
+      final Diagram diagram)
+  {
+    final BufferedImage[] images = new BufferedImage[4];
+    for (int i = 0; i < images.length; i++) {
+      images[i] = new BufferedImage( size.width, size.height, BufferedImage.TYPE_INT_RGB );
+      final Graphics2D g2 = images[i].createGraphics();
+      switch (i) {
+        case 0: DiagramPainter.paint( g2, diagram.getThreads() ); break;
+        case 1: DiagramPainter.paint( g2, diagram.getThreadList() ); break;
+        case 2: DiagramPainter.paint( g2, diagram.getPairs() ); break;
+        case 3: DiagramPainter.paint( g2, diagram.getPairList() ); break;
+      }
+      g2.dispose();
+    }
+    for (int i = 0; i < images.length; i += 2) {
+      final int[] expected = images[i].getRGB( 0, 0, size.width, size.height, null, 0, size.width );
+      final int[] actual = images[i + 1].getRGB( 0, 0, size.width, size.height, null, 0, size.width );
+      Assert.assertArrayEquals( expected, actual );
+    }
+  }
+
+  @Test
+  public void snapshot() throws Exception
+  {
+    final Diagram diagram = newDiagram();
+    final DiagramSnapshot snapshot = diagram.getThreadList().snapshot();
+    final int[] before = pixels( snapshot );
+    Assert.assertArrayEquals( pixels( diagram ), before );
+
+    final Iterator<Drawable> drawables = diagram.getThreads().iterator();
+    Assert.assertTrue( drawables.hasNext() );
+    drawables.next().getStyle().setColor( Color.RED );
+    diagram.getPartitions().get( 1 ).setVisible( false );
+    Assert.assertFalse( Arrays.equals( before, pixels( diagram ) ) );
+    Assert.assertArrayEquals( before, pixels( snapshot ) );
+    Assert.assertArrayEquals( pixels( diagram ),
+        pixels( diagram.getThreadList().snapshot() ) );
+  }
+
+  @Test
+  public void animationFrames() throws Exception
+  {
+    final Diagram diagram = newDiagram();
+    final MultiplePairsPartition animated =
+        (MultiplePairsPartition) ToImages.getAnimatedPartition( diagram );
+    final List<DiagramSnapshot> frames =
+        diagram.getThreadList().snapshot().frames( animated );
+
+    // the frames as created by toggling the visibility of the model
+    final List<int[]> expected = new ArrayList<int[]>();
+    animated.setAllVisible( false );
+    toggle( diagram, animated, expected );
+
+    Assert.assertTrue( frames.size() > 1 );
+    Assert.assertEquals( expected.size(), frames.size() );
+    for (int i = 0; i < frames.size(); i++) {
+      Assert.assertArrayEquals( expected.get( i ), pixels( frames.get( i ) ) );
+    }
+  }
+
+  @Test
+  public void animatedPartitionOfCreation() throws Exception
+  {
+    final Diagram diagram = newDiagram();
+    final ToImages toImages = ToImages.threads( diagram );
+    final Partition animated = toImages.getAnimatedPartition();
+    Assert.assertSame( ToImages.getAnimatedPartition( diagram ), animated );
+    Assert.assertEquals( animated.getBounds().getBounds().getSize(),
+        toImages.getSize() );
+
+    // later changes of the diagram are not seen by the instance
+    diagram.getPartitions().clear();
+    Assert.assertSame( animated, toImages.getAnimatedPartition() );
+    Assert.assertNotNull( toImages.getSize() );
+  }
+
+  private static void toggle(
+      final Diagram diagram,
+      final MultiplePairsPartition partition,
+      final List<int[]> frames)
+  {
+    partition.setVisible( true );
+    if (partition instanceof Stitch) {
+      frames.add( pixels( diagram ) );
+    }
+    for (final Partition p : partition.getPartitions()) {
+      if (p instanceof MultiplePairsPartition) {
+        toggle( diagram, (MultiplePairsPartition) p, frames );
+      }
+    }
+  }
+
+  private static int[] pixels(
+      final Object painting)
+  {
+    final BufferedImage image = new BufferedImage( size.width, size.height, BufferedImage.TYPE_INT_RGB );
+    final Graphics2D g2 = image.createGraphics();
+    if (painting instanceof Diagram) {
+      DiagramPainter.paint( g2, ((Diagram) painting).getThreadList() );
+    } else {
+      DiagramPainter.paint( g2, (DiagramSnapshot) painting );
+    }
+    g2.dispose();
+    return image.getRGB( 0, 0, size.width, size.height, null, 0, size.width );
+  }
+
   @Test(expected=IllegalArgumentException.class)
   public void extension() throws Exception
   {
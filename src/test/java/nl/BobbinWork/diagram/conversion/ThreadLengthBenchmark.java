@@ -0,0 +1,73 @@
+/* ThreadLengthBenchmark.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.conversion;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import nl.BobbinWork.bwlib.gui.Localizer;
+import nl.BobbinWork.diagram.model.Diagram;
+import nl.BobbinWork.diagram.xml.Ground;
+import nl.BobbinWork.diagram.xml.GroundGenerator;
+
+import org.junit.Ignore;
+
+/**
+ * Prints the time to calculate the thread lengths of grounds of increasing
+ * size, on the calling thread and on a pool with a thread per processor.
+ */
+@Ignore("this is java application, not a JUnit")
+public class ThreadLengthBenchmark
+{
+  private static final int RUNS = 5;
+  private static final int[] SIZES = { 10, 25, 50 };
+
+  public static void main(
+      final String[] args) throws Exception
+  {
+    Localizer.setBundle( "nl/BobbinWork/diagram/gui/labels", new Locale( "en" ) );
+    final int processors = Runtime.getRuntime().availableProcessors();
+    final ExecutorService executor = Executors.newFixedThreadPool( processors );
+    System.out.println( "flanders\tthreads\tsequential ms\tparallel ms ("
+        + processors + " processors)\ttotal length" );
+    try {
+      for (final int size : SIZES) {
+        final Diagram diagram =
+            new GroundGenerator( Ground.flanders, size, size,
+                GroundGenerator.Shape.diamond ).createDiagram();
+        long sequential = Long.MAX_VALUE;
+        long parallel = Long.MAX_VALUE;
+        ThreadLengths lengths = null;
+        for (int run = 0; run < RUNS; run++) {
+          long start = System.nanoTime();
+          lengths = new ThreadLengths( diagram );
+          sequential = Math.min( sequential, System.nanoTime() - start );
+          start = System.nanoTime();
+          lengths = new ThreadLengths( diagram, executor );
+          parallel = Math.min( parallel, System.nanoTime() - start );
+        }
+        System.out.println( String.format( "%dx%d\t%d\t%.1f\t%.1f\t%.0f", size,
+            size, lengths.getThreads().size(), sequential / 1e6, parallel / 1e6,
+            lengths.getTotal() ) );
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/* DiagramLoaderTest.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.gui;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Locale;
+
+import javax.swing.SwingUtilities;
+
+import nl.BobbinWork.bwlib.gui.ExceptionHandler;
+import nl.BobbinWork.bwlib.gui.Localizer;
+import nl.BobbinWork.diagram.model.Diagram;
+import nl.BobbinWork.diagram.model.LaceThread;
+import nl.BobbinWork.diagram.model.Partition;
+import nl.BobbinWork.diagram.model.ThreadStyle;
+import nl.BobbinWork.diagram.xml.DiagramCache;
+import nl.BobbinWork.diagram.xml.Ground;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DiagramLoaderTest
+{
+  private static final long TIMEOUT = 60000;
+
+  @Test
+  public void previewChangesSurviveTheSwap() throws Exception
+  {
+    Localizer.setBundle( "nl/BobbinWork/diagram/gui/labels", new Locale( "en" ) );
+    final File dir = new File( "target/test-cache-loader" );
+    for (final File file : dir.exists() ? dir.listFiles() : new File[0])
+      file.delete();
+    final String saved = System.getProperty( DiagramCache.CACHE_PATH );
+    System.setProperty( DiagramCache.CACHE_PATH, dir.getPath() );
+    final DiagramTree tree = new DiagramTree();
+    final DiagramPanel canvas = new DiagramPanel();
+    final DiagramLoader loader;
+    try {
+      loader = new DiagramLoader( tree, canvas, new ExceptionHandler( null ) );
+    } finally {
+      if (saved == null) System.clearProperty( DiagramCache.CACHE_PATH );
+      else System.setProperty( DiagramCache.CACHE_PATH, saved );
+    }
+    final byte[] content = Ground.flanders.diamond().getBytes( "UTF-8" );
+
+    // not yet cached: built right away, stored in the background
+    load( loader, content );
+    Assert.assertNotNull( canvas.getDiagram().getSourceObject() );
+    final long start = System.currentTimeMillis();
+    while (dir.list() == null || dir.list().length == 0) {
+      Assert.assertTrue( System.currentTimeMillis() - start < TIMEOUT );
+      Thread.sleep( 10 );
+    }
+
+    // cached: a preview that is replaced by the editable diagram
+    final ThreadStyle red = new ThreadStyle();
+    red.setColor( "#FF0000" );
+    final Diagram[] preview = new Diagram[1];
+    SwingUtilities.invokeAndWait( new Runnable()
+    {
+      public void run()
+      {
+        loader.proces( new ByteArrayInputStream( content ) );
+        preview[0] = canvas.getDiagram();
+        Assert.assertNull( preview[0].getSourceObject() );
+        final Partition ground = preview[0].getPartitions().get( 1 );
+        preview[0].setThreadStyle( LaceThread.of( ground ).iterator().next()
+            .getSegments().get( 0 ), red );
+        preview[0].setVisible( ground, false );
+        tree.setSelectionRow( 2 );
+      }
+    } );
+    while (canvas.getDiagram() == preview[0]) {
+      Assert.assertTrue( System.currentTimeMillis() - start < TIMEOUT );
+      Thread.sleep( 10 );
+    }
+    SwingUtilities.invokeAndWait( new Runnable()
+    {
+      public void run()
+      {
+        final Diagram model = canvas.getDiagram();
+        Assert.assertNotNull( model.getSourceObject() );
+        final Partition ground = model.getPartitions().get( 1 );
+        Assert.assertFalse( ground.isVisible() );
+        int reds = 0;
+        for (final ThreadStyle style : ground.getThreadStyles()) {
+          if (style != null && style.getColor().equals( red.getColor() )) reds++;
+        }
+        Assert.assertEquals( 1, reds );
+        Assert.assertEquals( 2, tree.getSelectionRows()[0] );
+      }
+    } );
+  }
+
+  private static void load(
+      final DiagramLoader loader,
+      final byte[] content) throws Exception
+  {
+    SwingUtilities.invokeAndWait( new Runnable()
+    {
+      public void run()
+      {
+        loader.proces( new ByteArrayInputStream( content ) );
+      }
+    } );
+  }
+}
@@ -0,0 +1,110 @@
+/* DiagramTreeTest.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.gui;
+
+import java.util.Locale;
+
+import javax.swing.SwingUtilities;
+import javax.swing.tree.DefaultMutableTreeNode;
+
+import nl.BobbinWork.bwlib.gui.Localizer;
+import nl.BobbinWork.diagram.model.Diagram;
+import nl.BobbinWork.diagram.model.MultiplePairsPartition;
+import nl.BobbinWork.diagram.model.Partition;
+import nl.BobbinWork.diagram.xml.DiagramBuilder;
+import nl.BobbinWork.diagram.xml.DiagramRebuilder;
+import nl.BobbinWork.diagram.xml.Ground;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DiagramTreeTest
+{
+  @Test
+  public void deleteUpdatesOnlyTheChangedBranch() throws Exception
+  {
+    Localizer.setBundle( "nl/BobbinWork/diagram/gui/labels", new Locale( "en" ) );
+    final Diagram diagram =
+        DiagramBuilder.createDiagramModel( Ground.flanders.diamondInputStream() );
+    final DiagramTree tree = new DiagramTree();
+    final DefaultMutableTreeNode root = (DefaultMutableTreeNode) tree.getModel().getRoot();
+    SwingUtilities.invokeAndWait( new Runnable()
+    {
+      public void run()
+      {
+        tree.setDiagramModel( diagram );
+        final DefaultMutableTreeNode library = (DefaultMutableTreeNode) root.getChildAt( 0 );
+        Partition selected = null;
+        for (final Partition p : ((MultiplePairsPartition) diagram.getPartitions().get( 1 )).getPartitions()) {
+          if (p instanceof MultiplePairsPartition && DiagramRebuilder.canDelete( p )) {
+            selected = p;
+            break;
+          }
+        }
+        DiagramRebuilder.delete( selected );
+        // the tree hears about it at the next tick
+        Assert.assertSame( library, root.getChildAt( 0 ) );
+      }
+    } );
+    SwingUtilities.invokeAndWait( new Runnable()
+    {
+      public void run()
+      {
+        Assert.assertEquals( diagram.getPartitions().size(), root.getChildCount() );
+        for (int i = 0; i < root.getChildCount(); i++) {
+          final DefaultMutableTreeNode node = (DefaultMutableTreeNode) root.getChildAt( i );
+          Assert.assertSame( diagram.getPartitions().get( i ), node.getUserObject() );
+          Assert.assertEquals( ((MultiplePairsPartition) node.getUserObject())
+              .getPartitions().size(), node.getChildCount() );
+        }
+      }
+    } );
+  }
+
+  @Test
+  public void replaceKeepsExpandedAndSelectedRows() throws Exception
+  {
+    Localizer.setBundle( "nl/BobbinWork/diagram/gui/labels", new Locale( "en" ) );
+    final Diagram first =
+        DiagramBuilder.createDiagramModel( Ground.flanders.diamondInputStream() );
+    final Diagram second =
+        DiagramBuilder.createDiagramModel( Ground.flanders.diamondInputStream() );
+    final DiagramTree tree = new DiagramTree();
+    SwingUtilities.invokeAndWait( new Runnable()
+    {
+      public void run()
+      {
+        tree.setDiagramModel( first );
+        tree.expandRow( 2 );
+        tree.expandRow( 3 );
+        tree.setSelectionRow( 4 );
+        final int rows = tree.getRowCount();
+        final Object selected = tree.getSelectionPath().getLastPathComponent();
+
+        tree.replaceDiagramModel( second );
+        Assert.assertSame( second,
+            ((DefaultMutableTreeNode) tree.getModel().getRoot()).getUserObject() );
+        Assert.assertEquals( rows, tree.getRowCount() );
+        Assert.assertTrue( tree.isExpanded( 2 ) );
+        Assert.assertTrue( tree.isExpanded( 3 ) );
+        Assert.assertEquals( 4, tree.getSelectionRows()[0] );
+        Assert.assertNotSame( selected, tree.getSelectionPath().getLastPathComponent() );
+      }
+    } );
+  }
+}
@@ -0,0 +1,102 @@
+/* Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.math;
+
+import static nl.BobbinWork.diagram.math.ArcLength.of;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.geom.CubicCurve2D;
+import java.awt.geom.FlatteningPathIterator;
+import java.awt.geom.PathIterator;
+
+import org.junit.Test;
+
+
+public class ArcLengthTest {
+
+	@Test
+	public void straight() {
+		assertEquals (5.0, of(new CubicCurve2D.Double(0, 0, 1, 4/3.0, 2, 8/3.0, 3, 4)), 1e-12 );
+	}
+
+	@Test
+	public void point() {
+		assertEquals (0.0, of(new CubicCurve2D.Double(2, 2, 2, 2, 2, 2, 2, 2)), 0.0 );
+	}
+
+	@Test
+	public void cusp() {
+		// crossed control points make the curve turn back at a cusp
+		final CubicCurve2D c = new CubicCurve2D.Double(0, 0, 30, 10, -20, 10, 10, 0);
+		assertEquals (flattened(c), of(c), 1e-4 );
+	}
+
+	@Test
+	public void curve() {
+		final CubicCurve2D c = new CubicCurve2D.Double(0, 0, 1, 2, 3, 3, 4, 2);
+		assertEquals (flattened(c), of(c), 1e-6 );
+		assertEquals (flattened(c), of(c, 1e-3), 1e-3 );
+	}
+
+	@Test
+	public void parameterAt() {
+		final CubicCurve2D c = new CubicCurve2D.Double(0, 0, 1, 2, 3, 3, 4, 2);
+		for (double fraction = 0; fraction <= 1; fraction += 0.125) {
+			final CubicCurve2D left = new CubicCurve2D.Double();
+			split(c, ArcLength.parameterAt(c, fraction), left);
+			assertEquals (fraction * of(c), of(left), 1e-5 );
+		}
+		// a straight line with its control points near the end
+		final CubicCurve2D line = new CubicCurve2D.Double(0, 0, 8.5, 0, 8.5, 0, 9, 0);
+		final CubicCurve2D left = new CubicCurve2D.Double();
+		split(line, ArcLength.parameterAt(line, 0.5), left);
+		assertEquals (4.5, left.getX2(), 1e-5 );
+	}
+
+	/** @param left receives the part of c from 0 to t, de Casteljau */
+	private static void split(CubicCurve2D c, double t, CubicCurve2D left) {
+		final double ax = c.getX1() + (c.getCtrlX1() - c.getX1()) * t;
+		final double ay = c.getY1() + (c.getCtrlY1() - c.getY1()) * t;
+		final double bx = c.getCtrlX1() + (c.getCtrlX2() - c.getCtrlX1()) * t;
+		final double by = c.getCtrlY1() + (c.getCtrlY2() - c.getCtrlY1()) * t;
+		final double cx = c.getCtrlX2() + (c.getX2() - c.getCtrlX2()) * t;
+		final double cy = c.getCtrlY2() + (c.getY2() - c.getCtrlY2()) * t;
+		final double px = ax + (bx - ax) * t;
+		final double py = ay + (by - ay) * t;
+		final double qx = bx + (cx - bx) * t;
+		final double qy = by + (cy - by) * t;
+		left.setCurve(c.getX1(), c.getY1(), ax, ay, px, py, px + (qx - px) * t, py + (qy - py) * t);
+	}
+
+	/** @return the length of the curve approximated by tiny straight lines */
+	private static double flattened(CubicCurve2D c) {
+		final PathIterator it = new FlatteningPathIterator(c.getPathIterator(null), 1e-9, 20);
+		final double[] coords = new double[6];
+		double length = 0, x = 0, y = 0;
+		for (; !it.isDone(); it.next()) {
+			final int type = it.currentSegment(coords);
+			if (type == PathIterator.SEG_LINETO) {
+				length += Math.hypot(coords[0] - x, coords[1] - y);
+			}
+			x = coords[0];
+			y = coords[1];
+		}
+		return length;
+	}
+}
@@ -0,0 +1,151 @@
+/* NearestPointBenchmark.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.math;
+
+import java.awt.geom.CubicCurve2D;
+import java.awt.geom.Point2D;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.Ignore;
+
+/**
+ * Prints the time and allocated bytes per query of the nearest point
+ * calculation: a single curve, and the nearest of a few thousand curves spread
+ * over a diagram, one curve at a time against the batch methods.
+ */
+@Ignore("this is java application, not a JUnit")
+public class NearestPointBenchmark
+{
+  private static final int RUNS = 10;
+  private static final int QUERIES = 2000;
+  private static final int CURVES = 5000;
+
+  private interface Query
+  {
+    double run(
+        Point2D point);
+  }
+
+  private static long allocatedBytes()
+  {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory
+        .getThreadMXBean()).getThreadAllocatedBytes( Thread.currentThread()
+        .getId() );
+  }
+
+  private static void measure(
+      final String name,
+      final Point2D[] points,
+      final Query query)
+  {
+    long time = Long.MAX_VALUE;
+    long bytes = Long.MAX_VALUE;
+    double sum = 0;
+    for (int run = 0; run < RUNS; run++) {
+      final long allocated = allocatedBytes();
+      final long start = System.nanoTime();
+      for (final Point2D point : points) {
+        sum += query.run( point );
+      }
+      time = Math.min( time, System.nanoTime() - start );
+      bytes = Math.min( bytes, allocatedBytes() - allocated );
+    }
+    System.out.println( String.format( "%s\t%.2f\t%d\t(%.0f)", name, time
+        / 1e3 / points.length, bytes / points.length, sum ) );
+  }
+
+  /** @return a curve of about 30 by 30 somewhere in a diagram of 1000 by 1000 */
+  private static CubicCurve2D randomCurve(
+      final Random random)
+  {
+    final double x = random.nextDouble() * 1000;
+    final double y = random.nextDouble() * 1000;
+    final double[] c = new double[8];
+    for (int i = 0; i < c.length; i += 2) {
+      c[i] = x + random.nextDouble() * 30;
+      c[i + 1] = y + random.nextDouble() * 30;
+    }
+    return new CubicCurve2D.Double( c[0], c[1], c[2], c[3], c[4], c[5], c[6],
+        c[7] );
+  }
+
+  public static void main(
+      final String[] args)
+  {
+    final Random random = new Random( 1 );
+    final CubicCurve2D[] curves = new CubicCurve2D[CURVES];
+    for (int i = 0; i < curves.length; i++) {
+      curves[i] = randomCurve( random );
+    }
+    final Point2D[] points = new Point2D[QUERIES];
+    for (int i = 0; i < points.length; i++) {
+      points[i] = new Point2D.Double( random.nextDouble() * 1000,
+          random.nextDouble() * 1000 );
+    }
+    final double[] coords = new double[curves.length * NearestPoint.STRIDE];
+    for (int i = 0; i < curves.length; i++) {
+      final CubicCurve2D c = curves[i];
+      final double[] values = { c.getX1(), c.getY1(), c.getCtrlX1(),
+          c.getCtrlY1(), c.getCtrlX2(), c.getCtrlY2(), c.getX2(), c.getY2() };
+      System.arraycopy( values, 0, coords, i * NearestPoint.STRIDE, values.length );
+    }
+    final Point2D.Double pn = new Point2D.Double();
+    final NearestPoint.Nearest nearest = new NearestPoint.Nearest();
+
+    System.out.println( "query\tus\tbytes" );
+    measure( "one curve", points, new Query()
+    {
+      public double run(
+          final Point2D point)
+      {
+        return NearestPoint.onCurve( curves[0], point, pn );
+      }
+    } );
+    final Point2D[] few = new Point2D[QUERIES / 20];
+    System.arraycopy( points, 0, few, 0, few.length );
+    measure( CURVES + " curves one by one", few, new Query()
+    {
+      public double run(
+          final Point2D point)
+      {
+        double min = Double.POSITIVE_INFINITY;
+        for (final CubicCurve2D curve : curves) {
+          min = Math.min( min, NearestPoint.onCurve( curve, point, pn ) );
+        }
+        return min;
+      }
+    } );
+    measure( CURVES + " curves", few, new Query()
+    {
+      public double run(
+          final Point2D point)
+      {
+        return NearestPoint.onCurves( curves, point, nearest );
+      }
+    } );
+    measure( CURVES + " packed curves", few, new Query()
+    {
+      public double run(
+          final Point2D point)
+      {
+        return NearestPoint.onCurves( coords, curves.length, point, nearest );
+      }
+    } );
+  }
+}
@@ -18,6 +18,7 @@
 package nl.BobbinWork.diagram.math;
 
 import static nl.BobbinWork.diagram.math.NearestPoint.onCurve;
+import static nl.BobbinWork.diagram.math.NearestPoint.onCurves;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -28,6 +29,7 @@ import org.junit.Test;
 
 import java.awt.geom.CubicCurve2D;
 import java.awt.geom.Point2D;
+import java.util.Random;
 
 
 public class NearestPointTest {
@@ -94,6 +96,96 @@ public class NearestPointTest {
         assertEquals (p2, pn );
 	}
 
+	/**
+	 * Distance and nearest point of the first random cases, and the sums over all
+	 * cases, as computed by the implementation before it was rewritten to avoid
+	 * allocations.
+	 */
+	private static final double[][] RECORDED = {
+		{ 2.728985766361328, 96.37144975253878, 93.71275120167509 },
+		{ 435.222319642491, 39.71743421847056, 34.75180292031103 },
+		{ 309.74040745916926, 52.076720016020126, 37.16487458818954 },
+		{ 3.444785462263353, 39.07478573789132, 19.94295453409578 },
+		{ 1078.0511782554754, 65.9183020560061, 25.244572561572404 },
+		{ 183.0403918909783, 37.58024751079866, 52.17440174492644 },
+		{ 495.7564985453138, 51.700724571490724, 57.80940107710973 },
+		{ 520.3865260885052, 38.03336573427026, 70.71373842595224 },
+		{ 5.918678397610547, 14.302782817076082, 73.26530913491202 },
+		{ 2589.6312411488043, 22.704773631258114, 55.90638394709565 },
+	};
+	private static final double[] RECORDED_SUMS =
+		{ 2242781.851258051, 99890.67111917515, 100355.54590274002 };
+
+	@Test
+    public void sameAsRecorded() {
+		Random random = new Random(1);
+		double[] sums = new double[3];
+		for (int i = 0; i < 2000; i++) {
+			CubicCurve2D curve = randomCurve(random);
+			Point2D p = new Point2D.Double(random.nextDouble() * 100, random.nextDouble() * 100);
+			double d = onCurve(curve, p, pn);
+			if (i < RECORDED.length) {
+				assertEquals (RECORDED[i][0], d, 0.0 );
+				assertEquals (new Point2D.Double(RECORDED[i][1], RECORDED[i][2]), pn );
+			}
+			sums[0] += d;
+			sums[1] += pn.getX();
+			sums[2] += pn.getY();
+		}
+		assertEquals (RECORDED_SUMS[0], sums[0], 0.0 );
+		assertEquals (RECORDED_SUMS[1], sums[1], 0.0 );
+		assertEquals (RECORDED_SUMS[2], sums[2], 0.0 );
+	}
+
+	@Test
+    public void batch() {
+		Random random = new Random(2);
+		CubicCurve2D[] curves = new CubicCurve2D[500];
+		double[] coords = new double[curves.length * NearestPoint.STRIDE];
+		for (int i = 0; i < curves.length; i++) {
+			curves[i] = randomCurve(random);
+			coords[i * 8] = curves[i].getX1();
+			coords[i * 8 + 1] = curves[i].getY1();
+			coords[i * 8 + 2] = curves[i].getCtrlX1();
+			coords[i * 8 + 3] = curves[i].getCtrlY1();
+			coords[i * 8 + 4] = curves[i].getCtrlX2();
+			coords[i * 8 + 5] = curves[i].getCtrlY2();
+			coords[i * 8 + 6] = curves[i].getX2();
+			coords[i * 8 + 7] = curves[i].getY2();
+		}
+		NearestPoint.Nearest nearest = new NearestPoint.Nearest();
+		NearestPoint.Nearest packed = new NearestPoint.Nearest();
+		for (int q = 0; q < 50; q++) {
+			Point2D p = new Point2D.Double(random.nextDouble() * 100, random.nextDouble() * 100);
+			double min = Double.POSITIVE_INFINITY;
+			for (CubicCurve2D curve : curves) {
+				min = Math.min(min, onCurve(curve, p, null));
+			}
+			assertEquals (min, onCurves(curves, p, nearest), 0.0 );
+			assertEquals (min, onCurves(coords, curves.length, p, packed), 0.0 );
+			assertEquals (nearest.getIndex(), packed.getIndex() );
+			assertEquals (min, p.distanceSq(nearest.getPoint()), 0.0 );
+
+			// the parameter gives the nearest point
+			double t = nearest.getT(), u = 1 - t;
+			CubicCurve2D c = curves[nearest.getIndex()];
+			double x = u*u*u*c.getX1() + 3*u*u*t*c.getCtrlX1() + 3*u*t*t*c.getCtrlX2() + t*t*t*c.getX2();
+			double y = u*u*u*c.getY1() + 3*u*u*t*c.getCtrlY1() + 3*u*t*t*c.getCtrlY2() + t*t*t*c.getY2();
+			assertEquals (x, nearest.getPoint().getX(), 1e-9 );
+			assertEquals (y, nearest.getPoint().getY(), 1e-9 );
+		}
+		assertEquals (Double.POSITIVE_INFINITY, onCurves(new CubicCurve2D[0], p1, nearest), 0.0 );
+		assertEquals (-1, nearest.getIndex() );
+	}
+
+	static CubicCurve2D randomCurve(Random random) {
+		double[] c = new double[8];
+		for (int j = 0; j < c.length; j++) {
+			c[j] = random.nextDouble() * 100;
+		}
+		return new CubicCurve2D.Double(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7]);
+	}
+
 	@Ignore // not a test class
 	static private class NearestPointUtil extends NearestPoint {
 		NearestPointUtil () {
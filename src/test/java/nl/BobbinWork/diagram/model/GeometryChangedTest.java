@@ -0,0 +1,160 @@
+/* GeometryChangedTest.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.swing.SwingUtilities;
+
+import nl.BobbinWork.bwlib.gui.Localizer;
+import nl.BobbinWork.diagram.xml.Ground;
+import nl.BobbinWork.diagram.xml.GroundGenerator;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class GeometryChangedTest
+{
+  private Diagram diagram;
+  private Switch sw;
+  private MultiplePairsPartition parent;
+
+  @BeforeClass
+  public static void setBundle()
+  {
+    Localizer.setBundle( "nl/BobbinWork/diagram/gui/labels", new Locale( "en" ) );
+  }
+
+  @Before
+  public void createDiagram() throws Exception
+  {
+    diagram = new GroundGenerator( Ground.flanders, 2, 2,
+        GroundGenerator.Shape.diamond ).createDiagram();
+    parent = diagram;
+    sw = findSwitch( diagram );
+    assertNotNull( sw );
+  }
+
+  /** @return the first visible switch, parent is set to the one containing it */
+  private Switch findSwitch(
+      final MultiplePairsPartition partition)
+  {
+    for (final Partition child : partition.getPartitions()) {
+      if (!child.isVisible()) continue;
+      if (child instanceof Switch) {
+        parent = partition;
+        return (Switch) child;
+      }
+      if (child instanceof MultiplePairsPartition) {
+        final Switch found = findSwitch( (MultiplePairsPartition) child );
+        if (found != null) return found;
+      }
+    }
+    return null;
+  }
+
+  private static Rectangle2D copy(
+      final Rectangle2D box)
+  {
+    return (Rectangle2D) box.clone();
+  }
+
+  @Test
+  public void boundsFollowMovedPoint()
+  {
+    final Rectangle2D switchBefore = copy( sw.getBounds2D() );
+    final Rectangle2D parentBefore = copy( parent.getBounds2D() );
+    final Rectangle2D diagramBefore = copy( diagram.getBounds2D() );
+    assertFalse( sw.getBounds().contains( 4999, 4999 ) );
+
+    sw.getFronts()[0].setC1( new Point( 5000, 5000 ) );
+    diagram.geometryChanged( sw );
+
+    assertTrue( sw.getBounds2D().getMaxX() > switchBefore.getMaxX() );
+    assertTrue( parent.getBounds2D().getMaxX() > parentBefore.getMaxX() );
+    assertTrue( diagram.getBounds2D().getMaxX() > diagramBefore.getMaxX() );
+    assertTrue( diagram.getBounds2D().contains( sw.getBounds2D() ) );
+    assertTrue( sw.getBounds().getBounds2D().getMaxX() > switchBefore.getMaxX() );
+  }
+
+  private List<DiagramEvent> listen()
+  {
+    final List<DiagramEvent> received = new ArrayList<DiagramEvent>();
+    diagram.addDiagramListener( new DiagramListener()
+    {
+      public void diagramChanged(
+          final Diagram changed,
+          final List<DiagramEvent> events)
+      {
+        received.addAll( events );
+      }
+    } );
+    return received;
+  }
+
+  private static void flush() throws Exception
+  {
+    SwingUtilities.invokeAndWait( new Runnable()
+    {
+      public void run()
+      {
+      }
+    } );
+  }
+
+  @Test
+  public void eventCoversOldAndNewBounds() throws Exception
+  {
+    final List<DiagramEvent> received = listen();
+    final Rectangle2D before = copy( sw.getBounds2D() );
+
+    sw.getFronts()[0].setC1( new Point( 5000, 5000 ) );
+    diagram.geometryChanged( sw );
+    flush();
+
+    assertEquals( 1, received.size() );
+    final DiagramEvent event = received.get( 0 );
+    assertEquals( DiagramEvent.Type.GEOMETRY, event.getType() );
+    assertSame( sw, event.getSource() );
+    assertTrue( sw.getBounds2D().getMaxX() > before.getMaxX() );
+    assertTrue( event.getArea().contains( before ) );
+    assertTrue( event.getArea().contains( sw.getBounds2D() ) );
+  }
+
+  @Test
+  public void eventCoversEverythingWithoutOldBounds() throws Exception
+  {
+    final List<DiagramEvent> received = listen();
+    sw.getFronts()[0].setC1( new Point( 5000, 5000 ) );
+    diagram.geometryChanged( sw );
+    flush();
+    assertEquals( 1, received.size() );
+    assertNull( received.get( 0 ).getArea() );
+  }
+}
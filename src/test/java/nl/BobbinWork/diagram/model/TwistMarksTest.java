@@ -19,6 +19,9 @@ package nl.BobbinWork.diagram.model;
 
 
 import static nl.BobbinWork.diagram.model.PairSegment.createTwistMark;
+import static nl.BobbinWork.diagram.model.PairSegment.twistMarkAt;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -26,6 +29,8 @@ import java.awt.geom.CubicCurve2D;
 import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
 
+import nl.BobbinWork.diagram.math.ArcLength;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -191,6 +196,42 @@ public class TwistMarksTest {
 		assertShortEqualLines(expectedTwistMark, createTwistMark(curve,10,0), 0);
 	}
 
+	@Test
+	public void halfLength() {
+		
+		expectedTwistMark.setLine(4.5,-5, 4.5,5);
+
+		curve.setCurve(0,0, 8,0, 6,0, 9,0);
+	    assertEqualLines(expectedTwistMark, twistMarkAt(curve,10, ArcLength.parameterAt(curve, 0.5)), 1e-5);
+		curve.setCurve(0,0, 8.5,0, 8.5,0, 9,0);
+	    assertEqualLines(expectedTwistMark, twistMarkAt(curve,10, ArcLength.parameterAt(curve, 0.5)), 1e-5);
+		curve.setCurve(0,0, 0,0, 0,0, 9,0);
+	    assertEqualLines(expectedTwistMark, twistMarkAt(curve,10, ArcLength.parameterAt(curve, 0.5)), 1e-5);
+	}
+
+	@Test
+	public void cached() {
+		
+		PairSegment segment = new PairSegment(new Point(0,0), new Point(8,0), new Point(6,0), new Point(9,0), 10);
+		Line2D estimated = (Line2D) segment.getTwistMark();
+		assertSame(estimated, segment.getTwistMark());
+		assertEqualLines(createTwistMark(segment.getCurve(), 10, PairSegment.DEFAULT_CORRECTION), estimated, 0);
+
+		PairSegment.setTwistMarksAtHalfLength(true);
+		try {
+			Line2D halfLength = (Line2D) segment.getTwistMark();
+			assertSame(halfLength, segment.getTwistMark());
+			assertEqualLines(new Line2D.Double(4.5,-5, 4.5,5), halfLength, 1e-5);
+		} finally {
+			PairSegment.setTwistMarksAtHalfLength(false);
+		}
+		assertSame(estimated, segment.getTwistMark());
+
+		segment.setEnd(new Point(18,0));
+		assertNotSame(estimated, segment.getTwistMark());
+		assertEqualLines(createTwistMark(segment.getCurve(), 10, PairSegment.DEFAULT_CORRECTION), (Line2D) segment.getTwistMark(), 0);
+	}
+
 	@Test
 	public void closedCurves() {
 		
@@ -0,0 +1,124 @@
+/* AttributeScannerBenchmark.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.xml;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.Ignore;
+
+/**
+ * Prints time and allocated bytes per attribute for the split/valueOf code
+ * that was replaced by {@link AttributeScanner}, and for the scanner itself.
+ */
+@Ignore("this is java application, not a JUnit")
+public class AttributeScannerBenchmark
+{
+  private static final int RUNS = 5;
+  private static final int N = 1000000;
+
+  private static final String[] POINTS = { "155.5,230", "10,20", "-3.25,7.125",
+      "1234.5678,0.001", "0,0" };
+  private static final String[] RANGES = { "1-4", "3", "12-130", "2-3" };
+
+  /** the replaced implementation of DiagramBuilder.createPoint */
+  static double[] legacyPoint(
+      final String s)
+  {
+    final String xy[] = s.split( "," );
+    if (xy.length < 2) return null;
+    try {
+      return new double[] { Double.valueOf( xy[0] ).doubleValue(),
+          Double.valueOf( xy[1] ).doubleValue() };
+    } catch (final NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /** the replaced implementation of DiagramBuilder.createRange */
+  static int[] legacyRange(
+      final String value)
+  {
+    final String xy[] = value.split( "-" );
+    try {
+      if (xy.length == 1) {
+        return new int[] { Integer.valueOf( xy[0] ).intValue(),
+            Integer.valueOf( xy[0] ).intValue() };
+      } else if (xy.length == 2) {
+        return new int[] { Integer.valueOf( xy[0] ).intValue(),
+            Integer.valueOf( xy[1] ).intValue() };
+      }
+    } catch (final NumberFormatException e) {
+    }
+    return null;
+  }
+
+  /** the replaced parsing of one range in DiagramBuilder.setBobbins */
+  static int[] legacyBobbins(
+      final String range)
+  {
+    final String[] bounds = range.split( "-" );
+    try {
+      final int start = Integer.decode( bounds[0] ).intValue();
+      final int end = bounds.length > 1 ? Integer.decode( bounds[1] ).intValue() : start;
+      return new int[] { start, end };
+    } catch (final NumberFormatException e) {
+      return null;
+    } catch (final ArrayIndexOutOfBoundsException e) {
+      return null;
+    }
+  }
+
+  public static void main(
+      final String[] args)
+  {
+    final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    final com.sun.management.ThreadMXBean sun =
+        (com.sun.management.ThreadMXBean) bean;
+    final long id = Thread.currentThread().getId();
+    final AttributeScanner scanner = new AttributeScanner();
+    System.out.println( "run\tlegacy ns\tlegacy bytes\tscanner ns\tscanner bytes" );
+    for (int run = 0; run < RUNS; run++) {
+      double sum = 0;
+
+      long bytes = sun.getThreadAllocatedBytes( id );
+      long start = System.nanoTime();
+      for (int i = 0; i < N; i++) {
+        final double[] p = legacyPoint( POINTS[i % POINTS.length] );
+        final int[] r = legacyRange( RANGES[i % RANGES.length] );
+        sum += p[0] + p[1] + r[0] + r[1];
+      }
+      final long legacyTime = System.nanoTime() - start;
+      final long legacyBytes = sun.getThreadAllocatedBytes( id ) - bytes;
+
+      bytes = sun.getThreadAllocatedBytes( id );
+      start = System.nanoTime();
+      for (int i = 0; i < N; i++) {
+        scanner.scanPoint( POINTS[i % POINTS.length] );
+        scanner.scanRange( RANGES[i % RANGES.length] );
+        sum += scanner.x + scanner.y + scanner.first + scanner.last;
+      }
+      final long scannerTime = System.nanoTime() - start;
+      final long scannerBytes = sun.getThreadAllocatedBytes( id ) - bytes;
+
+      System.out.println( String.format( "%d\t%.1f\t%.1f\t%.1f\t%.1f\t(%s)", run,
+          (double) legacyTime / N, (double) legacyBytes / N, (double) scannerTime
+              / N, (double) scannerBytes / N, sum ) );
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/* AttributeScannerTest.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.xml;
+
+import static nl.BobbinWork.diagram.xml.AttributeScannerBenchmark.*;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/** Compares the scanner with the split/valueOf code it replaced. */
+public class AttributeScannerTest
+{
+  private final AttributeScanner scanner = new AttributeScanner();
+
+  private static final String[] POINTS = { "1,2", "1.5,-2.25", " 3 , 4 ", "1,2,3",
+      "1,2,x", "1,2,,", "1,", "1", "", ",2", "1,,2", ",,", "a,b", ".5,5.",
+      ".,1", "+1,-0", "1e3,2E-3", "1e,2", "1e400,1e-400", "0x1p3,1", "1d,2f",
+      "NaN,Infinity", "123456789012345678,0.1234567890123456789",
+      "9007199254740993,1", "0.000001234,-000120.5000", "1e22,1e23",
+      "4.9e-324,1.7976931348623157e308", "1 2,3" };
+
+  private static final String[] RANGES = { "1", "1-4", "+2-+3", "1-4-", "1---",
+      "---", "", "-4", "1--4", "1-2-3", " 1", "a", "2147483647",
+      "2147483648", "0012-0013", "1-", "\u0661-\u0662" };
+
+  private static final String[] BOBBINS = { "1", "1-3", "0x10", "#10", "010",
+      "08", "1-2-3", "1-", "-1", "", "---", "+5", "00", "0" };
+
+  @Test
+  public void points()
+  {
+    for (final String s : POINTS) {
+      final double[] expected = legacyPoint( s );
+      final boolean valid = scanner.scanPoint( s );
+      assertEquals( s, expected != null, valid );
+      if (valid) assertEquals( s, Arrays.toString( expected ), Arrays
+          .toString( new double[] { scanner.x, scanner.y } ) );
+    }
+  }
+
+  @Test
+  public void randomNumbers()
+  {
+    final Random random = new Random( 1 );
+    for (int i = 0; i < 100000; i++) {
+      final String s =
+          (random.nextDouble() - 0.5) * Math.pow( 10, random.nextInt( 30 ) - 15 )
+              + "," + random.nextInt( 100000 ) / 100.0;
+      final double[] expected = legacyPoint( s );
+      scanner.scanPoint( s );
+      assertEquals( s, expected[0], scanner.x, 0 );
+      assertEquals( s, expected[1], scanner.y, 0 );
+    }
+  }
+
+  @Test
+  public void ranges()
+  {
+    for (final String s : RANGES) {
+      final int[] expected = legacyRange( s );
+      final boolean valid = scanner.scanRange( s );
+      assertEquals( s, expected != null, valid );
+      if (valid) assertEquals( s, Arrays.toString( expected ), Arrays
+          .toString( new int[] { scanner.first, scanner.last } ) );
+    }
+  }
+
+  @Test
+  public void bobbins()
+  {
+    for (final String s : BOBBINS) {
+      final int[] expected = legacyBobbins( s );
+      final boolean valid = scanner.scanBobbins( s, 0, s.length() );
+      assertEquals( s, expected != null, valid );
+      if (valid) assertEquals( s, Arrays.toString( expected ), Arrays
+          .toString( new int[] { scanner.first, scanner.last } ) );
+    }
+  }
+}
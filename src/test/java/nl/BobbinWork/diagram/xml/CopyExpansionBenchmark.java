@@ -0,0 +1,70 @@
+/* CopyExpansionBenchmark.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.xml;
+
+import nl.BobbinWork.diagram.xml.expand.TreeExpander;
+
+import org.junit.Ignore;
+import org.w3c.dom.Document;
+
+/**
+ * Prints the time to expand and restore an increasing number of copies. With
+ * the element index the time per copy should stay about the same.
+ */
+@Ignore("this is java application, not a JUnit")
+public class CopyExpansionBenchmark
+{
+  private static final int RUNS = 5;
+
+  static String createDiagram(
+      final int nrOfCopies)
+  {
+    final StringBuilder s = new StringBuilder( XmlResources.ROOT );
+    s.append( XmlResources.INCLUDE );
+    s.append( "<group pairs='1-2'>" );
+    for (int i = 0; i < nrOfCopies; i++) {
+      s.append( String.format( "<copy of='ctc' pairs='1-2'><move x='%d' y='%d'/></copy>",
+          (i % 100) * 20, (i / 100) * 20 ) );
+    }
+    return s.append( "</group></diagram>" ).toString();
+  }
+
+  public static void main(
+      final String[] args) throws Exception
+  {
+    final XmlResources xmlResources = new XmlResources();
+    System.out.println( "copies\texpand ms\trestore ms\texpand us/copy" );
+    for (int n = 250; n <= 16000; n *= 2) {
+      final String xml = createDiagram( n );
+      long expand = Long.MAX_VALUE;
+      long restore = Long.MAX_VALUE;
+      for (int run = 0; run < RUNS; run++) {
+        final Document doc = xmlResources.parse( xml );
+        final long start = System.nanoTime();
+        TreeExpander.replaceCopyElements( doc.getDocumentElement() );
+        final long expanded = System.nanoTime();
+        TreeExpander.restoreCopyElements( doc );
+        final long restored = System.nanoTime();
+        expand = Math.min( expand, expanded - start );
+        restore = Math.min( restore, restored - expanded );
+      }
+      System.out.println( String.format( "%d\t%.1f\t%.1f\t%.2f", n, expand / 1e6,
+          restore / 1e6, expand / 1e3 / n ) );
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/* GroundGeneratorBenchmark.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.xml;
+
+import java.io.ByteArrayInputStream;
+import java.util.Locale;
+
+import nl.BobbinWork.bwlib.gui.Localizer;
+import nl.BobbinWork.diagram.xml.GroundGenerator.Shape;
+
+import org.junit.Ignore;
+
+/**
+ * Prints the time to create the XML of a diamond ground and build the model
+ * from it, against the time to build the model directly from the template.
+ */
+@Ignore("this is java application, not a JUnit")
+public class GroundGeneratorBenchmark
+{
+  private static final int RUNS = 3;
+  private static final int[] SIZES = { 10, 25, 50, 100 };
+
+  public static void main(
+      final String[] args) throws Exception
+  {
+    Localizer.setBundle( "nl/BobbinWork/diagram/gui/labels", new Locale( "en" ) );
+    final Ground ground = args.length > 0 ? Ground.valueOf( args[0] ) : Ground.flanders;
+    System.out.println( ground + "\tcopies\tvia XML ms\tgenerated ms\twrite XML ms" );
+    for (final int n : SIZES) {
+      final GroundGenerator generator =
+          new GroundGenerator( ground, n, n, Shape.diamond );
+      long xml = Long.MAX_VALUE;
+      long generated = Long.MAX_VALUE;
+      long write = Long.MAX_VALUE;
+      for (int run = 0; run < RUNS; run++) {
+        long start = System.nanoTime();
+        final String s = generator.toXmlString();
+        write = Math.min( write, System.nanoTime() - start );
+        DiagramBuilder.createDiagramModel( new ByteArrayInputStream( s
+            .getBytes( "UTF-8" ) ) );
+        xml = Math.min( xml, System.nanoTime() - start );
+        start = System.nanoTime();
+        generator.createDiagram();
+        generated = Math.min( generated, System.nanoTime() - start );
+      }
+      System.out.println( String.format( "%dx%d\t%d\t%.1f\t%.1f\t%.1f", n, n,
+          generator.getNrOfCopies(), xml / 1e6, generated / 1e6, write / 1e6 ) );
+    }
+  }
+}
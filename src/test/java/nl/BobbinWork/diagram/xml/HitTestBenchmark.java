@@ -0,0 +1,131 @@
+/* HitTestBenchmark.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.xml;
+
+import java.awt.Rectangle;
+import java.util.Locale;
+import java.util.Random;
+
+import nl.BobbinWork.bwlib.gui.Localizer;
+import nl.BobbinWork.diagram.model.Diagram;
+import nl.BobbinWork.diagram.model.MultiplePairsPartition;
+import nl.BobbinWork.diagram.model.MultipleThreadsPartition;
+import nl.BobbinWork.diagram.model.Partition;
+import nl.BobbinWork.diagram.model.Stitch;
+import nl.BobbinWork.diagram.model.Switch;
+import nl.BobbinWork.diagram.xml.GroundGenerator.Shape;
+
+import org.junit.Ignore;
+
+/**
+ * Prints the latency of {@link MultiplePairsPartition#getPartitionAt(int, int)}
+ * on grounds with more than 10,000 stitches, against a scan through all
+ * partitions at every level. Also prints the latency of picking the nearest
+ * thread with {@link MultiplePairsPartition#getThreadAt(double, double, double)}.
+ */
+@Ignore("this is java application, not a JUnit")
+public class HitTestBenchmark
+{
+  private static final int CLICKS = 20000;
+  private static final int RUNS = 5;
+
+  /** the search before the partitions were indexed */
+  static MultipleThreadsPartition linearPartitionAt(
+      final MultiplePairsPartition parent,
+      final int x,
+      final int y)
+  {
+    if (parent.getBounds() != null && !parent.getBounds().contains( x, y )) return null;
+    for (final Partition partition : parent.getPartitions()) {
+      if (partition.isVisible()) {
+        if (partition.getBounds().contains( x, y )) {
+          if (partition instanceof Switch) return (Switch) partition;
+          return linearPartitionAt( (MultiplePairsPartition) partition, x, y );
+        }
+      }
+    }
+    return parent;
+  }
+
+  static int countStitches(
+      final Partition partition)
+  {
+    if (partition instanceof Stitch) return 1;
+    if (!(partition instanceof MultiplePairsPartition)) return 0;
+    int count = 0;
+    for (final Partition child : ((MultiplePairsPartition) partition).getPartitions()) {
+      count += countStitches( child );
+    }
+    return count;
+  }
+
+  public static void main(
+      final String[] args) throws Exception
+  {
+    Localizer.setBundle( "nl/BobbinWork/diagram/gui/labels", new Locale( "en" ) );
+    System.out.println( "copies\tstitches\tlinear us\tindexed us\tfirst indexed ms\tthread us\tfirst thread ms" );
+    for (final int n : new int[] { 10, 25, 50 }) {
+      final Diagram diagram =
+          new GroundGenerator( Ground.flanders, n, n, Shape.diamond )
+              .createDiagram();
+      final Rectangle area =
+          diagram.getPartitions().get( 1 ).getBounds().getBounds();
+      final int[] xs = new int[CLICKS];
+      final int[] ys = new int[CLICKS];
+      final Random random = new Random( 1 );
+      for (int i = 0; i < CLICKS; i++) {
+        xs[i] = area.x + random.nextInt( area.width );
+        ys[i] = area.y + random.nextInt( area.height );
+      }
+
+      long start = System.nanoTime();
+      diagram.getPartitionAt( xs[0], ys[0] );
+      final long first = System.nanoTime() - start;
+      start = System.nanoTime();
+      diagram.getThreadAt( xs[0], ys[0], MultiplePairsPartition.THREAD_TOLERANCE );
+      final long firstThread = System.nanoTime() - start;
+
+      long linear = Long.MAX_VALUE;
+      long indexed = Long.MAX_VALUE;
+      long thread = Long.MAX_VALUE;
+      int hits = 0;
+      for (int run = 0; run < RUNS; run++) {
+        start = System.nanoTime();
+        for (int i = 0; i < CLICKS; i++) {
+          if (linearPartitionAt( diagram, xs[i], ys[i] ) instanceof Switch) hits++;
+        }
+        linear = Math.min( linear, System.nanoTime() - start );
+        start = System.nanoTime();
+        for (int i = 0; i < CLICKS; i++) {
+          if (diagram.getPartitionAt( xs[i], ys[i] ) instanceof Switch) hits--;
+        }
+        indexed = Math.min( indexed, System.nanoTime() - start );
+        start = System.nanoTime();
+        for (int i = 0; i < CLICKS; i++) {
+          if (diagram.getThreadAt( xs[i], ys[i],
+              MultiplePairsPartition.THREAD_TOLERANCE ) != null) hits++;
+        }
+        thread = Math.min( thread, System.nanoTime() - start );
+      }
+      System.out.println( String.format( "%d\t%d\t%.2f\t%.2f\t%.1f\t%.2f\t%.1f\t(%d)",
+          n * n, countStitches( diagram ), linear / 1e3 / CLICKS, indexed
+              / 1e3 / CLICKS, first / 1e6, thread / 1e3 / CLICKS,
+          firstThread / 1e6, hits ) );
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/* NestingDepthBenchmark.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.xml;
+
+import java.util.Locale;
+
+import nl.BobbinWork.bwlib.gui.Localizer;
+
+import org.junit.Ignore;
+import org.w3c.dom.Element;
+
+/**
+ * Prints the time to build diagrams of nested groups with increasing depth.
+ * Looking up titles among direct children only, the time per level should
+ * stay about the same. Scanning all descendants at every level would make it
+ * grow with the depth.
+ */
+@Ignore("this is java application, not a JUnit")
+public class NestingDepthBenchmark
+{
+  private static final int RUNS = 10;
+  /** much deeper nesting overflows the stack of the recursive builder */
+  private static final int[] DEPTHS = { 100, 200, 400, 800 };
+
+  /** @return a diagram with groups nested to the depth, a title at the bottom */
+  static String nestedGroups(
+      final int depth)
+  {
+    final StringBuilder s = new StringBuilder( XmlResources.ROOT );
+    for (int i = 0; i < depth; i++) {
+      s.append( "<group pairs='1-2'>" );
+      if (i == depth - 1) s.append( "<title><value lang='en'>inner</value></title>" );
+      // pins: no threads running through all levels
+      s.append( "<pin position='0," + i + "'/><pin position='1," + i + "'/>" );
+    }
+    for (int i = 0; i < depth; i++) {
+      s.append( "</group>" );
+    }
+    return s.append( "</diagram>" ).toString();
+  }
+
+  public static void main(
+      final String[] args) throws Exception
+  {
+    Localizer.setBundle( "nl/BobbinWork/diagram/gui/labels", new Locale( "en" ) );
+    final XmlResources xmlResources = new XmlResources();
+    // warm up
+    for (final int depth : DEPTHS) {
+      DiagramBuilder.createDiagram( xmlResources.parse( nestedGroups( depth ) )
+          .getDocumentElement() );
+    }
+    System.out.println( "depth\tms\tus per level" );
+    for (final int depth : DEPTHS) {
+      final String content = nestedGroups( depth );
+      long best = Long.MAX_VALUE;
+      for (int run = 0; run < RUNS; run++) {
+        final Element root = xmlResources.parse( content ).getDocumentElement();
+        final long start = System.nanoTime();
+        DiagramBuilder.createDiagram( root );
+        best = Math.min( best, System.nanoTime() - start );
+      }
+      System.out.println( String.format( "%d\t%.1f\t%.1f", depth, best / 1e6,
+          best / 1e3 / depth ) );
+    }
+  }
+}
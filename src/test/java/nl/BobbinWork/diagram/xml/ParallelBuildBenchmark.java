@@ -0,0 +1,94 @@
+/* ParallelBuildBenchmark.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.xml;
+
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+import nl.BobbinWork.bwlib.gui.Localizer;
+
+import org.junit.Ignore;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Prints the time to build a diagram with many sibling grounds, sequentially
+ * and with fork/join pools of 1, 2, 4 and 8 threads. The speedup is limited
+ * by the number of processors of the machine.
+ */
+@Ignore("this is java application, not a JUnit")
+public class ParallelBuildBenchmark
+{
+  private static final int RUNS = 5;
+  private static final int GROUNDS = 64;
+  private static final int[] THREADS = { 1, 2, 4, 8 };
+
+  /** @return a diagram with the ground of the diamond repeated */
+  static Document createDocument(
+      final XmlResources xmlResources,
+      final Ground ground,
+      final int nrOfGrounds) throws Exception
+  {
+    final Document doc = xmlResources.parse( ground.diamond() );
+    final Element root = doc.getDocumentElement();
+    final Node group = root.getLastChild();
+    for (int i = 1; i < nrOfGrounds; i++) {
+      root.appendChild( group.cloneNode( true ) );
+    }
+    return doc;
+  }
+
+  public static void main(
+      final String[] args) throws Exception
+  {
+    Localizer.setBundle( "nl/BobbinWork/diagram/gui/labels", new Locale( "en" ) );
+    final XmlResources xmlResources = new XmlResources();
+    System.out.println( "processors: " + Runtime.getRuntime().availableProcessors() );
+    System.out.println( "ground\tsequential ms\t"
+        + "1 thread\t2 threads\t4 threads\t8 threads" );
+    for (final Ground ground : Ground.values()) {
+      final StringBuilder line = new StringBuilder( ground.name() );
+      long best = Long.MAX_VALUE;
+      for (int run = 0; run < RUNS; run++) {
+        final Element root =
+            createDocument( xmlResources, ground, GROUNDS ).getDocumentElement();
+        final long start = System.nanoTime();
+        DiagramBuilder.createDiagram( root );
+        best = Math.min( best, System.nanoTime() - start );
+      }
+      final long sequential = best;
+      line.append( String.format( "\t%.1f", sequential / 1e6 ) );
+      for (final int threads : THREADS) {
+        final ForkJoinPool pool = new ForkJoinPool( threads );
+        best = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+          final Element root =
+              createDocument( xmlResources, ground, GROUNDS ).getDocumentElement();
+          final long start = System.nanoTime();
+          DiagramBuilder.createDiagram( root, pool );
+          best = Math.min( best, System.nanoTime() - start );
+        }
+        pool.shutdown();
+        line.append( String.format( "\t%.1f (%.2fx)", best / 1e6,
+            (double) sequential / best ) );
+      }
+      System.out.println( line );
+    }
+  }
+}
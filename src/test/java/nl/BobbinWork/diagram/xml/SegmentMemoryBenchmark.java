@@ -0,0 +1,122 @@
+/* SegmentMemoryBenchmark.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.xml;
+
+import java.awt.geom.CubicCurve2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import nl.BobbinWork.bwlib.gui.Localizer;
+import nl.BobbinWork.diagram.model.Diagram;
+import nl.BobbinWork.diagram.model.Drawable;
+import nl.BobbinWork.diagram.model.MultiplePairsPartition;
+import nl.BobbinWork.diagram.model.Partition;
+import nl.BobbinWork.diagram.model.Stitch;
+import nl.BobbinWork.diagram.model.Switch;
+import nl.BobbinWork.diagram.xml.GroundGenerator.Shape;
+
+import org.junit.Ignore;
+
+/**
+ * Prints the heap retained by the models of the sample diagrams, per diagram
+ * and per thread or pair segment. The retained heap includes the DOM of a
+ * diagram read from XML, generated grounds don't keep any.
+ */
+@Ignore("this is java application, not a JUnit")
+public class SegmentMemoryBenchmark
+{
+  private static final int COPIES = 20;
+
+  private interface Sample
+  {
+    Diagram create() throws Exception;
+  }
+
+  static int countSegments(
+      final Partition partition)
+  {
+    int count = 0;
+    if (partition instanceof Switch) {
+      final Switch s = (Switch) partition;
+      count += s.getFronts().length + s.getBacks().length;
+    } else if (partition instanceof MultiplePairsPartition) {
+      if (partition instanceof Stitch) {
+        for (final Drawable drawable : partition.getPairs()) {
+          if (drawable.getShape() instanceof CubicCurve2D) count++;
+        }
+      }
+      for (final Partition child : ((MultiplePairsPartition) partition)
+          .getPartitions()) {
+        count += countSegments( child );
+      }
+    }
+    return count;
+  }
+
+  private static long usedHeap()
+  {
+    final Runtime runtime = Runtime.getRuntime();
+    long used = Long.MAX_VALUE;
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+      used = Math.min( used, runtime.totalMemory() - runtime.freeMemory() );
+    }
+    return used;
+  }
+
+  private static void measure(
+      final String name,
+      final Sample sample) throws Exception
+  {
+    final int segments = countSegments( sample.create() );
+    final List<Diagram> diagrams = new ArrayList<Diagram>( COPIES );
+    final long before = usedHeap();
+    for (int i = 0; i < COPIES; i++) {
+      diagrams.add( sample.create() );
+    }
+    final long retained = (usedHeap() - before) / diagrams.size();
+    System.out.println( String.format( "%s\t%d\t%d\t%d", name, segments,
+        retained / 1024, retained / segments ) );
+  }
+
+  public static void main(
+      final String[] args) throws Exception
+  {
+    Localizer.setBundle( "nl/BobbinWork/diagram/gui/labels", new Locale( "en" ) );
+    System.out.println( "sample\tsegments\tKB per diagram\tbytes per segment" );
+    measure( "showBasicStitches.xml", new Sample()
+    {
+      public Diagram create() throws Exception
+      {
+        return DiagramBuilder.createDiagramModel( getClass().getResourceAsStream(
+            "/nl/BobbinWork/diagram/xml/showBasicStitches.xml" ) );
+      }
+    } );
+    for (final Ground ground : Ground.values()) {
+      measure( ground + " 10x10", new Sample()
+      {
+        public Diagram create() throws Exception
+        {
+          return new GroundGenerator( ground, 10, 10, Shape.diamond )
+              .createDiagram();
+        }
+      } );
+    }
+  }
+}
@@ -0,0 +1,176 @@
+/* StreamingDiagramBuilderTest.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.xml;
+
+import static nl.BobbinWork.bwlib.gui.Localizer.setBundle;
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+import nl.BobbinWork.diagram.model.*;
+import nl.BobbinWork.diagram.xml.expand.TreeExpander;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+public class StreamingDiagramBuilderTest
+{
+  private static final String NESTED_COPIES = "<group pairs='1-6'>" //
+      + "<new_bobbins nrs='2-3,5'><style color='#FF0000' width='2'>"
+      + "<shadow color='#CC0000' width='10'/></style></new_bobbins>"
+      + "<group id='g' pairs='1-4' display='no'>"
+      + "<copy of='ctc' pairs='1-2'><move x='10' y='5'/></copy>"
+      + "<copy of='ctc' pairs='3-4'><rotate centre='50,50' angle='45'/><move shift='7,3'/></copy>"
+      + "<stitch pairs='2-3' display='false'><pair start='1.5,2' c1='3,4' end='5,6' mark='x'/>"
+      + "<pair start='2,2' end='6,6' mark='3'/><pin position='4,4'/>"
+      + "<twist bobbins='2-3'><back start='1,2' end='3,4'/><front start='3,2' end='1,4'/></twist>"
+      + "</stitch></group>" //
+      + "<copy of='g' pairs='1-4'><rotate centre='0,0' angle='90'/></copy>"
+      + "<copy of='g' pairs='3-6'><move x='100'/><rotate centre='20,20' angle='33'/></copy>"
+      + "<pin position='1,1'/>" //
+      + "</group>";
+
+  @BeforeClass
+  public static void setUp()
+  {
+    setBundle( "nl/BobbinWork/diagram/gui/labels", new Locale( "en" ) );
+  }
+
+  @Test
+  public void nestedCopies() throws Exception
+  {
+    assertSameModel( DiagramBuilder.createDiagramModel( NESTED_COPIES ),
+        StreamingDiagramBuilder.createDiagramModel( NESTED_COPIES ) );
+  }
+
+  @Test
+  public void templatesInsteadOfClones() throws Exception
+  {
+    final URI uri = XmlResources.class.getResource( "newDiagram.xml" ).toURI();
+    final Element root = new XmlResources().parse( uri ).getDocumentElement();
+    TreeExpander.replaceCopyElements( root );
+    assertSameModel( DiagramBuilder.createDiagram( root ),
+        DiagramBuilder.createDiagramModel( uri ) );
+  }
+
+  @Test
+  public void newDiagram() throws Exception
+  {
+    assertSameModel( DiagramBuilder.createDiagramModel( XmlResources.class
+        .getResource( "newDiagram.xml" ).toURI() ), StreamingDiagramBuilder
+        .createDiagramModel( XmlResources.class.getResource( "newDiagram.xml" )
+            .toURI() ) );
+  }
+
+  @Test
+  public void grounds() throws Exception
+  {
+    for (final Ground g : Ground.values()) {
+      assertSameModel( DiagramBuilder.createDiagramModel( g
+          .diamondInputStream() ), StreamingDiagramBuilder
+          .createDiagramModel( g.diamondInputStream() ) );
+      assertSameModel( DiagramBuilder
+          .createDiagramModel( g.squareInputStream() ),
+          StreamingDiagramBuilder.createDiagramModel( g.squareInputStream() ) );
+    }
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void tooManyPairs() throws Exception
+  {
+    StreamingDiagramBuilder.createDiagramModel( "<stitch pairs='1'>"
+        + "<pair start='1,2' end='3,4'/><pair start='1,2' end='3,4'/>"
+        + "</stitch>" );
+  }
+
+  /**
+   * Compares the partition trees and everything that gets painted. Captions
+   * are not compared, the DOM based builder picks up titles of descendants.
+   */
+  static void assertSameModel(
+      final Partition expected,
+      final Partition actual)
+  {
+    assertSamePartition( "", expected, actual );
+    assertSameDrawables( "threads", expected.getThreads(), actual.getThreads() );
+    assertSameDrawables( "pairs", expected.getPairs(), actual.getPairs() );
+    assertSameDrawables( "pins", expected.getPins(), actual.getPins() );
+  }
+
+  private static void assertSamePartition(
+      final String path,
+      final Partition expected,
+      final Partition actual)
+  {
+    assertEquals( path, expected.getClass(), actual.getClass() );
+    assertEquals( path, expected.isVisible(), actual.isVisible() );
+    assertEquals( path, expected.getNrOfPairs(), actual.getNrOfPairs() );
+    assertEquals( path, toString( expected.getBounds() ), toString( actual
+        .getBounds() ) );
+    if (expected instanceof MultiplePairsPartition) {
+      final List<Partition> e =
+          ((MultiplePairsPartition) expected).getPartitions();
+      final List<Partition> a =
+          ((MultiplePairsPartition) actual).getPartitions();
+      assertEquals( path, e.size(), a.size() );
+      for (int i = 0; i < e.size(); i++) {
+        assertSamePartition( path + "/" + i, e.get( i ), a.get( i ) );
+      }
+    }
+  }
+
+  private static void assertSameDrawables(
+      final String message,
+      final Iterable<Drawable> expected,
+      final Iterable<Drawable> actual)
+  {
+    final Iterator<Drawable> a = actual.iterator();
+    int i = 0;
+    for (final Drawable e : expected) {
+      assertEquals( message + i, true, a.hasNext() );
+      final Drawable next = a.next();
+      assertEquals( message + i, toString( e.getShape() ), toString( next
+          .getShape() ) );
+      assertEquals( message + i, "" + e.getStyle(), "" + next.getStyle() );
+      i++;
+    }
+    assertEquals( message, false, a.hasNext() );
+  }
+
+  private static String toString(
+      final Shape shape)
+  {
+    if (shape == null) return "null";
+    final List<String> segments = new ArrayList<String>();
+    final double[] coords = new double[6];
+    for (final PathIterator it = shape.getPathIterator( null ); !it.isDone(); it
+        .next()) {
+      final int type = it.currentSegment( coords );
+      segments.add( type + Arrays.toString( coords ) );
+    }
+    return segments.toString();
+  }
+}
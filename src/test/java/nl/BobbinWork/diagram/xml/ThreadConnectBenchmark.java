@@ -0,0 +1,70 @@
+/* ThreadConnectBenchmark.java Copyright 2010 by J. Pol
+ *
+ * This file is part of BobbinWork.
+ *
+ * BobbinWork is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BobbinWork is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BobbinWork.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package nl.BobbinWork.diagram.xml;
+
+import java.util.Locale;
+
+import nl.BobbinWork.bwlib.gui.Localizer;
+
+import org.junit.Ignore;
+import org.w3c.dom.Element;
+
+/**
+ * Prints the time to build nested groups with a stitch at each level. The
+ * threads run through all levels, each level connects the threads of the
+ * levels within it.
+ */
+@Ignore("this is java application, not a JUnit")
+public class ThreadConnectBenchmark
+{
+  private static final int RUNS = 5;
+  private static final int[] DEPTHS = { 100, 200, 400, 800 };
+
+  static String nestedStitches(
+      final int depth)
+  {
+    final StringBuilder s = new StringBuilder( XmlResources.ROOT );
+    s.append( XmlResources.INCLUDE );
+    for (int i = 0; i < depth; i++) {
+      s.append( "<group pairs='1-2'><copy of='ctctc' pairs='1-2'/>" ); //$NON-NLS-1$
+    }
+    for (int i = 0; i < depth; i++) {
+      s.append( "</group>" ); //$NON-NLS-1$
+    }
+    return s.append( "</diagram>" ).toString(); //$NON-NLS-1$
+  }
+
+  public static void main(
+      final String[] args) throws Exception
+  {
+    Localizer.setBundle( "nl/BobbinWork/diagram/gui/labels", new Locale( "en" ) );
+    final XmlResources xmlResources = new XmlResources();
+    System.out.println( "depth\tms" );
+    for (final int depth : DEPTHS) {
+      final String xml = nestedStitches( depth );
+      long best = Long.MAX_VALUE;
+      for (int run = 0; run < RUNS; run++) {
+        final Element root = xmlResources.parse( xml ).getDocumentElement();
+        final long start = System.nanoTime();
+        DiagramBuilder.createDiagram( root );
+        best = Math.min( best, System.nanoTime() - start );
+      }
+      System.out.println( String.format( "%d\t%.1f", depth, best / 1e6 ) );
+    }
+  }
+}
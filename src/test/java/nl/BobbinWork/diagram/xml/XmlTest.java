@@ -20,11 +20,28 @@ package nl.BobbinWork.diagram.xml;
 import static org.junit.Assert.assertThat;
 import static org.junit.matchers.JUnitMatchers.containsString;
 
+import java.awt.geom.CubicCurve2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+import javax.swing.SwingUtilities;
 import javax.xml.transform.TransformerException;
 
+import nl.BobbinWork.bwlib.gui.Localizer;
+import nl.BobbinWork.diagram.conversion.ThreadLengths;
+import nl.BobbinWork.diagram.math.NearestPoint;
 import nl.BobbinWork.diagram.model.*;
+import nl.BobbinWork.diagram.xml.expand.ElementIndex;
 import nl.BobbinWork.diagram.xml.expand.TreeExpander;
 
 import org.junit.*;
@@ -34,6 +51,11 @@ import org.xml.sax.SAXException;
 
 public class XmlTest extends XmlFixture {
 
+  @BeforeClass
+  public static void setBundle() {
+    Localizer.setBundle( "nl/BobbinWork/diagram/gui/labels", new Locale( "en" ) );
+  }
+
   @Test
   public void duplicateTitle() throws SAXException, IOException, TransformerException {
     assertSAXException(XmlResources.ROOT + "<title/><title/></diagram>", ".*'title'.*:group.*");
@@ -51,6 +73,671 @@ public class XmlTest extends XmlFixture {
     xmlResources.validate(content);
   }
   
+  @Test
+  public void concurrentParsing() throws Exception {
+    List<String> inputs = new ArrayList<String>();
+    for (Ground g : Ground.values()) {
+      inputs.add( g.diamond() );
+      inputs.add( g.square() );
+    }
+    ExecutorService executor = Executors.newFixedThreadPool( 4 );
+    try {
+      List<Future<Document>> futures = xmlResources.parse( executor, inputs );
+      for (Future<Document> future : futures) {
+        XmlResources.validate( future.get() );
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void concurrentLoading() throws Exception {
+    URI uri = XmlResources.class.getResource( "newDiagram.xml" ).toURI();
+    int expected = DiagramBuilder.createDiagramModel( uri ).getPartitions().size();
+    ExecutorService executor = Executors.newFixedThreadPool( 4 );
+    try {
+      for (Future<Diagram> future : DiagramBuilder.createDiagramModels( executor,
+          Collections.nCopies( 8, uri ) )) {
+        Assert.assertEquals( expected, future.get().getPartitions().size() );
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void cachedIncludeIsCopied() throws Exception {
+    String content = XmlResources.ROOT + XmlResources.INCLUDE + "</diagram>";
+    Document first = xmlResources.parse( content );
+    Element library = (Element) XmlResources.evaluate( "//*[@id='ctc']", first ).item( 0 );
+    library.setAttribute( "id", "changed" );
+    Document second = xmlResources.parse( content );
+    Assert.assertEquals( 1, XmlResources.evaluate( "//*[@id='ctc']", second ).getLength() );
+    Assert.assertEquals( 0, XmlResources.evaluate( "//*[@id='changed']", second ).getLength() );
+  }
+
+  @Test(expected = SAXException.class)
+  public void missingInclude() throws Exception {
+    xmlResources.parse( XmlResources.ROOT + "<xi:include href='non-existent.xml'/></diagram>" );
+  }
+
+  @Test
+  public void includeFromLibraryDirectory() throws Exception {
+    File dir = new File( "target/test-library" );
+    dir.mkdirs();
+    FileWriter writer = new FileWriter( new File( dir, "myStitches.xml" ) );
+    try {
+      writer.write( "<group xmlns='http://BobbinWork.googlecode.com/bw.xsd' id='mine' pairs='1-2'/>" );
+    } finally {
+      writer.close();
+    }
+    File[] saved = XmlResources.getLibraryDirectories();
+    XmlResources.setLibraryDirectories( dir );
+    try {
+      Document doc = xmlResources.parse( XmlResources.ROOT + "<xi:include href='myStitches.xml'/></diagram>" );
+      Assert.assertEquals( 1, XmlResources.evaluate( "//*[@id='mine']", doc ).getLength() );
+    } finally {
+      XmlResources.setLibraryDirectories( saved );
+    }
+  }
+
+  @Test
+  public void circularInclude() throws Exception {
+    File dir = new File( "target/test-library" );
+    dir.mkdirs();
+    String[] names = { "cycleA.xml", "cycleB.xml" };
+    for (int i = 0; i < names.length; i++) {
+      FileWriter writer = new FileWriter( new File( dir, names[i] ) );
+      try {
+        writer.write( "<group xmlns='http://BobbinWork.googlecode.com/bw.xsd'"
+            + " xmlns:xi='" + IncludeCache.XINCLUDE + "' pairs='1-2'>"
+            + "<xi:include href='" + names[1 - i] + "'/></group>" );
+      } finally {
+        writer.close();
+      }
+    }
+    File[] saved = XmlResources.getLibraryDirectories();
+    XmlResources.setLibraryDirectories( dir );
+    try {
+      xmlResources.parse( XmlResources.ROOT + "<xi:include href='cycleA.xml'/></diagram>" );
+      Assert.fail( "expected an exception" );
+    } catch (SAXException exception) {
+      Assert.assertTrue( exception.getMessage(), exception.getMessage().contains( "circular" ) );
+    } finally {
+      XmlResources.setLibraryDirectories( saved );
+    }
+  }
+
+  @Test
+  public void restoreCopyElements() throws Exception {
+    Document doc = xmlResources.parse( CopyExpansionBenchmark.createDiagram( 3 ) );
+    String original = XmlResources.toXmlString( doc );
+    TreeExpander.replaceCopyElements( doc.getDocumentElement() );
+    Assert.assertEquals( 0, XmlResources.evaluate( "//*[@of]", doc ).getLength() );
+    TreeExpander.restoreCopyElements( doc );
+    Assert.assertEquals( original, XmlResources.toXmlString( doc ) );
+  }
+
+  @Test
+  public void incrementalDelete() throws Exception {
+    Diagram diagram = DiagramBuilder.createDiagramModel( Ground.flanders.diamondInputStream() );
+    List<Partition> parts = diagram.getPartitions();
+    Partition library = parts.get( 0 );
+    Partition selected = null;
+    for (Partition p : ((MultiplePairsPartition) parts.get( 1 )).getPartitions()) {
+      if (p instanceof MultiplePairsPartition && DiagramRebuilder.canDelete( p )) {
+        selected = p;
+        break;
+      }
+    }
+    Document doc = ((Element) selected.getSourceObject()).getOwnerDocument();
+
+    Assert.assertSame( diagram, DiagramRebuilder.delete( selected ) );
+    Assert.assertSame( library, parts.get( 0 ) );
+    Diagram expected = DiagramBuilder.createDiagram( xmlResources.parse(
+        XmlResources.toXmlString( doc ) ).getDocumentElement() );
+    StreamingDiagramBuilderTest.assertSameModel( expected, diagram );
+  }
+
+  @Test
+  public void deleteKeepsThreadStyles() throws Exception {
+    Diagram diagram = DiagramBuilder.createDiagramModel( Ground.flanders.diamondInputStream() );
+    List<Partition> ground = ((MultiplePairsPartition) diagram.getPartitions().get( 1 )).getPartitions();
+    Partition selected = null;
+    for (Partition p : ground) {
+      if (p instanceof MultiplePairsPartition && DiagramRebuilder.canDelete( p )) {
+        selected = p;
+        break;
+      }
+    }
+    // a thread of another child of the same ground
+    Partition other = ground.get( ground.size() - 1 );
+    Assert.assertNotSame( selected, other );
+    ThreadSegment segment = LaceThread.of( other ).iterator().next().getSegments().get( 0 );
+    ThreadStyle red = new ThreadStyle();
+    red.setColor( "#FF0000" );
+    diagram.setThreadStyle( segment, red );
+    Assert.assertEquals( 1, countThreads( diagram.getPartitions().get( 1 ), red ) );
+
+    Assert.assertSame( diagram, DiagramRebuilder.delete( selected ) );
+    Partition newGround = diagram.getPartitions().get( 1 );
+    Assert.assertEquals( 1, countThreads( newGround, red ) );
+    Assert.assertTrue( countThreads( newGround, new ThreadStyle() ) > 0 );
+  }
+
+  private static int countThreads(Partition partition, ThreadStyle style) {
+    int count = 0;
+    for (LaceThread thread : LaceThread.of( partition )) {
+      if (thread.getStyle().getColor().equals( style.getColor() )) count++;
+    }
+    return count;
+  }
+
+  @Test
+  public void failedDelete() throws Exception {
+    Diagram diagram = DiagramBuilder.createDiagramModel( Ground.flanders.diamondInputStream() );
+    List<Partition> parts = new ArrayList<Partition>( diagram.getPartitions() );
+    // the template of the copies of='vert'
+    Partition template = ((MultiplePairsPartition) ((MultiplePairsPartition) parts.get( 0 ))
+        .getPartitions().get( 0 )).getPartitions().get( 0 );
+    Element element = (Element) template.getSourceObject();
+    Assert.assertEquals( "vert", element.getAttribute( "id" ) );
+    Document doc = element.getOwnerDocument();
+    TreeExpander.restoreCopyElements( doc );
+    String before = XmlResources.toXmlString( doc );
+
+    try {
+      DiagramRebuilder.delete( template );
+      Assert.fail( "deleted a template that is still copied" );
+    } catch (RuntimeException e) {
+      Assert.assertThat( e.getMessage(), containsString( "vert" ) );
+    }
+    Assert.assertEquals( parts, diagram.getPartitions() );
+    Assert.assertEquals( before, XmlResources.toXmlString( doc ) );
+    Assert.assertSame( element, ElementIndex.of( doc ).getElementById( "vert" ) );
+  }
+
+  @Test
+  public void diagramCache() throws Exception {
+    File dir = new File( "target/test-cache" );
+    for (File file : dir.exists() ? dir.listFiles() : new File[0])
+      file.delete();
+    DiagramCache cache = new DiagramCache( dir );
+    for (Ground g : Ground.values()) {
+      Diagram built = cache.createDiagramModel( g.diamondInputStream() );
+      Diagram cached = cache.createDiagramModel( g.diamondInputStream() );
+      Assert.assertNull( cached.getSourceObject() );
+      StreamingDiagramBuilderTest.assertSameModel( built, cached );
+    }
+    Assert.assertEquals( Ground.values().length, dir.listFiles().length );
+  }
+
+  @Test
+  public void corruptCacheEntry() throws Exception {
+    File dir = new File( "target/test-cache-corrupt" );
+    for (File file : dir.exists() ? dir.listFiles() : new File[0])
+      file.delete();
+    DiagramCache cache = new DiagramCache( dir );
+    byte[] content = Ground.flanders.diamond().getBytes( "UTF-8" );
+    cache.createDiagramModel( new ByteArrayInputStream( content ) );
+    File entry = dir.listFiles()[0];
+    byte[] bytes = new byte[(int) entry.length()];
+    java.io.DataInputStream in = new java.io.DataInputStream( new java.io.FileInputStream( entry ) );
+    try {
+      in.readFully( bytes );
+    } finally {
+      in.close();
+    }
+    // huge and negative counts and lengths at several positions,
+    // elsewhere the corrupt value is read as a coordinate or color
+    for (int position : new int[] { 4, 6, 10, 30, bytes.length / 2, bytes.length - 8 }) {
+      for (int value : new int[] { Integer.MAX_VALUE, -2 }) {
+        java.nio.ByteBuffer corrupt = java.nio.ByteBuffer.wrap( bytes.clone() );
+        corrupt.putInt( position, value );
+        java.io.FileOutputStream out = new java.io.FileOutputStream( entry );
+        try {
+          out.write( corrupt.array() );
+        } finally {
+          out.close();
+        }
+        Assert.assertNotNull( cache.createDiagramModel( new ByteArrayInputStream( content ) ) );
+      }
+    }
+  }
+
+  @Test
+  public void cacheEviction() throws Exception {
+    File dir = new File( "target/test-cache-evict" );
+    for (File file : dir.exists() ? dir.listFiles() : new File[0])
+      file.delete();
+    // smaller than any diagram, only the last one stored is kept
+    DiagramCache cache = new DiagramCache( dir, 1 );
+    for (Ground g : Ground.values()) {
+      byte[] content = g.diamond().getBytes( "UTF-8" );
+      cache.createDiagramModel( new ByteArrayInputStream( content ) );
+      Assert.assertEquals( 1, dir.listFiles().length );
+      Assert.assertNotNull( cache.get( content ) );
+    }
+  }
+
+  @Test
+  public void groupStylesInBinaryDiagram() throws Exception {
+    Diagram diagram = DiagramBuilder.createDiagramModel( Ground.flanders.diamondInputStream() );
+    Partition ground = diagram.getPartitions().get( 1 );
+    ThreadStyle red = new ThreadStyle();
+    red.setColor( "#FF0000" );
+    diagram.setThreadStyle( LaceThread.of( ground ).iterator().next().getSegments().get( 0 ), red );
+    java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+    BinaryDiagram.write( diagram, bytes );
+    Diagram read = BinaryDiagram.read( java.nio.ByteBuffer.wrap( bytes.toByteArray() ) );
+    ThreadStyle[] expected = ground.getThreadStyles();
+    ThreadStyle[] actual = read.getPartitions().get( 1 ).getThreadStyles();
+    Assert.assertEquals( expected.length, actual.length );
+    int reds = 0;
+    for (int i = 0; i < expected.length; i++) {
+      if (expected[i] == null) {
+        Assert.assertNull( actual[i] );
+        continue;
+      }
+      Assert.assertEquals( expected[i].getColor(), actual[i].getColor() );
+      Assert.assertEquals( expected[i].getShadow().getColor(), actual[i].getShadow().getColor() );
+      if (expected[i].getColor().equals( red.getColor() )) reds++;
+    }
+    Assert.assertEquals( 1, reds );
+  }
+
+  @Test
+  public void otherVersion() throws Exception {
+    Diagram diagram = new GroundGenerator( Ground.flanders, 1, 1,
+        GroundGenerator.Shape.diamond ).createDiagram();
+    java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+    BinaryDiagram.write( diagram, bytes );
+    java.nio.ByteBuffer buffer = java.nio.ByteBuffer.wrap( bytes.toByteArray() );
+    Assert.assertNotNull( BinaryDiagram.read( buffer ) );
+    buffer = java.nio.ByteBuffer.wrap( bytes.toByteArray() );
+    buffer.putInt( 4, BinaryDiagram.VERSION - 1 );
+    try {
+      BinaryDiagram.read( buffer );
+      Assert.fail( "read content of another version" );
+    } catch (IOException e) {
+      Assert.assertThat( e.getMessage(), containsString( "version" ) );
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void hugeStringLength() throws Exception {
+    java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate( 20 );
+    buffer.putInt( 0x42574431 ).putInt( BinaryDiagram.VERSION );
+    buffer.put( (byte) 1 ).put( (byte) 1 ).putInt( Integer.MAX_VALUE );
+    buffer.rewind();
+    BinaryDiagram.read( buffer );
+  }
+
+  @Test
+  public void cacheKeyCoversIncludes() throws Exception {
+    File dir = new File( "target/test-library" );
+    dir.mkdirs();
+    File cacheDir = new File( "target/test-cache-include" );
+    for (File file : cacheDir.exists() ? cacheDir.listFiles() : new File[0])
+      file.delete();
+    DiagramCache cache = new DiagramCache( cacheDir );
+    byte[] content = ( XmlResources.ROOT + "<xi:include href='cacheKey.xml'/></diagram>" ).getBytes( "UTF-8" );
+    File[] saved = XmlResources.getLibraryDirectories();
+    XmlResources.setLibraryDirectories( dir );
+    try {
+      for (String id : new String[] { "first", "second" }) {
+        FileWriter writer = new FileWriter( new File( dir, "cacheKey.xml" ) );
+        try {
+          writer.write( "<group xmlns='http://BobbinWork.googlecode.com/bw.xsd' id='" + id + "' pairs='1-2'/>" );
+        } finally {
+          writer.close();
+        }
+        Assert.assertNull( cache.get( content ) );
+        cache.createDiagramModel( new ByteArrayInputStream( content ) );
+        Assert.assertNotNull( cache.get( content ) );
+      }
+    } finally {
+      XmlResources.setLibraryDirectories( saved );
+    }
+    Assert.assertEquals( 2, cacheDir.listFiles().length );
+  }
+
+  @Test
+  public void titleOfNestedGroup() throws Exception {
+    Element root = xmlResources.parse( NestingDepthBenchmark.nestedGroups( 3 ) ).getDocumentElement();
+    MultiplePairsPartition group = (MultiplePairsPartition) DiagramBuilder
+        .createDiagram( root ).getPartitions().get( 0 );
+    Assert.assertEquals( "1-2", group.getCaption() );
+    for (int i = 0; i < 2; i++) {
+      group = (MultiplePairsPartition) group.getPartitions().get( 2 );
+    }
+    Assert.assertEquals( "1-2: inner", group.getCaption() );
+  }
+
+  @Test
+  public void parallelBuild() throws Exception {
+    ForkJoinPool pool = new ForkJoinPool( 4 );
+    try {
+      for (Ground g : Ground.values()) {
+        Element sequential = ParallelBuildBenchmark.createDocument( xmlResources, g, 4 ).getDocumentElement();
+        Element parallel = ParallelBuildBenchmark.createDocument( xmlResources, g, 4 ).getDocumentElement();
+        Diagram expected = DiagramBuilder.createDiagram( sequential );
+        Diagram actual = DiagramBuilder.createDiagram( parallel, pool );
+        StreamingDiagramBuilderTest.assertSameModel( expected, actual );
+        Assert.assertSame( actual.getPartitions().get( 1 ), parallel.getChildNodes().item( 2 )
+            .getUserData( DiagramBuilder.MODEL_TO_DOM ) );
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void generatedGround() throws Exception {
+    for (Ground g : new Ground[] { Ground.spider, Ground.snowflake }) {
+      for (GroundGenerator.Shape shape : GroundGenerator.Shape.values()) {
+        GroundGenerator generator = new GroundGenerator( g, 3, 5, shape );
+        Diagram expected = DiagramBuilder.createDiagramModel(
+            new ByteArrayInputStream( generator.toXmlString().getBytes( "UTF-8" ) ) );
+        StreamingDiagramBuilderTest.assertSameModel( expected, generator.createDiagram() );
+      }
+    }
+    Assert.assertEquals( 15, new GroundGenerator( Ground.vierge, 3, 5,
+        GroundGenerator.Shape.diamond ).getNrOfCopies() );
+    // a checkerboard of 9 by 5 positions
+    Assert.assertEquals( 3 * 5 + 2 * 4, new GroundGenerator( Ground.vierge, 3, 5,
+        GroundGenerator.Shape.square ).getNrOfCopies() );
+    Assert.assertEquals( new GroundGenerator( Ground.vierge, 3, 5,
+        GroundGenerator.Shape.square ).toXmlString(), Ground.vierge.square( 3, 5 ) );
+  }
+
+  @Test
+  public void threadsThroughNestedGroups() throws Exception {
+    Element root = xmlResources.parse( ThreadConnectBenchmark.nestedStitches( 50 ) )
+        .getDocumentElement();
+    Partition partition = DiagramBuilder.createDiagram( root );
+    while (!(partition instanceof Switch)) {
+      List<Partition> children = ((MultiplePairsPartition) partition).getPartitions();
+      partition = children.get( children.size() - 1 );
+    }
+    ThreadSegment last = ((Switch) partition).getFronts()[0];
+    LaceThread thread = last.getLaceThread();
+    Assert.assertTrue( thread.getSegments().size() > 50 );
+    Set<Integer> ids = new HashSet<Integer>();
+    for (ThreadSegment segment : thread.getSegments()) {
+      Assert.assertSame( thread.getStyle(), segment.getStyle() );
+      ids.add( segment.getLaceThread().getId() );
+    }
+    Assert.assertEquals( 1, ids.size() );
+  }
+
+  @Test
+  public void threadLengths() throws Exception {
+    Diagram diagram = new GroundGenerator( Ground.flanders, 4, 4,
+        GroundGenerator.Shape.diamond ).createDiagram();
+    ThreadLengths sequential = new ThreadLengths( diagram );
+    ExecutorService executor = Executors.newFixedThreadPool( 4 );
+    ThreadLengths parallel;
+    try {
+      parallel = new ThreadLengths( diagram, executor );
+    } finally {
+      executor.shutdown();
+    }
+    Assert.assertEquals( sequential.getThreads(), parallel.getThreads() );
+    Assert.assertEquals( sequential.getTotal(), parallel.getTotal(), 0.0 );
+
+    // each segment of the switches is counted once, at least as long as its chord
+    Set<ThreadSegment> segments = new HashSet<ThreadSegment>();
+    collectSegments( diagram, segments );
+    int count = 0;
+    double chords = 0;
+    for (int i = 0; i < sequential.getThreads().size(); i++) {
+      LaceThread thread = sequential.getThreads().get( i );
+      for (ThreadSegment segment : thread.getSegments()) {
+        Assert.assertTrue( segments.contains( segment ) );
+      }
+      double length = 0;
+      for (CubicCurve2D curve : thread.getSegments().get( 0 ).getThread()) {
+        length += curve.getP1().distance( curve.getP2() );
+      }
+      Assert.assertTrue( sequential.getLength( i ) >= length );
+      count += thread.getSegments().size();
+      chords += length;
+    }
+    Assert.assertEquals( segments.size(), count );
+    Assert.assertTrue( sequential.getTotal() < chords * 1.5 );
+  }
+
+  @Test
+  public void threadLengthsOfGeneratedGround() throws Exception {
+    Diagram diagram = new GroundGenerator( Ground.flanders, 2, 2,
+        GroundGenerator.Shape.diamond ).createDiagram();
+    ThreadLengths lengths = new ThreadLengths( diagram );
+    // the hidden templates of the library don't need bobbins
+    Assert.assertEquals( 16, lengths.getThreads().size() );
+    Assert.assertEquals( 2634.9, lengths.getTotal(), 0.1 );
+  }
+
+  private static void collectSegments(Partition partition, Set<ThreadSegment> segments) {
+    if (!partition.isVisible()) return;
+    if (partition instanceof Switch) {
+      segments.addAll( Arrays.asList( ((Switch) partition).getFronts() ) );
+      segments.addAll( Arrays.asList( ((Switch) partition).getBacks() ) );
+    } else if (partition instanceof MultiplePairsPartition) {
+      for (Partition child : ((MultiplePairsPartition) partition).getPartitions()) {
+        collectSegments( child, segments );
+      }
+    }
+  }
+
+  @Test
+  public void mergedBounds() throws Exception {
+    Diagram diagram = new GroundGenerator( Ground.snowflake, 3, 3,
+        GroundGenerator.Shape.square ).createDiagram();
+    assertContainsChildren( diagram );
+    Rectangle2D all = diagram.getBounds2D();
+    Assert.assertSame( all, diagram.getBounds2D() );
+
+    diagram.getPartitions().remove( 1 );
+    diagram.partitionsChanged();
+    Assert.assertEquals( diagram.getPartitions().get( 0 ).getBounds2D(),
+        diagram.getBounds2D() );
+    assertCovers( all, diagram.getBounds2D(), 1e-9 );
+  }
+
+  private static void assertCovers(Rectangle2D box,
+      Rectangle2D other, double tolerance) {
+    String message = box + " " + other;
+    Assert.assertTrue( message, other.getMinX() >= box.getMinX() - tolerance );
+    Assert.assertTrue( message, other.getMinY() >= box.getMinY() - tolerance );
+    Assert.assertTrue( message, other.getMaxX() <= box.getMaxX() + tolerance );
+    Assert.assertTrue( message, other.getMaxY() <= box.getMaxY() + tolerance );
+  }
+
+  private static void assertContainsChildren(Partition partition) {
+    java.awt.geom.Rectangle2D box = partition.getBounds2D();
+    if (partition.getBounds() != null) {
+      java.awt.Rectangle polygon = partition.getBounds().getBounds();
+      // int coordinates of the polygon are truncated
+      if (polygon.width + polygon.height > 0) assertCovers( box, polygon, 1 );
+    }
+    if (partition instanceof Switch) {
+      for (Drawable drawable : partition.getThreads())
+        assertCovers( box, drawable.getShape().getBounds2D(), 1e-9 );
+    }
+    if (partition instanceof MultiplePairsPartition) {
+      for (Partition child : ((MultiplePairsPartition) partition).getPartitions()) {
+        assertCovers( box, child.getBounds2D(), 1e-9 );
+        assertContainsChildren( child );
+      }
+    }
+  }
+
+  @Test
+  public void indexedHitTest() throws Exception {
+    Diagram diagram = new GroundGenerator( Ground.snowflake, 4, 6,
+        GroundGenerator.Shape.square ).createDiagram();
+    java.awt.Rectangle area = diagram.getPartitions().get( 1 ).getBounds().getBounds();
+    int switches = 0;
+    for (int x = area.x - 5; x < area.x + area.width + 5; x += 3) {
+      for (int y = area.y - 5; y < area.y + area.height + 5; y += 3) {
+        MultipleThreadsPartition expected = HitTestBenchmark.linearPartitionAt( diagram, x, y );
+        Assert.assertSame( x + "," + y, expected, diagram.getPartitionAt( x, y ) );
+        if (expected instanceof Switch) switches++;
+      }
+    }
+    Assert.assertTrue( switches > 1000 );
+  }
+
+  @Test
+  public void threadPicking() throws Exception {
+    Diagram diagram = new GroundGenerator( Ground.flanders, 4, 4,
+        GroundGenerator.Shape.diamond ).createDiagram();
+    // templates are hidden, the brute force search below would find them
+    diagram.setAllVisible( true );
+    List<CubicCurve2D> curves = new ArrayList<CubicCurve2D>();
+    for (LaceThread thread : LaceThread.of( diagram )) {
+      for (CubicCurve2D curve : thread.getSegments().get( 0 ).getThread()) {
+        curves.add( curve );
+      }
+    }
+    Rectangle2D area = diagram.getBounds2D();
+    Random random = new Random( 1 );
+    double tolerance = 2;
+    int hits = 0;
+    for (int i = 0; i < 2000; i++) {
+      Point2D p = new Point2D.Double( area.getX() + random.nextDouble() * area.getWidth(),
+          area.getY() + random.nextDouble() * area.getHeight() );
+      double expected = Double.POSITIVE_INFINITY;
+      for (CubicCurve2D curve : curves) {
+        expected = Math.min( expected, NearestPoint.onCurve( curve, p, null ) );
+      }
+      ThreadSegment found = diagram.getThreadAt( p.getX(), p.getY(), tolerance );
+      if (expected > tolerance * tolerance) {
+        Assert.assertNull( found );
+        continue;
+      }
+      hits++;
+      double actual = Double.POSITIVE_INFINITY;
+      for (CubicCurve2D curve : found.getThread()) {
+        actual = Math.min( actual, NearestPoint.onCurve( curve, p, null ) );
+      }
+      Assert.assertEquals( expected, actual, 0.0 );
+    }
+    Assert.assertTrue( hits > 50 );
+
+    for (Partition partition : diagram.getPartitions()) {
+      partition.setVisible( false );
+    }
+    Rectangle2D box = curves.get( 0 ).getBounds2D();
+    Assert.assertNull( diagram.getThreadAt( box.getCenterX(), box.getCenterY(), 1000 ) );
+  }
+
+  @Test
+  public void changeEvents() throws Exception {
+    final Diagram diagram = new GroundGenerator( Ground.flanders, 2, 2,
+        GroundGenerator.Shape.diamond ).createDiagram();
+    final List<List<DiagramEvent>> calls = new ArrayList<List<DiagramEvent>>();
+    diagram.addDiagramListener( new DiagramListener() {
+      public void diagramChanged(Diagram changed, List<DiagramEvent> events) {
+        Assert.assertSame( diagram, changed );
+        calls.add( events );
+      }
+    } );
+    final Partition partition = diagram.getPartitions().get( 1 );
+    final ThreadSegment segment = LaceThread.of( diagram ).iterator().next().getSegments().get( 0 );
+    final ThreadStyle style = new ThreadStyle();
+    style.setColor( "#FF0000" );
+
+    // two changes of the same type and source within a tick are merged
+    SwingUtilities.invokeAndWait( new Runnable() {
+      public void run() {
+        diagram.setVisible( partition, false );
+        diagram.setVisible( partition, true );
+        diagram.setThreadStyle( segment, style );
+        diagram.setThreadStyle( segment, style );
+      }
+    } );
+    SwingUtilities.invokeAndWait( new Runnable() { public void run() {} } );
+    Assert.assertEquals( 1, calls.size() );
+    Assert.assertEquals( 2, calls.get( 0 ).size() );
+    Assert.assertEquals( DiagramEvent.Type.VISIBILITY, calls.get( 0 ).get( 0 ).getType() );
+    Assert.assertSame( partition, calls.get( 0 ).get( 0 ).getSource() );
+    Assert.assertEquals( partition.getBounds2D(), calls.get( 0 ).get( 0 ).getArea() );
+    Assert.assertEquals( DiagramEvent.Type.STYLE, calls.get( 0 ).get( 1 ).getType() );
+    Assert.assertEquals( style.getColor(), segment.getStyle().getColor() );
+
+    // the caches along the path to the change are dropped before the listeners hear about it
+    MultiplePairsPartition group = (MultiplePairsPartition) partition;
+    DisplayList before = diagram.getThreadList();
+    DisplayList groupBefore = group.getThreadList();
+    Rectangle2D removedBox = group.getPartitions().remove( group.getPartitions().size() - 1 ).getBounds2D();
+    diagram.partitionsChanged( group );
+    Assert.assertNotSame( before, diagram.getThreadList() );
+    Assert.assertNotSame( groupBefore, group.getThreadList() );
+    SwingUtilities.invokeAndWait( new Runnable() { public void run() {} } );
+    Assert.assertEquals( 2, calls.size() );
+    DiagramEvent event = calls.get( 1 ).get( 0 );
+    Assert.assertEquals( DiagramEvent.Type.PARTITIONS, event.getType() );
+    Assert.assertTrue( event.getArea().contains( removedBox ) );
+
+    try {
+      diagram.partitionsChanged( group );
+      diagram.geometryChanged( new GroundGenerator( Ground.flanders, 1, 1,
+          GroundGenerator.Shape.diamond ).createDiagram().getPartitions().get( 0 ) );
+      Assert.fail( "a partition of another diagram was accepted" );
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void rebuilderEvents() throws Exception {
+    final Diagram diagram = DiagramBuilder.createDiagramModel( Ground.flanders.diamondInputStream() );
+    final List<DiagramEvent> received = new ArrayList<DiagramEvent>();
+    diagram.addDiagramListener( new DiagramListener() {
+      public void diagramChanged(Diagram changed, List<DiagramEvent> events) {
+        received.addAll( events );
+      }
+    } );
+    final Partition oldPart = diagram.getPartitions().get( 1 );
+    Partition selected = null;
+    for (Partition p : ((MultiplePairsPartition) oldPart).getPartitions()) {
+      if (p instanceof MultiplePairsPartition && DiagramRebuilder.canDelete( p )) {
+        selected = p;
+        break;
+      }
+    }
+    final Partition deleted = selected;
+    SwingUtilities.invokeAndWait( new Runnable() {
+      public void run() {
+        // finds the parents before the edit
+        diagram.geometryChanged( oldPart );
+        Assert.assertSame( diagram, DiagramRebuilder.delete( deleted ) );
+      }
+    } );
+    SwingUtilities.invokeAndWait( new Runnable() { public void run() {} } );
+    Partition newPart = diagram.getPartitions().get( 1 );
+    Assert.assertNotSame( oldPart, newPart );
+    Assert.assertEquals( 2, received.size() );
+    // in the order of the types
+    Assert.assertEquals( DiagramEvent.Type.PARTITIONS, received.get( 0 ).getType() );
+    Assert.assertSame( diagram, received.get( 0 ).getSource() );
+    Assert.assertEquals( DiagramEvent.Type.GEOMETRY, received.get( 1 ).getType() );
+
+    // the parents are found again after the splice
+    diagram.geometryChanged( newPart );
+    Partition child = ((MultiplePairsPartition) newPart).getPartitions().get( 0 );
+    diagram.geometryChanged( child );
+    try {
+      diagram.geometryChanged( oldPart );
+      Assert.fail( "the replaced part is still known" );
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
   @Ignore("see issue 23")
   @Test
   public void savingChangedThreads() throws Exception {